@@ -0,0 +1,108 @@
+// Minimal static copy of the Sauce Demo shop for load tests: same selectors as the saucedemo page objects,
+// cart kept in localStorage so every run (own browser context) starts empty.
+const PRODUCTS = [
+  { id: 'sauce-labs-backpack', name: 'Sauce Labs Backpack', price: 29.99, desc: 'Carry all the things.' },
+  { id: 'sauce-labs-bike-light', name: 'Sauce Labs Bike Light', price: 9.99, desc: 'A red light for night rides.' },
+  { id: 'sauce-labs-bolt-t-shirt', name: 'Sauce Labs Bolt T-Shirt', price: 15.99, desc: 'Soft, slim-fit cotton.' },
+  { id: 'sauce-labs-fleece-jacket', name: 'Sauce Labs Fleece Jacket', price: 49.99, desc: 'A midweight quarter-zip.' },
+  { id: 'sauce-labs-onesie', name: 'Sauce Labs Onesie', price: 7.99, desc: 'Rib snap infant onesie.' },
+  { id: 'test-allthethings-t-shirt-red', name: 'Test.allTheThings() T-Shirt (Red)', price: 15.99, desc: 'Super-soft comfy tee.' }
+];
+const TAX_RATE = 0.08;
+
+const cart = () => JSON.parse(localStorage.getItem('cart') || '[]');
+const saveCart = ids => { localStorage.setItem('cart', JSON.stringify(ids)); renderBadge(); };
+const money = n => '$' + n.toFixed(2);
+const el = (tag, attrs, text) => {
+  const e = document.createElement(tag);
+  Object.entries(attrs || {}).forEach(([k, v]) => e.setAttribute(k, v));
+  if (text !== undefined) e.textContent = text;
+  return e;
+};
+
+function renderBadge() {
+  const link = document.querySelector('a.shopping_cart_link');
+  if (!link) return;
+  link.querySelectorAll('.shopping_cart_badge').forEach(b => b.remove());
+  if (cart().length) link.appendChild(el('span', { class: 'shopping_cart_badge' }, String(cart().length)));
+}
+
+function renderInventory() {
+  const list = document.querySelector('.inventory_list');
+  const sort = document.querySelector("select[data-test='product-sort-container']").value;
+  const items = [...PRODUCTS].sort((a, b) =>
+    sort === 'lohi' ? a.price - b.price : sort === 'hilo' ? b.price - a.price :
+    sort === 'za' ? b.name.localeCompare(a.name) : a.name.localeCompare(b.name));
+  list.innerHTML = '';
+  items.forEach(p => {
+    const item = el('div', { class: 'inventory_item' });
+    item.appendChild(el('div', { class: 'inventory_item_name' }, p.name));
+    item.appendChild(el('div', { class: 'inventory_item_desc' }, p.desc));
+    item.appendChild(el('div', { class: 'inventory_item_price' }, money(p.price)));
+    const inCart = cart().includes(p.id);
+    const button = el('button', {
+      'data-test': (inCart ? 'remove-' : 'add-to-cart-') + p.id,
+      'aria-label': (inCart ? 'Remove ' : 'Add to cart ') + p.name
+    }, inCart ? 'Remove' : 'Add to cart');
+    button.addEventListener('click', () => {
+      saveCart(inCart ? cart().filter(id => id !== p.id) : [...cart(), p.id]);
+      renderInventory();
+    });
+    item.appendChild(button);
+    list.appendChild(item);
+  });
+}
+
+function renderCart() {
+  const list = document.querySelector('.cart_list');
+  PRODUCTS.filter(p => cart().includes(p.id)).forEach(p => {
+    const item = el('div', { class: 'cart_item' });
+    item.appendChild(el('div', { class: 'cart_quantity' }, '1'));
+    item.appendChild(el('div', { class: 'inventory_item_name' }, p.name));
+    item.appendChild(el('div', { class: 'inventory_item_price' }, money(p.price)));
+    list.appendChild(item);
+  });
+}
+
+function renderOverview() {
+  renderCart();
+  const subtotal = PRODUCTS.filter(p => cart().includes(p.id)).reduce((s, p) => s + p.price, 0);
+  const tax = Math.round(subtotal * TAX_RATE * 100) / 100;
+  document.querySelector('.summary_subtotal_label').textContent = 'Item total: ' + money(subtotal);
+  document.querySelector('.summary_tax_label').textContent = 'Tax: ' + money(tax);
+  document.querySelector('.summary_total_label').textContent = 'Total: ' + money(subtotal + tax);
+}
+
+document.addEventListener('DOMContentLoaded', () => {
+  const page = document.body.dataset.page;
+  renderBadge();
+  if (page === 'login') {
+    document.querySelector('form').addEventListener('submit', e => {
+      e.preventDefault();
+      const user = document.querySelector('#user-name').value;
+      const pass = document.querySelector('#password').value;
+      if (user === 'standard_user' && pass === 'secret_sauce') {
+        localStorage.removeItem('cart');
+        location.href = 'inventory.html';
+      } else {
+        const error = document.querySelector("h3[data-test='error']");
+        error.textContent = 'Epic sadface: Username and password do not match any user in this service';
+        error.hidden = false;
+      }
+    });
+  } else if (page === 'inventory') {
+    document.querySelector("select[data-test='product-sort-container']").addEventListener('change', renderInventory);
+    renderInventory();
+  } else if (page === 'cart') {
+    renderCart();
+  } else if (page === 'checkout-one') {
+    document.querySelector('form').addEventListener('submit', e => {
+      e.preventDefault();
+      location.href = 'checkout-step-two.html';
+    });
+  } else if (page === 'checkout-two') {
+    renderOverview();
+  } else if (page === 'complete') {
+    localStorage.removeItem('cart');
+  }
+});
@@ -0,0 +1,10 @@
+-- Migration script for the shared LLM admission budget (llm.admission.shared=true)
+-- ddl-auto=update creates the table as well; run this where schema changes are applied by hand
+
+-- One token bucket per provider; rows are created and refilled by LlmRateBudgetRepository's native statements
+CREATE TABLE IF NOT EXISTS llm_rate_budget (
+    bucket_key VARCHAR(255)     PRIMARY KEY,
+    tokens     DOUBLE PRECISION NOT NULL,
+    requests   DOUBLE PRECISION NOT NULL,
+    updated_at TIMESTAMP        NOT NULL
+);
@@ -0,0 +1,26 @@
+-- Indexes for server-side search (GET /api/search, GET /api/search/references)
+-- Expression and trigram indexes are updated by Postgres on every insert/update, so the search never
+-- reads stale data and needs no separate sync job. Without pg_trgm the substring (ILIKE) matches still
+-- work, they just scan.
+
+CREATE EXTENSION IF NOT EXISTS pg_trgm;
+
+-- Word search (must match the to_tsvector expressions in TestRepository exactly to be used)
+CREATE INDEX IF NOT EXISTS idx_tests_search_fts
+    ON tests USING GIN (to_tsvector('simple', COALESCE(name, '') || ' ' || COALESCE(description, '')));
+CREATE INDEX IF NOT EXISTS idx_test_steps_instruction_fts
+    ON test_steps USING GIN (to_tsvector('simple', COALESCE(instruction, '')));
+
+-- Substring search
+CREATE INDEX IF NOT EXISTS idx_tests_name_trgm ON tests USING GIN (name gin_trgm_ops);
+CREATE INDEX IF NOT EXISTS idx_test_tags_tag_trgm ON test_tags USING GIN (tag gin_trgm_ops);
+CREATE INDEX IF NOT EXISTS idx_test_steps_instruction_trgm ON test_steps USING GIN (instruction gin_trgm_ops);
+CREATE INDEX IF NOT EXISTS idx_screen_elements_name_trgm ON screen_elements USING GIN (element_name gin_trgm_ops);
+CREATE INDEX IF NOT EXISTS idx_screen_methods_name_trgm ON screen_methods USING GIN (method_name gin_trgm_ops);
+CREATE INDEX IF NOT EXISTS idx_screen_name_trgm ON screen USING GIN (name gin_trgm_ops);
+
+-- Reference lookups: mapped steps are found by their stored selector
+CREATE INDEX IF NOT EXISTS idx_test_steps_selector ON test_steps USING HASH (selector);
+CREATE INDEX IF NOT EXISTS idx_screen_elements_name ON screen_elements (element_name);
+CREATE INDEX IF NOT EXISTS idx_screen_methods_name ON screen_methods (method_name);
+CREATE INDEX IF NOT EXISTS idx_tests_app ON tests (app_id);
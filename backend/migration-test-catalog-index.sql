@@ -0,0 +1,12 @@
+-- Index for the paginated test catalogue (GET /api/tests/catalog)
+-- Matches the keyset order of TestRepository.findCataloguePage, so each page is an index range scan
+
+CREATE INDEX IF NOT EXISTS idx_tests_catalog
+    ON tests ((COALESCE(created_date, TIMESTAMP '1970-01-01')) DESC, id DESC);
+
+CREATE INDEX IF NOT EXISTS idx_tests_catalog_project
+    ON tests (project_id, (COALESCE(created_date, TIMESTAMP '1970-01-01')) DESC, id DESC);
+
+-- Tag filter and the per-page tag lookup
+CREATE INDEX IF NOT EXISTS idx_test_tags_test ON test_tags (test_id);
+CREATE INDEX IF NOT EXISTS idx_test_tags_tag ON test_tags (tag);
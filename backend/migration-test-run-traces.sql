@@ -0,0 +1,15 @@
+-- Migration script for per-run execution traces (span timelines)
+-- ddl-auto=update creates the table as well; run this where schema changes are applied by hand
+
+CREATE TABLE IF NOT EXISTS test_run_traces (
+    test_run_id   VARCHAR(255) PRIMARY KEY,
+    span_count    INTEGER      NOT NULL,
+    dropped_spans INTEGER      NOT NULL,
+    -- gzip-compressed JSON: {"v":1,"startUs":...,"spans":[[id,parentId,kind,name,startUs,durationUs,{attributes}],...]}
+    data          BYTEA        NOT NULL,
+    created_at    TIMESTAMP    NOT NULL
+);
+
+-- Traces of deleted runs are removed by the API; this clears any left from runs deleted directly in SQL
+DELETE FROM test_run_traces t
+WHERE NOT EXISTS (SELECT 1 FROM test_runs r WHERE r.id = t.test_run_id);
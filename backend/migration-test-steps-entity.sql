@@ -0,0 +1,34 @@
+-- Migration script to turn test_steps from an element collection into an entity table
+-- Run this BEFORE starting the new version on a database with existing tests
+-- (ddl-auto=update cannot add a NOT NULL key column to a populated table)
+
+-- Surrogate key: existing rows are numbered by the sequence
+ALTER TABLE test_steps ADD COLUMN IF NOT EXISTS id BIGSERIAL;
+
+-- Position of the step within its test (replaces the implicit row order of the collection)
+ALTER TABLE test_steps ADD COLUMN IF NOT EXISTS step_index INTEGER;
+
+UPDATE test_steps ts
+SET step_index = numbered.idx
+FROM (
+    SELECT ctid, row_number() OVER (PARTITION BY test_id ORDER BY step_order NULLS LAST, ctid) - 1 AS idx
+    FROM test_steps
+) numbered
+WHERE ts.ctid = numbered.ctid AND ts.step_index IS NULL;
+
+ALTER TABLE test_steps ALTER COLUMN step_index SET NOT NULL;
+
+DO $$
+BEGIN
+    IF NOT EXISTS (
+        SELECT 1 FROM pg_constraint
+        WHERE conrelid = 'test_steps'::regclass AND contype = 'p'
+    ) THEN
+        ALTER TABLE test_steps ADD PRIMARY KEY (id);
+    END IF;
+END $$;
+
+CREATE INDEX IF NOT EXISTS idx_test_steps_test ON test_steps (test_id, step_index);
+
+-- Added with save-time mapping reuse; harmless if it already exists
+ALTER TABLE test_steps ADD COLUMN IF NOT EXISTS mapping_hash VARCHAR(64);
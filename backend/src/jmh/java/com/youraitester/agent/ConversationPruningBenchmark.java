@@ -0,0 +1,76 @@
+package com.youraitester.agent;
+
+import com.youraitester.agent.impl.SimpleMessage;
+import com.youraitester.agent.impl.SimpleToolCall;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Conversation upkeep in {@link AgentExecutor} between LLM calls: truncating large tool results and dropping old
+ * snapshot tool_use/tool_result pairs from the history.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ConversationPruningBenchmark {
+
+    /** Agent iterations in the history; every third one is a snapshot exchange. */
+    @Param({"20", "100"})
+    public int iterations;
+
+    @Param({"20000", "200000"})
+    public int snapshotChars;
+
+    private List<LlmProvider.Message> history;
+    private String snapshot;
+
+    @Setup
+    public void setup() {
+        StringBuilder sb = new StringBuilder();
+        int ref = 0;
+        while (sb.length() < snapshotChars) {
+            sb.append("- button \"Add to cart\" [ref=e").append(ref++).append("]\n");
+            sb.append("  - text: Sauce Labs Backpack $29.99\n");
+        }
+        snapshot = sb.toString();
+
+        history = new ArrayList<>();
+        history.add(SimpleMessage.system("You are a test agent."));
+        history.add(SimpleMessage.user("Log in and add the backpack to the cart."));
+        for (int i = 0; i < iterations; i++) {
+            String id = "toolu_" + i;
+            String fn = i % 3 == 0 ? "snapshot" : "click";
+            history.add(SimpleMessage.builder()
+                .role("assistant")
+                .toolCalls(List.of(SimpleToolCall.builder().id(id).name(fn).arguments(Map.of()).build()))
+                .build());
+            Map<String, Object> metadata = new HashMap<>();
+            metadata.put("function_name", fn);
+            history.add(SimpleMessage.builder()
+                .role("tool")
+                .toolCallId(id)
+                .content(fn.equals("snapshot") ? snapshot : "Clicked")
+                .metadata(metadata)
+                .build());
+        }
+    }
+
+    @Benchmark
+    public String truncateSnapshot() {
+        return AgentExecutor.truncateToolContent(snapshot, 8000);
+    }
+
+    @Benchmark
+    public int removeOldSnapshots() {
+        // Pruning mutates the list, so each invocation works on a fresh copy of the history
+        return AgentExecutor.removeOldSnapshotExchanges(new ArrayList<>(history));
+    }
+}
@@ -0,0 +1,67 @@
+package com.youraitester.model;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JSON round-trips of run variables ({@link TestRun}) and per-step extracted variables ({@link StepResult}),
+ * which are re-serialised on every step that stores a value.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class VariablesJsonBenchmark {
+
+    @Param({"5", "50"})
+    public int size;
+
+    private Map<String, Object> variables;
+    private String json;
+
+    @Setup
+    public void setup() {
+        variables = new LinkedHashMap<>();
+        for (int i = 0; i < size; i++) {
+            variables.put("var" + i, switch (i % 3) {
+                case 0 -> "Sauce Labs Backpack " + i;
+                case 1 -> 29.99 + i;
+                default -> List.of("a" + i, "b" + i);
+            });
+        }
+        TestRun run = new TestRun();
+        run.setVariables(variables);
+        json = run.getVariablesJson();
+    }
+
+    @Benchmark
+    public Map<String, Object> testRunRoundTrip() {
+        TestRun run = new TestRun();
+        run.setVariables(variables);
+        TestRun loaded = new TestRun();
+        loaded.setVariablesJson(run.getVariablesJson());
+        return loaded.getVariables();
+    }
+
+    @Benchmark
+    public Map<String, Object> testRunRead() {
+        TestRun loaded = new TestRun();
+        loaded.setVariablesJson(json);
+        return loaded.getVariables();
+    }
+
+    @Benchmark
+    public Map<String, Object> stepResultRoundTrip() {
+        StepResult result = new StepResult();
+        result.setExtractedVariables(variables);
+        StepResult loaded = new StepResult();
+        loaded.setExtractedVariablesJson(result.getExtractedVariablesJson());
+        return loaded.getExtractedVariables();
+    }
+}
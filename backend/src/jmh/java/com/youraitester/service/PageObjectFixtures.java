@@ -0,0 +1,98 @@
+package com.youraitester.service;
+
+import com.youraitester.dto.app.ScreenElementRequest;
+import com.youraitester.dto.app.ScreenMethodParamRequest;
+import com.youraitester.dto.app.ScreenMethodRequest;
+import com.youraitester.model.app.Screen;
+import com.youraitester.model.app.ScreenElement;
+import com.youraitester.model.app.ScreenMethod;
+import com.youraitester.model.app.ScreenMethodParam;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Screens built from the sample page objects in src/main/java (saucedemo, testautomationpractice) through the same
+ * importers the admin UI uses, so benchmarks run against representative locators and method bodies.
+ * Paths are relative to the backend directory, which is where the jmh profile is run from.
+ */
+final class PageObjectFixtures {
+
+    static final List<String> SOURCES = List.of(
+        "src/main/java/saucedemo/LoginPage.java",
+        "src/main/java/saucedemo/Products.java",
+        "src/main/java/saucedemo/CartPage.java",
+        "src/main/java/saucedemo/CheckoutPage.java",
+        "src/main/java/saucedemo/CheckoutOverview.java",
+        "src/main/java/testautomationpractice/HomePage.java"
+    );
+
+    private PageObjectFixtures() {
+    }
+
+    static List<Screen> screens() {
+        JavaLocatorImportService locators = new JavaLocatorImportService();
+        JavaMethodImportService methods = new JavaMethodImportService();
+        List<Screen> screens = new ArrayList<>();
+        for (String source : SOURCES) {
+            Screen screen = new Screen();
+            String file = source.substring(source.lastIndexOf('/') + 1);
+            screen.setName(file.substring(0, file.length() - ".java".length()));
+            screen.setElements(toElements(screen, locators.loadElementsFromJavaSource(source)));
+            screen.setMethods(toMethods(screen, methods.loadMethodsFromJavaSource(source)));
+            screens.add(screen);
+        }
+        return screens;
+    }
+
+    static Screen screen(List<Screen> screens, String name) {
+        return screens.stream()
+            .filter(s -> name.equals(s.getName()))
+            .findFirst()
+            .orElseThrow(() -> new IllegalArgumentException("No fixture screen " + name));
+    }
+
+    private static List<ScreenElement> toElements(Screen screen, List<ScreenElementRequest> requests) {
+        List<ScreenElement> out = new ArrayList<>();
+        for (ScreenElementRequest req : requests) {
+            ScreenElement el = new ScreenElement();
+            el.setElementName(req.getElementName());
+            el.setSelectorType(req.getSelectorType());
+            el.setSelector(req.getSelector());
+            el.setFrameSelector(req.getFrameSelector());
+            el.setElementType(req.getElementType());
+            el.setActionsSupported(req.getActionsSupported());
+            el.setScreen(screen);
+            out.add(el);
+        }
+        return out;
+    }
+
+    private static List<ScreenMethod> toMethods(Screen screen, List<ScreenMethodRequest> requests) {
+        List<ScreenMethod> out = new ArrayList<>();
+        for (ScreenMethodRequest req : requests) {
+            ScreenMethod m = new ScreenMethod();
+            m.setMethodName(req.getMethodName());
+            m.setMethodSignature(req.getMethodSignature());
+            m.setMethodBody(req.getMethodBody());
+            m.setReturnHandling(req.getReturnHandling());
+            m.setSideEffectFlags(req.getSideEffectFlags());
+            m.setScreen(screen);
+            List<ScreenMethodParam> params = new ArrayList<>();
+            if (req.getParams() != null) {
+                for (ScreenMethodParamRequest pr : req.getParams()) {
+                    ScreenMethodParam p = new ScreenMethodParam();
+                    p.setName(pr.getName());
+                    p.setType(pr.getType());
+                    p.setOptional(pr.getOptional());
+                    p.setDefaultValue(pr.getDefaultValue());
+                    p.setMethod(m);
+                    params.add(p);
+                }
+            }
+            m.setParams(params);
+            out.add(m);
+        }
+        return out;
+    }
+}
@@ -0,0 +1,39 @@
+package com.youraitester.service;
+
+import com.youraitester.model.app.Screen;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Deterministic element resolution of {@link TestStepMappingService}: fuzzy element-name matching across all screens
+ * of an app, with and without a last-known screen to prefer.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class StepMappingBenchmark {
+
+    /** Exact name, loose wording, name shared by two screens (cartItems), and no match. */
+    @Param({"usernameInput", "postal code input", "cartItems", "shippingAddressLine2"})
+    public String element;
+
+    @Param({"", "CartPage"})
+    public String lastScreen;
+
+    private List<Screen> screens;
+
+    @Setup
+    public void setup() {
+        screens = PageObjectFixtures.screens();
+    }
+
+    @Benchmark
+    public Object resolveAcrossScreens() {
+        return TestStepMappingService.resolveAcrossScreens(screens, element, lastScreen.isEmpty() ? null : lastScreen);
+    }
+}
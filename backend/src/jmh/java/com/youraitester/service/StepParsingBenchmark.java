@@ -0,0 +1,87 @@
+package com.youraitester.service;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-step string work of the deterministic runner: {{var}} / ${var} substitution and the natural-language step
+ * grammars of {@link TestExecutionService.ParsedStep} (run time) and {@link TestStepMappingService.Parsed} (mapping).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class StepParsingBenchmark {
+
+    static final List<String> INSTRUCTIONS = List.of(
+        "Navigate to https://www.saucedemo.com/",
+        "Enter 'standard_user' in usernameInput",
+        "Type \"{{password}}\" into passwordInput",
+        "Click loginButton",
+        "Select 'Price (low to high)' from productSortDropdown",
+        "Add to cart product named 'Sauce Labs Backpack'",
+        "Hover cartIcon",
+        "Fill ${firstName} in firstNameInput",
+        "Press Enter",
+        "Verify the total is shown on the overview page"
+    );
+
+    private Map<String, Object> variables;
+    private String noTemplate;
+    private String shortTemplate;
+    private String longTemplate;
+
+    @Setup
+    public void setup() {
+        variables = new HashMap<>();
+        for (int i = 0; i < 30; i++) {
+            variables.put("var" + i, "value-" + i);
+        }
+        variables.put("password", "secret_sauce");
+        variables.put("firstName", "Jane");
+        noTemplate = "Sauce Labs Backpack";
+        shortTemplate = "{{password}}";
+        StringBuilder sb = new StringBuilder("Order for {{firstName}} ${lastName}:");
+        for (int i = 0; i < 20; i++) {
+            sb.append(" item ").append(i).append("={{var").append(i).append("}}");
+        }
+        longTemplate = sb.toString();
+    }
+
+    @Benchmark
+    public String resolveTemplateLiteral() {
+        return TestExecutionService.resolveTemplate(noTemplate, variables);
+    }
+
+    @Benchmark
+    public String resolveTemplateSingle() {
+        return TestExecutionService.resolveTemplate(shortTemplate, variables);
+    }
+
+    @Benchmark
+    public String resolveTemplateMany() {
+        return TestExecutionService.resolveTemplate(longTemplate, variables);
+    }
+
+    /** Whole instruction set per invocation; divide by {@link #INSTRUCTIONS} size for a per-step figure. */
+    @Benchmark
+    public void parseRunStep(Blackhole bh) {
+        for (String instruction : INSTRUCTIONS) {
+            bh.consume(TestExecutionService.ParsedStep.parse(instruction));
+        }
+    }
+
+    @Benchmark
+    public void parseMappingStep(Blackhole bh) {
+        for (String instruction : INSTRUCTIONS) {
+            bh.consume(TestStepMappingService.Parsed.parse(instruction));
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package com.youraitester.service;
+
+import com.youraitester.model.app.Screen;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link StoredMethodExecutionService#execute} over the sample page-object method bodies: directive parsing,
+ * parameter binding and statement interpretation. The browser is a stub, so only the interpreter is measured.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class StoredMethodExecutionBenchmark {
+
+    /** screen.method|arg1|arg2... */
+    @Param({
+        "LoginPage.login|standard_user|secret_sauce",
+        "Products.addToCart|Sauce Labs Backpack",
+        "Products.verifyProductPrice|Sauce Labs Backpack|$29.99",
+        "Products.isSortedByPriceAsc",
+        "CheckoutPage.fillCheckoutForm|Jane|Doe|12345",
+        "CheckoutOverview.getTotal",
+        "HomePage.fillForm|Jane Doe|jane@example.com|5550100|1 Main St",
+        "HomePage.submitForm"
+    })
+    public String call;
+
+    private StoredMethodExecutionService service;
+    private Screen screen;
+    private String methodName;
+    private List<String> args;
+
+    @Setup
+    public void setup() {
+        service = new StoredMethodExecutionService(new StubBrowser());
+        String[] parts = call.split("\\|");
+        String[] target = parts[0].split("\\.");
+        screen = PageObjectFixtures.screen(PageObjectFixtures.screens(), target[0]);
+        methodName = target[1];
+        args = Arrays.asList(parts).subList(1, parts.length);
+    }
+
+    @Benchmark
+    public Object execute() {
+        return service.execute(screen, methodName, args);
+    }
+
+    /**
+     * Browser calls return canned SauceDemo-like values without touching Playwright.
+     */
+    static class StubBrowser extends PlaywrightJavaService {
+
+        private static final List<String> TEXTS = List.of(
+            "Sauce Labs Backpack", "Sauce Labs Bike Light", "Sauce Labs Bolt T-Shirt", "Sauce Labs Fleece Jacket");
+        private static final List<String> PRICES = List.of("$7.99", "$9.99", "$15.99", "$29.99");
+
+        @Override
+        public void fill(String cssSelector, String value) {
+        }
+
+        @Override
+        public void click(String cssSelector) {
+        }
+
+        @Override
+        public void hover(String cssSelector) {
+        }
+
+        @Override
+        public void selectByValue(String cssSelector, String value) {
+        }
+
+        @Override
+        public void selectByLabel(String cssSelector, String label) {
+        }
+
+        @Override
+        public void press(String key) {
+        }
+
+        @Override
+        public boolean isVisible(String cssSelector) {
+            return true;
+        }
+
+        @Override
+        public List<String> allTextContents(String cssSelector) {
+            return cssSelector != null && cssSelector.contains("price") ? PRICES : TEXTS;
+        }
+
+        @Override
+        public String textContent(String cssSelector) {
+            return "$29.99";
+        }
+    }
+}
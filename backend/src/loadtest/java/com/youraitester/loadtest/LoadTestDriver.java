@@ -0,0 +1,216 @@
+package com.youraitester.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import okhttp3.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End-to-end load test of a running backend (see LOAD_TEST.md).
+ *
+ * Serves the local copy of the demo shop, creates the load-test test definition pointing at it, submits
+ * {@code loadtest.runs} executions of it in {@code loadtest.batches} concurrent batch runs and polls them to the
+ * end. Reports throughput, pass/fail and run duration percentiles, plus the server's per-phase percentiles
+ * (queue wait, browser start, navigation, step, LLM, MCP, screenshot, DB) for exactly this load, and writes
+ * everything to target/loadtest-result.json.
+ *
+ * Settings (system properties): loadtest.backend (http://localhost:8080), loadtest.runs (20),
+ * loadtest.batches (1), loadtest.site.dir (loadtest/saucedemo), loadtest.site.port (8099),
+ * loadtest.site.url (use this site instead of serving the local copy), loadtest.test (loadtest/saucedemo-test.json),
+ * loadtest.timeout.minutes (30), loadtest.output (target/loadtest-result.json).
+ */
+public class LoadTestDriver {
+
+    private static final MediaType JSON = MediaType.get("application/json");
+    private static final long TOKEN_TTL_MS = 10 * 60 * 1000;
+
+    private final ObjectMapper mapper = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+    private final OkHttpClient http = new OkHttpClient.Builder()
+        .connectTimeout(10, TimeUnit.SECONDS)
+        .readTimeout(60, TimeUnit.SECONDS)
+        .build();
+
+    private final String backend = System.getProperty("loadtest.backend", "http://localhost:8080");
+    private final int runs = Integer.getInteger("loadtest.runs", 20);
+    private final int batches = Math.max(1, Integer.getInteger("loadtest.batches", 1));
+    private final long timeoutMs = TimeUnit.MINUTES.toMillis(Integer.getInteger("loadtest.timeout.minutes", 30));
+
+    private String token;
+    private long tokenIssuedAt;
+
+    public static void main(String[] args) throws Exception {
+        new LoadTestDriver().run();
+    }
+
+    private void run() throws Exception {
+        String siteUrl = System.getProperty("loadtest.site.url");
+        StaticSiteServer site = null;
+        if (siteUrl == null || siteUrl.isBlank()) {
+            site = new StaticSiteServer(Path.of(System.getProperty("loadtest.site.dir", "loadtest/saucedemo")),
+                "0.0.0.0", Integer.getInteger("loadtest.site.port", 8099));
+            siteUrl = "http://localhost:" + site.getPort() + "/";
+            System.out.println("Serving demo site at " + siteUrl);
+        }
+        try {
+            String testId = createTest(siteUrl);
+            System.out.println("Created test " + testId + "; submitting " + runs + " run(s) in " + batches + " batch(es)");
+            call("POST", "/api/agent/diagnostics/execution-phases/reset", null);
+
+            long started = System.currentTimeMillis();
+            List<String> runIds = submit(testId);
+            List<JsonNode> testRuns = await(runIds, started);
+            long wallMs = System.currentTimeMillis() - started;
+
+            ObjectNode result = report(testRuns, wallMs, siteUrl);
+            result.set("phases", call("GET", "/api/agent/diagnostics/execution-phases", null).path("phases"));
+            result.set("llmAdmission", call("GET", "/api/agent/diagnostics/llm-admission", null));
+            print(result);
+
+            Path output = Path.of(System.getProperty("loadtest.output", "target/loadtest-result.json"));
+            Files.createDirectories(output.toAbsolutePath().getParent());
+            mapper.writeValue(output.toFile(), result);
+            System.out.println("Wrote " + output);
+        } finally {
+            if (site != null) site.close();
+            http.dispatcher().executorService().shutdown();
+            http.connectionPool().evictAll();
+        }
+    }
+
+    private String createTest(String siteUrl) throws IOException {
+        ObjectNode test = (ObjectNode) mapper.readTree(
+            Path.of(System.getProperty("loadtest.test", "loadtest/saucedemo-test.json")).toFile());
+        test.put("appUrl", siteUrl);
+        test.put("name", test.path("name").asText("Load test") + " " + Instant.now());
+        return call("POST", "/api/tests", test).path("id").asText();
+    }
+
+    private List<String> submit(String testId) throws IOException {
+        List<String> runIds = new ArrayList<>();
+        for (int b = 0; b < batches; b++) {
+            int size = runs / batches + (b < runs % batches ? 1 : 0);
+            if (size == 0) continue;
+            ObjectNode body = mapper.createObjectNode();
+            body.putArray("testIds").addAll(Collections.nCopies(size, mapper.getNodeFactory().textNode(testId)));
+            body.put("parallel", true);
+            body.put("runName", "loadtest " + Instant.now() + " #" + (b + 1));
+            runIds.add(call("POST", "/api/batches/run", body).path("runId").asText());
+        }
+        return runIds;
+    }
+
+    private List<JsonNode> await(List<String> runIds, long started) throws IOException, InterruptedException {
+        while (true) {
+            List<JsonNode> testRuns = new ArrayList<>();
+            long completed = 0;
+            long running = 0;
+            for (String runId : runIds) {
+                JsonNode status = call("GET", "/api/batches/" + runId + "/status", null);
+                completed += status.path("completed").asLong();
+                running += status.path("running").asLong();
+                status.path("runs").forEach(testRuns::add);
+            }
+            long elapsed = System.currentTimeMillis() - started;
+            System.out.printf("  %5ds  completed %d/%d, running %d%n", elapsed / 1000, completed, runs, running);
+            if (completed >= runs) return testRuns;
+            if (elapsed > timeoutMs) {
+                System.out.println("Timed out; reporting the runs completed so far");
+                return testRuns;
+            }
+            Thread.sleep(2000);
+        }
+    }
+
+    private ObjectNode report(List<JsonNode> testRuns, long wallMs, String siteUrl) {
+        List<Long> durations = new ArrayList<>();
+        long passed = 0;
+        long failed = 0;
+        for (JsonNode r : testRuns) {
+            String status = r.path("status").asText();
+            if ("passed".equals(status)) passed++;
+            if ("failed".equals(status)) failed++;
+            if (r.hasNonNull("duration") && !"running".equals(status)) durations.add(r.path("duration").asLong());
+        }
+        Collections.sort(durations);
+
+        ObjectNode out = mapper.createObjectNode();
+        out.put("site", siteUrl);
+        out.put("runs", runs);
+        out.put("batches", batches);
+        out.put("passed", passed);
+        out.put("failed", failed);
+        out.put("incomplete", runs - passed - failed);
+        out.put("wallMs", wallMs);
+        out.put("runsPerMinute", wallMs > 0 ? Math.round((passed + failed) * 60_000.0 / wallMs * 100) / 100.0 : 0);
+        ObjectNode duration = out.putObject("runDurationMs");
+        duration.put("p50", percentile(durations, 0.50));
+        duration.put("p95", percentile(durations, 0.95));
+        duration.put("p99", percentile(durations, 0.99));
+        duration.put("max", durations.isEmpty() ? 0 : durations.get(durations.size() - 1));
+        return out;
+    }
+
+    private static long percentile(List<Long> sorted, double q) {
+        if (sorted.isEmpty()) return 0;
+        int i = (int) Math.ceil(q * sorted.size()) - 1;
+        return sorted.get(Math.max(0, Math.min(i, sorted.size() - 1)));
+    }
+
+    private void print(ObjectNode result) {
+        System.out.println();
+        System.out.printf("Runs: %d passed, %d failed, %d incomplete in %.1fs (%.2f runs/min)%n",
+            result.path("passed").asLong(), result.path("failed").asLong(), result.path("incomplete").asLong(),
+            result.path("wallMs").asLong() / 1000.0, result.path("runsPerMinute").asDouble());
+        JsonNode d = result.path("runDurationMs");
+        System.out.printf("Run duration ms: p50 %d, p95 %d, p99 %d, max %d%n",
+            d.path("p50").asLong(), d.path("p95").asLong(), d.path("p99").asLong(), d.path("max").asLong());
+        System.out.printf("%-14s %8s %8s %8s %8s %10s%n", "phase", "count", "p50Ms", "p95Ms", "p99Ms", "maxMs");
+        result.path("phases").fields().forEachRemaining(e -> {
+            JsonNode p = e.getValue();
+            System.out.printf("%-14s %8d %8d %8d %8d %10d%n", e.getKey(), p.path("count").asLong(),
+                p.path("p50Ms").asLong(), p.path("p95Ms").asLong(), p.path("p99Ms").asLong(), p.path("maxMs").asLong());
+        });
+    }
+
+    private JsonNode call(String method, String path, JsonNode body) throws IOException {
+        RequestBody requestBody = body != null
+            ? RequestBody.create(mapper.writeValueAsString(body), JSON)
+            : ("POST".equals(method) ? RequestBody.create(new byte[0], JSON) : null);
+        Request request = new Request.Builder()
+            .url(backend + path)
+            .method(method, requestBody)
+            .header("Authorization", "Bearer " + token())
+            .build();
+        try (Response response = http.newCall(request).execute()) {
+            String text = response.body() != null ? response.body().string() : "";
+            if (!response.isSuccessful()) {
+                throw new IOException(method + " " + path + " -> HTTP " + response.code() + ": " + text);
+            }
+            return text.isBlank() ? mapper.createObjectNode() : mapper.readTree(text);
+        }
+    }
+
+    private String token() throws IOException {
+        if (token == null || System.currentTimeMillis() - tokenIssuedAt > TOKEN_TTL_MS) {
+            Request request = new Request.Builder()
+                .url(backend + "/api/public/dev-token?role=SUPER_ADMIN&sub=superadmin")
+                .build();
+            try (Response response = http.newCall(request).execute()) {
+                if (!response.isSuccessful() || response.body() == null) {
+                    throw new IOException("Could not get a dev token: HTTP " + response.code());
+                }
+                token = mapper.readTree(response.body().string()).path("token").asText();
+                tokenIssuedAt = System.currentTimeMillis();
+            }
+        }
+        return token;
+    }
+}
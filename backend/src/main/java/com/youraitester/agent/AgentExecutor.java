@@ -3,6 +3,9 @@ package com.youraitester.agent;
 import com.youraitester.agent.impl.SimpleMessage;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.youraitester.service.ExecutionPhaseStats;
+import com.youraitester.service.HotPathLog;
+import com.youraitester.service.RunTracer;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
@@ -26,6 +29,12 @@ public class AgentExecutor {
     
     private final Map<String, LlmProvider> providers;
     private final McpToolExecutor mcpToolExecutor;
+    private final LlmModelRouter modelRouter;
+    private final LocalActionResolver localResolver;
+    private final LocalAssertionEngine assertionEngine;
+    private final ConversationCompactor conversationCompactor;
+    private final ExecutionPhaseStats phaseStats;
+    private final RunTracer tracer;
     
     @Value("${agent.llm.provider:openai}")
     private String defaultProviderName;
@@ -47,7 +56,8 @@ public class AgentExecutor {
      * - LLM response text + tool calls before MCP execution
      * - Tool results after MCP execution
      *
-     * Keep this OFF in production unless debugging: it can log sensitive info.
+     * Keep this OFF in production unless debugging: it can log sensitive info. A run with debug trace on
+     * (see HotPathLog) gets these logs regardless; otherwise events are sampled (logging.hotpath.sample.agent-trace).
      */
     @Value("${agent.trace.logging.enabled:false}")
     private boolean traceLoggingEnabled;
@@ -78,12 +88,40 @@ public class AgentExecutor {
     @Value("${agent.tool.response.max.chars:4000}")
     private int maxToolResponseChars;
 
+    /**
+     * Stream batch turns (SSE) and start executing each tool call as soon as the model has finished generating it.
+     */
+    @Value("${agent.llm.streaming.enabled:true}")
+    private boolean streamingEnabled;
+
+    /**
+     * In the agent loop, submit consecutive input actions (fill/click/select/...) of one turn as a single
+     * pipelined batch with one await; a screenshot is taken only after the last action of the batch.
+     */
+    @Value("${agent.tool.pipelining.enabled:true}")
+    private boolean toolPipeliningEnabled;
+
+    /**
+     * Reads provider streams so the test thread (which owns the MCP client) stays free to execute tools.
+     */
+    private final java.util.concurrent.ExecutorService streamExecutor = java.util.concurrent.Executors.newCachedThreadPool(r -> {
+        Thread t = new Thread(r, "llm-stream");
+        t.setDaemon(true);
+        return t;
+    });
+
+    @jakarta.annotation.PreDestroy
+    public void shutdownStreamExecutor() {
+        streamExecutor.shutdownNow();
+    }
+
     /**
      * Special marker used by session-mode execution when snapshot tool is disabled.
      * The LLM must respond with this exact string if it needs a new snapshot to proceed.
      */
     private static final String NEED_SNAPSHOT_MARKER = "NEED_SNAPSHOT";
     private static final String STEP_PROMPT_PREFIX = "Execute ONLY this step now:";
+    private static final String LOCAL_FAILURE_PREFIX = "A direct attempt at this step failed:";
     private static final String BATCH_PROMPT_PREFIX = "BATCH_EXECUTE_STEPS:";
     private static final String EXECUTED_STEPS_MARKER = "EXECUTED_STEP_NUMBERS:";
     private static final String STEP_TAG_ARG = "_step";
@@ -410,6 +448,62 @@ public class AgentExecutor {
      * App URL and type are used to load app-specific prompt categories
      */
     public AgentExecutionResult execute(String instruction, String pageContext, Map<String, Object> variables, String appUrl, String appType) {
+        if (!modelRouter.isEnabled()) {
+            return executeOnTier(instruction, pageContext, variables, appUrl, appType, LlmModelRouter.Tier.STRONG);
+        }
+        String substituted = substituteVariables(instruction, variables);
+        LlmModelRouter.Tier tier = classifyTier(List.of(substituted));
+        AgentExecutionResult result = executeOnTier(instruction, pageContext, variables, appUrl, appType, tier);
+        modelRouter.recordOutcome(tier, result.isSuccess() ? LlmModelRouter.Outcome.SUCCESS : LlmModelRouter.Outcome.FAILURE, result.getUsage());
+        if (result.isSuccess() || tier == LlmModelRouter.Tier.STRONG) {
+            return result;
+        }
+        // Fast tier failed: remember the instruction and retry it once on the strong tier, resuming from the page as
+        // the failed attempt left it (it may already have clicked, typed or submitted).
+        modelRouter.rememberFastFailure(substituted);
+        modelRouter.recordEscalation("failure");
+        AgentExecutionResult strong = executeOnTier(instruction, escalationContext(result, pageContext), variables,
+            appUrl, appType, LlmModelRouter.Tier.STRONG);
+        modelRouter.recordOutcome(LlmModelRouter.Tier.STRONG,
+            strong.isSuccess() ? LlmModelRouter.Outcome.SUCCESS : LlmModelRouter.Outcome.FAILURE, strong.getUsage());
+        return strong.withUsage(result.getUsage());
+    }
+
+    /**
+     * Page context for a strong-tier retry: a fresh snapshot plus the tool calls the failed fast attempt already
+     * made, so the strong model continues from the current page instead of repeating them. Falls back to the
+     * original context when no snapshot can be taken.
+     */
+    private String escalationContext(AgentExecutionResult fastAttempt, String pageContext) {
+        String snapshot = null;
+        try {
+            McpToolExecutor.ToolExecutionResult shot = mcpToolExecutor.executeTool("snapshot", Map.of());
+            if (shot != null && shot.isSuccess() && shot.getContent() != null && !shot.getContent().isBlank()) {
+                snapshot = truncateToolContent(shot.getContent(), maxSnapshotChars);
+            }
+        } catch (Exception e) {
+            log.warn("Model routing: could not refresh snapshot before escalation: {}", e.getMessage());
+        }
+        StringBuilder sb = new StringBuilder();
+        List<ToolExecutionLog> done = fastAttempt.getExecutionLog() != null ? fastAttempt.getExecutionLog() : List.of();
+        if (!done.isEmpty()) {
+            sb.append("A previous attempt at this instruction already made these tool calls (they may have taken effect):\n");
+            for (ToolExecutionLog entry : done) {
+                sb.append("- ").append(entry.getToolName()).append(' ').append(entry.getArguments()).append('\n');
+            }
+            sb.append("Continue from the current page state below. Do not repeat actions that already took effect ")
+                .append("(e.g. do not submit twice or type text that is already in a field).\n\n");
+        }
+        if (snapshot != null) {
+            sb.append("Current page snapshot:\n").append(snapshot);
+        } else if (pageContext != null) {
+            sb.append(pageContext);
+        }
+        return sb.toString();
+    }
+
+    private AgentExecutionResult executeOnTier(String instruction, String pageContext, Map<String, Object> variables,
+                                               String appUrl, String appType, LlmModelRouter.Tier tier) {
         log.info("Agent executing instruction: {}", instruction);
         if (!variables.isEmpty()) {
             log.debug("Agent has {} variables available: {}", variables.size(), variables.keySet());
@@ -418,8 +512,8 @@ public class AgentExecutor {
             log.debug("Agent context - App URL: {}, App Type: {}", appUrl, appType);
         }
         
-        // Get the configured provider
-        LlmProvider provider = getProvider(defaultProviderName);
+        // Get the configured provider (pinned to the routed model tier)
+        LlmProvider provider = getProvider(defaultProviderName, tier);
         if (!provider.isAvailable()) {
             return AgentExecutionResult.error("LLM provider " + defaultProviderName + " is not available");
         }
@@ -461,6 +555,7 @@ public class AgentExecutor {
         // Execute with loop for tool calls
         int iteration = 0;
         List<ToolExecutionLog> executionLog = new ArrayList<>();
+        LlmUsage usage = new LlmUsage();
         
         // IMPORTANT: Do not hardcode the provider iteration budget.
         // Many tasks (especially date selection) require multiple tool/LLM cycles.
@@ -485,8 +580,9 @@ public class AgentExecutor {
             
             // Call LLM with tools
             LlmProvider.AgentResponse response = provider.executeWithTools(messages, tools, effectiveMaxIterations);
+            usage.add(response);
 
-            if (traceLoggingEnabled) {
+            if (traceLogging()) {
                 String assistantText = response.getContent() != null ? response.getContent() : "";
                 log.info("[AGENT_TRACE] Iteration {}/{} - LLM says:\n{}",
                     iteration, effectiveMaxIterations, truncateForLog(assistantText));
@@ -542,7 +638,7 @@ public class AgentExecutor {
                 }
                 
                 Map<String, Object> extractedVars = extractVariablesFromResponse(response.getContent());
-                return AgentExecutionResult.success(response.getContent(), executionLog, extractedVars);
+                return AgentExecutionResult.success(response.getContent(), executionLog, extractedVars).withUsage(usage);
             }
             
             // Execute tool calls
@@ -564,7 +660,7 @@ public class AgentExecutor {
                         toolCall.getArguments()
                     );
 
-                    if (traceLoggingEnabled) {
+                    if (traceLogging()) {
                         String msg = toolResult != null ? toolResult.getMessage() : null;
                         String content = toolResult != null ? toolResult.getContent() : null;
                         int contentLen = content != null ? content.length() : 0;
@@ -656,8 +752,7 @@ public class AgentExecutor {
                         
                         int limit = isBrowserSnapshot ? maxSnapshotChars : maxToolResponseChars;
                         if (toolContent.length() > limit) {
-                            toolContent = toolContent.substring(0, limit) +
-                                "\n\n[Content truncated - original length: " + originalLen + " chars]";
+                            toolContent = truncateToolContent(toolContent, limit);
                             log.info("Truncated tool response (tool={}) from {} chars to {} chars",
                                 toolCall.getName(), originalLen, toolContent.length());
                         }
@@ -706,7 +801,7 @@ public class AgentExecutor {
                 }
                 
                 Map<String, Object> extractedVars = extractVariablesFromResponse(response.getContent());
-                return AgentExecutionResult.success(response.getContent(), executionLog, extractedVars);
+                return AgentExecutionResult.success(response.getContent(), executionLog, extractedVars).withUsage(usage);
             }
         }
         
@@ -733,7 +828,7 @@ public class AgentExecutor {
             }
         }
         
-        return AgentExecutionResult.error("Maximum iterations reached", executionLog);
+        return AgentExecutionResult.error("Maximum iterations reached", executionLog).withUsage(usage);
     }
 
     /**
@@ -786,6 +881,15 @@ public class AgentExecutor {
         private final List<LlmProvider.Message> messages;
         private final String appUrl;
         private final String appType;
+        // Model routing: consecutive turns that needed a snapshot without executing anything
+        private int needSnapshotStreak;
+        // Local fast path: full (untruncated) text of the latest injected snapshot, and whether the page may
+        // have changed since it was taken (any LLM turn or page-changing local action makes it stale).
+        private String localSnapshot;
+        private boolean localSnapshotFresh;
+        private String lastLocalMiss;
+        private String lastAssertionMiss;
+        private int localResolvedSteps;
 
         private AgentSession(LlmProvider provider,
                              List<LlmProvider.Tool> toolsAll,
@@ -803,6 +907,130 @@ public class AgentExecutor {
             return messages;
         }
 
+        /**
+         * Steps of this session executed by the local resolver or decided by the local assertion engine,
+         * i.e. without an LLM call.
+         */
+        public int getLocalResolvedSteps() {
+            return localResolvedSteps;
+        }
+
+        /**
+         * Record a step executed outside this session on the same browser (e.g. a mapped step of a hybrid run):
+         * it shows up as done in the conversation state, and the current snapshot is treated as stale.
+         */
+        public void recordExternalStep(String label, boolean passed, String note, Map<String, Object> extractedVariables) {
+            localSnapshotFresh = false;
+            conversationCompactor.recordStep(messages, label, passed, note, extractedVariables);
+        }
+
+        /**
+         * Try to execute a simple action step ("click Login", "type x into Email") directly from the current
+         * snapshot. Takes a fresh snapshot first if the page may have changed since the last one.
+         *
+         * @return the executed tool log (with a screenshot when available), or null to fall back to the agent
+         */
+        private ToolExecutionLog tryLocalStep(String substitutedInstruction) {
+            if (!localResolver.isEnabled() || Objects.equals(substitutedInstruction, lastLocalMiss)) return null;
+            LocalActionResolver.Intent intent = localResolver.parse(substitutedInstruction);
+            LocalActionResolver.Action action = null;
+            if (intent != null) {
+                SnapshotIndex index = null;
+                if (intent.needsSnapshot()) {
+                    if (!localSnapshotFresh) {
+                        try {
+                            injectFreshSnapshot();
+                        } catch (Exception e) {
+                            log.warn("Local resolver: could not refresh snapshot: {}", e.getMessage());
+                        }
+                    }
+                    index = localSnapshotFresh ? SnapshotIndex.parse(localSnapshot) : null;
+                }
+                action = localResolver.resolve(intent, index);
+            }
+            if (action == null) {
+                lastLocalMiss = substitutedInstruction;
+                return null;
+            }
+
+            String result = action.getDescription();
+            if (action.getToolName() != null) {
+                McpToolExecutor.ToolExecutionResult toolResult = mcpToolExecutor.executeTool(action.getToolName(), action.getArguments());
+                boolean ok = toolResult != null && toolResult.isSuccess();
+                localResolver.recordExecution(ok);
+                if (action.isChangesPage()) localSnapshotFresh = false;
+                if (!ok) {
+                    // Includes tool results with isError (stale or ambiguous ref, locator timeout): the step is
+                    // not done. The agent takes over and gets the tool's error text, as if it had made the call.
+                    String error = toolResult != null ? toolResult.getMessage() : "no result";
+                    log.info("Local resolver: {} failed ({}); falling back to agent", action.getToolName(), error);
+                    lastLocalMiss = substitutedInstruction;
+                    localSnapshotFresh = false;
+                    messages.removeIf(m -> "user".equals(m.getRole())
+                        && m.getContent() != null && m.getContent().startsWith(LOCAL_FAILURE_PREFIX));
+                    messages.add(SimpleMessage.user(LOCAL_FAILURE_PREFIX + " '" + substitutedInstruction + "' via "
+                        + action.getToolName() + " " + action.getArguments() + ": "
+                        + truncateToolContent(error, maxToolResponseChars)));
+                    return null;
+                }
+            } else {
+                localResolver.recordExecution(true);
+            }
+
+            localResolvedSteps++;
+            log.info("Local resolver: '{}' -> {} (no LLM call)", substitutedInstruction, result);
+            return new ToolExecutionLog(action.getToolName() != null ? action.getToolName() : "local_noop",
+                action.getArguments(), result, takeLocalScreenshot());
+        }
+
+        /**
+         * Decide the leading verification steps of {@code substitutedInstructions} with the local assertion engine
+         * (one in-page evaluate for all of them). Stops at the first step it cannot classify or resolve, and after
+         * the first failure.
+         *
+         * @return results for the steps decided locally, in order (empty = hand everything to the agent)
+         */
+        private List<LocalAssertionEngine.Result> tryLocalAssertions(List<String> substitutedInstructions) {
+            if (!assertionEngine.isEnabled()) return List.of();
+            List<LocalAssertionEngine.Assertion> group = new ArrayList<>();
+            for (String instruction : substitutedInstructions) {
+                if (Objects.equals(instruction, lastAssertionMiss)) break;
+                LocalAssertionEngine.Assertion assertion = assertionEngine.parse(instruction);
+                if (assertion == null) {
+                    if (group.isEmpty()) lastAssertionMiss = instruction;
+                    break;
+                }
+                group.add(assertion);
+            }
+            if (group.isEmpty()) return List.of();
+
+            List<LocalAssertionEngine.Result> results = assertionEngine.evaluate(group);
+            List<LocalAssertionEngine.Result> decided = new ArrayList<>();
+            for (int i = 0; i < results.size(); i++) {
+                LocalAssertionEngine.Result result = results.get(i);
+                if (result.isUnresolved()) {
+                    lastAssertionMiss = substitutedInstructions.get(i);
+                    break;
+                }
+                decided.add(result);
+                if (!result.isPassed()) break;
+            }
+            localResolvedSteps += decided.size();
+            return decided;
+        }
+
+        private String takeLocalScreenshot() {
+            try {
+                Map<String, Object> screenshotArgs = new HashMap<>();
+                screenshotArgs.put("fullPage", true);
+                McpToolExecutor.ToolExecutionResult shot = mcpToolExecutor.executeTool("browser_take_screenshot", screenshotArgs);
+                if (shot != null && shot.isSuccess()) return extractScreenshotPath(shot);
+            } catch (Exception e) {
+                log.warn("Local step screenshot failed: {}", e.getMessage());
+            }
+            return null;
+        }
+
         /**
          * Execute as many steps as possible from the provided ordered list WITHOUT taking a new snapshot.
          * This does a SINGLE Claude call (no post-tool confirmation call) to save tokens.
@@ -813,6 +1041,184 @@ public class AgentExecutor {
          */
         public BatchResult executeBatch(List<com.youraitester.model.TestStep> orderedSteps,
                                         Map<String, Object> variables) {
+            return executeBatch(orderedSteps, variables, null);
+        }
+
+        /**
+         * Same as {@link #executeBatch(List, Map)}, reporting each step to {@code progress} as soon as its tools
+         * have run (while the model may still be generating later steps). The returned BatchResult stays the
+         * authoritative outcome; progress events are provisional.
+         */
+        public BatchResult executeBatch(List<com.youraitester.model.TestStep> orderedSteps,
+                                        Map<String, Object> variables,
+                                        StepProgressListener progress) {
+            BatchResult result = executeBatchLocalFirst(orderedSteps, variables, progress);
+            Map<String, Object> extracted = result.getAgentResult() != null ? result.getAgentResult().getExtractedVariables() : null;
+            Map<Integer, String> instructions = new HashMap<>();
+            for (com.youraitester.model.TestStep step : orderedSteps) {
+                if (step.getOrder() != null) {
+                    instructions.put(step.getOrder(), substituteVariables(step.getInstruction(), variables != null ? variables : Map.of()));
+                }
+            }
+            for (Integer n : result.getExecutedStepNumbers()) {
+                StepOutcome outcome = result.getStepOutcomes().get(n);
+                boolean passed = outcome == null || !"failed".equalsIgnoreCase(outcome.getStatus());
+                conversationCompactor.recordStep(messages, ConversationCompactor.stepLabel(n, instructions.get(n)), passed,
+                    outcome != null ? outcome.getMessage() : null, extracted);
+                extracted = null;
+            }
+            return result;
+        }
+
+        private BatchResult executeBatchLocalFirst(List<com.youraitester.model.TestStep> orderedSteps,
+                                                   Map<String, Object> variables,
+                                                   StepProgressListener progress) {
+            // Local fast path: decide leading verification steps in the page and execute leading simple action
+            // steps straight from the snapshot; the agent takes over at the first step neither can handle.
+            Map<String, Object> vars = variables != null ? variables : Map.of();
+            LocalPrefix local = new LocalPrefix(progress);
+            int k = 0;
+            while (k < orderedSteps.size() && orderedSteps.get(k).getOrder() != null) {
+                String instruction = substituteVariables(orderedSteps.get(k).getInstruction(), vars);
+                if (LocalAssertionEngine.looksLikeVerification(instruction)) {
+                    List<String> checks = new ArrayList<>();
+                    for (int j = k; j < orderedSteps.size() && orderedSteps.get(j).getOrder() != null; j++) {
+                        String next = substituteVariables(orderedSteps.get(j).getInstruction(), vars);
+                        if (!LocalAssertionEngine.looksLikeVerification(next)) break;
+                        checks.add(next);
+                    }
+                    List<LocalAssertionEngine.Result> decided = tryLocalAssertions(checks);
+                    if (decided.isEmpty()) break;
+                    String shot = takeLocalScreenshot();
+                    for (LocalAssertionEngine.Result result : decided) {
+                        local.add(orderedSteps.get(k++).getOrder(), result.isPassed() ? "passed" : "failed", result.getMessage(),
+                            new ToolExecutionLog("local_assert", Map.of(), result.getMessage(), shot));
+                        if (!result.isPassed()) return local.toBatchResult("Verification failed locally");
+                    }
+                    if (decided.size() < checks.size()) break;
+                    continue;
+                }
+                ToolExecutionLog executed = tryLocalStep(instruction);
+                if (executed == null) break;
+                local.add(orderedSteps.get(k++).getOrder(), "passed", "Resolved locally: " + executed.getResult(), executed);
+            }
+            if (k == 0) {
+                return executeBatchRouted(orderedSteps, variables, progress);
+            }
+            if (k == orderedSteps.size()) {
+                return local.toBatchResult("All steps resolved locally");
+            }
+
+            // The agent continues from the first step the resolver could not handle, on an up-to-date snapshot.
+            if (!localSnapshotFresh) {
+                try {
+                    injectFreshSnapshot();
+                } catch (Exception e) {
+                    log.warn("Could not refresh snapshot after local steps: {}", e.getMessage());
+                }
+            }
+            BatchResult rest = executeBatchRouted(orderedSteps.subList(k, orderedSteps.size()), variables, progress);
+            List<Integer> executed = new ArrayList<>(local.executed);
+            executed.addAll(rest.getExecutedStepNumbers());
+            Map<Integer, StepOutcome> outcomes = new HashMap<>(local.outcomes);
+            outcomes.putAll(rest.getStepOutcomes());
+            Map<Integer, String> shots = new LinkedHashMap<>(local.screenshots);
+            shots.putAll(rest.getStepScreenshotUrls());
+            return new BatchResult(rest.getAgentResult(), executed, rest.isNeedsSnapshot(), outcomes, shots);
+        }
+
+        private BatchResult executeBatchRouted(List<com.youraitester.model.TestStep> orderedSteps,
+                                               Map<String, Object> variables,
+                                               StepProgressListener progress) {
+            if (!modelRouter.isEnabled()) {
+                return executeBatchOnTier(orderedSteps, variables, progress, LlmModelRouter.Tier.STRONG);
+            }
+
+            LlmModelRouter.Tier tier;
+            if (needSnapshotStreak >= modelRouter.getEscalateNeedSnapshotAfter()) {
+                modelRouter.recordEscalation("need_snapshot");
+                tier = LlmModelRouter.Tier.STRONG;
+            } else {
+                List<String> upcoming = orderedSteps.stream()
+                    .limit(modelRouter.getBatchLookahead())
+                    .map(st -> substituteVariables(st.getInstruction(), variables != null ? variables : Map.of()))
+                    .collect(Collectors.toList());
+                tier = classifyTier(upcoming);
+            }
+
+            BatchResult result = executeBatchOnTier(orderedSteps, variables, progress, tier);
+            Integer failedStep = firstFailedStep(result);
+            boolean failed = failedStep != null
+                || (!result.getAgentResult().isSuccess() && result.getExecutedStepNumbers().isEmpty() && !result.isNeedsSnapshot());
+            recordBatchOutcome(tier, result, failed);
+            if (!failed || tier == LlmModelRouter.Tier.STRONG) {
+                return result;
+            }
+
+            // Fast tier failed a step: retry from that step on the strong tier (fresh snapshot first, the failed
+            // attempt may have changed the page) and merge the two turns into one result.
+            int retryFrom = 0;
+            for (int i = 0; i < orderedSteps.size(); i++) {
+                if (Objects.equals(orderedSteps.get(i).getOrder(), failedStep)) {
+                    retryFrom = i;
+                    modelRouter.rememberFastFailure(substituteVariables(orderedSteps.get(i).getInstruction(),
+                        variables != null ? variables : Map.of()));
+                    break;
+                }
+            }
+            modelRouter.recordEscalation("failure");
+            try {
+                injectFreshSnapshot();
+            } catch (Exception e) {
+                log.warn("Model routing: could not refresh snapshot before escalation: {}", e.getMessage());
+            }
+            BatchResult strong = executeBatchOnTier(orderedSteps.subList(retryFrom, orderedSteps.size()), variables, progress,
+                LlmModelRouter.Tier.STRONG);
+            recordBatchOutcome(LlmModelRouter.Tier.STRONG, strong, firstFailedStep(strong) != null);
+
+            List<Integer> executed = new ArrayList<>();
+            Map<Integer, StepOutcome> outcomes = new HashMap<>();
+            Map<Integer, String> shots = new LinkedHashMap<>();
+            for (Integer n : result.getExecutedStepNumbers()) {
+                if (Objects.equals(n, failedStep)) break;
+                executed.add(n);
+                if (result.getStepOutcomes().containsKey(n)) outcomes.put(n, result.getStepOutcomes().get(n));
+                if (result.getStepScreenshotUrls().containsKey(n)) shots.put(n, result.getStepScreenshotUrls().get(n));
+            }
+            executed.addAll(strong.getExecutedStepNumbers());
+            outcomes.putAll(strong.getStepOutcomes());
+            shots.putAll(strong.getStepScreenshotUrls());
+            return new BatchResult(strong.getAgentResult().withUsage(result.getUsage()),
+                executed, strong.isNeedsSnapshot(), outcomes, shots);
+        }
+
+        private void recordBatchOutcome(LlmModelRouter.Tier tier, BatchResult result, boolean failed) {
+            LlmModelRouter.Outcome outcome;
+            if (failed) {
+                outcome = LlmModelRouter.Outcome.FAILURE;
+            } else if (result.getExecutedStepNumbers().isEmpty()) {
+                outcome = LlmModelRouter.Outcome.NO_PROGRESS;
+            } else {
+                outcome = LlmModelRouter.Outcome.SUCCESS;
+            }
+            needSnapshotStreak = outcome == LlmModelRouter.Outcome.NO_PROGRESS && result.isNeedsSnapshot()
+                ? needSnapshotStreak + 1
+                : 0;
+            modelRouter.recordOutcome(tier, outcome, result.getUsage());
+        }
+
+        private Integer firstFailedStep(BatchResult result) {
+            for (Integer n : result.getExecutedStepNumbers()) {
+                StepOutcome o = result.getStepOutcomes().get(n);
+                if (o != null && "failed".equalsIgnoreCase(o.getStatus())) return n;
+            }
+            return null;
+        }
+
+        private BatchResult executeBatchOnTier(List<com.youraitester.model.TestStep> orderedSteps,
+                                               Map<String, Object> variables,
+                                               StepProgressListener progress,
+                                               LlmModelRouter.Tier tier) {
             // Prevent token growth: keep only the most recent batch prompt.
             messages.removeIf(m ->
                 "user".equals(m.getRole())
@@ -855,7 +1261,8 @@ public class AgentExecutor {
                 .filter(t -> !"snapshot".equalsIgnoreCase(t.getName()))
                 .collect(Collectors.toList());
 
-            AgentExecutionResult oneTurn = runSingleTurnTools(provider, toolsNoSnapshot, messages, variables != null ? variables : Map.of());
+            AgentExecutionResult oneTurn = runSingleTurnTools(withTier(provider, tier), toolsNoSnapshot, messages, variables != null ? variables : Map.of(), progress);
+            localSnapshotFresh = false;
 
             String assistantText = oneTurn.getMessage() != null ? oneTurn.getMessage() : "";
             boolean needsSnapshot = containsNeedSnapshotMarker(assistantText);
@@ -998,12 +1405,10 @@ public class AgentExecutor {
             if (toolContent == null || toolContent.isBlank()) {
                 toolContent = toolResult.getMessage();
             }
+            localSnapshot = toolContent;
+            localSnapshotFresh = toolResult.isSuccess();
             int effectiveLimit = snapshotCharLimit > 0 ? snapshotCharLimit : maxSnapshotChars;
-            if (toolContent != null && toolContent.length() > effectiveLimit) {
-                int originalLen = toolContent.length();
-                toolContent = toolContent.substring(0, effectiveLimit) +
-                    "\n\n[Content truncated - original length: " + originalLen + " chars]";
-            }
+            toolContent = truncateToolContent(toolContent, effectiveLimit);
 
             // Remove prior snapshot exchanges then add tool_result
             int removed = removeOldSnapshotExchanges(messages);
@@ -1069,8 +1474,39 @@ public class AgentExecutor {
                                                String pageContext,
                                                Map<String, Object> variables,
                                                boolean allowSnapshot) {
+            AgentExecutionResult result = executeStepInternal(stepInstruction, pageContext, variables, allowSnapshot);
+            String message = result.getMessage() != null ? result.getMessage() : "";
+            if (result.isSuccess() || !containsNeedSnapshotMarker(message)) {
+                String label = ConversationCompactor.stepLabel(null,
+                    substituteVariables(stepInstruction, variables != null ? variables : Map.of()));
+                conversationCompactor.recordStep(messages, label, result.isSuccess(), message, result.getExtractedVariables());
+            }
+            return result;
+        }
+
+        private AgentExecutionResult executeStepInternal(String stepInstruction,
+                                                         String pageContext,
+                                                         Map<String, Object> variables,
+                                                         boolean allowSnapshot) {
             String substitutedInstruction = substituteVariables(stepInstruction, variables != null ? variables : Map.of());
 
+            if (LocalAssertionEngine.looksLikeVerification(substitutedInstruction)) {
+                List<LocalAssertionEngine.Result> decided = tryLocalAssertions(List.of(substitutedInstruction));
+                if (!decided.isEmpty()) {
+                    LocalAssertionEngine.Result check = decided.get(0);
+                    List<ToolExecutionLog> checkLog = new ArrayList<>(List.of(
+                        new ToolExecutionLog("local_assert", Map.of(), check.getMessage(), takeLocalScreenshot())));
+                    return check.isPassed()
+                        ? AgentExecutionResult.success(check.getMessage(), checkLog)
+                        : AgentExecutionResult.error(check.getMessage(), checkLog);
+                }
+            } else {
+                ToolExecutionLog local = tryLocalStep(substitutedInstruction);
+                if (local != null) {
+                    return AgentExecutionResult.success("Step completed locally: " + local.getResult(), new ArrayList<>(List.of(local)));
+                }
+            }
+
             // Prevent token growth: keep only the most recent "Execute ONLY this step now" prompt.
             // These are plain user messages and safe to remove, since they are not tool_result blocks.
             messages.removeIf(m ->
@@ -1108,20 +1544,57 @@ public class AgentExecutor {
             }
 
             // Run agent loop (reuses the session message history)
+            LlmModelRouter.Tier tier = LlmModelRouter.Tier.STRONG;
+            if (modelRouter.isEnabled()) {
+                if (needSnapshotStreak >= modelRouter.getEscalateNeedSnapshotAfter()) {
+                    modelRouter.recordEscalation("need_snapshot");
+                } else {
+                    tier = classifyTier(List.of(substitutedInstruction));
+                }
+            }
             AgentExecutionResult stepResult = runAgentLoop(
-                provider,
+                withTier(provider, tier),
                 toolsToUse,
                 messages,
                 substitutedInstruction,
                 pageContext,
                 variables != null ? variables : Map.of()
             );
+            localSnapshotFresh = false;
+
+            if (modelRouter.isEnabled()) {
+                boolean needSnapshot = !allowSnapshot && containsNeedSnapshotMarker(
+                    stepResult.getMessage() != null ? stepResult.getMessage() : "");
+                needSnapshotStreak = needSnapshot ? needSnapshotStreak + 1 : 0;
+                modelRouter.recordOutcome(tier,
+                    stepResult.isSuccess() ? LlmModelRouter.Outcome.SUCCESS
+                        : needSnapshot ? LlmModelRouter.Outcome.NO_PROGRESS : LlmModelRouter.Outcome.FAILURE,
+                    stepResult.getUsage());
+                if (!stepResult.isSuccess() && !needSnapshot && tier == LlmModelRouter.Tier.FAST) {
+                    // Fast tier failed the step: retry it once on the strong tier within the same session.
+                    modelRouter.rememberFastFailure(substitutedInstruction);
+                    modelRouter.recordEscalation("failure");
+                    AgentExecutionResult strong = runAgentLoop(
+                        withTier(provider, LlmModelRouter.Tier.STRONG),
+                        toolsToUse,
+                        messages,
+                        substitutedInstruction,
+                        pageContext,
+                        variables != null ? variables : Map.of()
+                    );
+                    modelRouter.recordOutcome(LlmModelRouter.Tier.STRONG,
+                        strong.isSuccess() ? LlmModelRouter.Outcome.SUCCESS : LlmModelRouter.Outcome.FAILURE,
+                        strong.getUsage());
+                    stepResult = strong.withUsage(stepResult.getUsage());
+                }
+            }
 
             // If the model signals it needs a snapshot, surface that to the caller.
             if (!allowSnapshot && stepResult != null) {
                 String msg = stepResult.getMessage() != null ? stepResult.getMessage() : "";
                 if (containsNeedSnapshotMarker(msg)) {
-                    return AgentExecutionResult.error(NEED_SNAPSHOT_MARKER, stepResult.getExecutionLog());
+                    return AgentExecutionResult.error(NEED_SNAPSHOT_MARKER, stepResult.getExecutionLog())
+                        .withUsage(stepResult.getUsage());
                 }
             }
 
@@ -1141,6 +1614,7 @@ public class AgentExecutor {
                                               Map<String, Object> variables) {
         int iteration = 0;
         List<ToolExecutionLog> executionLog = new ArrayList<>();
+        LlmUsage usage = new LlmUsage();
 
         String substitutedLower = substitutedInstruction == null ? "" : substitutedInstruction.toLowerCase(Locale.ROOT);
         Set<String> substitutedTokens = Arrays.stream(substitutedLower.split("[^a-z0-9]+"))
@@ -1159,8 +1633,9 @@ public class AgentExecutor {
             iteration++;
 
             LlmProvider.AgentResponse response = provider.executeWithTools(messages, tools, effectiveMaxIterations);
+            usage.add(response);
 
-            if (traceLoggingEnabled) {
+            if (traceLogging()) {
                 String assistantText = response.getContent() != null ? response.getContent() : "";
                 log.info("[AGENT_TRACE] Iteration {}/{} - LLM says:\n{}",
                     iteration, effectiveMaxIterations, truncateForLog(assistantText));
@@ -1186,11 +1661,11 @@ public class AgentExecutor {
                 // Special case: session-mode "need snapshot" marker
                 String content = response.getContent() != null ? response.getContent() : "";
                 if (containsNeedSnapshotMarker(content)) {
-                    return AgentExecutionResult.error(NEED_SNAPSHOT_MARKER, executionLog);
+                    return AgentExecutionResult.error(NEED_SNAPSHOT_MARKER, executionLog).withUsage(usage);
                 }
 
                 Map<String, Object> extractedVars = extractVariablesFromResponse(response.getContent());
-                return AgentExecutionResult.success(response.getContent(), executionLog, extractedVars);
+                return AgentExecutionResult.success(response.getContent(), executionLog, extractedVars).withUsage(usage);
             }
 
             if (!response.getToolCalls().isEmpty()) {
@@ -1201,15 +1676,41 @@ public class AgentExecutor {
                     .toolCalls(response.getToolCalls())
                     .build());
 
-                for (LlmProvider.ToolCall toolCall : response.getToolCalls()) {
-                    log.info("Agent calling tool: {}", toolCall.getName());
+                List<LlmProvider.ToolCall> turnCalls = response.getToolCalls();
+                List<McpToolExecutor.ToolExecutionResult> turnResults = new ArrayList<>();
+                // Index of the call after which a screenshot may be taken: the last successful call of each batch
+                Set<Integer> screenshotAfter = new HashSet<>();
+                for (int runStart = 0; runStart < turnCalls.size(); ) {
+                    int runEnd = runStart + 1;
+                    if (toolPipeliningEnabled && McpToolExecutor.isPipelineable(turnCalls.get(runStart).getName())) {
+                        while (runEnd < turnCalls.size() && McpToolExecutor.isPipelineable(turnCalls.get(runEnd).getName())) {
+                            runEnd++;
+                        }
+                    }
+                    if (runEnd - runStart > 1) {
+                        List<LlmProvider.ToolCall> run = turnCalls.subList(runStart, runEnd);
+                        log.info("Agent calling {} tools as one batch: {}", run.size(),
+                            run.stream().map(LlmProvider.ToolCall::getName).collect(Collectors.joining(", ")));
+                        McpToolExecutor.BatchExecutionResult batch = mcpToolExecutor.executeBatch(
+                            run.stream().map(LlmProvider.ToolCall::getName).collect(Collectors.toList()),
+                            run.stream().map(LlmProvider.ToolCall::getArguments).collect(Collectors.toList()));
+                        turnResults.addAll(batch.getResults());
+                        int lastOk = batch.getFailedIndex() < 0 ? run.size() - 1 : batch.getFailedIndex() - 1;
+                        if (lastOk >= 0) screenshotAfter.add(runStart + lastOk);
+                    } else {
+                        LlmProvider.ToolCall single = turnCalls.get(runStart);
+                        log.info("Agent calling tool: {}", single.getName());
+                        turnResults.add(mcpToolExecutor.executeTool(single.getName(), single.getArguments()));
+                        screenshotAfter.add(runStart);
+                    }
+                    runStart = runEnd;
+                }
 
-                    McpToolExecutor.ToolExecutionResult toolResult = mcpToolExecutor.executeTool(
-                        toolCall.getName(),
-                        toolCall.getArguments()
-                    );
+                for (int callIndex = 0; callIndex < turnCalls.size(); callIndex++) {
+                    LlmProvider.ToolCall toolCall = turnCalls.get(callIndex);
+                    McpToolExecutor.ToolExecutionResult toolResult = turnResults.get(callIndex);
 
-                    if (traceLoggingEnabled) {
+                    if (traceLogging()) {
                         String msg = toolResult != null ? toolResult.getMessage() : null;
                         String content = toolResult != null ? toolResult.getContent() : null;
                         int contentLen = content != null ? content.length() : 0;
@@ -1220,9 +1721,9 @@ public class AgentExecutor {
                             contentLen);
                     }
 
-                    // Automatically capture screenshot after page-changing actions
+                    // Automatically capture screenshot after page-changing actions (once per batch)
                     String screenshotPath = null;
-                    if (toolResult.isSuccess() && shouldCaptureScreenshot(toolCall.getName())) {
+                    if (toolResult.isSuccess() && screenshotAfter.contains(callIndex) && shouldCaptureScreenshot(toolCall.getName())) {
                         try {
                             log.info(">>> AUTO-CAPTURING SCREENSHOT after: {}", toolCall.getName());
                             Map<String, Object> screenshotArgs = new HashMap<>();
@@ -1263,8 +1764,7 @@ public class AgentExecutor {
                         int originalLen = toolContent.length();
                         int limit = isBrowserSnapshot ? maxSnapshotChars : maxToolResponseChars;
                         if (toolContent.length() > limit) {
-                            toolContent = toolContent.substring(0, limit) +
-                                "\n\n[Content truncated - original length: " + originalLen + " chars]";
+                            toolContent = truncateToolContent(toolContent, limit);
                             log.info("Truncated tool response (tool={}) from {} chars to {} chars",
                                 toolCall.getName(), originalLen, toolContent.length());
                         }
@@ -1288,7 +1788,7 @@ public class AgentExecutor {
             }
         }
 
-        return AgentExecutionResult.error("Maximum iterations reached", executionLog);
+        return AgentExecutionResult.error("Maximum iterations reached", executionLog).withUsage(usage);
     }
 
     /**
@@ -1299,12 +1799,32 @@ public class AgentExecutor {
                                                     List<LlmProvider.Tool> tools,
                                                     List<LlmProvider.Message> messages,
                                                     Map<String, Object> variables) {
-        List<ToolExecutionLog> executionLog = new ArrayList<>();
-        Map<Integer, String> stepScreenshotUrls = new LinkedHashMap<>();
+        return runSingleTurnTools(provider, tools, messages, variables, null);
+    }
+
+    /**
+     * Single-turn execution with streaming: when enabled, the provider streams the turn and each tool call is
+     * executed on THIS thread (the MCP client is thread-bound) as soon as it is complete, while the model is
+     * still generating the rest. Tool results are appended to the conversation after the assistant turn so
+     * the history stays identical to the non-streaming path.
+     *
+     * @param progress optional; notified when a step-tagged step's tools are done (see {@link StepProgressListener})
+     */
+    private AgentExecutionResult runSingleTurnTools(LlmProvider provider,
+                                                    List<LlmProvider.Tool> tools,
+                                                    List<LlmProvider.Message> messages,
+                                                    Map<String, Object> variables,
+                                                    StepProgressListener progress) {
+        SingleTurnToolRunner runner = new SingleTurnToolRunner(progress);
 
-        LlmProvider.AgentResponse response = provider.executeWithTools(messages, tools, maxIterations);
+        LlmProvider.AgentResponse response;
+        if (streamingEnabled) {
+            response = streamAndDispatch(provider, tools, messages, runner);
+        } else {
+            response = provider.executeWithTools(messages, tools, maxIterations);
+        }
 
-        if (traceLoggingEnabled) {
+        if (traceLogging()) {
             String assistantText = response.getContent() != null ? response.getContent() : "";
             log.info("[AGENT_TRACE] SingleTurn - LLM says:\n{}", truncateForLog(assistantText));
             if (response.getToolCalls() != null && !response.getToolCalls().isEmpty()) {
@@ -1315,6 +1835,20 @@ public class AgentExecutor {
             }
         }
 
+        LlmUsage usage = new LlmUsage();
+        usage.add(response);
+        log.info("SingleTurn LLM usage: {}", usage);
+
+        // Execute anything not dispatched while streaming (non-streaming path, or calls the stream didn't surface).
+        if (response.getToolCalls() != null) {
+            runner.text.setLength(0);
+            runner.text.append(response.getContent() != null ? response.getContent() : "");
+            for (LlmProvider.ToolCall toolCall : response.getToolCalls()) {
+                runner.dispatch(toolCall);
+            }
+        }
+        runner.finishLastStep();
+
         // Always record assistant message (even if complete) so conversation stays coherent
         messages.add(SimpleMessage.builder()
             .role("assistant")
@@ -1324,19 +1858,130 @@ public class AgentExecutor {
 
         if (response.getToolCalls() == null || response.getToolCalls().isEmpty()) {
             // No tool calls; return whatever it said
-            return response.isComplete()
-                ? AgentExecutionResult.success(response.getContent(), executionLog, extractVariablesFromResponse(response.getContent()))
-                : AgentExecutionResult.error(response.getContent() != null ? response.getContent() : "No tool calls", executionLog);
+            return (response.isComplete()
+                ? AgentExecutionResult.success(response.getContent(), runner.executionLog, extractVariablesFromResponse(response.getContent()))
+                : AgentExecutionResult.error(response.getContent() != null ? response.getContent() : "No tool calls", runner.executionLog))
+                .withUsage(usage);
+        }
+
+        // Tool results go in after the assistant turn that requested them.
+        for (LlmProvider.Message toolMessage : runner.toolMessages) {
+            Object fn = toolMessage.getMetadata() != null ? toolMessage.getMetadata().get("function_name") : null;
+            if ("snapshot".equals(fn) || "browser_snapshot".equals(fn)) {
+                int removed = removeOldSnapshotExchanges(messages);
+                log.info(">>> Removed {} old snapshot exchange message(s) from conversation history", removed);
+            }
+            messages.add(toolMessage);
+            pruneConversationHistory(messages);
+        }
+
+        // Return the assistant text from this single turn (it should include EXECUTED_STEP_NUMBERS / NEED_SNAPSHOT markers)
+        return AgentExecutionResult.success(
+            response.getContent(),
+            runner.executionLog,
+            extractVariablesFromResponse(response.getContent()),
+            runner.stepScreenshotUrls
+        ).withUsage(usage);
+    }
+
+    /**
+     * Run the provider call on a stream-reader thread and execute tool calls here as they arrive.
+     */
+    private LlmProvider.AgentResponse streamAndDispatch(LlmProvider provider,
+                                                       List<LlmProvider.Tool> tools,
+                                                       List<LlmProvider.Message> messages,
+                                                       SingleTurnToolRunner runner) {
+        java.util.concurrent.BlockingQueue<LlmProvider.ToolCall> arrived = new java.util.concurrent.LinkedBlockingQueue<>();
+        LlmProvider.StreamListener listener = new LlmProvider.StreamListener() {
+            @Override
+            public void onTextDelta(String text) {
+                runner.text.append(text);
+            }
+
+            @Override
+            public void onToolCall(LlmProvider.ToolCall toolCall) {
+                arrived.add(toolCall);
+            }
+        };
+
+        LlmCallContext ctx = LlmCallContext.current();
+        RunTracer.Trace trace = tracer.current();
+        String testRunId = HotPathLog.currentRun();
+        java.util.concurrent.CompletableFuture<LlmProvider.AgentResponse> future =
+            java.util.concurrent.CompletableFuture.supplyAsync(() -> {
+                LlmCallContext.restore(ctx);
+                tracer.attach(trace);
+                HotPathLog.restore(testRunId);
+                try {
+                    return provider.executeWithToolsStreaming(messages, tools, maxIterations, listener);
+                } finally {
+                    HotPathLog.restore(null);
+                    tracer.detach();
+                    LlmCallContext.clear();
+                }
+            }, streamExecutor);
+
+        try {
+            while (true) {
+                LlmProvider.ToolCall next = arrived.poll(50, java.util.concurrent.TimeUnit.MILLISECONDS);
+                if (next != null) {
+                    log.info("Streaming: dispatching {} before the model finished its turn", next.getName());
+                    runner.dispatch(next);
+                    continue;
+                }
+                if (future.isDone() && arrived.isEmpty()) break;
+            }
+            return future.join();
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            future.cancel(true);
+            throw new IllegalStateException("Interrupted while streaming LLM response", ie);
+        } catch (java.util.concurrent.CompletionException ce) {
+            Throwable cause = ce.getCause() != null ? ce.getCause() : ce;
+            if (cause instanceof RuntimeException re) throw re;
+            throw new RuntimeException(cause);
         }
+    }
 
-        // Batch mode enhancement: if the model tags tool calls with _step, we can attach screenshots per step without
-        // extra LLM calls. Preferred is that the model explicitly calls browser_take_screenshot at the end of each step.
-        // We still keep a boundary-based fallback for step-tagged tool streams that don't include screenshots.
-        List<LlmProvider.ToolCall> toolCalls = response.getToolCalls();
-        boolean hasStepTags = toolCalls.stream().anyMatch(tc -> tc.getArguments() != null && tc.getArguments().containsKey(STEP_TAG_ARG));
+    /**
+     * Notified on the test thread when all tools of a step-tagged batch step have executed, so callers can
+     * record step results incrementally instead of waiting for the whole batch turn.
+     * The outcome is whatever the model has reported for that step so far (may be null).
+     */
+    public interface StepProgressListener {
+        void onStepCompleted(int stepNumber, StepOutcome outcome, String screenshotUrl);
+    }
 
-        for (int i = 0; i < toolCalls.size(); i++) {
-            LlmProvider.ToolCall toolCall = toolCalls.get(i);
+    /**
+     * Executes the tool calls of one assistant turn, in arrival order, exactly once each.
+     * Keeps the per-step screenshot bookkeeping that used to need the full tool list up front:
+     * a step boundary is detected when a call for a different step arrives (or the turn ends).
+     */
+    private class SingleTurnToolRunner {
+        final List<ToolExecutionLog> executionLog = new ArrayList<>();
+        final Map<Integer, String> stepScreenshotUrls = new LinkedHashMap<>();
+        final List<LlmProvider.Message> toolMessages = new ArrayList<>();
+        final StringBuffer text = new StringBuffer();
+        private final StepProgressListener progress;
+        private final Set<String> dispatchedIds = new HashSet<>();
+        // Calls without an id: the non-streaming fallback hands the same objects to the listener and the response
+        private final Set<LlmProvider.ToolCall> dispatchedCalls = java.util.Collections.newSetFromMap(new java.util.IdentityHashMap<>());
+        private boolean hasStepTags = false;
+        private Integer currentStepTag = null;
+        private String lastToolName = null;
+
+        SingleTurnToolRunner(StepProgressListener progress) {
+            this.progress = progress;
+        }
+
+        void dispatch(LlmProvider.ToolCall toolCall) {
+            if (toolCall == null) return;
+            if (!dispatchedCalls.add(toolCall)) return;
+            if (toolCall.getId() != null && !dispatchedIds.add(toolCall.getId())) return;
+
+            // Batch mode enhancement: if the model tags tool calls with _step, we can attach screenshots per step without
+            // extra LLM calls. Preferred is that the model explicitly calls browser_take_screenshot at the end of each step.
+            // We still keep a boundary-based fallback for step-tagged tool streams that don't include screenshots.
             Integer stepTag = null;
             if (toolCall.getArguments() != null) {
                 Object raw = toolCall.getArguments().get(STEP_TAG_ARG);
@@ -1346,6 +1991,12 @@ public class AgentExecutor {
                     } catch (Exception ignored) {}
                 }
             }
+            if (stepTag != null) hasStepTags = true;
+
+            // A call for a different step closes the previous step.
+            if (currentStepTag != null && !currentStepTag.equals(stepTag)) {
+                finishStep(currentStepTag);
+            }
 
             log.info("Agent calling tool: {}{}", toolCall.getName(), stepTag != null ? (" (step=" + stepTag + ")") : "");
 
@@ -1375,7 +2026,7 @@ public class AgentExecutor {
             }
 
             // If the model explicitly took a screenshot, attach it to the step immediately.
-            if (hasStepTags && stepTag != null && "browser_take_screenshot".equalsIgnoreCase(toolCall.getName())) {
+            if (stepTag != null && "browser_take_screenshot".equalsIgnoreCase(toolCall.getName())) {
                 try {
                     String p = extractScreenshotPath(toolResult);
                     if (p != null) {
@@ -1386,7 +2037,7 @@ public class AgentExecutor {
 
             executionLog.add(new ToolExecutionLog(toolCall.getName(), argsForMcp, toolResult.getMessage(), screenshotPath));
 
-            // Add tool result message
+            // Tool result message (appended to the conversation after the assistant turn)
             Map<String, Object> metadata = new HashMap<>();
             metadata.put("function_name", toolCall.getName());
 
@@ -1398,77 +2049,61 @@ public class AgentExecutor {
             if (toolContent == null || toolContent.isBlank()) {
                 toolContent = toolResult.getMessage();
             }
-            if (toolContent != null) {
-                int originalLen = toolContent.length();
-                int limit = isBrowserSnapshot ? maxSnapshotChars : maxToolResponseChars;
-                if (toolContent.length() > limit) {
-                    toolContent = toolContent.substring(0, limit) +
-                        "\n\n[Content truncated - original length: " + originalLen + " chars]";
-                }
-            }
+            toolContent = truncateToolContent(toolContent, isBrowserSnapshot ? maxSnapshotChars : maxToolResponseChars);
 
-            if (isBrowserSnapshot) {
-                int removed = removeOldSnapshotExchanges(messages);
-                log.info(">>> Removed {} old snapshot exchange message(s) from conversation history", removed);
-            }
-
-            messages.add(SimpleMessage.builder()
+            toolMessages.add(SimpleMessage.builder()
                 .role("tool")
                 .content(toolContent)
                 .toolCallId(toolCall.getId())
                 .metadata(metadata)
                 .build());
 
-            pruneConversationHistory(messages);
+            currentStepTag = stepTag;
+            lastToolName = toolCall.getName();
+        }
 
-            // Fallback: If step-tagged and the model did NOT explicitly call browser_take_screenshot for this step,
-            // capture ONE screenshot at step boundary (after the last tool for that step).
-            if (hasStepTags && stepTag != null) {
-                Integer nextStepTag = null;
-                if (i + 1 < toolCalls.size()) {
-                    Map<String, Object> nextArgs = toolCalls.get(i + 1).getArguments();
-                    if (nextArgs != null && nextArgs.containsKey(STEP_TAG_ARG)) {
-                        try {
-                            nextStepTag = Integer.parseInt(String.valueOf(nextArgs.get(STEP_TAG_ARG)).trim());
-                        } catch (Exception ignored) {}
-                    }
-                }
-                boolean isBoundary = (nextStepTag == null) || !nextStepTag.equals(stepTag);
-                if (isBoundary) {
-                    // If the current tool is itself a screenshot, we already captured it above.
-                    if ("browser_take_screenshot".equalsIgnoreCase(toolCall.getName())) {
-                        continue;
-                    }
-                    if (stepScreenshotUrls.containsKey(stepTag) && stepScreenshotUrls.get(stepTag) != null && !stepScreenshotUrls.get(stepTag).isBlank()) {
-                        continue;
-                    }
-                    try {
-                        Map<String, Object> screenshotArgs = new HashMap<>();
-                        screenshotArgs.put("fullPage", true);
-                        McpToolExecutor.ToolExecutionResult screenshotResult =
-                            mcpToolExecutor.executeTool("browser_take_screenshot", screenshotArgs);
-                        if (screenshotResult != null && screenshotResult.isSuccess()) {
-                            String p = extractScreenshotPath(screenshotResult);
-                            if (p != null) {
-                                // Always overwrite to keep "post-step" screenshot if the step had multiple tools
-                                stepScreenshotUrls.put(stepTag, p);
-                                executionLog.add(new ToolExecutionLog("step_screenshot", Map.of(STEP_TAG_ARG, stepTag), "Per-step screenshot", p));
-                            }
+        void finishLastStep() {
+            if (currentStepTag != null) {
+                finishStep(currentStepTag);
+                currentStepTag = null;
+            }
+        }
+
+        /**
+         * Fallback: if the model did NOT explicitly call browser_take_screenshot for this step,
+         * capture ONE screenshot at step boundary (after the last tool for that step).
+         */
+        private void finishStep(Integer stepTag) {
+            boolean hasShot = "browser_take_screenshot".equalsIgnoreCase(lastToolName)
+                || (stepScreenshotUrls.get(stepTag) != null && !stepScreenshotUrls.get(stepTag).isBlank());
+            if (!hasShot) {
+                try {
+                    Map<String, Object> screenshotArgs = new HashMap<>();
+                    screenshotArgs.put("fullPage", true);
+                    McpToolExecutor.ToolExecutionResult screenshotResult =
+                        mcpToolExecutor.executeTool("browser_take_screenshot", screenshotArgs);
+                    if (screenshotResult != null && screenshotResult.isSuccess()) {
+                        String p = extractScreenshotPath(screenshotResult);
+                        if (p != null) {
+                            // Always overwrite to keep "post-step" screenshot if the step had multiple tools
+                            stepScreenshotUrls.put(stepTag, p);
+                            executionLog.add(new ToolExecutionLog("step_screenshot", Map.of(STEP_TAG_ARG, stepTag), "Per-step screenshot", p));
                         }
-                    } catch (Exception e) {
-                        log.warn("Failed to capture per-step screenshot at boundary for step {}: {}", stepTag, e.getMessage());
                     }
+                } catch (Exception e) {
+                    log.warn("Failed to capture per-step screenshot at boundary for step {}: {}", stepTag, e.getMessage());
                 }
             }
-        }
 
-        // Return the assistant text from this single turn (it should include EXECUTED_STEP_NUMBERS / NEED_SNAPSHOT markers)
-        return AgentExecutionResult.success(
-            response.getContent(),
-            executionLog,
-            extractVariablesFromResponse(response.getContent()),
-            stepScreenshotUrls
-        );
+            if (progress != null) {
+                try {
+                    StepOutcome outcome = parseStepOutcomes(text.toString()).get(stepTag);
+                    progress.onStepCompleted(stepTag, outcome, stepScreenshotUrls.get(stepTag));
+                } catch (Exception e) {
+                    log.warn("Step progress listener failed for step {}: {}", stepTag, e.getMessage());
+                }
+            }
+        }
     }
 
     public static class BatchResult {
@@ -1495,6 +2130,42 @@ public class AgentExecutor {
         public boolean isNeedsSnapshot() { return needsSnapshot; }
         public Map<Integer, StepOutcome> getStepOutcomes() { return stepOutcomes; }
         public Map<Integer, String> getStepScreenshotUrls() { return stepScreenshotUrls; }
+        public LlmUsage getUsage() { return agentResult != null ? agentResult.getUsage() : new LlmUsage(); }
+    }
+
+    /**
+     * Steps a session executed locally ahead of a batch, reported to the progress listener as they complete.
+     */
+    private static class LocalPrefix {
+        private final StepProgressListener progress;
+        private final List<Integer> executed = new ArrayList<>();
+        private final Map<Integer, StepOutcome> outcomes = new HashMap<>();
+        private final Map<Integer, String> screenshots = new LinkedHashMap<>();
+        private final List<ToolExecutionLog> executionLog = new ArrayList<>();
+
+        LocalPrefix(StepProgressListener progress) {
+            this.progress = progress;
+        }
+
+        void add(Integer stepNumber, String status, String message, ToolExecutionLog entry) {
+            StepOutcome outcome = new StepOutcome(status, message);
+            executed.add(stepNumber);
+            outcomes.put(stepNumber, outcome);
+            executionLog.add(entry);
+            if (entry.getScreenshotUrl() != null) screenshots.put(stepNumber, entry.getScreenshotUrl());
+            if (progress != null) {
+                try {
+                    progress.onStepCompleted(stepNumber, outcome, entry.getScreenshotUrl());
+                } catch (Exception e) {
+                    log.warn("Step progress listener failed for step {}: {}", stepNumber, e.getMessage());
+                }
+            }
+        }
+
+        BatchResult toBatchResult(String message) {
+            return new BatchResult(AgentExecutionResult.success(message, executionLog, new HashMap<>(), screenshots),
+                executed, false, outcomes, screenshots);
+        }
     }
 
     public static class StepOutcome {
@@ -1688,8 +2359,13 @@ public class AgentExecutor {
         return false;
     }
 
+    private boolean traceLogging() {
+        return HotPathLog.isDebugTrace() || (traceLoggingEnabled && HotPathLog.sampled(HotPathLog.AGENT_TRACE));
+    }
+
     private String truncateForLog(String s) {
         if (s == null) return "null";
+        if (HotPathLog.isDebugTrace()) return HotPathLog.cap(s);
         int limit = Math.max(200, traceLoggingMaxChars);
         if (s.length() <= limit) return s;
         return s.substring(0, limit) + "\n...[truncated, original chars=" + s.length() + "]";
@@ -1700,7 +2376,156 @@ public class AgentExecutor {
         if (provider == null) {
             throw new IllegalArgumentException("Unknown LLM provider: " + name);
         }
-        return provider;
+        return new TimedProvider(provider, phaseStats);
+    }
+
+    /**
+     * Provider for a model tier: the configured provider, with the tier's model pinned for its calls when
+     * model routing is enabled.
+     */
+    private LlmProvider getProvider(String name, LlmModelRouter.Tier tier) {
+        return withTier(getProvider(name), tier);
+    }
+
+    private LlmProvider withTier(LlmProvider base, LlmModelRouter.Tier tier) {
+        String model = modelRouter.modelFor(tier);
+        if (model == null) return base;
+        log.info("Model routing: {} tier -> {}", tier, model);
+        return new ModelPinnedProvider(base, model);
+    }
+
+    /**
+     * Classify instructions for model routing: verifications, date pickers and anything the fast tier has
+     * already failed on need the strong model; plain actions (click/type/navigate) go to the fast one.
+     */
+    private LlmModelRouter.Tier classifyTier(Collection<String> instructions) {
+        for (String instruction : instructions) {
+            String lower = instruction == null ? "" : instruction.toLowerCase(Locale.ROOT);
+            Set<String> tokens = Arrays.stream(lower.split("[^a-z0-9]+"))
+                .filter(t -> !t.isBlank())
+                .collect(Collectors.toSet());
+            if (isVerificationInstruction(lower)
+                || isDateSelectionInstruction(lower, tokens)
+                || modelRouter.hasFailedOnFast(instruction)) {
+                return LlmModelRouter.Tier.STRONG;
+            }
+        }
+        return LlmModelRouter.Tier.FAST;
+    }
+
+    /**
+     * Delegating provider that records each call's wall time (admission wait included) as the run's LLM phase,
+     * tagged with the provider and the model pinned by the router ("default" for the provider's configured model).
+     */
+    private static class TimedProvider implements LlmProvider {
+        private final LlmProvider delegate;
+        private final ExecutionPhaseStats phaseStats;
+
+        TimedProvider(LlmProvider delegate, ExecutionPhaseStats phaseStats) {
+            this.delegate = delegate;
+            this.phaseStats = phaseStats;
+        }
+
+        @Override
+        public AgentResponse executeWithTools(List<Message> messages, List<Tool> tools, int maxIterations) {
+            long started = System.nanoTime();
+            try {
+                return delegate.executeWithTools(messages, tools, maxIterations);
+            } finally {
+                record(started);
+            }
+        }
+
+        @Override
+        public AgentResponse executeWithToolsStreaming(List<Message> messages, List<Tool> tools, int maxIterations,
+                                                       StreamListener listener) {
+            long started = System.nanoTime();
+            try {
+                return delegate.executeWithToolsStreaming(messages, tools, maxIterations, listener);
+            } finally {
+                record(started);
+            }
+        }
+
+        private void record(long started) {
+            String model = LlmCallContext.current().getModel();
+            phaseStats.recordSince(ExecutionPhaseStats.LLM, started,
+                "provider", delegate.getProviderName(), "model", model != null ? model : "default");
+        }
+
+        @Override
+        public String getProviderName() {
+            return delegate.getProviderName();
+        }
+
+        @Override
+        public boolean isAvailable() {
+            return delegate.isAvailable();
+        }
+    }
+
+    /**
+     * Delegating provider that pins a model (via {@link LlmCallContext}) for the duration of each call.
+     * The pin is set on whichever thread makes the call (the stream-reader thread for streamed turns).
+     */
+    private static class ModelPinnedProvider implements LlmProvider {
+        private final LlmProvider delegate;
+        private final String model;
+
+        ModelPinnedProvider(LlmProvider delegate, String model) {
+            this.delegate = delegate;
+            this.model = model;
+        }
+
+        @Override
+        public AgentResponse executeWithTools(List<Message> messages, List<Tool> tools, int maxIterations) {
+            LlmCallContext previous = LlmCallContext.withModel(model);
+            try {
+                return ModelTaggedResponse.of(delegate.executeWithTools(messages, tools, maxIterations), model);
+            } finally {
+                LlmCallContext.restore(previous);
+            }
+        }
+
+        @Override
+        public AgentResponse executeWithToolsStreaming(List<Message> messages, List<Tool> tools, int maxIterations,
+                                                       StreamListener listener) {
+            LlmCallContext previous = LlmCallContext.withModel(model);
+            try {
+                return ModelTaggedResponse.of(delegate.executeWithToolsStreaming(messages, tools, maxIterations, listener), model);
+            } finally {
+                LlmCallContext.restore(previous);
+            }
+        }
+
+        @Override
+        public String getProviderName() {
+            return delegate.getProviderName();
+        }
+
+        @Override
+        public boolean isAvailable() {
+            return delegate.isAvailable();
+        }
+    }
+
+    /**
+     * Response of a pinned-model call, reporting that model so its usage is priced at the model's rates.
+     */
+    private record ModelTaggedResponse(LlmProvider.AgentResponse delegate, String model) implements LlmProvider.AgentResponse {
+        static LlmProvider.AgentResponse of(LlmProvider.AgentResponse response, String model) {
+            return response != null ? new ModelTaggedResponse(response, model) : null;
+        }
+
+        @Override public String getContent() { return delegate.getContent(); }
+        @Override public List<LlmProvider.ToolCall> getToolCalls() { return delegate.getToolCalls(); }
+        @Override public boolean isComplete() { return delegate.isComplete(); }
+        @Override public String getFinishReason() { return delegate.getFinishReason(); }
+        @Override public long getInputTokens() { return delegate.getInputTokens(); }
+        @Override public long getOutputTokens() { return delegate.getOutputTokens(); }
+        @Override public long getCachedTokens() { return delegate.getCachedTokens(); }
+        @Override public long getLatencyMs() { return delegate.getLatencyMs(); }
+        @Override public String getModel() { return model; }
     }
     
     /**
@@ -1773,96 +2598,21 @@ public class AgentExecutor {
         }
     }
     
+    /**
+     * Keep the last {@code agent.conversation.history.keep} exchanges verbatim; older ones are folded into the
+     * conversation state message (see {@link ConversationCompactor}).
+     */
     private void pruneConversationHistory(List<LlmProvider.Message> messages) {
-        if (conversationHistoryKeep < 0 || messages == null || messages.size() <= 2) {
-            return; // Disabled or not enough messages
-        }
-
-        // Keep all system messages, and keep the first user message as the original instruction.
-        List<LlmProvider.Message> systemMessages = new ArrayList<>();
-        LlmProvider.Message originalInstruction = null;
-        List<LlmProvider.Message> nonSystem = new ArrayList<>();
-
-        for (LlmProvider.Message msg : messages) {
-            if ("system".equals(msg.getRole())) {
-                systemMessages.add(msg);
-            } else {
-                nonSystem.add(msg);
-                if (originalInstruction == null && "user".equals(msg.getRole())) {
-                    originalInstruction = msg;
-                }
-            }
-        }
-
-        if (originalInstruction == null) {
-            return; // Unexpected, but safe
-        }
-
-        if (conversationHistoryKeep == 0) {
-            messages.clear();
-            messages.addAll(systemMessages);
-            messages.add(originalInstruction);
-            return;
-        }
-
-        // Tail after original instruction
-        int instructionIdx = -1;
-        for (int i = 0; i < nonSystem.size(); i++) {
-            if (nonSystem.get(i) == originalInstruction) {
-                instructionIdx = i;
-                break;
-            }
-        }
-        List<LlmProvider.Message> tail =
-            (instructionIdx >= 0 && instructionIdx + 1 < nonSystem.size())
-                ? nonSystem.subList(instructionIdx + 1, nonSystem.size())
-                : Collections.emptyList();
-
-        if (tail.isEmpty()) {
-            messages.clear();
-            messages.addAll(systemMessages);
-            messages.add(originalInstruction);
-            return;
-        }
-
-        // Segment by assistant-led exchanges: assistant (tool_use) + following tool_result(s)
-        List<List<LlmProvider.Message>> segments = new ArrayList<>();
-        List<LlmProvider.Message> current = null;
-        for (LlmProvider.Message msg : tail) {
-            String role = msg.getRole();
-            if ("assistant".equals(role)) {
-                current = new ArrayList<>();
-                current.add(msg);
-                segments.add(current);
-            } else if ("tool".equals(role)) {
-                if (current == null) {
-                    // Defensive: tool without assistant; attach to last segment if it exists.
-                    if (!segments.isEmpty()) {
-                        segments.get(segments.size() - 1).add(msg);
-                    }
-                } else {
-                    current.add(msg);
-                }
-            } else {
-                // Any other role: keep ordering safely.
-                if (current == null) {
-                    current = new ArrayList<>();
-                    segments.add(current);
-                }
-                current.add(msg);
-            }
-        }
-
-        int from = Math.max(0, segments.size() - conversationHistoryKeep);
-        List<LlmProvider.Message> kept = new ArrayList<>();
-        for (int s = from; s < segments.size(); s++) {
-            kept.addAll(segments.get(s));
-        }
+        conversationCompactor.compact(messages, conversationHistoryKeep);
+    }
 
-        messages.clear();
-        messages.addAll(systemMessages);
-        messages.add(originalInstruction);
-        messages.addAll(kept);
+    /**
+     * {@code content} cut to {@code limit} chars with a note of the original length; unchanged when it fits.
+     */
+    static String truncateToolContent(String content, int limit) {
+        if (content == null || content.length() <= limit) return content;
+        return content.substring(0, limit) +
+            "\n\n[Content truncated - original length: " + content.length() + " chars]";
     }
 
     /**
@@ -1875,7 +2625,7 @@ public class AgentExecutor {
      *
      * @return number of messages removed
      */
-    private int removeOldSnapshotExchanges(List<LlmProvider.Message> messages) {
+    static int removeOldSnapshotExchanges(List<LlmProvider.Message> messages) {
         if (messages == null || messages.isEmpty()) return 0;
 
         // 1) Find tool messages that represent snapshot results, and collect their tool_use ids (toolCallId).
@@ -2046,6 +2796,8 @@ public class AgentExecutor {
         private final Map<String, Object> extractedVariables;
         // Optional: in batch mode we can attach a unique screenshot per step number (captured via MCP without extra LLM calls)
         private final Map<Integer, String> stepScreenshotUrls;
+        // Tokens/latency of every LLM call made to produce this result
+        private final LlmUsage usage = new LlmUsage();
         
         private AgentExecutionResult(boolean success,
                                      String message,
@@ -2087,6 +2839,12 @@ public class AgentExecutor {
         public List<ToolExecutionLog> getExecutionLog() { return executionLog; }
         public Map<String, Object> getExtractedVariables() { return extractedVariables; }
         public Map<Integer, String> getStepScreenshotUrls() { return stepScreenshotUrls; }
+        public LlmUsage getUsage() { return usage; }
+
+        AgentExecutionResult withUsage(LlmUsage other) {
+            usage.add(other);
+            return this;
+        }
     }
     
     /**
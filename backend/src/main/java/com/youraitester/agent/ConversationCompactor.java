@@ -0,0 +1,284 @@
+package com.youraitester.agent;
+
+import com.youraitester.agent.impl.SimpleMessage;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Folds conversation history that falls out of the {@code agent.conversation.history.keep} window into ONE
+ * structured state message instead of dropping it: executed steps with outcomes, current URL / page title,
+ * refs the agent already used on the current page, and extracted variables.
+ *
+ * The state lives in the state message's metadata, so any loop pruning a message list keeps folding into the
+ * same record. The rendered record is bounded by {@code agent.conversation.state.max.chars} however long the
+ * test runs. It is a "user" message placed right after the original instruction (Claude only reads the first
+ * system message), and providers must keep it when they truncate history ({@link #isStateMessage}).
+ */
+@Component
+@Slf4j
+public class ConversationCompactor {
+
+    static final String STATE_PREFIX = "CONVERSATION STATE (earlier history compacted; this is what already happened):";
+    private static final String STATE_KEY = "conversation_state";
+
+    private static final Pattern PAGE_URL = Pattern.compile("(?m)^\\s*-?\\s*Page URL:\\s*(\\S+)");
+    private static final Pattern PAGE_TITLE = Pattern.compile("(?m)^\\s*-?\\s*Page Title:\\s*(.*)$");
+
+    @Value("${agent.conversation.compaction.enabled:true}")
+    private boolean enabled;
+
+    @Value("${agent.conversation.state.max.chars:1500}")
+    private int maxChars;
+
+    @Value("${agent.conversation.state.max.steps:30}")
+    private int maxSteps;
+
+    @Value("${agent.conversation.state.max.refs:20}")
+    private int maxRefs;
+
+    @Value("${agent.conversation.state.max.variables:15}")
+    private int maxVariables;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public static boolean isStateMessage(LlmProvider.Message message) {
+        return message != null
+            && message.getMetadata() != null
+            && message.getMetadata().get(STATE_KEY) instanceof State;
+    }
+
+    /**
+     * Accumulated facts about a conversation. Every collection is bounded; old entries are summarised or evicted.
+     */
+    static class State {
+        private final LinkedHashMap<String, String[]> steps = new LinkedHashMap<>(); // label -> {status, note}
+        private int foldedPassed;
+        private int foldedFailed;
+        private final LinkedHashMap<String, String> variables = new LinkedHashMap<>();
+        private final LinkedHashMap<String, String> refs = new LinkedHashMap<>(); // ref -> element description
+        private String refsUrl;
+        private String url;
+        private String title;
+        private int compactedExchanges;
+    }
+
+    /**
+     * Fold the oldest exchanges of {@code messages} into the state message so that at most {@code keep}
+     * assistant-led exchanges remain verbatim. Keeps system messages and the original instruction.
+     * {@code keep < 0} disables pruning; {@code keep == 0} keeps no exchanges.
+     */
+    public void compact(List<LlmProvider.Message> messages, int keep) {
+        if (keep < 0 || messages == null || messages.size() <= 2) return;
+
+        List<LlmProvider.Message> systemMessages = new ArrayList<>();
+        LlmProvider.Message originalInstruction = null;
+        LlmProvider.Message stateMessage = null;
+        List<LlmProvider.Message> tail = new ArrayList<>();
+        for (LlmProvider.Message msg : messages) {
+            if ("system".equals(msg.getRole())) {
+                systemMessages.add(msg);
+            } else if (isStateMessage(msg)) {
+                stateMessage = msg;
+            } else if (originalInstruction == null && "user".equals(msg.getRole())) {
+                originalInstruction = msg;
+            } else if (originalInstruction != null) {
+                tail.add(msg);
+            }
+        }
+        if (originalInstruction == null) return;
+
+        // Segment by assistant-led exchanges: assistant (tool_use) + following tool_result(s), so a kept
+        // tool_use always keeps its tool_result.
+        List<List<LlmProvider.Message>> segments = new ArrayList<>();
+        List<LlmProvider.Message> current = null;
+        for (LlmProvider.Message msg : tail) {
+            if ("tool".equals(msg.getRole()) && current == null) continue; // orphaned tool_result
+            if ("assistant".equals(msg.getRole()) || current == null) {
+                current = new ArrayList<>();
+                segments.add(current);
+            }
+            current.add(msg);
+        }
+
+        int from = Math.max(0, segments.size() - keep);
+        if (from == 0 && stateMessage == null) return;
+
+        List<LlmProvider.Message> kept = new ArrayList<>();
+        for (int s = from; s < segments.size(); s++) {
+            kept.addAll(segments.get(s));
+        }
+        State state = null;
+        if (enabled) {
+            state = stateMessage != null ? stateOf(stateMessage) : new State();
+            for (int s = 0; s < from; s++) {
+                absorb(state, segments.get(s));
+            }
+            for (LlmProvider.Message msg : kept) {
+                observe(state, msg);
+            }
+        }
+
+        messages.clear();
+        messages.addAll(systemMessages);
+        messages.add(originalInstruction);
+        if (state != null) messages.add(render(state));
+        messages.addAll(kept);
+        if (from > 0) {
+            log.debug("Compacted {} exchange(s) into the conversation state; {} kept verbatim", from, segments.size() - from);
+        }
+    }
+
+    /**
+     * Record a step outcome (and any variables it extracted) in the state message, creating it if needed.
+     */
+    public void recordStep(List<LlmProvider.Message> messages, String label, boolean passed, String note,
+                           Map<String, Object> extractedVariables) {
+        if (!enabled || messages == null || label == null) return;
+        State state = stateFor(messages);
+        if (state == null) return;
+        state.steps.remove(label);
+        state.steps.put(label, new String[]{passed ? "passed" : "failed", passed ? null : abbreviate(note, 80)});
+        while (state.steps.size() > Math.max(1, maxSteps)) {
+            Iterator<Map.Entry<String, String[]>> it = state.steps.entrySet().iterator();
+            if ("passed".equals(it.next().getValue()[0])) state.foldedPassed++; else state.foldedFailed++;
+            it.remove();
+        }
+        if (extractedVariables != null) {
+            extractedVariables.forEach((k, v) -> {
+                state.variables.remove(k);
+                state.variables.put(k, abbreviate(String.valueOf(v), 60));
+            });
+            while (state.variables.size() > Math.max(1, maxVariables)) {
+                state.variables.remove(state.variables.keySet().iterator().next());
+            }
+        }
+        replaceStateMessage(messages, state);
+    }
+
+    private State stateFor(List<LlmProvider.Message> messages) {
+        for (LlmProvider.Message msg : messages) {
+            if (isStateMessage(msg)) return stateOf(msg);
+        }
+        for (LlmProvider.Message msg : messages) {
+            if ("user".equals(msg.getRole())) return new State();
+        }
+        return null; // no original instruction yet
+    }
+
+    private void replaceStateMessage(List<LlmProvider.Message> messages, State state) {
+        SimpleMessage rendered = render(state);
+        for (int i = 0; i < messages.size(); i++) {
+            if (isStateMessage(messages.get(i))) {
+                messages.set(i, rendered);
+                return;
+            }
+        }
+        for (int i = 0; i < messages.size(); i++) {
+            if ("user".equals(messages.get(i).getRole())) {
+                messages.add(i + 1, rendered);
+                return;
+            }
+        }
+    }
+
+    private static State stateOf(LlmProvider.Message message) {
+        return (State) message.getMetadata().get(STATE_KEY);
+    }
+
+    private void absorb(State state, List<LlmProvider.Message> segment) {
+        state.compactedExchanges++;
+        for (LlmProvider.Message msg : segment) {
+            observe(state, msg);
+            if (!"assistant".equals(msg.getRole()) || msg.getToolCalls() == null) continue;
+            for (LlmProvider.ToolCall call : msg.getToolCalls()) {
+                Map<String, Object> args = call.getArguments() != null ? call.getArguments() : Map.of();
+                Object ref = args.get("ref");
+                Object element = args.get("element");
+                if (ref == null || element == null) continue;
+                if (state.refsUrl != null && !Objects.equals(state.refsUrl, state.url)) state.refs.clear();
+                state.refsUrl = state.url;
+                state.refs.remove(String.valueOf(ref));
+                state.refs.put(String.valueOf(ref), abbreviate(String.valueOf(element), 50));
+                while (state.refs.size() > Math.max(1, maxRefs)) {
+                    state.refs.remove(state.refs.keySet().iterator().next());
+                }
+            }
+        }
+    }
+
+    /**
+     * Track the latest page URL / title reported by tool results (Playwright MCP appends "Page URL:" lines).
+     */
+    private static void observe(State state, LlmProvider.Message msg) {
+        if (!"tool".equals(msg.getRole()) || msg.getContent() == null) return;
+        Matcher url = PAGE_URL.matcher(msg.getContent());
+        if (url.find()) state.url = url.group(1);
+        Matcher title = PAGE_TITLE.matcher(msg.getContent());
+        if (title.find()) state.title = abbreviate(title.group(1).trim(), 80);
+    }
+
+    private SimpleMessage render(State state) {
+        StringBuilder sb = new StringBuilder(STATE_PREFIX).append("\n");
+        if (state.url != null) {
+            sb.append("Current page: ").append(state.url);
+            if (state.title != null && !state.title.isEmpty()) sb.append(" (").append(state.title).append(")");
+            sb.append("\n");
+        }
+        if (state.foldedPassed + state.foldedFailed > 0 || !state.steps.isEmpty()) {
+            sb.append("Steps done:");
+            if (state.foldedPassed + state.foldedFailed > 0) {
+                sb.append(" [").append(state.foldedPassed + state.foldedFailed).append(" earlier: ")
+                    .append(state.foldedPassed).append(" passed, ").append(state.foldedFailed).append(" failed]");
+            }
+            state.steps.forEach((label, outcome) -> {
+                sb.append(" ").append(label).append(" ").append(outcome[0]);
+                if (outcome[1] != null && !outcome[1].isBlank()) sb.append(" (").append(outcome[1]).append(")");
+                sb.append(";");
+            });
+            sb.append("\n");
+        }
+        if (!state.variables.isEmpty()) {
+            sb.append("Variables: ");
+            state.variables.forEach((k, v) -> sb.append(k).append("=").append(v).append("; "));
+            sb.append("\n");
+        }
+        if (!state.refs.isEmpty() && Objects.equals(state.refsUrl, state.url)) {
+            sb.append("Refs already used on this page (re-check against the latest snapshot): ");
+            state.refs.forEach((ref, element) -> sb.append(ref).append("=").append(element).append("; "));
+            sb.append("\n");
+        }
+        if (state.compactedExchanges > 0) {
+            sb.append("(").append(state.compactedExchanges).append(" earlier tool exchange(s) summarised here.)\n");
+        }
+        String content = sb.toString().trim();
+        if (content.length() > maxChars) {
+            content = content.substring(0, Math.max(STATE_PREFIX.length(), maxChars - 15)) + "\n...(truncated)";
+        }
+        Map<String, Object> metadata = new HashMap<>();
+        metadata.put(STATE_KEY, state);
+        return SimpleMessage.builder().role("user").content(content).metadata(metadata).build();
+    }
+
+    /**
+     * State label for an executed step: its number (when known) and an abbreviated instruction, so the state still
+     * says what was done once the prompt that listed the steps has been compacted away.
+     */
+    public static String stepLabel(Integer stepNumber, String instruction) {
+        String quoted = instruction != null && !instruction.isBlank() ? "'" + abbreviate(instruction, 58) + "'" : null;
+        if (stepNumber == null) return quoted;
+        return quoted != null ? "step " + stepNumber + " " + quoted : "step " + stepNumber;
+    }
+
+    private static String abbreviate(String s, int max) {
+        if (s == null) return null;
+        String v = s.replaceAll("\\s+", " ").trim();
+        return v.length() > max ? v.substring(0, max - 3) + "..." : v;
+    }
+}
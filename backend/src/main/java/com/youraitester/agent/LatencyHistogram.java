@@ -0,0 +1,80 @@
+package com.youraitester.agent;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free fixed-bucket latency histogram (milliseconds).
+ * Used for lightweight in-process diagnostics (LLM latency, admission queue wait, ...).
+ */
+public class LatencyHistogram {
+
+    private final long[] bucketUpperBoundsMs;
+    private final LongAdder[] buckets;
+    private final LongAdder count = new LongAdder();
+    private final LongAdder totalMs = new LongAdder();
+    private final AtomicLong maxMs = new AtomicLong();
+
+    /**
+     * @param bucketUpperBoundsMs ascending bucket upper bounds; anything slower lands in the overflow bucket
+     */
+    public LatencyHistogram(long... bucketUpperBoundsMs) {
+        this.bucketUpperBoundsMs = bucketUpperBoundsMs.clone();
+        this.buckets = new LongAdder[bucketUpperBoundsMs.length + 1];
+        for (int i = 0; i < buckets.length; i++) buckets[i] = new LongAdder();
+    }
+
+    public void record(long ms) {
+        int idx = bucketUpperBoundsMs.length;
+        for (int i = 0; i < bucketUpperBoundsMs.length; i++) {
+            if (ms <= bucketUpperBoundsMs[i]) { idx = i; break; }
+        }
+        buckets[idx].increment();
+        count.increment();
+        totalMs.add(ms);
+        maxMs.accumulateAndGet(ms, Math::max);
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * Upper bound of the bucket holding quantile {@code q} (0..1), capped at the max seen; 0 when empty.
+     * Resolution is the bucket layout, which is enough to compare runs against each other.
+     */
+    public long percentile(double q) {
+        long n = count.sum();
+        if (n == 0) return 0;
+        long rank = Math.max(1, (long) Math.ceil(q * n));
+        long seen = 0;
+        for (int i = 0; i < bucketUpperBoundsMs.length; i++) {
+            seen += buckets[i].sum();
+            if (seen >= rank) return Math.min(bucketUpperBoundsMs[i], maxMs.get());
+        }
+        return maxMs.get();
+    }
+
+    /**
+     * count / meanMs / p50Ms / p95Ms / p99Ms / maxMs plus per-bucket counts keyed "le_<ms>" (and "le_inf").
+     */
+    public Map<String, Object> snapshot() {
+        Map<String, Object> out = new LinkedHashMap<>();
+        long n = count.sum();
+        out.put("count", n);
+        out.put("meanMs", n > 0 ? totalMs.sum() / n : 0);
+        out.put("p50Ms", percentile(0.50));
+        out.put("p95Ms", percentile(0.95));
+        out.put("p99Ms", percentile(0.99));
+        out.put("maxMs", maxMs.get());
+        Map<String, Long> bucketCounts = new LinkedHashMap<>();
+        for (int i = 0; i < bucketUpperBoundsMs.length; i++) {
+            bucketCounts.put("le_" + bucketUpperBoundsMs[i], buckets[i].sum());
+        }
+        bucketCounts.put("le_inf", buckets[bucketUpperBoundsMs.length].sum());
+        out.put("buckets", bucketCounts);
+        return out;
+    }
+}
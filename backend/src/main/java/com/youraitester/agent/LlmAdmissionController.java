@@ -0,0 +1,291 @@
+package com.youraitester.agent;
+
+import com.youraitester.repository.LlmRateBudgetRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Process-wide admission control for LLM calls (tokens-per-minute / requests-per-minute token bucket).
+ *
+ * Every provider call acquires from the bucket of its provider before going on the wire, so N parallel
+ * tests share the org rate limit instead of bursting into 429s together.
+ *
+ * Queueing:
+ * - interactive (single test) runs are always served before batch runs
+ * - within a priority class, runs are served round-robin (one call per run per turn), so one chatty
+ *   test can't starve the others
+ *
+ * With llm.admission.shared=true the bucket itself lives in Postgres (llm_rate_budget), so all nodes
+ * draw from the same budget; queue ordering stays per node.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class LlmAdmissionController {
+
+    private static final long[] WAIT_BUCKETS_MS = {0, 50, 250, 1000, 5000, 15000, 30000, 60000, 120000};
+
+    private final LlmRateBudgetRepository rateBudgetRepository;
+
+    @Value("${llm.admission.enabled:true}")
+    private boolean enabled;
+
+    /**
+     * Input tokens per minute per provider. <= 0 disables the token dimension.
+     */
+    @Value("${llm.admission.tokens.per.minute:400000}")
+    private double tokensPerMinute;
+
+    /**
+     * Requests per minute per provider. <= 0 disables the request dimension.
+     */
+    @Value("${llm.admission.requests.per.minute:500}")
+    private double requestsPerMinute;
+
+    /**
+     * Safety valve: after waiting this long a call is admitted anyway (and logged) rather than failing the test.
+     */
+    @Value("${llm.admission.max.wait.seconds:300}")
+    private long maxWaitSeconds;
+
+    /**
+     * Share the budget across nodes through Postgres.
+     */
+    @Value("${llm.admission.shared:false}")
+    private boolean shared;
+
+    private final Map<String, Bucket> buckets = new ConcurrentHashMap<>();
+    private final LatencyHistogram interactiveWait = new LatencyHistogram(WAIT_BUCKETS_MS);
+    private final LatencyHistogram batchWait = new LatencyHistogram(WAIT_BUCKETS_MS);
+
+    /**
+     * Block until the current run may send a request of ~estimatedTokens input tokens to the provider.
+     *
+     * @return time spent waiting in the queue (ms)
+     */
+    public long acquire(String provider, int estimatedTokens) {
+        if (!enabled) return 0;
+        LlmCallContext ctx = LlmCallContext.current();
+        Bucket bucket = buckets.computeIfAbsent(provider, Bucket::new);
+
+        long start = System.nanoTime();
+        bucket.acquire(ctx, estimatedTokens);
+        long waitedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        (ctx.isInteractive() ? interactiveWait : batchWait).record(waitedMs);
+        if (waitedMs > 1000) {
+            log.info("[LLM-ADMISSION] provider={} run={} interactive={} estTokens={} waited {} ms",
+                provider, ctx.getRunKey(), ctx.isInteractive(), estimatedTokens, waitedMs);
+        }
+        return waitedMs;
+    }
+
+    /**
+     * Queue depth / available budget per provider plus queue-wait histograms per priority class.
+     */
+    public Map<String, Object> getSnapshot() {
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("enabled", enabled);
+        out.put("shared", shared);
+        out.put("tokensPerMinute", tokensPerMinute);
+        out.put("requestsPerMinute", requestsPerMinute);
+        Map<String, Object> providers = new TreeMap<>();
+        buckets.forEach((name, b) -> providers.put(name, b.snapshot()));
+        out.put("providers", providers);
+        out.put("queueWaitInteractive", interactiveWait.snapshot());
+        out.put("queueWaitBatch", batchWait.snapshot());
+        return out;
+    }
+
+    private final class Bucket {
+        private final String provider;
+        private final ReentrantLock lock = new ReentrantLock(true);
+        private final Condition changed = lock.newCondition();
+
+        // Per-run FIFO queues; iteration order of the map is the round-robin order.
+        private final LinkedHashMap<String, ArrayDeque<Ticket>> interactiveRuns = new LinkedHashMap<>();
+        private final LinkedHashMap<String, ArrayDeque<Ticket>> batchRuns = new LinkedHashMap<>();
+
+        // Local bucket state (used when not shared)
+        private double tokens;
+        private double requests;
+        private long lastRefillNanos;
+        private boolean sharedRowEnsured;
+        // The head ticket is taking from the shared bucket (a DB round trip, done without holding the lock).
+        private boolean taking;
+
+        Bucket(String provider) {
+            this.provider = provider;
+            this.tokens = tokensPerMinute;
+            this.requests = requestsPerMinute;
+            this.lastRefillNanos = System.nanoTime();
+        }
+
+        void acquire(LlmCallContext ctx, int estimatedTokens) {
+            double cost = Math.max(1, estimatedTokens);
+            if (tokensPerMinute > 0) cost = Math.min(cost, tokensPerMinute);
+            Ticket ticket = new Ticket(ctx.getRunKey(), ctx.isInteractive(), cost);
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(Math.max(1, maxWaitSeconds));
+
+            lock.lock();
+            try {
+                (ticket.interactive ? interactiveRuns : batchRuns)
+                    .computeIfAbsent(ticket.runKey, k -> new ArrayDeque<>())
+                    .addLast(ticket);
+                try {
+                    while (true) {
+                        long now = System.nanoTime();
+                        if (head() == ticket && !taking) {
+                            long waitMs = tryTake(ticket.cost);
+                            if (waitMs <= 0) break;
+                            if (now >= deadline) {
+                                log.warn("[LLM-ADMISSION] provider={} run={} exceeded max wait ({}s); admitting over budget",
+                                    provider, ticket.runKey, maxWaitSeconds);
+                                break;
+                            }
+                            changed.await(waitMs, TimeUnit.MILLISECONDS);
+                        } else {
+                            if (now >= deadline) {
+                                log.warn("[LLM-ADMISSION] provider={} run={} exceeded max wait ({}s) in queue; admitting",
+                                    provider, ticket.runKey, maxWaitSeconds);
+                                break;
+                            }
+                            changed.await(1000, TimeUnit.MILLISECONDS);
+                        }
+                    }
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Interrupted while waiting for LLM admission");
+                } finally {
+                    dequeue(ticket);
+                    changed.signalAll();
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private Ticket head() {
+            Ticket t = firstTicket(interactiveRuns);
+            return t != null ? t : firstTicket(batchRuns);
+        }
+
+        private Ticket firstTicket(LinkedHashMap<String, ArrayDeque<Ticket>> runs) {
+            for (ArrayDeque<Ticket> q : runs.values()) {
+                if (!q.isEmpty()) return q.peekFirst();
+            }
+            return null;
+        }
+
+        /**
+         * Remove the ticket and move its run to the back of the round-robin order.
+         */
+        private void dequeue(Ticket ticket) {
+            LinkedHashMap<String, ArrayDeque<Ticket>> runs = ticket.interactive ? interactiveRuns : batchRuns;
+            ArrayDeque<Ticket> q = runs.remove(ticket.runKey);
+            if (q == null) return;
+            q.remove(ticket);
+            if (!q.isEmpty()) runs.put(ticket.runKey, q);
+        }
+
+        /**
+         * Called with the lock held. The shared bucket is queried with the lock released (other runs can still
+         * enqueue and the snapshot endpoint stays responsive); {@code taking} keeps it to one query at a time.
+         *
+         * @return 0 if budget was taken, otherwise suggested ms to wait before retrying
+         */
+        private long tryTake(double cost) {
+            if (tokensPerMinute <= 0 && requestsPerMinute <= 0) return 0;
+            if (!shared) return tryTakeLocal(cost);
+            taking = true;
+            lock.unlock();
+            try {
+                return tryTakeShared(cost);
+            } finally {
+                lock.lock();
+                taking = false;
+                changed.signalAll();
+            }
+        }
+
+        private long tryTakeLocal(double cost) {
+            long now = System.nanoTime();
+            double elapsedMin = (now - lastRefillNanos) / 60_000_000_000d;
+            lastRefillNanos = now;
+            if (tokensPerMinute > 0) tokens = Math.min(tokensPerMinute, tokens + elapsedMin * tokensPerMinute);
+            if (requestsPerMinute > 0) requests = Math.min(requestsPerMinute, requests + elapsedMin * requestsPerMinute);
+
+            boolean tokensOk = tokensPerMinute <= 0 || tokens >= cost;
+            boolean requestsOk = requestsPerMinute <= 0 || requests >= 1;
+            if (tokensOk && requestsOk) {
+                if (tokensPerMinute > 0) tokens -= cost;
+                if (requestsPerMinute > 0) requests -= 1;
+                return 0;
+            }
+            long waitMs = 10;
+            if (!tokensOk) waitMs = Math.max(waitMs, (long) Math.ceil((cost - tokens) * 60_000d / tokensPerMinute));
+            if (!requestsOk) waitMs = Math.max(waitMs, (long) Math.ceil((1 - requests) * 60_000d / requestsPerMinute));
+            return Math.min(waitMs, 1000);
+        }
+
+        private long tryTakeShared(double cost) {
+            // Treat a disabled dimension as "effectively unlimited" in SQL.
+            double tpm = tokensPerMinute > 0 ? tokensPerMinute : 1e12;
+            double rpm = requestsPerMinute > 0 ? requestsPerMinute : 1e12;
+            try {
+                if (!sharedRowEnsured) {
+                    rateBudgetRepository.ensureBucket(provider, tpm, rpm);
+                    sharedRowEnsured = true;
+                }
+                if (rateBudgetRepository.tryConsume(provider, cost, tpm, rpm) > 0) return 0;
+                Double available = rateBudgetRepository.availableTokens(provider, tpm);
+                long waitMs = 50;
+                if (available != null && tokensPerMinute > 0 && available < cost) {
+                    waitMs = (long) Math.ceil((cost - available) * 60_000d / tokensPerMinute);
+                }
+                return Math.max(50, Math.min(waitMs, 1000));
+            } catch (Exception e) {
+                // Never block tests on the coordination table; fall back to the local bucket.
+                log.warn("[LLM-ADMISSION] Shared budget unavailable ({}); using local bucket", e.getMessage());
+                return tryTakeLocal(cost);
+            }
+        }
+
+        Map<String, Object> snapshot() {
+            lock.lock();
+            try {
+                Map<String, Object> out = new LinkedHashMap<>();
+                out.put("queuedInteractive", interactiveRuns.values().stream().mapToInt(ArrayDeque::size).sum());
+                out.put("queuedBatch", batchRuns.values().stream().mapToInt(ArrayDeque::size).sum());
+                out.put("queuedRuns", interactiveRuns.size() + batchRuns.size());
+                if (!shared) {
+                    out.put("availableTokens", (long) tokens);
+                    out.put("availableRequests", (long) requests);
+                }
+                return out;
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private static final class Ticket {
+        final String runKey;
+        final boolean interactive;
+        final double cost;
+
+        Ticket(String runKey, boolean interactive, double cost) {
+            this.runKey = runKey;
+            this.interactive = interactive;
+            this.cost = cost;
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.youraitester.agent;
+
+/**
+ * Per-thread context describing on whose behalf LLM calls are being made.
+ * Set by the test runner at the start of an execution and cleared in its finally block;
+ * calls made outside a test execution (mapping on save, ad-hoc interpretation) get the default context.
+ */
+public final class LlmCallContext {
+
+    private static final LlmCallContext DEFAULT = new LlmCallContext("adhoc", true, null);
+    private static final ThreadLocal<LlmCallContext> CURRENT = new ThreadLocal<>();
+
+    private final String runKey;
+    private final boolean interactive;
+    private final String model;
+
+    private LlmCallContext(String runKey, boolean interactive, String model) {
+        this.runKey = runKey;
+        this.interactive = interactive;
+        this.model = model;
+    }
+
+    /**
+     * @param runKey      fairness key (one queue per run; typically the Run id or TestRun id)
+     * @param interactive true for a user-triggered single test run, false for batch runs
+     */
+    public static void set(String runKey, boolean interactive) {
+        CURRENT.set(new LlmCallContext(runKey != null && !runKey.isBlank() ? runKey : DEFAULT.runKey, interactive, null));
+    }
+
+    /**
+     * Pin the model for LLM calls made on this thread (model routing), keeping the run key.
+     *
+     * @param model model id to use instead of the provider's configured model; null for the provider default
+     * @return the previous context, to hand back to {@link #restore}
+     */
+    public static LlmCallContext withModel(String model) {
+        LlmCallContext previous = CURRENT.get();
+        LlmCallContext base = previous != null ? previous : DEFAULT;
+        CURRENT.set(new LlmCallContext(base.runKey, base.interactive, model));
+        return previous;
+    }
+
+    /**
+     * Reinstate a context captured with {@link #current()} or returned by {@link #withModel}
+     * (e.g. on a stream-reader thread). Null clears the thread's context.
+     */
+    public static void restore(LlmCallContext context) {
+        if (context == null || context == DEFAULT) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(context);
+        }
+    }
+
+    public static LlmCallContext current() {
+        LlmCallContext ctx = CURRENT.get();
+        return ctx != null ? ctx : DEFAULT;
+    }
+
+    public static void clear() {
+        CURRENT.remove();
+    }
+
+    public String getRunKey() {
+        return runKey;
+    }
+
+    public boolean isInteractive() {
+        return interactive;
+    }
+
+    /**
+     * Model pinned by the router for this call, or null to use the provider's configured model.
+     */
+    public String getModel() {
+        return model;
+    }
+}
@@ -0,0 +1,205 @@
+package com.youraitester.agent;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Model tiers for agent calls: a cheap/fast model for simple steps and the strong (configured) model for hard ones.
+ *
+ * AgentExecutor classifies each step/batch and asks the router which model to pin; the router owns the tier
+ * configuration, remembers instructions the fast tier has failed on (so they go straight to the strong tier
+ * next time), and keeps per-tier outcome/latency stats for tuning the rules.
+ * Tiers are models of the configured provider, so a session can switch tiers without changing message format.
+ */
+@Component
+@Slf4j
+public class LlmModelRouter {
+
+    public enum Tier { FAST, STRONG }
+
+    public enum Outcome { SUCCESS, FAILURE, NO_PROGRESS }
+
+    private static final long[] LATENCY_BUCKETS_MS = {500, 1000, 2000, 5000, 10000, 20000, 30000, 60000};
+
+    @Value("${agent.llm.routing.enabled:false}")
+    private boolean enabled;
+
+    @Value("${agent.llm.provider:openai}")
+    private String provider;
+
+    /**
+     * Model id for the FAST tier (e.g. a Haiku / mini model); empty uses the provider's default below.
+     * Routing stays off while no fast model resolves.
+     */
+    @Value("${agent.llm.routing.fast.model:}")
+    private String fastModel;
+
+    @Value("${agent.llm.routing.fast.model.claude:claude-haiku-4-5}")
+    private String claudeFastModel;
+
+    @Value("${agent.llm.routing.fast.model.openai:gpt-4o-mini}")
+    private String openAiFastModel;
+
+    /**
+     * Model id for the STRONG tier; empty uses the provider's configured model (claude.model / openai.model).
+     */
+    @Value("${agent.llm.routing.strong.model:}")
+    private String strongModel;
+
+    /**
+     * A batch usually completes only its first few steps before it needs a new snapshot,
+     * so only this many upcoming steps are considered when classifying a batch.
+     */
+    @Value("${agent.llm.routing.batch.lookahead:3}")
+    private int batchLookahead;
+
+    /**
+     * Consecutive NEED_SNAPSHOT turns without progress before a session escalates to the STRONG tier.
+     */
+    @Value("${agent.llm.routing.escalate.need.snapshot.after:2}")
+    private int escalateNeedSnapshotAfter;
+
+    @Value("${agent.llm.routing.history.max:5000}")
+    private int historyMax;
+
+    // Normalized instructions the FAST tier failed on (LRU, bounded)
+    private final Map<String, Boolean> fastFailures = Collections.synchronizedMap(new LinkedHashMap<>(256, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+            return size() > Math.max(1, historyMax);
+        }
+    });
+
+    private final Map<Tier, TierStats> stats = new EnumMap<>(Tier.class);
+    private final Map<String, LongAdder> escalations = new ConcurrentHashMap<>();
+
+    public LlmModelRouter() {
+        for (Tier t : Tier.values()) stats.put(t, new TierStats());
+    }
+
+    /**
+     * Resolve the FAST model for the configured provider and refuse to start with one of another provider's
+     * models, which would fail every routed call at runtime.
+     */
+    @PostConstruct
+    void resolveFastModel() {
+        if (fastModel == null || fastModel.isBlank()) {
+            if ("claude".equalsIgnoreCase(provider)) fastModel = claudeFastModel;
+            else if ("openai".equalsIgnoreCase(provider)) fastModel = openAiFastModel;
+        }
+        if (!enabled || fastModel == null || fastModel.isBlank()) return;
+        boolean claudeModel = fastModel.trim().toLowerCase(Locale.ROOT).startsWith("claude");
+        if (("claude".equalsIgnoreCase(provider) && !claudeModel) || ("openai".equalsIgnoreCase(provider) && claudeModel)) {
+            throw new IllegalStateException("agent.llm.routing.fast.model=" + fastModel
+                + " is not a model of agent.llm.provider=" + provider);
+        }
+        log.info("Model routing enabled: provider={} fast={} strong={}", provider, fastModel,
+            strongModel != null && !strongModel.isBlank() ? strongModel : "(provider default)");
+    }
+
+    public boolean isEnabled() {
+        return enabled && fastModel != null && !fastModel.isBlank();
+    }
+
+    public int getBatchLookahead() {
+        return Math.max(1, batchLookahead);
+    }
+
+    public int getEscalateNeedSnapshotAfter() {
+        return Math.max(1, escalateNeedSnapshotAfter);
+    }
+
+    /**
+     * Model to pin for a tier, or null to use the provider's configured model.
+     */
+    public String modelFor(Tier tier) {
+        if (!isEnabled()) return null;
+        if (tier == Tier.FAST) return fastModel;
+        return strongModel != null && !strongModel.isBlank() ? strongModel : null;
+    }
+
+    public boolean hasFailedOnFast(String instruction) {
+        String key = normalize(instruction);
+        return key != null && fastFailures.containsKey(key);
+    }
+
+    public void rememberFastFailure(String instruction) {
+        String key = normalize(instruction);
+        if (key != null) fastFailures.put(key, Boolean.TRUE);
+    }
+
+    public void recordOutcome(Tier tier, Outcome outcome, LlmUsage usage) {
+        if (!isEnabled() || tier == null || outcome == null) return;
+        TierStats s = stats.get(tier);
+        s.attempts.increment();
+        switch (outcome) {
+            case SUCCESS -> s.successes.increment();
+            case FAILURE -> s.failures.increment();
+            case NO_PROGRESS -> s.noProgress.increment();
+        }
+        if (usage != null && !usage.isEmpty()) {
+            s.calls.add(usage.getCalls());
+            s.inputTokens.add(usage.getInputTokens());
+            s.outputTokens.add(usage.getOutputTokens());
+            s.latency.record(usage.getLatencyMs() / Math.max(1, usage.getCalls()));
+        }
+    }
+
+    public void recordEscalation(String reason) {
+        escalations.computeIfAbsent(reason, r -> new LongAdder()).increment();
+        log.info("Model routing: escalating to STRONG tier ({})", reason);
+    }
+
+    /**
+     * Per-tier attempts / outcomes / tokens plus the mean per-call latency histogram.
+     */
+    public Map<String, Object> getSnapshot() {
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("enabled", isEnabled());
+        out.put("fastModel", fastModel);
+        out.put("strongModel", strongModel != null && !strongModel.isBlank() ? strongModel : "(provider default)");
+        Map<String, Object> tiers = new LinkedHashMap<>();
+        stats.forEach((tier, s) -> {
+            Map<String, Object> m = new LinkedHashMap<>();
+            long attempts = s.attempts.sum();
+            m.put("attempts", attempts);
+            m.put("successes", s.successes.sum());
+            m.put("failures", s.failures.sum());
+            m.put("noProgress", s.noProgress.sum());
+            m.put("successRate", attempts > 0 ? (double) s.successes.sum() / attempts : null);
+            m.put("calls", s.calls.sum());
+            m.put("inputTokens", s.inputTokens.sum());
+            m.put("outputTokens", s.outputTokens.sum());
+            m.put("latencyPerCall", s.latency.snapshot());
+            tiers.put(tier.name().toLowerCase(Locale.ROOT), m);
+        });
+        out.put("tiers", tiers);
+        Map<String, Long> esc = new TreeMap<>();
+        escalations.forEach((k, v) -> esc.put(k, v.sum()));
+        out.put("escalations", esc);
+        out.put("rememberedFastFailures", fastFailures.size());
+        return out;
+    }
+
+    private static String normalize(String instruction) {
+        if (instruction == null || instruction.isBlank()) return null;
+        return instruction.trim().toLowerCase(Locale.ROOT).replaceAll("\\s+", " ");
+    }
+
+    private static class TierStats {
+        final LongAdder attempts = new LongAdder();
+        final LongAdder successes = new LongAdder();
+        final LongAdder failures = new LongAdder();
+        final LongAdder noProgress = new LongAdder();
+        final LongAdder calls = new LongAdder();
+        final LongAdder inputTokens = new LongAdder();
+        final LongAdder outputTokens = new LongAdder();
+        final LatencyHistogram latency = new LatencyHistogram(LATENCY_BUCKETS_MS);
+    }
+}
@@ -23,6 +23,32 @@ public interface LlmProvider {
         int maxIterations
     );
     
+    /**
+     * Streaming variant of {@link #executeWithTools}: the provider reports each tool call to the listener as soon as
+     * it has been fully generated, while the model may still be producing the rest of the turn.
+     * The returned response is the same as the non-streaming one (all tool calls + full text).
+     *
+     * Listener callbacks run on the thread reading the HTTP stream, not on the caller's thread.
+     * Providers without streaming support fall back to a single call and replay the result to the listener.
+     */
+    default AgentResponse executeWithToolsStreaming(
+        List<Message> messages,
+        List<Tool> tools,
+        int maxIterations,
+        StreamListener listener
+    ) {
+        AgentResponse response = executeWithTools(messages, tools, maxIterations);
+        if (listener != null && response != null) {
+            if (response.getContent() != null && !response.getContent().isEmpty()) {
+                listener.onTextDelta(response.getContent());
+            }
+            if (response.getToolCalls() != null) {
+                response.getToolCalls().forEach(listener::onToolCall);
+            }
+        }
+        return response;
+    }
+    
     /**
      * Get the provider name (e.g., "openai", "claude")
      */
@@ -62,6 +88,14 @@ public interface LlmProvider {
         Map<String, Object> getArguments();
     }
     
+    /**
+     * Receives incremental output from {@link #executeWithToolsStreaming}
+     */
+    interface StreamListener {
+        default void onTextDelta(String text) {}
+        default void onToolCall(ToolCall toolCall) {}
+    }
+    
     /**
      * Response from the LLM
      */
@@ -70,5 +104,12 @@ public interface LlmProvider {
         List<ToolCall> getToolCalls(); // Tools to execute
         boolean isComplete(); // Whether agent finished the task
         String getFinishReason(); // "stop", "tool_calls", "length", etc.
+
+        // Usage reported by the provider for this call (0 when unknown)
+        default long getInputTokens() { return 0; } // prompt tokens, including cached ones
+        default long getOutputTokens() { return 0; }
+        default long getCachedTokens() { return 0; } // prompt tokens served from the provider's prompt cache
+        default long getLatencyMs() { return 0; } // wall time on the wire, excluding admission wait
+        default String getModel() { return null; } // model pinned for this call by the router, null = configured one
     }
 }
@@ -0,0 +1,120 @@
+package com.youraitester.agent;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Running total of LLM usage (tokens, wire latency, number of calls) for one agent execution, with the tokens
+ * also broken down by the model that served them (model routing mixes models, which are priced differently).
+ * Not thread-safe: each accumulator belongs to the test thread that drives the agent loop.
+ */
+public class LlmUsage {
+
+    /**
+     * Key of {@link #getTokensByModel()} for calls that ran on the provider's configured model.
+     */
+    public static final String DEFAULT_MODEL = "";
+
+    private long inputTokens;
+    private long outputTokens;
+    private long cachedTokens;
+    private long latencyMs;
+    private int calls;
+    // model -> tokens it served; DEFAULT_MODEL for calls on the provider's configured model
+    private final Map<String, ModelTokens> byModel = new LinkedHashMap<>();
+
+    /**
+     * Tokens served by one model.
+     */
+    public static class ModelTokens {
+        private long inputTokens;
+        private long outputTokens;
+        private long cachedTokens;
+
+        public long getInputTokens() { return inputTokens; }
+        public long getOutputTokens() { return outputTokens; }
+        public long getCachedTokens() { return cachedTokens; }
+    }
+
+    public void add(LlmProvider.AgentResponse response) {
+        if (response == null) return;
+        inputTokens += response.getInputTokens();
+        outputTokens += response.getOutputTokens();
+        cachedTokens += response.getCachedTokens();
+        latencyMs += response.getLatencyMs();
+        calls++;
+        ModelTokens t = tokensFor(response.getModel());
+        t.inputTokens += response.getInputTokens();
+        t.outputTokens += response.getOutputTokens();
+        t.cachedTokens += response.getCachedTokens();
+    }
+
+    public void add(LlmUsage other) {
+        if (other == null) return;
+        inputTokens += other.inputTokens;
+        outputTokens += other.outputTokens;
+        cachedTokens += other.cachedTokens;
+        latencyMs += other.latencyMs;
+        calls += other.calls;
+        other.byModel.forEach((model, o) -> {
+            ModelTokens t = tokensFor(model);
+            t.inputTokens += o.inputTokens;
+            t.outputTokens += o.outputTokens;
+            t.cachedTokens += o.cachedTokens;
+        });
+    }
+
+    /**
+     * Split this usage evenly across {@code parts} (e.g. the steps executed by one batch turn).
+     * Part 0 also gets the remainders and the call count so the parts always sum back to the total.
+     */
+    public LlmUsage share(int index, int parts) {
+        LlmUsage s = new LlmUsage();
+        if (parts <= 0) return s;
+        boolean first = index == 0;
+        s.inputTokens = inputTokens / parts + (first ? inputTokens % parts : 0);
+        s.outputTokens = outputTokens / parts + (first ? outputTokens % parts : 0);
+        s.cachedTokens = cachedTokens / parts + (first ? cachedTokens % parts : 0);
+        s.latencyMs = latencyMs / parts + (first ? latencyMs % parts : 0);
+        s.calls = first ? calls : 0;
+        byModel.forEach((model, o) -> {
+            ModelTokens t = s.tokensFor(model);
+            t.inputTokens = o.inputTokens / parts + (first ? o.inputTokens % parts : 0);
+            t.outputTokens = o.outputTokens / parts + (first ? o.outputTokens % parts : 0);
+            t.cachedTokens = o.cachedTokens / parts + (first ? o.cachedTokens % parts : 0);
+        });
+        return s;
+    }
+
+    public boolean isEmpty() {
+        return calls == 0;
+    }
+
+    public long getInputTokens() { return inputTokens; }
+    public long getOutputTokens() { return outputTokens; }
+    public long getCachedTokens() { return cachedTokens; }
+    public long getLatencyMs() { return latencyMs; }
+    public int getCalls() { return calls; }
+    public Map<String, ModelTokens> getTokensByModel() { return Collections.unmodifiableMap(byModel); }
+
+    private ModelTokens tokensFor(String model) {
+        return byModel.computeIfAbsent(model != null && !model.isBlank() ? model : DEFAULT_MODEL, m -> new ModelTokens());
+    }
+
+    public Map<String, Object> toMap() {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("inputTokens", inputTokens);
+        m.put("outputTokens", outputTokens);
+        m.put("cachedTokens", cachedTokens);
+        m.put("latencyMs", latencyMs);
+        m.put("calls", calls);
+        return m;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("calls=%d input=%d (cached=%d) output=%d latency=%dms",
+            calls, inputTokens, cachedTokens, outputTokens, latencyMs);
+    }
+}
@@ -0,0 +1,265 @@
+package com.youraitester.agent;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Deterministic fast path for simple natural-language actions ("click Login", "type {{email}} into Email",
+ * "select Price (low to high) from the sort dropdown") against the current accessibility snapshot.
+ *
+ * Only resolves when the grammar matches AND exactly one enabled element of a suitable role has that exact
+ * accessible name; anything else (ordinals, compound steps, duplicates, fuzzy names) is left to the agent.
+ */
+@Component
+@Slf4j
+public class LocalActionResolver {
+
+    private static final String QUOTED_OR_LAZY = "(\"[^\"]*\"|'[^']*'|.+?)";
+
+    private static final Pattern NAVIGATE = Pattern.compile("^(?:navigate|go|open)\\s+(?:to\\s+)?(https?://\\S+)$", Pattern.CASE_INSENSITIVE);
+    private static final Pattern TYPE_INTO = Pattern.compile("^(?:type|enter|input)\\s+" + QUOTED_OR_LAZY + "\\s+(?:in|into|on)\\s+(?:the\\s+)?(.+)$", Pattern.CASE_INSENSITIVE);
+    private static final Pattern FILL_WITH = Pattern.compile("^(?:fill(?:\\s+in)?|set)\\s+(?:the\\s+)?(.+?)\\s+(?:with|to|as)\\s+(\"[^\"]*\"|'[^']*'|.+)$", Pattern.CASE_INSENSITIVE);
+    private static final Pattern SELECT_FROM = Pattern.compile("^(?:select|choose|pick)\\s+" + QUOTED_OR_LAZY + "\\s+(?:from|in)\\s+(?:the\\s+)?(.+)$", Pattern.CASE_INSENSITIVE);
+    private static final Pattern CHECK = Pattern.compile("^(check|tick|uncheck|untick)\\s+(?:the\\s+)?(.+)$", Pattern.CASE_INSENSITIVE);
+    private static final Pattern CLICK = Pattern.compile("^(?:click|tap)(?:\\s+on)?\\s+(?:the\\s+)?(.+)$", Pattern.CASE_INSENSITIVE);
+    private static final Pattern PRESS = Pattern.compile("^press\\s+(?:the\\s+)?(enter|tab|escape|esc)(?:\\s+key)?$", Pattern.CASE_INSENSITIVE);
+
+    // Trailing role words users add to the target ("the Login button"); mapped to snapshot roles.
+    private static final Pattern ROLE_SUFFIX = Pattern.compile("^(.+?)\\s+(button|link|tab|checkbox|radio button|radio|field|text field|textbox|text box|input|box|dropdown|drop-down|select|menu item|option)$", Pattern.CASE_INSENSITIVE);
+
+    private static final List<String> CLICKABLE = List.of("button", "link", "menuitem", "menuitemcheckbox", "menuitemradio",
+        "tab", "checkbox", "radio", "switch", "option", "treeitem");
+    private static final List<String> TYPEABLE = List.of("textbox", "searchbox", "combobox", "spinbutton");
+    private static final List<String> SELECTABLE = List.of("combobox", "listbox");
+
+    @Value("${agent.local.resolver.enabled:true}")
+    private boolean enabled;
+
+    private final LongAdder attempts = new LongAdder();
+    private final LongAdder hits = new LongAdder();
+    private final Map<String, LongAdder> misses = new ConcurrentHashMap<>();
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * An action the grammar recognised; {@link #resolve} binds it to a snapshot element.
+     */
+    public static class Intent {
+        private final String kind; // navigate|type|select|check|uncheck|click|press
+        private final String target;
+        private final String roleHint;
+        private final String value;
+
+        Intent(String kind, String target, String roleHint, String value) {
+            this.kind = kind;
+            this.target = target;
+            this.roleHint = roleHint;
+            this.value = value;
+        }
+
+        public String getKind() { return kind; }
+
+        /**
+         * True when the action needs element refs from a snapshot.
+         */
+        public boolean needsSnapshot() {
+            return !"navigate".equals(kind) && !"press".equals(kind);
+        }
+    }
+
+    /**
+     * A fully bound MCP tool call.
+     */
+    public static class Action {
+        private final String toolName;
+        private final Map<String, Object> arguments;
+        private final boolean changesPage;
+        private final String description;
+
+        Action(String toolName, Map<String, Object> arguments, boolean changesPage, String description) {
+            this.toolName = toolName;
+            this.arguments = arguments;
+            this.changesPage = changesPage;
+            this.description = description;
+        }
+
+        public String getToolName() { return toolName; }
+        public Map<String, Object> getArguments() { return arguments; }
+        /** True when the page may re-render, i.e. the current snapshot must not be reused afterwards. */
+        public boolean isChangesPage() { return changesPage; }
+        public String getDescription() { return description; }
+    }
+
+    /**
+     * Match the (variable-substituted) instruction against the supported grammars. Counts an attempt.
+     */
+    public Intent parse(String instruction) {
+        attempts.increment();
+        if (!enabled || instruction == null) return miss("disabled");
+        String s = instruction.trim().replaceAll("\\s+", " ");
+        while (s.endsWith(".")) s = s.substring(0, s.length() - 1).trim();
+        if (s.isEmpty() || s.contains("\n")) return miss("no_grammar");
+
+        Matcher m;
+        if ((m = NAVIGATE.matcher(s)).matches()) return new Intent("navigate", null, null, m.group(1));
+        if ((m = PRESS.matcher(s)).matches()) return new Intent("press", null, null, keyName(m.group(1)));
+        if ((m = TYPE_INTO.matcher(s)).matches()) return intent("type", m.group(2), unquote(m.group(1)));
+        if ((m = FILL_WITH.matcher(s)).matches()) return intent("type", m.group(1), unquote(m.group(2)));
+        if ((m = SELECT_FROM.matcher(s)).matches()) return intent("select", m.group(2), unquote(m.group(1)));
+        if ((m = CHECK.matcher(s)).matches()) {
+            String verb = m.group(1).toLowerCase(Locale.ROOT);
+            String target = m.group(2);
+            // "check that the cart shows 3 items" is a verification, not a checkbox
+            if (target.toLowerCase(Locale.ROOT).matches("^(that|if|whether)\\b.*")) return miss("no_grammar");
+            return intent(verb.startsWith("un") ? "uncheck" : "check", target, null);
+        }
+        if ((m = CLICK.matcher(s)).matches()) return intent("click", m.group(1), null);
+        return miss("no_grammar");
+    }
+
+    /**
+     * Bind an intent to exactly one element of the snapshot, or return null (counted as a miss) to fall back.
+     * Callers report the execution result via {@link #recordExecution}.
+     */
+    public Action resolve(Intent intent, SnapshotIndex index) {
+        if (intent == null) return null;
+        switch (intent.kind) {
+            case "navigate":
+                return new Action("browser_navigate", Map.of("url", intent.value), true, "navigated to " + intent.value);
+            case "press":
+                return new Action("browser_press_key", Map.of("key", intent.value), true, "pressed " + intent.value);
+            default:
+                break;
+        }
+        if (index == null || index.isEmpty()) return miss("no_snapshot");
+
+        List<String> roles = switch (intent.kind) {
+            case "type" -> TYPEABLE;
+            case "select" -> SELECTABLE;
+            case "check", "uncheck" -> List.of("checkbox", "switch", "menuitemcheckbox");
+            default -> CLICKABLE;
+        };
+        if (intent.roleHint != null) {
+            List<String> hinted = roles.stream().filter(r -> roleMatchesHint(r, intent.roleHint)).toList();
+            if (!hinted.isEmpty()) roles = hinted;
+        }
+
+        List<SnapshotIndex.Node> matches = index.findByName(roles, intent.target);
+        if (matches.isEmpty()) matches = index.findByLooseName(roles, intent.target);
+        if (matches.isEmpty()) return miss("no_match");
+        if (matches.size() > 1) return miss("ambiguous");
+
+        SnapshotIndex.Node node = matches.get(0);
+        Map<String, Object> args = new HashMap<>();
+        args.put("element", node.describe());
+        args.put("ref", node.getRef());
+        switch (intent.kind) {
+            case "type" -> {
+                args.put("text", intent.value != null ? intent.value : "");
+                return new Action("browser_type", args, false, "typed into " + node.describe());
+            }
+            case "select" -> {
+                args.put("values", List.of(intent.value != null ? intent.value : ""));
+                return new Action("browser_select_option", args, true, "selected '" + intent.value + "' in " + node.describe());
+            }
+            case "check", "uncheck" -> {
+                boolean want = "check".equals(intent.kind);
+                if (node.isChecked() == want) {
+                    // Already in the requested state: nothing to click, still a successful local resolution.
+                    return new Action(null, args, false, node.describe() + " already " + (want ? "checked" : "unchecked"));
+                }
+                return new Action("browser_click", args, true, (want ? "checked " : "unchecked ") + node.describe());
+            }
+            default -> {
+                return new Action("browser_click", args, true, "clicked " + node.describe());
+            }
+        }
+    }
+
+    /**
+     * Global fast-path counters (per-test counts are kept on the agent session / TestRun).
+     */
+    public Map<String, Object> getSnapshot() {
+        Map<String, Object> out = new LinkedHashMap<>();
+        long a = attempts.sum();
+        long h = hits.sum();
+        out.put("enabled", enabled);
+        out.put("attempts", a);
+        out.put("hits", h);
+        out.put("hitRate", a > 0 ? (double) h / a : null);
+        Map<String, Long> m = new TreeMap<>();
+        misses.forEach((k, v) -> m.put(k, v.sum()));
+        out.put("misses", m);
+        return out;
+    }
+
+    private Intent intent(String kind, String rawTarget, String value) {
+        String target = unquote(rawTarget != null ? rawTarget.trim() : "");
+        String roleHint = null;
+        Matcher suffix = ROLE_SUFFIX.matcher(target);
+        if (suffix.matches() && !suffix.group(1).isBlank()) {
+            target = unquote(suffix.group(1).trim());
+            roleHint = suffix.group(2).toLowerCase(Locale.ROOT);
+        }
+        if (target.isEmpty()) return miss("no_grammar");
+        return new Intent(kind, target, roleHint, value);
+    }
+
+    private static boolean roleMatchesHint(String role, String hint) {
+        return switch (hint) {
+            case "button" -> role.equals("button");
+            case "link" -> role.equals("link");
+            case "tab" -> role.equals("tab");
+            case "checkbox" -> role.equals("checkbox");
+            case "radio", "radio button" -> role.equals("radio");
+            case "menu item" -> role.startsWith("menuitem");
+            case "option" -> role.equals("option");
+            case "dropdown", "drop-down", "select" -> role.equals("combobox") || role.equals("listbox");
+            default -> true; // field/textbox/input/box: any role of the action's set
+        };
+    }
+
+    private static String keyName(String key) {
+        String k = key.toLowerCase(Locale.ROOT);
+        return switch (k) {
+            case "esc", "escape" -> "Escape";
+            case "tab" -> "Tab";
+            default -> "Enter";
+        };
+    }
+
+    private static String unquote(String s) {
+        if (s == null) return null;
+        String v = s.trim();
+        if (v.length() >= 2 && ((v.startsWith("\"") && v.endsWith("\"")) || (v.startsWith("'") && v.endsWith("'")))) {
+            return v.substring(1, v.length() - 1);
+        }
+        return v;
+    }
+
+    private <T> T miss(String reason) {
+        misses.computeIfAbsent(reason, r -> new LongAdder()).increment();
+        log.debug("Local resolver: fallback to agent ({})", reason);
+        return null;
+    }
+
+    /**
+     * Record the outcome of executing a resolved action; a failed tool call counts as a miss (the step falls back).
+     */
+    public void recordExecution(boolean success) {
+        if (success) {
+            hits.increment();
+        } else {
+            miss("tool_failed");
+        }
+    }
+}
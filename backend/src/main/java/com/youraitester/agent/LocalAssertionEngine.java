@@ -0,0 +1,582 @@
+package com.youraitester.agent;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Built-in assertions for verification steps, evaluated in the page without an LLM round-trip:
+ * text present/absent, element count, equality / contains / regex, numeric comparison and sortedness.
+ *
+ * {@link #parse} maps common verification phrasing ("verify the cart shows 3 items", "verify the price of
+ * 'Sauce Labs Backpack' is $29.99", "verify products are sorted by price high to low") onto an {@link Assertion};
+ * {@link #evaluate} checks a list of them with ONE browser_evaluate call, polling briefly while any fails.
+ *
+ * Results are PASS, FAIL or UNRESOLVED. UNRESOLVED (element not found / ambiguous, or a failure of a heuristic
+ * assertion such as an unquoted expected text) means the step goes to the agent as before, so a wrong guess
+ * here can cost an LLM call but never a false failure.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class LocalAssertionEngine {
+
+    public enum Type { TEXT_PRESENT, TEXT_ABSENT, COUNT, EQUALS, CONTAINS, MATCHES, NUMBER, SORTED }
+
+    public enum Status { PASS, FAIL, UNRESOLVED }
+
+    private static final String Q = "(\"[^\"]+\"|'[^']+')";
+    private static final String NUMBER = "(\\$?-?[\\d,]+(?:\\.\\d+)?%?)";
+    private static final String COUNT_WORD = "(\\d+|no|zero|one|two|three|four|five|six|seven|eight|nine|ten)";
+
+    private static final Pattern VERIFY_PREFIX = Pattern.compile(
+        "^(?:verify|assert|confirm|ensure|validate|make sure|check that|check if|check whether)(?:\\s+that)?\\s+", Pattern.CASE_INSENSITIVE);
+
+    private static final Pattern ABSENT_PAGE = Pattern.compile("^(?:the )?(?:page )?(?:does not|doesn't|do not|should not) (?:show|display|contain|have) (?:the )?(?:text )?" + Q + "$", Pattern.CASE_INSENSITIVE);
+    private static final Pattern ABSENT_TEXT = Pattern.compile("^(?:the )?(?:text |message )?" + Q + " (?:is|are) not (?:displayed|visible|shown|present)(?: on the page)?$", Pattern.CASE_INSENSITIVE);
+    private static final Pattern PRESENT_PAGE = Pattern.compile("^(?:the )?(?:page )?(?:shows|displays|contains|has)(?: the)?(?: text| message)? " + Q + "$", Pattern.CASE_INSENSITIVE);
+    private static final Pattern PRESENT_TEXT = Pattern.compile("^(?:the )?(?:text |message )?(.+?) (?:is|are) (?:displayed|visible|shown|present)(?: on the page)?$", Pattern.CASE_INSENSITIVE);
+    private static final Pattern PRESENT_APPEARS = Pattern.compile("^(?:the )?(?:text |message )?" + Q + " appears(?: on the page)?$", Pattern.CASE_INSENSITIVE);
+
+    private static final Pattern COUNT_THERE = Pattern.compile("^(?:there (?:are|is) )?(?:exactly )?" + COUNT_WORD + " ([a-z]+(?: [a-z]+)?)(?: (?:are|is) (?:displayed|shown|listed|present|visible))?(?: (?:in|on) (?:the )?([a-z]+))?$", Pattern.CASE_INSENSITIVE);
+    private static final Pattern COUNT_HAS = Pattern.compile("^(?:the )?([a-z]+?) (?:page )?(?:shows|has|contains|displays|lists) (?:exactly )?" + COUNT_WORD + " ([a-z]+(?: [a-z]+)?)$", Pattern.CASE_INSENSITIVE);
+    private static final Pattern COUNT_BADGE = Pattern.compile("^(?:the )?([a-z]+) (?:badge|count|icon) (?:is|shows|displays) " + COUNT_WORD + "$", Pattern.CASE_INSENSITIVE);
+
+    private static final Pattern SORTED = Pattern.compile("^(?:the )?(.+?) (?:are|is) (?:sorted|ordered|arranged)(?: by ([a-z]+))?(?: (?:in )?(ascending|descending|asc|desc|alphabetical(?:ly)?|reverse alphabetical(?:ly)?|a to z|z to a|a-z|z-a|low to high|high to low|lowest to highest|highest to lowest)(?: order)?)?$", Pattern.CASE_INSENSITIVE);
+    private static final Pattern REGEX = Pattern.compile("^(?:the )?(.+?) matches (?:the )?(?:pattern |regex )?(?:/(.+)/(i?)|" + Q + ")$", Pattern.CASE_INSENSITIVE);
+    private static final Pattern NUMERIC = Pattern.compile("^(?:the )?(.+?) (?:is |should be )?(greater than|more than|less than|fewer than|at least|at most|above|below|over|under|not more than|not less than|>=|<=|>|<) " + NUMBER + "$", Pattern.CASE_INSENSITIVE);
+    private static final Pattern CONTAINS = Pattern.compile("^(?:the )?(.+?) (?:contains|includes) (?:the text )?(" + Q.substring(1, Q.length() - 1) + "|\\S+)$", Pattern.CASE_INSENSITIVE);
+    private static final Pattern EQUALS = Pattern.compile("^(?:the )?(.+?) (?:is equal to|equals|is|shows|displays|reads|should be|==|=) (?:exactly )?(.+)$", Pattern.CASE_INSENSITIVE);
+    private static final Pattern OF_ENTITY = Pattern.compile("^(.+?) (?:of|for) (?:the )?(.+)$", Pattern.CASE_INSENSITIVE);
+
+    // Last word of a subject naming the value to read; everything before it scopes the lookup.
+    private static final Set<String> FIELDS = Set.of("price", "total", "subtotal", "tax", "name", "title", "description",
+        "quantity", "qty", "status", "amount", "heading", "header", "url", "message", "error", "label", "badge");
+    // Subject words that hint at a region rather than naming one specific element.
+    private static final Set<String> GENERIC = Set.of("page", "current", "product", "products", "item", "items", "cart",
+        "order", "checkout", "inventory", "list", "first", "displayed", "shown", "browser", "site", "app");
+    private static final Map<String, Integer> COUNT_WORDS = Map.ofEntries(Map.entry("no", 0), Map.entry("zero", 0),
+        Map.entry("one", 1), Map.entry("two", 2), Map.entry("three", 3), Map.entry("four", 4), Map.entry("five", 5),
+        Map.entry("six", 6), Map.entry("seven", 7), Map.entry("eight", 8), Map.entry("nine", 9), Map.entry("ten", 10));
+
+    private final McpToolExecutor mcpToolExecutor;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Value("${agent.local.assertions.enabled:true}")
+    private boolean enabled;
+
+    /**
+     * How long the in-page check keeps re-evaluating failing assertions (the page may still be rendering).
+     */
+    @Value("${agent.local.assertions.timeout.ms:2000}")
+    private long timeoutMs;
+
+    private final LongAdder verificationSteps = new LongAdder();
+    private final LongAdder unclassified = new LongAdder();
+    private final LongAdder evaluateCalls = new LongAdder();
+    private final Map<Status, LongAdder> outcomes = new EnumMap<>(Status.class);
+    private final Map<Type, LongAdder> byType = new ConcurrentHashMap<>();
+
+    {
+        for (Status s : Status.values()) outcomes.put(s, new LongAdder());
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * One parsed verification. {@code strict} is false when the expected value is a guess from unquoted prose;
+     * a FAIL of a non-strict assertion is reported as UNRESOLVED.
+     */
+    public static class Assertion {
+        private final Type type;
+        private final String description;
+        private final Map<String, Object> spec = new LinkedHashMap<>();
+        private boolean strict = true;
+
+        Assertion(Type type, String description) {
+            this.type = type;
+            this.description = description;
+            spec.put("type", type.name());
+        }
+
+        Assertion with(String key, Object value) {
+            if (value != null) spec.put(key, value);
+            return this;
+        }
+
+        Assertion lenient() {
+            this.strict = false;
+            return this;
+        }
+
+        public Type getType() { return type; }
+        public String getDescription() { return description; }
+        public boolean isStrict() { return strict; }
+    }
+
+    public static class Result {
+        private final Status status;
+        private final String actual;
+        private final String message;
+
+        Result(Status status, String actual, String message) {
+            this.status = status;
+            this.actual = actual;
+            this.message = message;
+        }
+
+        public Status getStatus() { return status; }
+        public String getActual() { return actual; }
+        public String getMessage() { return message; }
+        public boolean isPassed() { return status == Status.PASS; }
+        public boolean isUnresolved() { return status == Status.UNRESOLVED; }
+    }
+
+    /**
+     * True for instructions phrased as a verification ("verify ...", "assert ...", "make sure ...").
+     */
+    public static boolean looksLikeVerification(String instruction) {
+        return instruction != null && VERIFY_PREFIX.matcher(instruction.trim()).find();
+    }
+
+    /**
+     * Classify a (variable-substituted) verification step, or return null to leave it to the agent.
+     * Non-verification instructions return null without being counted.
+     */
+    public Assertion parse(String instruction) {
+        if (!enabled || !looksLikeVerification(instruction)) return null;
+        verificationSteps.increment();
+        String s = instruction.trim().replaceAll("\\s+", " ");
+        while (s.endsWith(".")) s = s.substring(0, s.length() - 1).trim();
+        Matcher prefix = VERIFY_PREFIX.matcher(s);
+        s = prefix.find() ? s.substring(prefix.end()).trim() : s;
+
+        Assertion a = classify(s);
+        if (a == null || s.contains(" and ")) {
+            // Compound checks ("X is shown and Y is 3") stay with the agent.
+            unclassified.increment();
+            return null;
+        }
+        byType.computeIfAbsent(a.type, t -> new LongAdder()).increment();
+        return a;
+    }
+
+    private Assertion classify(String s) {
+        Matcher m;
+        if ((m = ABSENT_PAGE.matcher(s)).matches() || (m = ABSENT_TEXT.matcher(s)).matches()) {
+            String text = unquote(m.group(1));
+            return new Assertion(Type.TEXT_ABSENT, "text '" + text + "' is not displayed").with("text", text);
+        }
+        if ((m = PRESENT_PAGE.matcher(s)).matches() || (m = PRESENT_APPEARS.matcher(s)).matches()) {
+            String text = unquote(m.group(1));
+            return new Assertion(Type.TEXT_PRESENT, "text '" + text + "' is displayed").with("text", text);
+        }
+        if ((m = COUNT_BADGE.matcher(s)).matches()) {
+            return count(m.group(2), null, m.group(1));
+        }
+        if ((m = COUNT_HAS.matcher(s)).matches()) {
+            return count(m.group(2), m.group(3), m.group(1));
+        }
+        if ((m = COUNT_THERE.matcher(s)).matches() && !isQuoted(s)) {
+            return count(m.group(1), m.group(2), m.group(3));
+        }
+        if ((m = SORTED.matcher(s)).matches()) {
+            return sorted(m.group(1), m.group(2), m.group(3));
+        }
+        if ((m = PRESENT_TEXT.matcher(s)).matches()) {
+            String raw = m.group(1);
+            String text = unquote(raw);
+            if (text.isBlank()) return null;
+            Assertion a = new Assertion(Type.TEXT_PRESENT, "text '" + text + "' is displayed").with("text", text);
+            // "the login button is displayed" names an element, not its text: only a PASS is trusted.
+            return isQuoted(raw) ? a : a.lenient();
+        }
+        if ((m = REGEX.matcher(s)).matches()) {
+            Map<String, Object> subject = subject(m.group(1));
+            if (subject == null) return null;
+            String pattern = m.group(2) != null ? m.group(2) : Pattern.quote(unquote(m.group(4)));
+            return new Assertion(Type.MATCHES, m.group(1) + " matches /" + pattern + "/").with("subject", subject)
+                .with("pattern", pattern).with("flags", m.group(3) != null && !m.group(3).isEmpty() ? "i" : "");
+        }
+        if ((m = NUMERIC.matcher(s)).matches()) {
+            Map<String, Object> subject = subject(m.group(1));
+            Double n = number(m.group(3));
+            if (subject == null || n == null) return null;
+            return new Assertion(Type.NUMBER, m.group(1) + " " + m.group(2) + " " + m.group(3)).with("subject", subject)
+                .with("op", compareOp(m.group(2))).with("number", n);
+        }
+        if ((m = CONTAINS.matcher(s)).matches()) {
+            Map<String, Object> subject = subject(m.group(1));
+            if (subject == null) return null;
+            String expected = unquote(m.group(2));
+            Assertion a = new Assertion(Type.CONTAINS, m.group(1) + " contains '" + expected + "'").with("subject", subject)
+                .with("expected", expected);
+            return isQuoted(m.group(2)) || "url".equals(subject.get("field")) ? a : a.lenient();
+        }
+        if ((m = EQUALS.matcher(s)).matches()) {
+            Map<String, Object> subject = subject(m.group(1));
+            if (subject == null) return null;
+            String raw = m.group(2).trim();
+            String expected = unquote(raw);
+            Assertion a = new Assertion(Type.EQUALS, m.group(1) + " is '" + expected + "'").with("subject", subject)
+                .with("expected", expected).with("numeric", raw.matches(NUMBER));
+            return isQuoted(raw) || raw.matches(NUMBER) ? a : a.lenient();
+        }
+        return null;
+    }
+
+    /**
+     * Evaluate assertions in order with a single browser_evaluate call. Always returns one result per assertion.
+     */
+    public List<Result> evaluate(List<Assertion> assertions) {
+        List<Result> results = new ArrayList<>();
+        if (assertions == null || assertions.isEmpty()) return results;
+
+        List<Map<String, Object>> specs = new ArrayList<>();
+        for (Assertion a : assertions) specs.add(a.spec);
+        JsonNode raw = null;
+        String error = null;
+        try {
+            String script = ASSERT_JS
+                .replace("__SPECS__", objectMapper.writeValueAsString(specs))
+                .replace("__TIMEOUT__", String.valueOf(Math.max(0, timeoutMs)));
+            evaluateCalls.increment();
+            McpToolExecutor.ToolExecutionResult r = mcpToolExecutor.executeTool("browser_evaluate", Map.of("function", script));
+            if (r != null && r.isSuccess()) {
+                raw = parseResultArray(r.getContent() != null ? r.getContent() : r.getMessage());
+                if (raw == null) error = "unreadable evaluate result";
+            } else {
+                error = r != null ? r.getMessage() : "no result";
+            }
+        } catch (Exception e) {
+            error = e.getMessage();
+        }
+        if (error != null) log.warn("Local assertions: evaluate failed ({}); falling back to agent", error);
+
+        for (int i = 0; i < assertions.size(); i++) {
+            Assertion a = assertions.get(i);
+            JsonNode node = raw != null && raw.size() > i ? raw.get(i) : null;
+            Result result = toResult(a, node, error);
+            outcomes.get(result.getStatus()).increment();
+            log.info("Local assertion [{}] {} -> {} (actual: {})", a.type, a.description, result.getStatus(), result.getActual());
+            results.add(result);
+        }
+        return results;
+    }
+
+    /**
+     * Global counters: how many verification steps were classified and how they evaluated.
+     */
+    public Map<String, Object> getSnapshot() {
+        Map<String, Object> out = new LinkedHashMap<>();
+        long steps = verificationSteps.sum();
+        long pass = outcomes.get(Status.PASS).sum();
+        long fail = outcomes.get(Status.FAIL).sum();
+        out.put("enabled", enabled);
+        out.put("verificationSteps", steps);
+        out.put("unclassified", unclassified.sum());
+        out.put("evaluateCalls", evaluateCalls.sum());
+        out.put("passed", pass);
+        out.put("failed", fail);
+        out.put("unresolved", outcomes.get(Status.UNRESOLVED).sum());
+        out.put("localRate", steps > 0 ? (double) (pass + fail) / steps : null);
+        Map<String, Long> types = new TreeMap<>();
+        byType.forEach((k, v) -> types.put(k.name().toLowerCase(Locale.ROOT), v.sum()));
+        out.put("byType", types);
+        return out;
+    }
+
+    private Result toResult(Assertion a, JsonNode node, String error) {
+        if (node == null) {
+            return new Result(Status.UNRESOLVED, null, "Local check unavailable: " + (error != null ? error : "no result"));
+        }
+        String status = node.path("status").asText("unresolved");
+        String actual = node.hasNonNull("actual") ? node.get("actual").asText() : null;
+        String detail = node.hasNonNull("message") ? node.get("message").asText() : null;
+        if ("pass".equals(status)) {
+            return new Result(Status.PASS, actual, "Verified locally: " + a.description + (actual != null ? " (actual: " + actual + ")" : ""));
+        }
+        if ("fail".equals(status) && a.strict) {
+            return new Result(Status.FAIL, actual, "Verification failed: expected " + a.description
+                + (actual != null ? ", actual: " + actual : "") + (detail != null ? " (" + detail + ")" : ""));
+        }
+        return new Result(Status.UNRESOLVED, actual, detail != null ? detail : "not conclusive");
+    }
+
+    private Assertion count(String countWord, String noun, String context) {
+        Integer expected = countValue(countWord);
+        if (expected == null) return null;
+        String n = noun != null ? singular(noun.trim().toLowerCase(Locale.ROOT).replaceAll("\\s+", "_")) : null;
+        String ctx = context != null ? singular(context.trim().toLowerCase(Locale.ROOT)) : null;
+        if ("page".equals(ctx)) ctx = null;
+        if (n == null && ctx == null) return null;
+        return new Assertion(Type.COUNT, expected + " " + (noun != null ? noun : "") + (ctx != null ? " in " + ctx : "").trim())
+            .with("noun", n).with("context", ctx).with("expected", expected);
+    }
+
+    private Assertion sorted(String subjectText, String by, String direction) {
+        String subject = subjectText.trim().toLowerCase(Locale.ROOT);
+        List<String> words = new ArrayList<>(Arrays.asList(subject.replace("'s", "").split("\\s+")));
+        String last = singular(words.get(words.size() - 1));
+        String field;
+        boolean guessed = false;
+        if (by != null) {
+            field = singular(by.toLowerCase(Locale.ROOT));
+        } else if (FIELDS.contains(last)) {
+            field = last;
+            words.remove(words.size() - 1);
+        } else if (direction != null && direction.toLowerCase(Locale.ROOT).matches(".*(low|high).*")) {
+            field = "price";
+            guessed = true;
+        } else {
+            field = "name";
+            guessed = true;
+        }
+        String dir = direction == null ? "asc" : direction.toLowerCase(Locale.ROOT);
+        boolean desc = dir.startsWith("desc") || dir.startsWith("reverse") || dir.startsWith("z") || dir.startsWith("high");
+        String hint = words.isEmpty() ? null : singular(words.get(words.size() - 1));
+        Assertion a = new Assertion(Type.SORTED, subjectText + " sorted by " + field + (desc ? " descending" : " ascending"))
+            .with("field", field).with("hint", hint).with("order", desc ? "desc" : "asc");
+        // A field guessed from the direction wording may not be the one the step means
+        return guessed ? a.lenient() : a;
+    }
+
+    /**
+     * "page title", "cart total", "price of 'Sauce Labs Backpack'", "Sauce Labs Backpack price" ->
+     * {field, hint?, entity?}; null when the subject does not end in a known field.
+     */
+    private Map<String, Object> subject(String raw) {
+        String s = raw.trim();
+        String entity = null;
+        String fieldPart = s;
+        Matcher of = OF_ENTITY.matcher(s);
+        if (of.matches()) {
+            fieldPart = of.group(1);
+            entity = unquote(of.group(2).trim());
+        }
+        String[] words = fieldPart.replace("'s ", " ").trim().split("\\s+");
+        String field = singular(words[words.length - 1].toLowerCase(Locale.ROOT));
+        if ("qty".equals(field)) field = "quantity";
+        if (!FIELDS.contains(field)) return null;
+        String rest = String.join(" ", Arrays.copyOf(words, words.length - 1)).trim();
+        if (rest.toLowerCase(Locale.ROOT).startsWith("the ")) rest = rest.substring(4).trim();
+        String hint = null;
+        if (!rest.isEmpty()) {
+            String restLower = rest.toLowerCase(Locale.ROOT);
+            if (entity == null && !isQuoted(rest) && Arrays.stream(restLower.split("\\s+")).allMatch(GENERIC::contains)) {
+                hint = singular(restLower.split("\\s+")[restLower.split("\\s+").length - 1]);
+            } else if (entity == null) {
+                entity = unquote(rest);
+            } else {
+                hint = singular(restLower);
+            }
+        }
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("field", field);
+        if (hint != null && !"current".equals(hint)) out.put("hint", hint);
+        if (entity != null && !entity.isBlank()) out.put("entity", entity);
+        return out;
+    }
+
+    private static String compareOp(String phrase) {
+        return switch (phrase.toLowerCase(Locale.ROOT)) {
+            case "greater than", "more than", "above", "over", ">" -> "gt";
+            case "less than", "fewer than", "below", "under", "<" -> "lt";
+            case "at least", "not less than", ">=" -> "gte";
+            default -> "lte";
+        };
+    }
+
+    private static Integer countValue(String word) {
+        if (word == null) return null;
+        String w = word.toLowerCase(Locale.ROOT);
+        if (w.matches("\\d+")) return Integer.parseInt(w);
+        return COUNT_WORDS.get(w);
+    }
+
+    private static Double number(String s) {
+        try {
+            return Double.parseDouble(s.replace("$", "").replace(",", "").replace("%", ""));
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    private static String singular(String w) {
+        if (w == null) return null;
+        if (w.endsWith("ies") && w.length() > 4) return w.substring(0, w.length() - 3) + "y";
+        if (w.endsWith("ses") || w.endsWith("xes")) return w.substring(0, w.length() - 2);
+        if (w.endsWith("s") && !w.endsWith("ss") && !w.equals("status") && w.length() > 3) return w.substring(0, w.length() - 1);
+        return w;
+    }
+
+    private static boolean isQuoted(String s) {
+        String v = s.trim();
+        return v.length() >= 2 && ((v.startsWith("\"") && v.endsWith("\"")) || (v.startsWith("'") && v.endsWith("'")));
+    }
+
+    private static String unquote(String s) {
+        if (s == null) return null;
+        String v = s.trim();
+        return isQuoted(v) ? v.substring(1, v.length() - 1) : v;
+    }
+
+    /**
+     * Playwright MCP returns "### Result\n&lt;json&gt;\n\n### Ran Playwright code ..."; older servers return the bare value.
+     */
+    private JsonNode parseResultArray(String content) {
+        if (content == null || content.isBlank()) return null;
+        String text = content;
+        int result = text.indexOf("### Result");
+        if (result >= 0) {
+            text = text.substring(result + "### Result".length());
+            int next = text.indexOf("\n###");
+            if (next >= 0) text = text.substring(0, next);
+        }
+        text = text.trim();
+        try {
+            JsonNode node = objectMapper.readTree(text);
+            if (node.isTextual()) node = objectMapper.readTree(node.asText());
+            if (node.isArray()) return node;
+        } catch (Exception ignored) {
+            // fall through to bracket extraction
+        }
+        int start = text.indexOf('[');
+        int end = text.lastIndexOf(']');
+        if (start < 0 || end <= start) return null;
+        try {
+            JsonNode node = objectMapper.readTree(text.substring(start, end + 1));
+            return node.isArray() ? node : null;
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    private static final String ASSERT_JS = """
+        async () => {
+          const specs = __SPECS__;
+          const timeoutMs = __TIMEOUT__;
+          const norm = s => (s == null ? '' : String(s)).replace(/\\s+/g, ' ').trim().toLowerCase();
+          const num = s => { if (s == null) return null; const m = String(s).replace(/,/g, '').match(/-?\\d+(?:\\.\\d+)?/); return m ? parseFloat(m[0]) : null; };
+          const text = el => ((el.innerText != null ? el.innerText : el.textContent) || '').trim();
+          const visible = el => { const r = el.getBoundingClientRect(); const st = getComputedStyle(el); return (r.width > 0 || r.height > 0) && st.visibility !== 'hidden' && st.display !== 'none'; };
+          const attrs = el => norm([typeof el.className === 'string' ? el.className : '', el.id, el.getAttribute('data-test'), el.getAttribute('data-testid'), el.getAttribute('aria-label'), el.getAttribute('name')].join(' '));
+          const all = root => Array.from((root || document.body).querySelectorAll('*'));
+          const outermost = els => els.filter(e => !els.some(o => o !== e && o.contains(e)));
+          const innermost = els => els.filter(e => !els.some(o => o !== e && e.contains(o)));
+          const largestGroup = els => { const g = {}; els.forEach(e => { const k = e.tagName + '|' + attrs(e); (g[k] = g[k] || []).push(e); }); let best = []; Object.values(g).forEach(v => { if (v.length > best.length) best = v; }); return best; };
+          const byField = (field, hint, root) => {
+            let els = innermost(all(root).filter(e => attrs(e).includes(field) && visible(e)));
+            if (hint) { const h = els.filter(e => attrs(e).includes(hint)); if (h.length) els = h; }
+            return els;
+          };
+          const read = s => {
+            const f = s.field;
+            if (f === 'url') return { value: location.href };
+            if (f === 'title' && !s.entity && (!s.hint || s.hint === 'page')) return { value: document.title };
+            if ((f === 'heading' || f === 'header') && !s.entity) {
+              const h = document.querySelector('h1') || document.querySelector('[role=heading]');
+              return h ? { value: text(h) } : { err: 'no heading found' };
+            }
+            if (s.entity) {
+              const want = norm(s.entity);
+              const ents = innermost(all().filter(e => visible(e) && norm(text(e)) === want));
+              if (ents.length !== 1) return { err: ents.length ? "'" + s.entity + "' appears more than once" : "'" + s.entity + "' not found" };
+              let node = ents[0];
+              for (let i = 0; i < 8 && node; i++, node = node.parentElement) {
+                const c = byField(f, s.hint, node).filter(e => !e.contains(ents[0]) && !ents[0].contains(e));
+                if (c.length === 1) return { value: text(c[0]) };
+                if (c.length > 1) return { err: "several '" + f + "' values near '" + s.entity + "'" };
+              }
+              return { err: "no '" + f + "' found near '" + s.entity + "'" };
+            }
+            const c = byField(f, s.hint);
+            if (c.length === 1) return { value: text(c[0]) };
+            return { err: c.length ? "several elements match '" + f + "'" : "no element matches '" + f + "'" };
+          };
+          // Order: context-qualified stem (cart_item), context badge (cart badge "3"), bare noun (item). A bare-noun
+          // count, or one where largestGroup dropped elements, is a guess: a mismatch is unresolved, not a failure.
+          const count = s => {
+            const tokens = e => attrs(e).split(/\\s+/);
+            const matching = stem => outermost(all().filter(e => visible(e) && tokens(e).some(t => t === stem || t.endsWith('_' + stem) || t.endsWith('-' + stem))));
+            const grouped = (els, qualified) => { const g = largestGroup(els); return { value: g.length, heuristic: !qualified || g.length !== els.length }; };
+            if (s.noun && s.context) {
+              for (const stem of [s.context + '_' + s.noun, s.context + '-' + s.noun, s.context + s.noun]) {
+                const els = matching(stem);
+                if (els.length) return grouped(els, true);
+              }
+            }
+            if (s.context) {
+              const b = all().filter(e => visible(e) && attrs(e).includes(s.context) && /badge|count|qty|quantity/.test(attrs(e)) && /^\\d+$/.test(text(e)));
+              if (b.length === 1) return { value: parseInt(text(b[0]), 10) };
+            }
+            if (s.noun) {
+              const els = matching(s.noun);
+              if (els.length) return grouped(els, false);
+            }
+            return { value: 0, definite: false };
+          };
+          const one = s => {
+            if (s.type === 'TEXT_PRESENT' || s.type === 'TEXT_ABSENT') {
+              const found = norm(document.body.innerText).includes(norm(s.text));
+              const ok = s.type === 'TEXT_PRESENT' ? found : !found;
+              return { status: ok ? 'pass' : 'fail', actual: found ? 'present' : 'absent' };
+            }
+            if (s.type === 'COUNT') {
+              const r = count(s);
+              if (r.definite === false) return { status: 'unresolved', message: 'no matching elements or badge found' };
+              if (r.value !== s.expected && r.heuristic) return { status: 'unresolved', actual: String(r.value), message: 'counted ' + r.value + ' by a loose match, not conclusive' };
+              return { status: r.value === s.expected ? 'pass' : 'fail', actual: String(r.value) };
+            }
+            if (s.type === 'SORTED') {
+              const vals = largestGroup(byField(s.field, s.hint)).map(text).filter(v => v);
+              if (vals.length < 2) return { status: 'unresolved', message: "fewer than two '" + s.field + "' values found" };
+              const nums = vals.map(num);
+              const numeric = s.field !== 'name' && nums.every(n => n !== null);
+              const cmp = (a, b) => numeric ? a - b : String(a).localeCompare(String(b), undefined, { sensitivity: 'base' });
+              const xs = numeric ? nums : vals;
+              for (let i = 1; i < xs.length; i++) {
+                const c = cmp(xs[i - 1], xs[i]);
+                if (s.order === 'desc' ? c < 0 : c > 0) return { status: 'fail', actual: vals.slice(0, 10).join(' | '), message: "'" + vals[i - 1] + "' comes before '" + vals[i] + "'" };
+              }
+              return { status: 'pass', actual: vals.slice(0, 10).join(' | ') };
+            }
+            const r = read(s.subject);
+            if (r.err) return { status: 'unresolved', message: r.err };
+            const v = r.value;
+            if (s.type === 'EQUALS') {
+              const ok = s.numeric ? num(v) !== null && num(v) === num(s.expected) : norm(v) === norm(s.expected);
+              return { status: ok ? 'pass' : 'fail', actual: v };
+            }
+            if (s.type === 'CONTAINS') return { status: norm(v).includes(norm(s.expected)) ? 'pass' : 'fail', actual: v };
+            if (s.type === 'MATCHES') return { status: new RegExp(s.pattern, s.flags).test(v) ? 'pass' : 'fail', actual: v };
+            if (s.type === 'NUMBER') {
+              const n = num(v);
+              if (n === null) return { status: 'unresolved', actual: v, message: 'not a number' };
+              const ok = { gt: n > s.number, gte: n >= s.number, lt: n < s.number, lte: n <= s.number }[s.op];
+              return { status: ok ? 'pass' : 'fail', actual: v };
+            }
+            return { status: 'unresolved', message: 'unknown assertion' };
+          };
+          const run = s => { try { return one(s); } catch (e) { return { status: 'unresolved', message: String((e && e.message) || e) }; } };
+          let results = specs.map(run);
+          const deadline = Date.now() + timeoutMs;
+          while (results.some(r => r.status === 'fail') && Date.now() < deadline) {
+            await new Promise(res => setTimeout(res, 250));
+            results = results.map((r, i) => r.status === 'fail' ? run(specs[i]) : r);
+          }
+          return results;
+        }
+        """;
+}
@@ -0,0 +1,126 @@
+package com.youraitester.agent;
+
+import com.youraitester.service.McpClient;
+import com.youraitester.service.OfficialPlaywrightMcpService;
+import com.youraitester.service.SharedMcpServer;
+import com.youraitester.service.StdioMcpClient;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Memory / concurrency benchmark of the two MCP session modes: a process per test vs isolated contexts on one
+ * shared server. For each concurrency level it opens that many sessions in parallel, navigates each to
+ * {@code url}, samples process-tree RSS and then closes them.
+ *
+ * Per-session memory is the marginal RSS over the mode's idle baseline (nothing for "process", an empty shared
+ * server for "shared"); max concurrency is the estimate for {@code memoryBudgetMb} from that figure.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class McpSessionBenchmark {
+
+    private static final int MAX_LEVEL = 50;
+
+    private final OfficialPlaywrightMcpService mcpService;
+    private final SharedMcpServer sharedMcpServer;
+
+    public Map<String, Object> run(String url, List<Integer> levels, long memoryBudgetMb) {
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("url", url);
+        out.put("memoryBudgetMb", memoryBudgetMb);
+        for (String mode : List.of(OfficialPlaywrightMcpService.MODE_PROCESS, OfficialPlaywrightMcpService.MODE_SHARED)) {
+            out.put(mode, measureMode(mode, url, levels, memoryBudgetMb * 1024 * 1024));
+        }
+        return out;
+    }
+
+    private Map<String, Object> measureMode(String mode, String url, List<Integer> levels, long budgetBytes) {
+        Map<String, Object> result = new LinkedHashMap<>();
+        long baseline = 0;
+        if (OfficialPlaywrightMcpService.MODE_SHARED.equals(mode)) {
+            try {
+                // Start the server (if needed) so the baseline is an idle shared process
+                mcpService.closeClient(mcpService.openClient(mode));
+                baseline = SharedMcpServer.rssBytes(sharedMcpServer.getPid());
+            } catch (Exception e) {
+                result.put("error", e.getMessage());
+                return result;
+            }
+        }
+        result.put("baselineRssBytes", baseline);
+
+        List<Map<String, Object>> rows = new ArrayList<>();
+        long perSession = 0;
+        for (int level : levels) {
+            int n = Math.max(1, Math.min(level, MAX_LEVEL));
+            Map<String, Object> row = measureLevel(mode, url, n, baseline);
+            rows.add(row);
+            if ((int) row.get("failures") == 0) {
+                perSession = (long) row.get("rssBytesPerSession");
+            }
+        }
+        result.put("levels", rows);
+        result.put("rssBytesPerSession", perSession);
+        result.put("estimatedMaxConcurrency", perSession > 0 ? Math.max(0, (budgetBytes - baseline) / perSession) : null);
+        return result;
+    }
+
+    private Map<String, Object> measureLevel(String mode, String url, int n, long baseline) {
+        ExecutorService pool = Executors.newFixedThreadPool(n);
+        List<McpClient> clients = Collections.synchronizedList(new ArrayList<>());
+        List<Long> navigateMs = Collections.synchronizedList(new ArrayList<>());
+        int failures = 0;
+        long started = System.nanoTime();
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < n; i++) {
+                futures.add(pool.submit(() -> {
+                    McpClient client = mcpService.openClient(mode);
+                    clients.add(client);
+                    long t0 = System.nanoTime();
+                    Map<String, Object> nav = mcpService.callToolOn(client, "browser_navigate", Map.of("url", url));
+                    if (!Boolean.TRUE.equals(nav.get("success"))) {
+                        throw new IllegalStateException(String.valueOf(nav.get("message")));
+                    }
+                    navigateMs.add((System.nanoTime() - t0) / 1_000_000);
+                    return null;
+                }));
+            }
+            for (Future<?> f : futures) {
+                try {
+                    f.get(180, TimeUnit.SECONDS);
+                } catch (Exception e) {
+                    failures++;
+                    log.warn("MCP session benchmark ({}, {} sessions) failed: {}", mode, n, e.getMessage());
+                }
+            }
+            long wallMs = (System.nanoTime() - started) / 1_000_000;
+            long rss = OfficialPlaywrightMcpService.MODE_SHARED.equals(mode)
+                ? SharedMcpServer.rssBytes(sharedMcpServer.getPid())
+                : clients.stream().filter(c -> c instanceof StdioMcpClient)
+                    .mapToLong(c -> ((StdioMcpClient) c).getPid()).filter(pid -> pid > 0)
+                    .map(SharedMcpServer::rssBytes).sum();
+
+            Map<String, Object> row = new LinkedHashMap<>();
+            row.put("sessions", n);
+            row.put("failures", failures);
+            row.put("openAndNavigateWallMs", wallMs);
+            List<Long> sorted = new ArrayList<>(navigateMs);
+            Collections.sort(sorted);
+            row.put("navigateP50Ms", sorted.isEmpty() ? null : sorted.get(sorted.size() / 2));
+            row.put("navigateMaxMs", sorted.isEmpty() ? null : sorted.get(sorted.size() - 1));
+            row.put("rssBytes", rss);
+            int ok = n - failures;
+            row.put("rssBytesPerSession", ok > 0 ? Math.max(0, rss - baseline) / ok : 0L);
+            return row;
+        } finally {
+            clients.forEach(mcpService::closeClient);
+            pool.shutdownNow();
+        }
+    }
+}
@@ -1,7 +1,11 @@
 package com.youraitester.agent;
 
 import com.youraitester.agent.impl.SimpleTool;
+import com.youraitester.service.ExecutionPhaseStats;
+import com.youraitester.service.HotPathLog;
+import com.youraitester.service.McpClient;
 import com.youraitester.service.OfficialPlaywrightMcpService;
+import com.youraitester.service.PlaywrightJavaToolService;
 import lombok.Builder;
 import lombok.Data;
 import lombok.RequiredArgsConstructor;
@@ -9,10 +13,12 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Component;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Executes official Microsoft Playwright MCP tools
- * Bridges between LLM tool calls and official MCP server
+ * Bridges between LLM tool calls and official MCP server, or the in-process Playwright Java implementation of
+ * the same tools when agent.tool.backend=playwright-java
  */
 @Component
 @RequiredArgsConstructor
@@ -20,6 +26,18 @@ import java.util.*;
 public class McpToolExecutor {
     
     private final OfficialPlaywrightMcpService mcpService;
+    private final PlaywrightJavaToolService playwrightJavaToolService;
+    private final ExecutionPhaseStats phaseStats;
+
+    // Input actions whose intermediate results the agent doesn't need to look at; runs of them can be batched
+    private static final Set<String> PIPELINEABLE = Set.of(
+        "browser_type", "browser_click", "browser_select_option", "browser_press_key", "browser_hover", "browser_fill_form"
+    );
+
+    private static final long[] TOOL_LATENCY_BUCKETS_MS = {10, 25, 50, 100, 250, 500, 1000, 2500, 5000, 10000};
+
+    // "<backend>:<tool>" -> latency of the backend call
+    private final Map<String, LatencyHistogram> toolLatency = new ConcurrentHashMap<>();
     
     /**
      * Result of tool execution
@@ -32,6 +50,18 @@ public class McpToolExecutor {
         private boolean success;
         private String path; // File path for resources like screenshots
     }
+
+    /**
+     * Result of an ordered tool batch: one entry per submitted call, in order. Status is "ok", "failed" or
+     * "skipped" (not sent because an earlier call failed).
+     */
+    @Data
+    @Builder
+    public static class BatchExecutionResult {
+        private List<ToolExecutionResult> results;
+        private List<String> statuses;
+        private int failedIndex; // -1 when every call succeeded
+    }
     
     /**
      * Get all available official MCP tools
@@ -222,40 +252,28 @@ public class McpToolExecutor {
      * Execute an MCP tool
      */
     public ToolExecutionResult executeTool(String toolName, Map<String, Object> arguments) {
-        log.info("Executing MCP tool: {} with args: {}", toolName, arguments);
+        if (HotPathLog.sampled(HotPathLog.MCP_CALL)) {
+            log.info("Executing MCP tool: {}", toolName);
+        }
+        if (HotPathLog.isDebugTrace()) {
+            // Arguments carry typed text: only in a debug trace run, capped
+            log.info("[DEBUG_TRACE] MCP tool {} args: {}", toolName, HotPathLog.cap(arguments));
+        }
         
         try {
             // Backwards-compatible aliasing:
             // - The official Playwright MCP tool name is "browser_snapshot"
             // - We expose it to the LLM as "snapshot" (shorter + stable)
             String mcpToolName = "snapshot".equals(toolName) ? "browser_snapshot" : toolName;
-            Map<String, Object> result = mcpService.callTool(mcpToolName, arguments);
-            
-            String message = result.getOrDefault("message", "").toString();
-            String content = result.get("content") != null ? result.get("content").toString() : null;
-            String path = result.get("path") != null ? result.get("path").toString() : null;
-            boolean success = Boolean.TRUE.equals(result.get("success"));
-            
-            // Debug logging for screenshot calls
-            if ("browser_take_screenshot".equals(toolName)) {
-                log.info(">>> MCP screenshot result keys: {}", result.keySet());
-                log.info(">>> MCP screenshot success: {}", success);
-                log.info(">>> MCP screenshot path: {}", path);
-                log.info(">>> MCP screenshot message: {}", message);
-                log.info(">>> MCP screenshot content length: {}", content != null ? content.length() : 0);
-            }
-            
-            // For browser_snapshot, truncate message but keep full content
-            if (("browser_snapshot".equals(toolName) || "snapshot".equals(toolName)) && content != null && content.length() > 500) {
-                message = "Accessibility tree captured (" + content.length() + " chars)";
-            }
-            
-            return ToolExecutionResult.builder()
-                .success(success)
-                .message(message)
-                .content(content)
-                .path(path)
-                .build();
+            boolean inProcess = playwrightJavaToolService.isActive();
+            long started = System.nanoTime();
+            Map<String, Object> result = inProcess
+                ? playwrightJavaToolService.callTool(mcpToolName, arguments)
+                : mcpService.callTool(mcpToolName, arguments);
+            String backend = inProcess ? PlaywrightJavaToolService.BACKEND_NAME : "mcp";
+            recordLatency(backend, mcpToolName, started);
+            recordPhase(backend, mcpToolName, started);
+            return toExecutionResult(toolName, result);
                 
         } catch (Exception e) {
             log.error("Tool execution failed: {}", e.getMessage());
@@ -266,4 +284,138 @@ public class McpToolExecutor {
                 .build();
         }
     }
+
+    public static boolean isPipelineable(String toolName) {
+        return PIPELINEABLE.contains(toolName);
+    }
+
+    /**
+     * Execute an ordered batch of tool calls with one await (pipelined on the MCP session, see
+     * OfficialPlaywrightMcpService#callTools). Stops at the first failure; every executed call's result keeps
+     * its (incremental) page snapshot.
+     */
+    public BatchExecutionResult executeBatch(List<String> toolNames, List<Map<String, Object>> arguments) {
+        if (HotPathLog.sampled(HotPathLog.MCP_CALL)) {
+            log.info("Executing MCP tool batch: {}", HotPathLog.cap(toolNames));
+        }
+        List<ToolExecutionResult> results = new ArrayList<>();
+        List<String> statuses = new ArrayList<>();
+        int failedIndex = -1;
+        try {
+            List<McpClient.ToolCall> calls = new ArrayList<>();
+            for (int i = 0; i < toolNames.size(); i++) {
+                Map<String, Object> args = arguments.get(i);
+                calls.add(new McpClient.ToolCall(toolNames.get(i), args != null ? args : Map.of()));
+            }
+            boolean inProcess = playwrightJavaToolService.isActive();
+            long started = System.nanoTime();
+            List<Map<String, Object>> raw = inProcess ? callInProcess(calls) : mcpService.callTools(calls);
+            String backend = inProcess ? PlaywrightJavaToolService.BACKEND_NAME : "mcp";
+            recordLatency(backend, "batch", started);
+            recordPhase(backend, "batch", started);
+            for (int i = 0; i < raw.size(); i++) {
+                ToolExecutionResult result = toExecutionResult(toolNames.get(i), raw.get(i));
+                results.add(result);
+                statuses.add(result.isSuccess() ? "ok" : "failed");
+                if (!result.isSuccess()) {
+                    failedIndex = i;
+                    break;
+                }
+            }
+        } catch (Exception e) {
+            log.error("Tool batch execution failed: {}", e.getMessage());
+            failedIndex = results.size();
+            results.add(ToolExecutionResult.builder()
+                .success(false)
+                .message("Tool execution failed: " + e.getMessage())
+                .content("")
+                .build());
+            statuses.add("failed");
+        }
+        for (int i = results.size(); failedIndex >= 0 && i < toolNames.size(); i++) {
+            results.add(ToolExecutionResult.builder()
+                .success(false)
+                .message("Skipped: batch stopped at call " + (failedIndex + 1) + " (" + toolNames.get(failedIndex) + ")")
+                .content("")
+                .build());
+            statuses.add("skipped");
+        }
+        return BatchExecutionResult.builder().results(results).statuses(statuses).failedIndex(failedIndex).build();
+    }
+
+    /**
+     * In-process backend: no round trip to save, same stop-at-failure contract.
+     */
+    private List<Map<String, Object>> callInProcess(List<McpClient.ToolCall> calls) {
+        List<Map<String, Object>> results = new ArrayList<>();
+        for (McpClient.ToolCall call : calls) {
+            Map<String, Object> result = playwrightJavaToolService.callTool(call.name(), call.arguments());
+            results.add(result);
+            if (!Boolean.TRUE.equals(result.get("success"))) break;
+        }
+        return results;
+    }
+
+    public String getBackendName() {
+        return playwrightJavaToolService.isActive() ? PlaywrightJavaToolService.BACKEND_NAME : "mcp";
+    }
+
+    void recordLatency(String backend, String toolName, long startedNanos) {
+        long ms = (System.nanoTime() - startedNanos) / 1_000_000;
+        toolLatency.computeIfAbsent(backend + ":" + toolName, k -> new LatencyHistogram(TOOL_LATENCY_BUCKETS_MS)).record(ms);
+    }
+
+    /**
+     * Run-phase stats: every agent tool call is an MCP call (tagged by backend and tool); navigations and
+     * screenshots also count for their phase.
+     */
+    private void recordPhase(String backend, String toolName, long startedNanos) {
+        long ms = (System.nanoTime() - startedNanos) / 1_000_000;
+        phaseStats.record(ExecutionPhaseStats.MCP, ms, "backend", backend, "tool", toolName);
+        if ("browser_navigate".equals(toolName) || "browser_navigate_back".equals(toolName)) {
+            phaseStats.record(ExecutionPhaseStats.NAVIGATION, ms, "engine", backend);
+        } else if ("browser_take_screenshot".equals(toolName)) {
+            phaseStats.record(ExecutionPhaseStats.SCREENSHOT, ms, "engine", backend, "operation", "capture");
+        }
+    }
+
+    /**
+     * Tool call latency per backend and tool, for comparing the stdio MCP server with the in-process backend.
+     */
+    public Map<String, Object> getLatencySnapshot() {
+        Map<String, Object> out = new TreeMap<>();
+        toolLatency.forEach((key, h) -> out.put(key, h.snapshot()));
+        return out;
+    }
+
+    /**
+     * Map an OfficialPlaywrightMcpService result map to a ToolExecutionResult.
+     */
+    static ToolExecutionResult toExecutionResult(String toolName, Map<String, Object> result) {
+        String message = result.getOrDefault("message", "").toString();
+        String content = result.get("content") != null ? result.get("content").toString() : null;
+        String path = result.get("path") != null ? result.get("path").toString() : null;
+        boolean success = Boolean.TRUE.equals(result.get("success"));
+
+        // Debug logging for screenshot calls
+        if ("browser_take_screenshot".equals(toolName) && log.isDebugEnabled()) {
+            log.debug(">>> MCP screenshot result keys: {}", result.keySet());
+            log.debug(">>> MCP screenshot success: {}", success);
+            log.debug(">>> MCP screenshot path: {}", path);
+            log.debug(">>> MCP screenshot message: {}", HotPathLog.cap(message));
+            log.debug(">>> MCP screenshot content length: {}", content != null ? content.length() : 0);
+        }
+
+        // For browser_snapshot, truncate message but keep full content
+        if (("browser_snapshot".equals(toolName) || "snapshot".equals(toolName)) && content != null && content.length() > 500) {
+            message = "Accessibility tree captured (" + content.length() + " chars)";
+        }
+
+        return ToolExecutionResult.builder()
+            .success(success)
+            .message(message)
+            .content(content)
+            .path(path)
+            .build();
+    }
 }
@@ -0,0 +1,146 @@
+package com.youraitester.agent;
+
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Indexed view of a Playwright MCP accessibility snapshot (the YAML-like tree returned by browser_snapshot):
+ *
+ * <pre>
+ * - generic [ref=e2]:
+ *   - textbox "Username" [ref=e5]
+ *   - button "Login" [ref=e9] [cursor=pointer]
+ * </pre>
+ *
+ * Only nodes carrying a ref are kept (those are the ones tools can target). Parent links follow indentation.
+ */
+public class SnapshotIndex {
+
+    private static final Pattern NODE_LINE = Pattern.compile("^(\\s*)- ([a-zA-Z]+)(?: \"((?:[^\"\\\\]|\\\\.)*)\")?(.*)$");
+    private static final Pattern REF = Pattern.compile("\\[ref=([^\\]\\s]+)\\]");
+
+    public static class Node {
+        private final String role;
+        private final String name;
+        private final String ref;
+        private final int depth;
+        private final Node parent;
+        private final boolean disabled;
+        private final boolean checked;
+
+        Node(String role, String name, String ref, int depth, Node parent, boolean disabled, boolean checked) {
+            this.role = role;
+            this.name = name;
+            this.ref = ref;
+            this.depth = depth;
+            this.parent = parent;
+            this.disabled = disabled;
+            this.checked = checked;
+        }
+
+        public String getRole() { return role; }
+        public String getName() { return name; }
+        public String getRef() { return ref; }
+        public int getDepth() { return depth; }
+        public Node getParent() { return parent; }
+        public boolean isDisabled() { return disabled; }
+        public boolean isChecked() { return checked; }
+
+        /**
+         * Human-readable element description for MCP tool calls (the "element" argument).
+         */
+        public String describe() {
+            return name != null && !name.isEmpty() ? role + " \"" + name + "\"" : role;
+        }
+    }
+
+    private final List<Node> nodes = new ArrayList<>();
+    private final Map<String, List<Node>> byRole = new HashMap<>();
+
+    private SnapshotIndex() {
+    }
+
+    public static SnapshotIndex parse(String snapshot) {
+        SnapshotIndex index = new SnapshotIndex();
+        if (snapshot == null || snapshot.isEmpty()) return index;
+
+        // Stack of (indent, node) for parent resolution; nodes without refs still take part via their indent.
+        Deque<Object[]> stack = new ArrayDeque<>();
+        for (String line : snapshot.split("\n")) {
+            Matcher m = NODE_LINE.matcher(line);
+            if (!m.matches()) continue;
+            int indent = m.group(1).length();
+            String role = m.group(2).toLowerCase(Locale.ROOT);
+            String name = m.group(3) != null ? m.group(3).replace("\\\"", "\"") : "";
+            String attrs = m.group(4) != null ? m.group(4) : "";
+
+            while (!stack.isEmpty() && (int) stack.peek()[0] >= indent) stack.pop();
+            Node parent = null;
+            for (Object[] entry : stack) {
+                if (entry[1] != null) { parent = (Node) entry[1]; break; }
+            }
+
+            Matcher ref = REF.matcher(attrs);
+            Node node = null;
+            if (ref.find()) {
+                node = new Node(role, name, ref.group(1), stack.size(), parent,
+                    attrs.contains("[disabled"), attrs.contains("[checked]") || attrs.contains("[checked=true]"));
+                index.nodes.add(node);
+                index.byRole.computeIfAbsent(role, r -> new ArrayList<>()).add(node);
+            }
+            stack.push(new Object[]{indent, node});
+        }
+        return index;
+    }
+
+    public List<Node> getNodes() {
+        return Collections.unmodifiableList(nodes);
+    }
+
+    public boolean isEmpty() {
+        return nodes.isEmpty();
+    }
+
+    /**
+     * Enabled nodes with one of the given roles whose accessible name equals {@code name}
+     * (case-insensitive, whitespace-collapsed, trailing ':' / '*' ignored).
+     */
+    public List<Node> findByName(Collection<String> roles, String name) {
+        String wanted = normalizeName(name);
+        List<Node> out = new ArrayList<>();
+        if (wanted.isEmpty()) return out;
+        for (String role : roles) {
+            for (Node n : byRole.getOrDefault(role, List.of())) {
+                if (!n.isDisabled() && normalizeName(n.getName()).equals(wanted)) out.add(n);
+            }
+        }
+        return out;
+    }
+
+    /**
+     * Looser comparison that ignores punctuation (e.g. "Sign-in" vs "sign in"), for a second matching pass.
+     */
+    public List<Node> findByLooseName(Collection<String> roles, String name) {
+        String wanted = looseName(name);
+        List<Node> out = new ArrayList<>();
+        if (wanted.isEmpty()) return out;
+        for (String role : roles) {
+            for (Node n : byRole.getOrDefault(role, List.of())) {
+                if (!n.isDisabled() && looseName(n.getName()).equals(wanted)) out.add(n);
+            }
+        }
+        return out;
+    }
+
+    static String normalizeName(String s) {
+        if (s == null) return "";
+        String v = s.trim().toLowerCase(Locale.ROOT).replaceAll("\\s+", " ");
+        while (v.endsWith(":") || v.endsWith("*")) v = v.substring(0, v.length() - 1).trim();
+        return v;
+    }
+
+    static String looseName(String s) {
+        return normalizeName(s).replaceAll("[^a-z0-9]+", " ").trim();
+    }
+}
@@ -0,0 +1,97 @@
+package com.youraitester.agent;
+
+import com.youraitester.service.OfficialPlaywrightMcpService;
+import com.youraitester.service.PlaywrightJavaToolService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+
+/**
+ * Side-by-side benchmark of the two tool backends (stdio Playwright MCP vs in-process Playwright Java) on the
+ * same page: startup + first navigate, then {@code iterations} rounds of snapshot / evaluate / screenshot.
+ *
+ * Runs on the calling thread with that thread's MCP session and pooled browser, and releases both afterwards.
+ * Latencies are also recorded in the McpToolExecutor per-backend histograms.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class ToolBackendBenchmark {
+
+    private static final List<String> ROUND = List.of("browser_snapshot", "browser_evaluate", "browser_take_screenshot");
+
+    private final OfficialPlaywrightMcpService mcpService;
+    private final PlaywrightJavaToolService playwrightJavaToolService;
+    private final McpToolExecutor mcpToolExecutor;
+
+    private interface Backend {
+        Map<String, Object> call(String tool, Map<String, Object> args) throws Exception;
+    }
+
+    public Map<String, Object> run(String url, int iterations) {
+        int rounds = Math.max(1, Math.min(iterations, 50));
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("url", url);
+        out.put("iterations", rounds);
+        try {
+            out.put("mcp", measure("mcp", url, rounds, mcpService::callTool));
+        } finally {
+            mcpService.resetSession();
+        }
+        try {
+            out.put(PlaywrightJavaToolService.BACKEND_NAME,
+                measure(PlaywrightJavaToolService.BACKEND_NAME, url, rounds, playwrightJavaToolService::callTool));
+        } finally {
+            playwrightJavaToolService.release();
+        }
+        return out;
+    }
+
+    private Map<String, Object> measure(String name, String url, int rounds, Backend backend) {
+        Map<String, Object> result = new LinkedHashMap<>();
+        Map<String, List<Long>> samples = new LinkedHashMap<>();
+        try {
+            long t0 = System.nanoTime();
+            Map<String, Object> nav = backend.call("browser_navigate", Map.of("url", url));
+            result.put("startupAndNavigateMs", (System.nanoTime() - t0) / 1_000_000);
+            if (!Boolean.TRUE.equals(nav.get("success"))) {
+                result.put("error", String.valueOf(nav.get("message")));
+                return result;
+            }
+            for (int i = 0; i < rounds; i++) {
+                for (String tool : ROUND) {
+                    Map<String, Object> args = switch (tool) {
+                        case "browser_evaluate" -> Map.of("function", "() => document.title");
+                        case "browser_take_screenshot" -> Map.of("fullPage", false);
+                        default -> Map.of();
+                    };
+                    long started = System.nanoTime();
+                    Map<String, Object> r = backend.call(tool, args);
+                    mcpToolExecutor.recordLatency(name, tool, started);
+                    samples.computeIfAbsent(tool, k -> new ArrayList<>()).add((System.nanoTime() - started) / 1_000_000);
+                    if (!Boolean.TRUE.equals(r.get("success"))) result.put("error_" + tool, String.valueOf(r.get("message")));
+                    if ("browser_snapshot".equals(tool) && r.get("content") != null) {
+                        result.put("snapshotChars", String.valueOf(r.get("content")).length());
+                    }
+                }
+            }
+        } catch (Exception e) {
+            log.warn("Tool backend benchmark failed for {}: {}", name, e.getMessage());
+            result.put("error", e.getMessage());
+        }
+        Map<String, Object> perTool = new LinkedHashMap<>();
+        samples.forEach((tool, ms) -> {
+            List<Long> sorted = new ArrayList<>(ms);
+            Collections.sort(sorted);
+            Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put("meanMs", sorted.stream().mapToLong(Long::longValue).sum() / sorted.size());
+            stats.put("p50Ms", sorted.get(sorted.size() / 2));
+            stats.put("maxMs", sorted.get(sorted.size() - 1));
+            perTool.put(tool, stats);
+        });
+        result.put("tools", perTool);
+        return result;
+    }
+}
@@ -1,12 +1,16 @@
 package com.youraitester.agent.impl;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.youraitester.agent.ConversationCompactor;
+import com.youraitester.agent.LlmAdmissionController;
+import com.youraitester.agent.LlmCallContext;
 import com.youraitester.agent.LlmProvider;
+import com.youraitester.service.HotPathLog;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.http.*;
 import org.springframework.stereotype.Component;
-import org.springframework.web.client.RestTemplate;
 
 import java.util.*;
 import java.util.stream.Collectors;
@@ -19,6 +23,7 @@ import java.util.stream.Collectors;
  * This is a skeleton implementation - add Anthropic SDK dependency for full functionality
  */
 @Component("claude")
+@RequiredArgsConstructor
 @Slf4j
 public class ClaudeProvider implements LlmProvider {
     
@@ -53,11 +58,70 @@ public class ClaudeProvider implements LlmProvider {
     @Value("${claude.request.logging.max.chars:4000}")
     private int requestLoggingMaxChars;
     
-    private final RestTemplate restTemplate = new RestTemplate();
+    private final LlmHttpTransport transport;
+    private final LlmAdmissionController admissionController;
     private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @PostConstruct
+    public void init() {
+        if (isAvailable()) {
+            transport.prewarm(getProviderName(), apiUrl);
+        }
+    }
     
     @Override
     public AgentResponse executeWithTools(List<Message> messages, List<Tool> tools, int maxIterations) {
+        Map<String, Object> request = prepareRequest(messages, tools, maxIterations);
+        try {
+            long start = System.currentTimeMillis();
+            String rawResponse = transport.postJson(getProviderName(), apiUrl, requestHeaders(), objectMapper.writeValueAsString(request));
+            long latencyMs = System.currentTimeMillis() - start;
+            Map<String, Object> responseBody = objectMapper.readValue(rawResponse, Map.class);
+            
+            if (responseBody == null) {
+                throw new RuntimeException("Empty response from Claude API");
+            }
+            
+            // Parse response
+            String stopReason = (String) responseBody.get("stop_reason");
+            List<Map<String, Object>> content = (List<Map<String, Object>>) responseBody.get("content");
+            return withUsage(toAgentResponse(stopReason, content), (Map<String, Object>) responseBody.get("usage"), latencyMs);
+            
+        } catch (Exception e) {
+            log.error("Claude API error", e);
+            throw new RuntimeException("Failed to execute Claude request: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * SSE variant: tool_use blocks are handed to the listener on content_block_stop, i.e. as soon as their
+     * input JSON is complete, while Claude is still generating the remaining blocks.
+     */
+    @Override
+    public AgentResponse executeWithToolsStreaming(List<Message> messages, List<Tool> tools, int maxIterations,
+                                                   StreamListener listener) {
+        Map<String, Object> request = prepareRequest(messages, tools, maxIterations);
+        request.put("stream", true);
+        try {
+            ClaudeStreamParser parser = new ClaudeStreamParser(listener);
+            long start = System.currentTimeMillis();
+            transport.postJsonStream(getProviderName(), apiUrl, requestHeaders(), objectMapper.writeValueAsString(request),
+                parser::onLine);
+            if (parser.error != null) {
+                throw new RuntimeException("Claude stream error: " + parser.error);
+            }
+            return withUsage(toAgentResponse(parser.stopReason, parser.blocks), parser.usage, System.currentTimeMillis() - start);
+        } catch (Exception e) {
+            log.error("Claude API error (streaming)", e);
+            throw new RuntimeException("Failed to execute Claude request: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Build the Messages API request body (history truncation, tools, system prompt), log its size and
+     * wait for admission. Shared by the blocking and streaming paths.
+     */
+    private Map<String, Object> prepareRequest(List<Message> messages, List<Tool> tools, int maxIterations) {
         if (!isAvailable()) {
             throw new IllegalStateException("Claude provider is not configured");
         }
@@ -80,7 +144,7 @@ public class ClaudeProvider implements LlmProvider {
         
         // Build request
         Map<String, Object> request = new HashMap<>();
-        request.put("model", model);
+        request.put("model", resolveModel());
         request.put("max_tokens", maxTokens);
         request.put("messages", claudeMessages);
         
@@ -92,115 +156,232 @@ public class ClaudeProvider implements LlmProvider {
             request.put("tools", claudeTools);
         }
         
-        try {
-            // Execute request
-            HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(MediaType.APPLICATION_JSON);
-            headers.set("x-api-key", apiKey);
-            headers.set("anthropic-version", apiVersion);
-            
-            // Calculate total characters being sent to understand token usage
-            int totalChars = claudeMessages.stream()
-                .mapToInt(m -> String.valueOf(m.get("content")).length())
-                .sum();
-            int estimatedTokens = totalChars / 4; // Rough estimate: 1 token ~= 4 chars
-            
-            log.info("Claude: Sending request to {}", apiUrl);
-            log.info("Claude: Message count: {}, total chars: {}, estimated tokens: {}", 
-                claudeMessages.size(), totalChars, estimatedTokens);
-            log.info("Claude: Message sizes: {}", 
-                claudeMessages.stream()
-                    .map(m -> String.format("{role:%s, chars:%d}", 
-                        m.get("role"), 
-                        String.valueOf(m.get("content")).length()))
-                    .collect(Collectors.joining(", ", "[", "]"))
+        // Calculate total characters being sent to understand token usage
+        int totalChars = claudeMessages.stream()
+            .mapToInt(m -> String.valueOf(m.get("content")).length())
+            .sum();
+        int estimatedTokens = totalChars / 4; // Rough estimate: 1 token ~= 4 chars
+        
+        log.info("Claude: Sending request to {}", apiUrl);
+        log.info("Claude: Message count: {}, total chars: {}, estimated tokens: {}", 
+            claudeMessages.size(), totalChars, estimatedTokens);
+        log.info("Claude: Message sizes: {}", 
+            claudeMessages.stream()
+                .map(m -> String.format("{role:%s, chars:%d}", 
+                    m.get("role"), 
+                    String.valueOf(m.get("content")).length()))
+                .collect(Collectors.joining(", ", "[", "]"))
+        );
+
+        // Optional: log the actual content we are sending (system + messages), truncated for safety.
+        if (requestLoggingEnabled || HotPathLog.isDebugTrace()) {
+            int systemChars = systemMessage != null ? systemMessage.length() : 0;
+            int messagesChars = estimateClaudeMessagesChars(claudeMessages);
+            String transcript = buildClaudeTranscript(systemMessage, claudeMessages);
+            log.info(
+                "Claude: [info sent to Claude] systemChars={}, messagesChars={}, totalChars~={}, transcriptChars={}, transcript:\n{}",
+                systemChars,
+                messagesChars,
+                (systemChars + messagesChars),
+                transcript.length(),
+                truncateForLog(transcript, requestLoggingMaxChars)
             );
+        }
 
-            // Optional: log the actual content we are sending (system + messages), truncated for safety.
-            if (requestLoggingEnabled) {
-                int systemChars = systemMessage != null ? systemMessage.length() : 0;
-                int messagesChars = estimateClaudeMessagesChars(claudeMessages);
-                String transcript = buildClaudeTranscript(systemMessage, claudeMessages);
-                log.info(
-                    "Claude: [info sent to Claude] systemChars={}, messagesChars={}, totalChars~={}, transcriptChars={}, transcript:\n{}",
-                    systemChars,
-                    messagesChars,
-                    (systemChars + messagesChars),
-                    transcript.length(),
-                    truncateForLog(transcript, requestLoggingMaxChars)
-                );
-            }
-            
-            HttpEntity<Map<String, Object>> entity = new HttpEntity<>(request, headers);
-            ResponseEntity<Map> response = restTemplate.postForEntity(apiUrl, entity, Map.class);
-            Map<String, Object> responseBody = response.getBody();
-            
-            if (responseBody == null) {
-                throw new RuntimeException("Empty response from Claude API");
-            }
-            
-            // Parse response
-            String stopReason = (String) responseBody.get("stop_reason");
-            List<Map<String, Object>> content = (List<Map<String, Object>>) responseBody.get("content");
-            
-            log.debug("Claude: Stop reason: {}, content blocks: {}", stopReason, content.size());
-            
-            // Check if there are tool uses
-            List<SimpleToolCall> toolCalls = new ArrayList<>();
-            StringBuilder textContent = new StringBuilder();
+        // Wait for our share of the provider rate limit (estimated input tokens, system + messages).
+        int admissionTokens = ((systemMessage != null ? systemMessage.length() : 0)
+            + estimateClaudeMessagesChars(claudeMessages)) / 4;
+        admissionController.acquire(getProviderName(), admissionTokens);
+
+        return request;
+    }
+
+    private Map<String, String> requestHeaders() {
+        return Map.of(
+            "x-api-key", apiKey,
+            "anthropic-version", apiVersion
+        );
+    }
+
+    /**
+     * Attach the Messages API usage block. input_tokens excludes cache reads/writes, so those are added back
+     * to report the full prompt size; cachedTokens is the cache-read part.
+     */
+    private SimpleAgentResponse withUsage(SimpleAgentResponse response, Map<String, Object> usage, long latencyMs) {
+        response.setLatencyMs(latencyMs);
+        if (usage == null) return response;
+        long cacheRead = usageValue(usage, "cache_read_input_tokens");
+        response.setInputTokens(usageValue(usage, "input_tokens") + cacheRead + usageValue(usage, "cache_creation_input_tokens"));
+        response.setOutputTokens(usageValue(usage, "output_tokens"));
+        response.setCachedTokens(cacheRead);
+        log.info("Claude: usage input={} (cached={}), output={}, latency={}ms",
+            response.getInputTokens(), cacheRead, response.getOutputTokens(), latencyMs);
+        return response;
+    }
+
+    private static long usageValue(Map<String, Object> usage, String key) {
+        Object v = usage.get(key);
+        return v instanceof Number n ? n.longValue() : 0L;
+    }
+
+    @SuppressWarnings("unchecked")
+    private SimpleAgentResponse toAgentResponse(String stopReason, List<Map<String, Object>> content) {
+        if (content == null) content = List.of();
+        log.debug("Claude: Stop reason: {}, content blocks: {}", stopReason, content.size());
+        
+        // Check if there are tool uses
+        List<SimpleToolCall> toolCalls = new ArrayList<>();
+        StringBuilder textContent = new StringBuilder();
+        
+        for (Map<String, Object> block : content) {
+            String type = (String) block.get("type");
             
-            for (Map<String, Object> block : content) {
-                String type = (String) block.get("type");
+            if ("text".equals(type)) {
+                textContent.append(block.get("text"));
+            } else if ("tool_use".equals(type)) {
+                String toolId = (String) block.get("id");
+                String toolName = (String) block.get("name");
+                Map<String, Object> input = (Map<String, Object>) block.get("input");
                 
-                if ("text".equals(type)) {
-                    textContent.append(block.get("text"));
-                } else if ("tool_use".equals(type)) {
-                    String toolId = (String) block.get("id");
-                    String toolName = (String) block.get("name");
-                    Map<String, Object> input = (Map<String, Object>) block.get("input");
-                    
-                    log.info("Claude: Tool use requested: {}", toolName);
-                    
-                    SimpleToolCall toolCall = SimpleToolCall.builder()
-                        .id(toolId)
-                        .name(toolName)
-                        .arguments(input != null ? input : new HashMap<>())
-                        .build();
-                    
-                    toolCalls.add(toolCall);
-                }
-            }
-            
-            if (!toolCalls.isEmpty()) {
-                // Return tool calls to execute
-                log.debug("Claude: Returning {} tool calls", toolCalls.size());
-                return SimpleAgentResponse.builder()
-                    .content(textContent.toString())
-                    .toolCalls(new ArrayList<>(toolCalls))
-                    .complete(false)
-                    .finishReason("tool_use")
-                    .build();
-            } else if ("end_turn".equals(stopReason) || "stop".equals(stopReason)) {
-                // Task complete
-                log.info("Claude: Task complete. Final message: {}", textContent.toString());
-                return SimpleAgentResponse.builder()
-                    .content(textContent.toString())
-                    .complete(true)
-                    .finishReason("stop")
-                    .build();
-            } else {
-                // Unexpected stop reason
-                log.warn("Claude: Unexpected stop reason: {}", stopReason);
-                return SimpleAgentResponse.builder()
-                    .content(textContent.toString())
-                    .complete(true)
-                    .finishReason(stopReason != null ? stopReason : "unknown")
+                log.info("Claude: Tool use requested: {}", toolName);
+                
+                SimpleToolCall toolCall = SimpleToolCall.builder()
+                    .id(toolId)
+                    .name(toolName)
+                    .arguments(input != null ? input : new HashMap<>())
                     .build();
+                
+                toolCalls.add(toolCall);
+            }
+        }
+        
+        if (!toolCalls.isEmpty()) {
+            // Return tool calls to execute
+            log.debug("Claude: Returning {} tool calls", toolCalls.size());
+            return SimpleAgentResponse.builder()
+                .content(textContent.toString())
+                .toolCalls(new ArrayList<>(toolCalls))
+                .complete(false)
+                .finishReason("tool_use")
+                .build();
+        } else if ("end_turn".equals(stopReason) || "stop".equals(stopReason)) {
+            // Task complete
+            log.info("Claude: Task complete. Final message: {}", textContent.toString());
+            return SimpleAgentResponse.builder()
+                .content(textContent.toString())
+                .complete(true)
+                .finishReason("stop")
+                .build();
+        } else {
+            // Unexpected stop reason
+            log.warn("Claude: Unexpected stop reason: {}", stopReason);
+            return SimpleAgentResponse.builder()
+                .content(textContent.toString())
+                .complete(true)
+                .finishReason(stopReason != null ? stopReason : "unknown")
+                .build();
+        }
+    }
+
+    /**
+     * Incremental parser for the Messages API SSE stream. Rebuilds the same content-block list the
+     * non-streaming API returns, and reports finished tool_use blocks / text deltas to the listener.
+     */
+    private class ClaudeStreamParser {
+        private final StreamListener listener;
+        private final List<Map<String, Object>> blocks = new ArrayList<>();
+        private final Map<Integer, StringBuilder> partialJson = new HashMap<>();
+        private final Map<String, Object> usage = new HashMap<>();
+        private String stopReason;
+        private String error;
+
+        ClaudeStreamParser(StreamListener listener) {
+            this.listener = listener;
+        }
+
+        @SuppressWarnings("unchecked")
+        void onLine(String line) {
+            if (line == null || !line.startsWith("data:")) return; // "event:" lines are redundant with data.type
+            String data = line.substring(5).trim();
+            if (data.isEmpty()) return;
+            Map<String, Object> event;
+            try {
+                event = objectMapper.readValue(data, Map.class);
+            } catch (Exception e) {
+                log.warn("Claude: could not parse stream event: {}", truncateForLog(data, 200));
+                return;
+            }
+            String type = String.valueOf(event.get("type"));
+            switch (type) {
+                case "content_block_start" -> {
+                    int index = ((Number) event.get("index")).intValue();
+                    Map<String, Object> block = new HashMap<>((Map<String, Object>) event.get("content_block"));
+                    while (blocks.size() <= index) blocks.add(new HashMap<>());
+                    blocks.set(index, block);
+                    if ("tool_use".equals(block.get("type"))) {
+                        partialJson.put(index, new StringBuilder());
+                    }
+                }
+                case "content_block_delta" -> {
+                    int index = ((Number) event.get("index")).intValue();
+                    Map<String, Object> delta = (Map<String, Object>) event.get("delta");
+                    if (delta == null || index >= blocks.size()) return;
+                    Map<String, Object> block = blocks.get(index);
+                    if ("text_delta".equals(delta.get("type"))) {
+                        String text = String.valueOf(delta.getOrDefault("text", ""));
+                        block.put("text", String.valueOf(block.getOrDefault("text", "")) + text);
+                        if (listener != null) listener.onTextDelta(text);
+                    } else if ("input_json_delta".equals(delta.get("type"))) {
+                        partialJson.computeIfAbsent(index, i -> new StringBuilder())
+                            .append(delta.getOrDefault("partial_json", ""));
+                    }
+                }
+                case "content_block_stop" -> {
+                    int index = ((Number) event.get("index")).intValue();
+                    if (index >= blocks.size()) return;
+                    Map<String, Object> block = blocks.get(index);
+                    if (!"tool_use".equals(block.get("type"))) return;
+                    StringBuilder json = partialJson.remove(index);
+                    Map<String, Object> input = new HashMap<>();
+                    if (json != null && json.length() > 0) {
+                        try {
+                            input = objectMapper.readValue(json.toString(), Map.class);
+                        } catch (Exception e) {
+                            log.warn("Claude: could not parse streamed tool input for {}: {}", block.get("name"), e.getMessage());
+                        }
+                    }
+                    block.put("input", input);
+                    // The executor dedupes streamed calls by id; never hand it a call without one
+                    block.putIfAbsent("id", "toolu_" + index);
+                    if (listener != null) {
+                        listener.onToolCall(SimpleToolCall.builder()
+                            .id((String) block.get("id"))
+                            .name((String) block.get("name"))
+                            .arguments(input)
+                            .build());
+                    }
+                }
+                case "message_start" -> {
+                    Map<String, Object> message = (Map<String, Object>) event.get("message");
+                    if (message != null && message.get("usage") instanceof Map<?, ?> u) {
+                        usage.putAll((Map<String, Object>) u);
+                    }
+                }
+                case "message_delta" -> {
+                    Map<String, Object> delta = (Map<String, Object>) event.get("delta");
+                    if (delta != null && delta.get("stop_reason") != null) {
+                        stopReason = String.valueOf(delta.get("stop_reason"));
+                    }
+                    // Cumulative output_tokens for the whole message
+                    if (event.get("usage") instanceof Map<?, ?> u) {
+                        usage.putAll((Map<String, Object>) u);
+                    }
+                }
+                case "error" -> error = String.valueOf(event.get("error"));
+                default -> {
+                    // ping, message_stop: nothing to do
+                }
             }
-            
-        } catch (Exception e) {
-            log.error("Claude API error", e);
-            throw new RuntimeException("Failed to execute Claude request: " + e.getMessage(), e);
         }
     }
 
@@ -389,10 +570,14 @@ public class ClaudeProvider implements LlmProvider {
         List<Message> systemMessages = new ArrayList<>();
         Message originalInstruction = null;
         List<Message> nonSystem = new ArrayList<>();
+        // The compacted conversation state stands in for the dropped history; always keep it.
+        List<Message> stateMessages = new ArrayList<>();
 
         for (Message msg : messages) {
             if ("system".equals(msg.getRole())) {
                 systemMessages.add(msg);
+            } else if (ConversationCompactor.isStateMessage(msg)) {
+                stateMessages.add(msg);
             } else {
                 nonSystem.add(msg);
                 if (originalInstruction == null && "user".equals(msg.getRole())) {
@@ -424,6 +609,7 @@ public class ClaudeProvider implements LlmProvider {
             List<Message> result = new ArrayList<>();
             result.addAll(systemMessages);
             result.add(originalInstruction);
+            result.addAll(stateMessages);
             log.info("Claude: History truncation - keeping {} messages (system+instruction only)", result.size());
             return result;
         }
@@ -474,6 +660,7 @@ public class ClaudeProvider implements LlmProvider {
         List<Message> result = new ArrayList<>();
         result.addAll(systemMessages);
         result.add(originalInstruction);
+        result.addAll(stateMessages);
         result.addAll(keptHistory);
         
         int removedMessages = tail.size() - keptHistory.size();
@@ -482,4 +669,12 @@ public class ClaudeProvider implements LlmProvider {
         
         return result;
     }
+
+    /**
+     * Model for this call: the one pinned by the model router (see {@link LlmCallContext}), else the configured one.
+     */
+    private String resolveModel() {
+        String pinned = LlmCallContext.current().getModel();
+        return pinned != null && !pinned.isBlank() ? pinned : model;
+    }
 }
@@ -0,0 +1,323 @@
+package com.youraitester.agent.impl;
+
+import com.youraitester.agent.LatencyHistogram;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import okhttp3.*;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Shared HTTP transport for all LLM providers.
+ *
+ * - One pooled, keep-alive OkHttpClient (HTTP/2 when the server negotiates it) shared by Claude and OpenAI,
+ *   so consecutive agent turns reuse the same TLS connection instead of re-handshaking every call.
+ * - Retries 429 / 5xx / IO failures with jittered exponential backoff, honouring Retry-After when present.
+ * - Keeps a per-provider latency histogram (per HTTP attempt) for diagnostics.
+ */
+@Component
+@Slf4j
+public class LlmHttpTransport {
+
+    private static final MediaType JSON = MediaType.get("application/json; charset=utf-8");
+
+    /**
+     * Upper bounds (ms) of the latency histogram buckets. Anything slower lands in the overflow bucket.
+     */
+    private static final long[] LATENCY_BUCKETS_MS = {250, 500, 1000, 2000, 5000, 10000, 20000, 30000, 60000, 120000};
+
+    @Value("${llm.http.connect.timeout.seconds:10}")
+    private int connectTimeoutSeconds;
+
+    @Value("${llm.http.read.timeout.seconds:120}")
+    private int readTimeoutSeconds;
+
+    @Value("${llm.http.pool.max.idle:10}")
+    private int poolMaxIdle;
+
+    @Value("${llm.http.pool.keepalive.seconds:300}")
+    private int poolKeepAliveSeconds;
+
+    /**
+     * Total attempts per request (1 = no retries).
+     */
+    @Value("${llm.http.retry.max.attempts:4}")
+    private int maxAttempts;
+
+    @Value("${llm.http.retry.base.delay.ms:1000}")
+    private long baseDelayMs;
+
+    @Value("${llm.http.retry.max.delay.ms:30000}")
+    private long maxDelayMs;
+
+    /**
+     * Longest server Retry-After we wait out; a longer one fails the request instead of retrying early.
+     */
+    @Value("${llm.http.retry.after.max.ms:120000}")
+    private long maxRetryAfterMs;
+
+    private OkHttpClient httpClient;
+
+    private final Map<String, LatencyHistogram> histograms = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> retries = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void init() {
+        this.httpClient = new OkHttpClient.Builder()
+            .protocols(List.of(Protocol.HTTP_2, Protocol.HTTP_1_1))
+            .connectionPool(new ConnectionPool(poolMaxIdle, poolKeepAliveSeconds, TimeUnit.SECONDS))
+            .connectTimeout(connectTimeoutSeconds, TimeUnit.SECONDS)
+            .readTimeout(readTimeoutSeconds, TimeUnit.SECONDS)
+            .writeTimeout(readTimeoutSeconds, TimeUnit.SECONDS)
+            // Retries are handled here with backoff; don't let OkHttp silently replay POSTs.
+            .retryOnConnectionFailure(false)
+            .build();
+        log.info("LLM transport initialized (connectTimeout={}s, readTimeout={}s, pool maxIdle={}, keepAlive={}s, maxAttempts={})",
+            connectTimeoutSeconds, readTimeoutSeconds, poolMaxIdle, poolKeepAliveSeconds, maxAttempts);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (httpClient == null) return;
+        httpClient.dispatcher().executorService().shutdown();
+        httpClient.connectionPool().evictAll();
+    }
+
+    /**
+     * Open a TLS connection to the given endpoint in the background so the first real LLM call
+     * doesn't pay for DNS + TCP + TLS. Any HTTP status is fine; we only want the pooled connection.
+     */
+    public void prewarm(String provider, String url) {
+        if (url == null || url.isBlank()) return;
+        HttpUrl parsed = HttpUrl.parse(url);
+        if (parsed == null) return;
+        HttpUrl root = parsed.newBuilder().encodedPath("/").query(null).build();
+        Request request = new Request.Builder().url(root).head().build();
+        httpClient.newCall(request).enqueue(new Callback() {
+            @Override
+            public void onFailure(Call call, IOException e) {
+                log.debug("{}: connection pre-warm to {} failed: {}", provider, root.host(), e.getMessage());
+            }
+
+            @Override
+            public void onResponse(Call call, Response response) {
+                response.close();
+                log.info("{}: pre-warmed connection to {} ({})", provider, root.host(), response.protocol());
+            }
+        });
+    }
+
+    /**
+     * POST a JSON body and return the response body as a string.
+     * Retries on 429 / 5xx / IO errors; throws {@link LlmHttpException} once attempts are exhausted
+     * or on a non-retryable error status.
+     */
+    public String postJson(String provider, String url, Map<String, String> headers, String body) {
+        Request.Builder builder = new Request.Builder()
+            .url(url)
+            .post(RequestBody.create(body, JSON));
+        if (headers != null) {
+            headers.forEach(builder::header);
+        }
+        Request request = builder.build();
+
+        int attempts = Math.max(1, maxAttempts);
+        for (int attempt = 1; ; attempt++) {
+            long start = System.nanoTime();
+            try (Response response = httpClient.newCall(request).execute()) {
+                long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+                histogram(provider).record(elapsedMs);
+
+                String responseBody = response.body() != null ? response.body().string() : "";
+                if (response.isSuccessful()) {
+                    return responseBody;
+                }
+
+                int code = response.code();
+                if (!isRetryable(code) || attempt >= attempts) {
+                    throw new LlmHttpException(code, responseBody);
+                }
+
+                long delayMs = retryDelayMs(attempt, response.header("Retry-After"));
+                if (delayMs < 0) {
+                    log.warn("{}: HTTP {} with Retry-After {} (over {} ms); not retrying",
+                        provider, code, response.header("Retry-After"), maxRetryAfterMs);
+                    throw new LlmHttpException(code, responseBody);
+                }
+                retries.computeIfAbsent(provider, p -> new LongAdder()).increment();
+                log.warn("{}: HTTP {} on attempt {}/{} ({} ms). Retrying in {} ms",
+                    provider, code, attempt, attempts, elapsedMs, delayMs);
+                sleep(delayMs);
+            } catch (IOException e) {
+                histogram(provider).record(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+                if (attempt >= attempts) {
+                    throw new LlmHttpException(-1, "I/O error after " + attempt + " attempts: " + e.getMessage(), e);
+                }
+                long delayMs = retryDelayMs(attempt, null);
+                retries.computeIfAbsent(provider, p -> new LongAdder()).increment();
+                log.warn("{}: I/O error on attempt {}/{} ({}). Retrying in {} ms",
+                    provider, attempt, attempts, e.getMessage(), delayMs);
+                sleep(delayMs);
+            }
+        }
+    }
+
+    /**
+     * POST a JSON body to a streaming (SSE) endpoint and hand each response line to {@code lineConsumer}
+     * as it arrives. Retries (same policy as {@link #postJson}) only happen before the first line is
+     * delivered; once streaming has started a failure is surfaced to the caller.
+     * The recorded latency is time-to-first-byte, which is what queueing/backoff decisions care about.
+     */
+    public void postJsonStream(String provider, String url, Map<String, String> headers, String body,
+                               java.util.function.Consumer<String> lineConsumer) {
+        Request.Builder builder = new Request.Builder()
+            .url(url)
+            .header("Accept", "text/event-stream")
+            .post(RequestBody.create(body, JSON));
+        if (headers != null) {
+            headers.forEach(builder::header);
+        }
+        Request request = builder.build();
+
+        int attempts = Math.max(1, maxAttempts);
+        boolean delivered = false;
+        for (int attempt = 1; ; attempt++) {
+            long start = System.nanoTime();
+            try (Response response = httpClient.newCall(request).execute()) {
+                long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+                histogram(provider).record(elapsedMs);
+
+                if (response.isSuccessful()) {
+                    if (response.body() == null) return;
+                    okio.BufferedSource source = response.body().source();
+                    String line;
+                    while ((line = source.readUtf8Line()) != null) {
+                        delivered = true;
+                        lineConsumer.accept(line);
+                    }
+                    return;
+                }
+
+                int code = response.code();
+                String responseBody = response.body() != null ? response.body().string() : "";
+                if (!isRetryable(code) || attempt >= attempts) {
+                    throw new LlmHttpException(code, responseBody);
+                }
+
+                long delayMs = retryDelayMs(attempt, response.header("Retry-After"));
+                if (delayMs < 0) {
+                    log.warn("{}: HTTP {} with Retry-After {} (over {} ms); not retrying",
+                        provider, code, response.header("Retry-After"), maxRetryAfterMs);
+                    throw new LlmHttpException(code, responseBody);
+                }
+                retries.computeIfAbsent(provider, p -> new LongAdder()).increment();
+                log.warn("{}: HTTP {} on attempt {}/{} ({} ms). Retrying in {} ms",
+                    provider, code, attempt, attempts, elapsedMs, delayMs);
+                sleep(delayMs);
+            } catch (IOException e) {
+                if (delivered || attempt >= attempts) {
+                    throw new LlmHttpException(-1, "I/O error while streaming: " + e.getMessage(), e);
+                }
+                long delayMs = retryDelayMs(attempt, null);
+                retries.computeIfAbsent(provider, p -> new LongAdder()).increment();
+                log.warn("{}: I/O error on attempt {}/{} ({}). Retrying in {} ms",
+                    provider, attempt, attempts, e.getMessage(), delayMs);
+                sleep(delayMs);
+            }
+        }
+    }
+
+    /**
+     * Per-provider latency histograms (bucket upper bound ms -> count), plus count/mean/max/retries.
+     */
+    public Map<String, Object> getLatencySnapshot() {
+        Map<String, Object> out = new TreeMap<>();
+        histograms.forEach((provider, h) -> {
+            Map<String, Object> snap = h.snapshot();
+            LongAdder r = retries.get(provider);
+            snap.put("retries", r != null ? r.sum() : 0L);
+            out.put(provider, snap);
+        });
+        return out;
+    }
+
+    private LatencyHistogram histogram(String provider) {
+        return histograms.computeIfAbsent(provider, p -> new LatencyHistogram(LATENCY_BUCKETS_MS));
+    }
+
+    private static boolean isRetryable(int code) {
+        return code == 408 || code == 429 || code >= 500;
+    }
+
+    /**
+     * Exponential backoff with jitter (50-100% of the capped delay), but never shorter than the server's Retry-After hint.
+     *
+     * @return delay in ms, or -1 when Retry-After exceeds llm.http.retry.after.max.ms (give up rather than retry early)
+     */
+    private long retryDelayMs(int attempt, String retryAfterHeader) {
+        long cap = Math.min(maxDelayMs, baseDelayMs * (1L << Math.min(attempt - 1, 20)));
+        long delay = ThreadLocalRandom.current().nextLong(cap / 2, cap + 1);
+        long retryAfterMs = parseRetryAfterMs(retryAfterHeader);
+        if (retryAfterMs > 0) {
+            if (retryAfterMs > maxRetryAfterMs) return -1;
+            delay = Math.max(delay, retryAfterMs);
+        }
+        return delay;
+    }
+
+    private static long parseRetryAfterMs(String header) {
+        if (header == null || header.isBlank()) return -1;
+        String v = header.trim();
+        try {
+            return (long) (Double.parseDouble(v) * 1000);
+        } catch (NumberFormatException ignored) {
+            // HTTP-date form
+        }
+        try {
+            ZonedDateTime at = ZonedDateTime.parse(v, DateTimeFormatter.RFC_1123_DATE_TIME);
+            return Math.max(0, Duration.between(ZonedDateTime.now(at.getZone()), at).toMillis());
+        } catch (Exception ignored) {
+            return -1;
+        }
+    }
+
+    private static void sleep(long ms) {
+        try {
+            Thread.sleep(ms);
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new LlmHttpException(-1, "Interrupted while backing off");
+        }
+    }
+
+    /**
+     * Error returned by an LLM endpoint (status -1 for transport-level failures).
+     */
+    @Getter
+    public static class LlmHttpException extends RuntimeException {
+        private final int statusCode;
+        private final String responseBody;
+
+        public LlmHttpException(int statusCode, String responseBody) {
+            this(statusCode, responseBody, null);
+        }
+
+        public LlmHttpException(int statusCode, String responseBody, Throwable cause) {
+            super("LLM HTTP request failed: " + (statusCode > 0 ? statusCode + " - " : "") + responseBody, cause);
+            this.statusCode = statusCode;
+            this.responseBody = responseBody;
+        }
+    }
+}
@@ -4,9 +4,11 @@ import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.youraitester.agent.LlmAdmissionController;
+import com.youraitester.agent.LlmCallContext;
 import com.youraitester.agent.LlmProvider;
+import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import okhttp3.*;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 import jakarta.annotation.PostConstruct;
@@ -16,18 +18,18 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.TimeUnit;
 
 /**
  * OpenAI implementation of LlmProvider using raw HTTP requests
  * This allows us to properly set function parameters schemas
  */
 @Component("openai")
+@RequiredArgsConstructor
 @Slf4j
 public class OpenAiProvider implements LlmProvider {
     
-    private static final String OPENAI_API_URL = "https://api.openai.com/v1/chat/completions";
-    private static final MediaType JSON = MediaType.get("application/json; charset=utf-8");
+    @Value("${openai.api.url:https://api.openai.com/v1/chat/completions}")
+    private String apiUrl;
     
     @Value("${openai.api.key:}")
     private String apiKey;
@@ -35,19 +37,9 @@ public class OpenAiProvider implements LlmProvider {
     @Value("${openai.model:gpt-4}")
     private String model;
     
-    @Value("${openai.timeout:60}")
-    private int timeoutSeconds;
-    
     private final ObjectMapper objectMapper = new ObjectMapper();
-    private final OkHttpClient httpClient;
-    
-    public OpenAiProvider() {
-        this.httpClient = new OkHttpClient.Builder()
-            .connectTimeout(60, TimeUnit.SECONDS)
-            .readTimeout(60, TimeUnit.SECONDS)
-            .writeTimeout(60, TimeUnit.SECONDS)
-            .build();
-    }
+    private final LlmHttpTransport transport;
+    private final LlmAdmissionController admissionController;
     
     @PostConstruct
     public void init() {
@@ -56,6 +48,9 @@ public class OpenAiProvider implements LlmProvider {
         if (apiKey != null && !apiKey.isEmpty()) {
             log.debug("OpenAI API key length: {}, starts with: {}", apiKey.length(), apiKey.substring(0, Math.min(10, apiKey.length())));
         }
+        if (isAvailable()) {
+            transport.prewarm(getProviderName(), apiUrl);
+        }
     }
     
     @Override
@@ -101,26 +96,25 @@ public class OpenAiProvider implements LlmProvider {
                     log.info("OpenAI: Request preview: {}", truncated);
                 }
                 
-                // Execute HTTP request
-                Request request = new Request.Builder()
-                    .url(OPENAI_API_URL)
-                    .addHeader("Authorization", "Bearer " + apiKey)
-                    .addHeader("Content-Type", "application/json")
-                    .post(RequestBody.create(requestBody, JSON))
-                    .build();
+                // Wait for our share of the provider rate limit before going on the wire
+                admissionController.acquire(getProviderName(), estimatedTokens);
                 
-                Response response = httpClient.newCall(request).execute();
-                String responseBody = response.body().string();
-                
-                if (!response.isSuccessful()) {
-                    log.error("OpenAI API error: {} - {}", response.code(), responseBody);
-                    throw new RuntimeException("OpenAI API request failed: " + response.code());
+                // Execute HTTP request (pooled connection, retries 429/5xx with backoff)
+                String responseBody;
+                long start = System.currentTimeMillis();
+                try {
+                    responseBody = transport.postJson(getProviderName(), apiUrl,
+                        Map.of("Authorization", "Bearer " + apiKey), requestBody);
+                } catch (LlmHttpTransport.LlmHttpException e) {
+                    log.error("OpenAI API error: {} - {}", e.getStatusCode(), e.getResponseBody());
+                    throw new RuntimeException("OpenAI API request failed: " + e.getStatusCode(), e);
                 }
                 
                 log.debug("OpenAI: Response: {}", responseBody);
                 
                 // Parse response
                 JsonNode responseJson = objectMapper.readTree(responseBody);
+                long latencyMs = System.currentTimeMillis() - start;
                 JsonNode choice = responseJson.get("choices").get(0);
                 JsonNode messageNode = choice.get("message");
                 
@@ -184,7 +178,7 @@ public class OpenAiProvider implements LlmProvider {
                         .finishReason("tool_calls")
                 .build();
                     
-                    return lastResponse;
+                    return withUsage(lastResponse, responseJson.get("usage"), latencyMs);
                     
                 } else {
                     // No tool calls - task complete
@@ -200,7 +194,7 @@ public class OpenAiProvider implements LlmProvider {
                         .finishReason(finishReason)
                         .build();
                     
-                    return lastResponse;
+                    return withUsage(lastResponse, responseJson.get("usage"), latencyMs);
                 }
                 
             } catch (IOException e) {
@@ -218,9 +212,219 @@ public class OpenAiProvider implements LlmProvider {
             .build();
     }
     
+    /**
+     * SSE variant: each function call is reported to the listener as soon as the stream moves on to the next
+     * tool call index (or finishes), so the caller can start executing it while the rest is still generated.
+     * Unlike the blocking path, all tool calls of the turn are returned (and recorded in the assistant metadata).
+     */
+    @Override
+    public AgentResponse executeWithToolsStreaming(List<Message> messages, List<Tool> tools, int maxIterations,
+                                                   StreamListener listener) {
+        if (!isAvailable()) {
+            throw new IllegalStateException("OpenAI provider is not configured");
+        }
+        
+        log.info("OpenAI: Executing (streaming) with {} tools", tools.size());
+        
+        try {
+            ObjectNode requestJson = buildRequestJson(messages, tools);
+            requestJson.put("stream", true);
+            // Ask for a final usage chunk (empty choices) so streamed calls are accounted like blocking ones
+            requestJson.putObject("stream_options").put("include_usage", true);
+            String requestBody = objectMapper.writeValueAsString(requestJson);
+            
+            int estimatedTokens = estimateTokenCount(requestBody);
+            log.info("OpenAI: Streaming request, estimated tokens: {}, message count: {}", estimatedTokens, messages.size());
+            
+            admissionController.acquire(getProviderName(), estimatedTokens);
+            
+            OpenAiStreamParser parser = new OpenAiStreamParser(listener);
+            long start = System.currentTimeMillis();
+            try {
+                transport.postJsonStream(getProviderName(), apiUrl,
+                    Map.of("Authorization", "Bearer " + apiKey), requestBody, parser::onLine);
+            } catch (LlmHttpTransport.LlmHttpException e) {
+                log.error("OpenAI API error: {} - {}", e.getStatusCode(), e.getResponseBody());
+                throw new RuntimeException("OpenAI API request failed: " + e.getStatusCode(), e);
+            }
+            parser.finishAll();
+            long latencyMs = System.currentTimeMillis() - start;
+            
+            String content = parser.text.toString();
+            if (parser.completed.isEmpty()) {
+                return withUsage(SimpleAgentResponse.builder()
+                    .content(content)
+                    .toolCalls(new ArrayList<>())
+                    .complete(true)
+                    .finishReason(parser.finishReason != null ? parser.finishReason : "stop")
+                    .build(), parser.usage, latencyMs);
+            }
+            
+            // Record the assistant turn with its raw tool_calls so the follow-up request is protocol-valid.
+            List<Map<String, Object>> toolCallsList = new ArrayList<>();
+            List<ToolCall> toolCalls = new ArrayList<>();
+            for (StreamedToolCall tc : parser.completed) {
+                Map<String, Object> toolCallMap = new HashMap<>();
+                toolCallMap.put("id", tc.id);
+                toolCallMap.put("type", "function");
+                Map<String, Object> functionMap = new HashMap<>();
+                functionMap.put("name", tc.name);
+                functionMap.put("arguments", tc.arguments.toString());
+                toolCallMap.put("function", functionMap);
+                toolCallsList.add(toolCallMap);
+                toolCalls.add(tc.toToolCall());
+            }
+            Map<String, Object> metadata = new HashMap<>();
+            metadata.put("tool_calls", toolCallsList);
+            messages.add(SimpleMessage.builder()
+                .role("assistant")
+                .content(content.isEmpty() ? null : content)
+                .metadata(metadata)
+                .build());
+            
+            return withUsage(SimpleAgentResponse.builder()
+                .content(content)
+                .toolCalls(toolCalls)
+                .complete(false)
+                .finishReason("tool_calls")
+                .build(), parser.usage, latencyMs);
+            
+        } catch (IOException e) {
+            log.error("OpenAI API request failed", e);
+            throw new RuntimeException("OpenAI API request failed", e);
+        }
+    }
+    
+    /**
+     * Attach the chat.completions usage block (prompt_tokens already includes cached tokens).
+     */
+    private SimpleAgentResponse withUsage(SimpleAgentResponse response, JsonNode usage, long latencyMs) {
+        response.setLatencyMs(latencyMs);
+        if (usage == null || usage.isNull()) return response;
+        response.setInputTokens(usage.path("prompt_tokens").asLong(0));
+        response.setOutputTokens(usage.path("completion_tokens").asLong(0));
+        response.setCachedTokens(usage.path("prompt_tokens_details").path("cached_tokens").asLong(0));
+        log.info("OpenAI: usage input={} (cached={}), output={}, latency={}ms",
+            response.getInputTokens(), response.getCachedTokens(), response.getOutputTokens(), latencyMs);
+        return response;
+    }
+    
+    private static class StreamedToolCall {
+        String id;
+        String name;
+        final StringBuilder arguments = new StringBuilder();
+        Map<String, Object> parsedArguments;
+        
+        SimpleToolCall toToolCall() {
+            return SimpleToolCall.builder()
+                .id(id)
+                .name(name)
+                .arguments(parsedArguments != null ? parsedArguments : new HashMap<>())
+                .build();
+        }
+    }
+    
+    /**
+     * Incremental parser for chat.completions SSE chunks.
+     */
+    private class OpenAiStreamParser {
+        private final StreamListener listener;
+        private final StringBuilder text = new StringBuilder();
+        private final Map<Integer, StreamedToolCall> pending = new java.util.TreeMap<>();
+        private final List<StreamedToolCall> completed = new ArrayList<>();
+        private String finishReason;
+        private JsonNode usage;
+        
+        OpenAiStreamParser(StreamListener listener) {
+            this.listener = listener;
+        }
+        
+        void onLine(String line) {
+            if (line == null || !line.startsWith("data:")) return;
+            String data = line.substring(5).trim();
+            if (data.isEmpty()) return;
+            if ("[DONE]".equals(data)) {
+                finishAll();
+                return;
+            }
+            JsonNode chunk;
+            try {
+                chunk = objectMapper.readTree(data);
+            } catch (Exception e) {
+                log.warn("OpenAI: could not parse stream chunk");
+                return;
+            }
+            if (chunk.hasNonNull("usage")) {
+                usage = chunk.get("usage");
+            }
+            JsonNode choices = chunk.get("choices");
+            if (choices == null || !choices.isArray() || choices.isEmpty()) return;
+            JsonNode choice = choices.get(0);
+            JsonNode delta = choice.get("delta");
+            if (delta != null) {
+                JsonNode contentNode = delta.get("content");
+                if (contentNode != null && !contentNode.isNull()) {
+                    String t = contentNode.asText();
+                    text.append(t);
+                    if (listener != null && !t.isEmpty()) listener.onTextDelta(t);
+                }
+                JsonNode toolCallsNode = delta.get("tool_calls");
+                if (toolCallsNode != null && toolCallsNode.isArray()) {
+                    for (JsonNode tcNode : toolCallsNode) {
+                        int index = tcNode.has("index") ? tcNode.get("index").asInt() : 0;
+                        // A new index means every lower index is finished.
+                        finishBelow(index);
+                        StreamedToolCall tc = pending.computeIfAbsent(index, i -> new StreamedToolCall());
+                        if (tcNode.hasNonNull("id")) tc.id = tcNode.get("id").asText();
+                        // Some OpenAI-compatible gateways omit the id; the executor dedupes streamed calls by it
+                        if (tc.id == null) tc.id = "call_" + index;
+                        JsonNode fn = tcNode.get("function");
+                        if (fn != null) {
+                            if (fn.hasNonNull("name")) tc.name = fn.get("name").asText();
+                            if (fn.hasNonNull("arguments")) tc.arguments.append(fn.get("arguments").asText());
+                        }
+                    }
+                }
+            }
+            JsonNode fr = choice.get("finish_reason");
+            if (fr != null && !fr.isNull()) {
+                finishReason = fr.asText();
+                finishAll();
+            }
+        }
+        
+        private void finishBelow(int index) {
+            List<Integer> done = new ArrayList<>();
+            for (Integer i : pending.keySet()) {
+                if (i < index) done.add(i);
+            }
+            for (Integer i : done) finish(pending.remove(i));
+        }
+        
+        void finishAll() {
+            for (StreamedToolCall tc : new ArrayList<>(pending.values())) finish(tc);
+            pending.clear();
+        }
+        
+        @SuppressWarnings("unchecked")
+        private void finish(StreamedToolCall tc) {
+            if (tc == null) return;
+            try {
+                if (tc.arguments.length() > 0) {
+                    tc.parsedArguments = objectMapper.readValue(tc.arguments.toString(), Map.class);
+                }
+            } catch (Exception e) {
+                log.error("Failed to parse function arguments", e);
+            }
+            completed.add(tc);
+            log.debug("OpenAI: Streamed function call complete: {}", tc.name);
+            if (listener != null) listener.onToolCall(tc.toToolCall());
+        }
+    }
+    
     private ObjectNode buildRequestJson(List<Message> messages, List<Tool> tools) {
         ObjectNode requestJson = objectMapper.createObjectNode();
-        requestJson.put("model", model);
+        requestJson.put("model", resolveModel());
         requestJson.put("temperature", 0.0);
         
         // Add messages
@@ -320,4 +524,12 @@ public class OpenAiProvider implements LlmProvider {
         summary.append("]");
         return summary.toString();
     }
+
+    /**
+     * Model for this call: the one pinned by the model router (see {@link LlmCallContext}), else the configured one.
+     */
+    private String resolveModel() {
+        String pinned = LlmCallContext.current().getModel();
+        return pinned != null && !pinned.isBlank() ? pinned : model;
+    }
 }
@@ -0,0 +1,335 @@
+package com.youraitester.agent.impl;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.youraitester.agent.LlmAdmissionController;
+import com.youraitester.agent.LlmProvider;
+import jakarta.annotation.PostConstruct;
+import lombok.Data;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.io.ResourceLoader;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Scripted stand-in for a real model, for load tests (agent.llm.provider=scripted).
+ *
+ * Each call waits a configurable think time (after taking an admission permit like the real providers) and then
+ * answers from a JSON script instead of a model, so runs exercise the whole agent loop, MCP and the browser
+ * without spending tokens. The script is a list of rules:
+ *
+ * <pre>{ "match": "(?i)^enter '(.+)' in the (.+?) field$",
+ *   "calls": [ { "name": "browser_type", "arguments": { "ref": "{{ref:$2}}", "text": "$1" } } ],
+ *   "navigates": false }</pre>
+ *
+ * Argument strings may use $1.. (groups of the match) and {{ref:label}}, the ref of the first element of the
+ * latest snapshot in the conversation whose line contains the label. A rule whose refs cannot be resolved from a
+ * current snapshot asks for one (NEED_SNAPSHOT in batch mode, a snapshot call otherwise), as the model would.
+ * Steps no rule matches pass without tool calls.
+ */
+@Component("scripted")
+@ConditionalOnProperty(name = "agent.llm.provider", havingValue = "scripted")
+@RequiredArgsConstructor
+@Slf4j
+public class ScriptedLlmProvider implements LlmProvider {
+
+    private static final String BATCH_PROMPT_PREFIX = "BATCH_EXECUTE_STEPS:";
+    private static final String STEP_TAG_ARG = "_step";
+    // Added to the result line of a navigating step: refs of snapshots taken before it are stale
+    private static final String PAGE_CHANGED = "(page changed)";
+    private static final Pattern NUMBERED_LINE = Pattern.compile("^(\\d+)\\.\\s+(.+)$");
+    private static final Pattern REF_PLACEHOLDER = Pattern.compile("\\{\\{ref:([^}]+)}}");
+    private static final Pattern GROUP_PLACEHOLDER = Pattern.compile("\\$(\\d)");
+    private static final Pattern SNAPSHOT_REF = Pattern.compile("\\[ref=([^\\]]+)]");
+
+    @Value("${agent.llm.scripted.script:classpath:loadtest/llm-script.json}")
+    private String scriptLocation;
+
+    @Value("${agent.llm.scripted.latency.ms:1500}")
+    private long latencyMs;
+
+    @Value("${agent.llm.scripted.jitter.ms:500}")
+    private long jitterMs;
+
+    @Value("${agent.llm.scripted.output.tokens:150}")
+    private int outputTokens;
+
+    private final LlmAdmissionController admissionController;
+    private final ResourceLoader resourceLoader;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private volatile List<Rule> rules;
+
+    @Data
+    public static class Rule {
+        private String match;
+        private List<Call> calls = new ArrayList<>();
+        private boolean navigates;
+        @JsonIgnore
+        private Pattern pattern;
+    }
+
+    @Data
+    public static class Call {
+        private String name;
+        private Map<String, Object> arguments = new LinkedHashMap<>();
+    }
+
+    @PostConstruct
+    public void init() {
+        try (InputStream in = resourceLoader.getResource(scriptLocation).getInputStream()) {
+            List<Rule> loaded = objectMapper.readValue(in, new TypeReference<List<Rule>>() {});
+            for (Rule rule : loaded) {
+                rule.setPattern(Pattern.compile(rule.getMatch()));
+            }
+            rules = loaded;
+            log.info("Scripted LLM provider loaded {} rule(s) from {} (latency {} +/- {} ms)",
+                loaded.size(), scriptLocation, latencyMs, jitterMs);
+        } catch (IOException | RuntimeException e) {
+            log.error("Scripted LLM provider could not load script {}: {}", scriptLocation, e.getMessage());
+        }
+    }
+
+    @Override
+    public AgentResponse executeWithTools(List<Message> messages, List<Tool> tools, int maxIterations) {
+        if (!isAvailable()) {
+            throw new IllegalStateException("Scripted LLM provider has no script loaded");
+        }
+        int inputTokens = (int) (messages.stream()
+            .mapToLong(m -> m.getContent() != null ? m.getContent().length() : 0)
+            .sum() / 4);
+        admissionController.acquire(getProviderName(), inputTokens);
+
+        long started = System.currentTimeMillis();
+        think();
+        Reply reply = reply(messages);
+        return SimpleAgentResponse.builder()
+            .content(reply.text)
+            .toolCalls(reply.calls)
+            .complete(reply.calls.isEmpty())
+            .finishReason(reply.calls.isEmpty() ? "stop" : "tool_calls")
+            .inputTokens(inputTokens)
+            .outputTokens(outputTokens)
+            .latencyMs(System.currentTimeMillis() - started)
+            .build();
+    }
+
+    private void think() {
+        long jitter = jitterMs > 0 ? ThreadLocalRandom.current().nextLong(-jitterMs, jitterMs + 1) : 0;
+        long delay = Math.max(0, latencyMs + jitter);
+        if (delay == 0) return;
+        try {
+            Thread.sleep(delay);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while simulating LLM latency", e);
+        }
+    }
+
+    private record Reply(String text, List<ToolCall> calls) {}
+
+    private Reply reply(List<Message> messages) {
+        int lastUser = lastIndexOf(messages, "user");
+        String prompt = lastUser >= 0 && messages.get(lastUser).getContent() != null
+            ? messages.get(lastUser).getContent() : "";
+        String snapshot = currentSnapshot(messages);
+        return prompt.startsWith(BATCH_PROMPT_PREFIX)
+            ? batchReply(prompt, snapshot)
+            : singleReply(messages, lastUser, prompt, snapshot);
+    }
+
+    /**
+     * Batch turn: run numbered steps in order from the current snapshot, stopping after a navigating step or
+     * before the first step whose refs the snapshot does not have.
+     */
+    private Reply batchReply(String prompt, String snapshot) {
+        StringBuilder text = new StringBuilder();
+        List<ToolCall> calls = new ArrayList<>();
+        List<String> executed = new ArrayList<>();
+        for (String line : prompt.split("\n")) {
+            Matcher numbered = NUMBERED_LINE.matcher(line.trim());
+            if (!numbered.matches()) continue;
+            int step = Integer.parseInt(numbered.group(1));
+            String instruction = numbered.group(2);
+
+            Rule rule = findRule(instruction);
+            List<ToolCall> stepCalls = new ArrayList<>();
+            if (rule != null) {
+                stepCalls = resolveCalls(rule, instruction, snapshot, step);
+                if (stepCalls == null) {
+                    if (executed.isEmpty()) text.append("NEED_SNAPSHOT\n");
+                    break;
+                }
+            }
+            calls.addAll(stepCalls);
+            calls.add(call("browser_take_screenshot", new LinkedHashMap<>(Map.of("fullPage", true, STEP_TAG_ARG, step))));
+            executed.add(String.valueOf(step));
+            boolean navigates = rule != null && rule.isNavigates();
+            text.append("Step ").append(step).append(": PASS - scripted")
+                .append(navigates ? " " + PAGE_CHANGED : "").append('\n');
+            if (navigates) break;
+        }
+        text.append("EXECUTED_STEP_NUMBERS: ").append(String.join(",", executed));
+        return new Reply(text.toString(), calls);
+    }
+
+    /**
+     * Single-instruction turn: take a snapshot first when the rule needs refs we do not have, then run the rule's
+     * calls, then finish once their results are in.
+     */
+    private Reply singleReply(List<Message> messages, int lastUser, String prompt, String snapshot) {
+        String instruction = null;
+        Rule rule = null;
+        String[] lines = prompt.split("\n");
+        for (int i = lines.length - 1; i >= 0 && rule == null; i--) {
+            String line = lines[i].trim().replaceFirst("^\\d+\\.\\s+", "");
+            rule = findRule(line);
+            if (rule != null) instruction = line;
+        }
+        if (rule == null) {
+            return new Reply("Done (no scripted action).", List.of());
+        }
+
+        boolean snapshotRequested = false;
+        for (int i = lastUser + 1; i < messages.size(); i++) {
+            List<ToolCall> previous = messages.get(i).getToolCalls();
+            if (previous == null || !"assistant".equals(messages.get(i).getRole())) continue;
+            for (ToolCall tc : previous) {
+                if ("snapshot".equals(tc.getName())) {
+                    snapshotRequested = true;
+                } else {
+                    return new Reply("Done.", List.of());
+                }
+            }
+        }
+
+        List<ToolCall> calls = resolveCalls(rule, instruction, snapshot, null);
+        if (calls == null) {
+            if (snapshotRequested) {
+                return new Reply("FAIL - element for '" + instruction + "' not found in the snapshot.", List.of());
+            }
+            return new Reply("Taking a snapshot.", List.of(call("snapshot", new LinkedHashMap<>())));
+        }
+        if (calls.isEmpty()) {
+            return new Reply("Done.", List.of());
+        }
+        return new Reply(rule.isNavigates() ? PAGE_CHANGED : "", calls);
+    }
+
+    private Rule findRule(String instruction) {
+        for (Rule rule : rules) {
+            if (rule.getPattern().matcher(instruction).find()) return rule;
+        }
+        return null;
+    }
+
+    /**
+     * The rule's calls with placeholders filled in, or null when a ref is not in the snapshot.
+     */
+    private List<ToolCall> resolveCalls(Rule rule, String instruction, String snapshot, Integer step) {
+        Matcher m = rule.getPattern().matcher(instruction);
+        if (!m.find()) return null;
+        List<ToolCall> out = new ArrayList<>();
+        for (Call c : rule.getCalls()) {
+            Map<String, Object> args = new LinkedHashMap<>();
+            for (Map.Entry<String, Object> e : c.getArguments().entrySet()) {
+                Object value = e.getValue();
+                if (value instanceof String s) {
+                    value = fill(s, m, snapshot);
+                    if (value == null) return null;
+                }
+                args.put(e.getKey(), value);
+            }
+            if (step != null) args.put(STEP_TAG_ARG, step);
+            out.add(call(c.getName(), args));
+        }
+        return out;
+    }
+
+    private static String fill(String template, Matcher m, String snapshot) {
+        StringBuilder groups = new StringBuilder();
+        Matcher g = GROUP_PLACEHOLDER.matcher(template);
+        while (g.find()) {
+            int n = Integer.parseInt(g.group(1));
+            String value = n <= m.groupCount() && m.group(n) != null ? m.group(n) : "";
+            g.appendReplacement(groups, Matcher.quoteReplacement(value));
+        }
+        g.appendTail(groups);
+
+        StringBuilder out = new StringBuilder();
+        Matcher r = REF_PLACEHOLDER.matcher(groups);
+        while (r.find()) {
+            String ref = findRef(snapshot, r.group(1).trim());
+            if (ref == null) return null;
+            r.appendReplacement(out, Matcher.quoteReplacement(ref));
+        }
+        r.appendTail(out);
+        return out.toString();
+    }
+
+    /**
+     * Ref of the snapshot element named exactly {@code label}, else of the first line containing it.
+     */
+    private static String findRef(String snapshot, String label) {
+        if (snapshot == null || label.isEmpty()) return null;
+        String quoted = "\"" + label.toLowerCase(Locale.ROOT) + "\"";
+        String fallback = null;
+        for (String line : snapshot.split("\n")) {
+            Matcher ref = SNAPSHOT_REF.matcher(line);
+            if (!ref.find()) continue;
+            String lower = line.toLowerCase(Locale.ROOT);
+            if (lower.contains(quoted)) return ref.group(1);
+            if (fallback == null && lower.contains(label.toLowerCase(Locale.ROOT))) fallback = ref.group(1);
+        }
+        return fallback;
+    }
+
+    /**
+     * Latest snapshot in the conversation, or null when none is left or a navigating step ran after it.
+     */
+    private static String currentSnapshot(List<Message> messages) {
+        for (int i = messages.size() - 1; i >= 0; i--) {
+            Message m = messages.get(i);
+            String content = m.getContent();
+            if (content == null) continue;
+            if ("assistant".equals(m.getRole()) && content.contains(PAGE_CHANGED)) return null;
+            if (!"assistant".equals(m.getRole()) && SNAPSHOT_REF.matcher(content).find()) return content;
+        }
+        return null;
+    }
+
+    private static int lastIndexOf(List<Message> messages, String role) {
+        for (int i = messages.size() - 1; i >= 0; i--) {
+            if (role.equals(messages.get(i).getRole())) return i;
+        }
+        return -1;
+    }
+
+    private static ToolCall call(String name, Map<String, Object> arguments) {
+        return SimpleToolCall.builder()
+            .id("scripted_" + UUID.randomUUID())
+            .name(name)
+            .arguments(arguments)
+            .build();
+    }
+
+    @Override
+    public String getProviderName() {
+        return "scripted";
+    }
+
+    @Override
+    public boolean isAvailable() {
+        return rules != null;
+    }
+}
@@ -24,6 +24,11 @@ public class SimpleAgentResponse implements LlmProvider.AgentResponse {
     
     private String finishReason;
     
+    private long inputTokens;
+    private long outputTokens;
+    private long cachedTokens;
+    private long latencyMs;
+    
     public boolean hasToolCalls() {
         return toolCalls != null && !toolCalls.isEmpty();
     }
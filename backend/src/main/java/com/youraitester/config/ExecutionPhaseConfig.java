@@ -0,0 +1,77 @@
+package com.youraitester.config;
+
+import com.youraitester.service.ExecutionPhaseStats;
+import com.youraitester.service.OfficialPlaywrightMcpService;
+import com.youraitester.service.RunTracer;
+import com.youraitester.service.SharedMcpServer;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.TaskDecorator;
+import org.springframework.data.repository.core.support.RepositoryFactoryBeanSupport;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Feeds the two phases of {@link ExecutionPhaseStats} that no service sees directly: how long a test run waited in
+ * the @Async executor queue, and the time spent in Spring Data repository calls. Also publishes the browser
+ * session gauges; executor pool occupancy (executor.active / executor.queued) comes from Spring Boot.
+ */
+@Configuration
+public class ExecutionPhaseConfig {
+
+    /**
+     * Picked up by Spring Boot for the application task executor that runs @Async test executions. The submit time
+     * is also handed to {@link RunTracer} so the run's trace starts when it was queued.
+     */
+    @Bean
+    public TaskDecorator queueWaitTaskDecorator(ExecutionPhaseStats phaseStats, RunTracer tracer) {
+        return task -> {
+            long submitted = System.nanoTime();
+            return () -> {
+                phaseStats.recordSince(ExecutionPhaseStats.QUEUE, submitted);
+                tracer.queued(submitted);
+                try {
+                    task.run();
+                } finally {
+                    tracer.clearQueued();
+                }
+            };
+        };
+    }
+
+    @Bean
+    public MeterBinder mcpSessionMetrics(OfficialPlaywrightMcpService mcpService, SharedMcpServer sharedMcpServer) {
+        return registry -> {
+            Gauge.builder("mcp.sessions.active", mcpService, OfficialPlaywrightMcpService::getDedicatedProcessCount)
+                .description("Open MCP sessions")
+                .tag("mode", OfficialPlaywrightMcpService.MODE_PROCESS)
+                .register(registry);
+            Gauge.builder("mcp.sessions.active", sharedMcpServer, SharedMcpServer::getActiveSessions)
+                .description("Open MCP sessions")
+                .tag("mode", OfficialPlaywrightMcpService.MODE_SHARED)
+                .register(registry);
+        };
+    }
+
+    /**
+     * Adds an invocation listener to every repository factory. Static and lazy so the post-processor does not pull
+     * beans in early.
+     */
+    @Bean
+    public static BeanPostProcessor repositoryTimingPostProcessor(ObjectProvider<ExecutionPhaseStats> phaseStats) {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessBeforeInitialization(Object bean, String beanName) {
+                if (bean instanceof RepositoryFactoryBeanSupport<?, ?, ?> factoryBean) {
+                    factoryBean.addRepositoryFactoryCustomizer(factory -> factory.addInvocationListener(invocation ->
+                        phaseStats.getObject().record(ExecutionPhaseStats.DB, invocation.getDuration(TimeUnit.MILLISECONDS))));
+                }
+                return bean;
+            }
+        };
+    }
+}
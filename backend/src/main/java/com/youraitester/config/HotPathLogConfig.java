@@ -0,0 +1,44 @@
+package com.youraitester.config;
+
+import com.youraitester.service.HotPathLog;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.Map;
+
+/**
+ * Applies the logging.hotpath.* settings to {@link HotPathLog}. Async appenders and the text/json output format
+ * are set up in logback-spring.xml.
+ */
+@Configuration
+@Slf4j
+public class HotPathLogConfig {
+
+    @Value("${logging.hotpath.sample.mcp-call:10}")
+    private int sampleMcpCall;
+
+    @Value("${logging.hotpath.sample.mcp-stdio:1}")
+    private int sampleMcpStdio;
+
+    @Value("${logging.hotpath.sample.agent-trace:1}")
+    private int sampleAgentTrace;
+
+    @Value("${logging.hotpath.max.chars:500}")
+    private int maxChars;
+
+    @Value("${logging.hotpath.debug.max.chars:20000}")
+    private int debugMaxChars;
+
+    @PostConstruct
+    void apply() {
+        HotPathLog.configure(Map.of(
+            HotPathLog.MCP_CALL, sampleMcpCall,
+            HotPathLog.MCP_STDIO, sampleMcpStdio,
+            HotPathLog.AGENT_TRACE, sampleAgentTrace
+        ), maxChars, debugMaxChars);
+        log.info("Hot-path logging: sample 1 in N mcp-call={}, mcp-stdio={}, agent-trace={} (0 = off); payload cap {} chars, {} with debug trace",
+            sampleMcpCall, sampleMcpStdio, sampleAgentTrace, maxChars, debugMaxChars);
+    }
+}
@@ -0,0 +1,191 @@
+package com.youraitester.controller;
+
+import com.youraitester.agent.LlmAdmissionController;
+import com.youraitester.agent.LlmModelRouter;
+import com.youraitester.agent.LocalActionResolver;
+import com.youraitester.agent.LocalAssertionEngine;
+import com.youraitester.agent.McpSessionBenchmark;
+import com.youraitester.agent.McpToolExecutor;
+import com.youraitester.agent.ToolBackendBenchmark;
+import com.youraitester.agent.impl.LlmHttpTransport;
+import com.youraitester.service.ExecutionPhaseStats;
+import com.youraitester.service.McpStreamDecoder;
+import com.youraitester.service.OfficialPlaywrightMcpService;
+import com.youraitester.service.PlaywrightJavaToolService;
+import com.youraitester.service.ScreenInferenceService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.*;
+
+import java.net.InetAddress;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Runtime diagnostics for the agent layer (LLM transport latency etc.). The GET endpoints are read-only; the
+ * benchmark endpoints launch browsers against a given URL and are restricted to SUPER_ADMIN.
+ */
+@RestController
+@RequestMapping("/api/agent/diagnostics")
+@RequiredArgsConstructor
+@Slf4j
+@CrossOrigin(origins = "*")
+public class AgentDiagnosticsController {
+
+    /** Most concurrent sessions one benchmark level may open. */
+    private static final int MAX_SESSION_LEVEL = 20;
+    private static final int MAX_SESSION_LEVELS = 5;
+    private static final int MAX_BENCHMARK_ITERATIONS = 20;
+
+    private final LlmHttpTransport llmHttpTransport;
+    private final LlmAdmissionController llmAdmissionController;
+    private final LlmModelRouter llmModelRouter;
+    private final LocalActionResolver localActionResolver;
+    private final LocalAssertionEngine localAssertionEngine;
+    private final McpToolExecutor mcpToolExecutor;
+    private final PlaywrightJavaToolService playwrightJavaToolService;
+    private final ToolBackendBenchmark toolBackendBenchmark;
+    private final OfficialPlaywrightMcpService mcpService;
+    private final McpSessionBenchmark mcpSessionBenchmark;
+    private final ScreenInferenceService screenInferenceService;
+    private final ExecutionPhaseStats executionPhaseStats;
+
+    @GetMapping("/llm-latency")
+    public ResponseEntity<Map<String, Object>> getLlmLatency() {
+        return ResponseEntity.ok(llmHttpTransport.getLatencySnapshot());
+    }
+
+    @GetMapping("/llm-admission")
+    public ResponseEntity<Map<String, Object>> getLlmAdmission() {
+        return ResponseEntity.ok(llmAdmissionController.getSnapshot());
+    }
+
+    @GetMapping("/llm-routing")
+    public ResponseEntity<Map<String, Object>> getLlmRouting() {
+        return ResponseEntity.ok(llmModelRouter.getSnapshot());
+    }
+
+    @GetMapping("/local-resolver")
+    public ResponseEntity<Map<String, Object>> getLocalResolver() {
+        return ResponseEntity.ok(localActionResolver.getSnapshot());
+    }
+
+    @GetMapping("/local-assertions")
+    public ResponseEntity<Map<String, Object>> getLocalAssertions() {
+        return ResponseEntity.ok(localAssertionEngine.getSnapshot());
+    }
+
+    @GetMapping("/mcp-codec")
+    public ResponseEntity<Map<String, Object>> getMcpCodec() {
+        return ResponseEntity.ok(McpStreamDecoder.getStats());
+    }
+
+    @GetMapping("/screen-inference")
+    public ResponseEntity<Map<String, Object>> getScreenInference() {
+        return ResponseEntity.ok(screenInferenceService.getSnapshot());
+    }
+
+    /**
+     * Latency percentiles of the phases of test runs (queue, browser start, navigation, step, LLM, MCP, screenshot, DB).
+     */
+    @GetMapping("/execution-phases")
+    public ResponseEntity<Map<String, Object>> getExecutionPhases() {
+        return ResponseEntity.ok(executionPhaseStats.getSnapshot());
+    }
+
+    /**
+     * Clears the process-wide phase statistics (e.g. between load-test runs).
+     */
+    @PostMapping("/execution-phases/reset")
+    @PreAuthorize("hasRole('SUPER_ADMIN')")
+    public ResponseEntity<Map<String, Object>> resetExecutionPhases() {
+        executionPhaseStats.reset();
+        return ResponseEntity.ok(executionPhaseStats.getSnapshot());
+    }
+
+    @GetMapping("/tool-backend")
+    public ResponseEntity<Map<String, Object>> getToolBackend() {
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("backend", mcpToolExecutor.getBackendName());
+        out.put("inProcess", playwrightJavaToolService.getSnapshot());
+        out.put("latency", mcpToolExecutor.getLatencySnapshot());
+        return ResponseEntity.ok(out);
+    }
+
+    /**
+     * Runs both tool backends against {@code url} on the request thread (launches browsers; takes seconds),
+     * at most {@value #MAX_BENCHMARK_ITERATIONS} iterations.
+     */
+    @PostMapping("/tool-backend/benchmark")
+    @PreAuthorize("hasRole('SUPER_ADMIN')")
+    public ResponseEntity<Map<String, Object>> benchmarkToolBackends(@RequestBody Map<String, Object> body) {
+        Object url = body != null ? body.get("url") : null;
+        String urlError = checkBenchmarkUrl(url);
+        if (urlError != null) {
+            return ResponseEntity.badRequest().body(Map.of("error", urlError));
+        }
+        int requested = body.get("iterations") instanceof Number n ? n.intValue() : 5;
+        int iterations = Math.max(1, Math.min(requested, MAX_BENCHMARK_ITERATIONS));
+        log.info("Benchmarking tool backends against {} ({} iterations)", url, iterations);
+        return ResponseEntity.ok(toolBackendBenchmark.run(String.valueOf(url), iterations));
+    }
+
+    @GetMapping("/mcp-sessions")
+    public ResponseEntity<Map<String, Object>> getMcpSessions() {
+        return ResponseEntity.ok(mcpService.getSessionSnapshot());
+    }
+
+    /**
+     * Opens 1..N concurrent sessions per MCP session mode (process vs shared) against {@code url} and reports
+     * RSS per session and the estimated max concurrency for {@code memoryBudgetMb}. Launches many browsers, so
+     * at most {@value #MAX_SESSION_LEVELS} levels of up to {@value #MAX_SESSION_LEVEL} sessions are run.
+     */
+    @PostMapping("/mcp-sessions/benchmark")
+    @PreAuthorize("hasRole('SUPER_ADMIN')")
+    public ResponseEntity<Map<String, Object>> benchmarkMcpSessions(@RequestBody Map<String, Object> body) {
+        Object url = body != null ? body.get("url") : null;
+        String urlError = checkBenchmarkUrl(url);
+        if (urlError != null) {
+            return ResponseEntity.badRequest().body(Map.of("error", urlError));
+        }
+        List<Integer> levels = new ArrayList<>();
+        if (body.get("levels") instanceof List<?> raw) {
+            raw.stream().filter(Number.class::isInstance)
+                .map(v -> Math.max(1, Math.min(((Number) v).intValue(), MAX_SESSION_LEVEL)))
+                .distinct().sorted().limit(MAX_SESSION_LEVELS)
+                .forEach(levels::add);
+        }
+        if (levels.isEmpty()) levels.addAll(List.of(1, 5, 10));
+        long budgetMb = body.get("memoryBudgetMb") instanceof Number n ? n.longValue() : 16384;
+        log.info("Benchmarking MCP session modes against {} (levels {})", url, levels);
+        return ResponseEntity.ok(mcpSessionBenchmark.run(String.valueOf(url), levels, budgetMb));
+    }
+
+    /**
+     * Benchmarks browse to the URL from this server: only http(s), and not to loopback, link-local (cloud metadata)
+     * or wildcard addresses. Returns the problem, or null when the URL is acceptable.
+     */
+    static String checkBenchmarkUrl(Object url) {
+        if (url == null || String.valueOf(url).isBlank()) return "url is required";
+        try {
+            URI uri = new URI(String.valueOf(url).trim());
+            String scheme = uri.getScheme() != null ? uri.getScheme().toLowerCase() : "";
+            if (!scheme.equals("http") && !scheme.equals("https")) return "url must be http or https";
+            if (uri.getHost() == null || uri.getHost().isBlank()) return "url has no host";
+            for (InetAddress address : InetAddress.getAllByName(uri.getHost())) {
+                if (address.isLoopbackAddress() || address.isLinkLocalAddress() || address.isAnyLocalAddress()
+                    || address.isMulticastAddress()) {
+                    return "url host is not allowed";
+                }
+            }
+            return null;
+        } catch (Exception e) {
+            return "invalid url: " + e.getMessage();
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.youraitester.controller;
+
+import com.youraitester.repository.StepResultRepository;
+import com.youraitester.repository.TestRunRepository;
+import com.youraitester.service.LlmUsageService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * LLM token / latency / cost rollups and "top consumers" reports.
+ * sinceDays <= 0 means all time. Project, tenant and top-consumer reports span tenants and are SUPER_ADMIN-only.
+ */
+@RestController
+@RequestMapping("/api/usage")
+@RequiredArgsConstructor
+@Slf4j
+@CrossOrigin(origins = "*")
+public class LlmUsageController {
+
+    private final LlmUsageService llmUsageService;
+
+    @GetMapping("/runs/{runId}")
+    @Transactional(readOnly = true)
+    public ResponseEntity<Map<String, Object>> getRunUsage(@PathVariable String runId) {
+        return ResponseEntity.ok(llmUsageService.getRunUsage(runId));
+    }
+
+    @GetMapping("/projects/{projectId}")
+    @PreAuthorize("hasRole('SUPER_ADMIN')")
+    @Transactional(readOnly = true)
+    public ResponseEntity<Map<String, Object>> getProjectUsage(@PathVariable String projectId,
+                                                               @RequestParam(value = "sinceDays", defaultValue = "30") int sinceDays) {
+        return ResponseEntity.ok(llmUsageService.getProjectUsage(projectId, sinceDays));
+    }
+
+    @GetMapping("/tenants/{tenantId}")
+    @PreAuthorize("hasRole('SUPER_ADMIN')")
+    @Transactional(readOnly = true)
+    public ResponseEntity<Map<String, Object>> getTenantUsage(@PathVariable Long tenantId,
+                                                              @RequestParam(value = "sinceDays", defaultValue = "30") int sinceDays) {
+        return ResponseEntity.ok(llmUsageService.getTenantUsage(tenantId, sinceDays));
+    }
+
+    @GetMapping("/top-tests")
+    @PreAuthorize("hasRole('SUPER_ADMIN')")
+    @Transactional(readOnly = true)
+    public ResponseEntity<List<TestRunRepository.TestUsage>> getTopTests(
+            @RequestParam(value = "projectId", required = false) String projectId,
+            @RequestParam(value = "sinceDays", defaultValue = "30") int sinceDays,
+            @RequestParam(value = "limit", defaultValue = "20") int limit) {
+        return ResponseEntity.ok(llmUsageService.getTopTests(blankToNull(projectId), sinceDays, limit));
+    }
+
+    @GetMapping("/top-steps")
+    @PreAuthorize("hasRole('SUPER_ADMIN')")
+    @Transactional(readOnly = true)
+    public ResponseEntity<List<StepResultRepository.StepUsage>> getTopSteps(
+            @RequestParam(value = "projectId", required = false) String projectId,
+            @RequestParam(value = "sinceDays", defaultValue = "30") int sinceDays,
+            @RequestParam(value = "limit", defaultValue = "20") int limit) {
+        return ResponseEntity.ok(llmUsageService.getTopSteps(blankToNull(projectId), sinceDays, limit));
+    }
+
+    private static String blankToNull(String s) {
+        return s == null || s.isBlank() ? null : s;
+    }
+}
@@ -4,6 +4,7 @@ import com.youraitester.model.Run;
 import com.youraitester.repository.RunRepository;
 import com.youraitester.repository.StepResultRepository;
 import com.youraitester.repository.TestRunRepository;
+import com.youraitester.repository.TestRunTraceRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.ResponseEntity;
@@ -24,6 +25,7 @@ public class RunController {
     private final RunRepository runRepository;
     private final TestRunRepository testRunRepository;
     private final StepResultRepository stepResultRepository;
+    private final TestRunTraceRepository testRunTraceRepository;
 
     @PersistenceContext
     private EntityManager entityManager;
@@ -62,6 +64,7 @@ public class RunController {
             for (var tr : testRuns) {
                 if (tr == null || tr.getId() == null) continue;
                 stepResultRepository.deleteByTestRunId(tr.getId());
+                testRunTraceRepository.deleteById(tr.getId());
             }
             // Flush & clear persistence context to ensure Hibernate doesn't try to manage deleted relationships
             entityManager.flush();
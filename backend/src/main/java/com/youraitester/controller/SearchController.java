@@ -0,0 +1,71 @@
+package com.youraitester.controller;
+
+import com.youraitester.service.SearchService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.Map;
+
+/**
+ * Ranked search over tests and screen metadata, and "which tests use this element / method" lookups for
+ * impact analysis of a selector change. Screen metadata (and its references) is SUPER_ADMIN only, like the
+ * mapped step fields it is derived from.
+ */
+@RestController
+@RequestMapping("/api/search")
+@RequiredArgsConstructor
+@Slf4j
+@CrossOrigin(origins = "*")
+public class SearchController {
+
+    private final SearchService searchService;
+
+    @GetMapping
+    @Transactional(readOnly = true)
+    public ResponseEntity<Map<String, Object>> search(@RequestParam("q") String q,
+                                                      @RequestParam(value = "projectId", required = false) String projectId,
+                                                      @RequestParam(value = "appId", required = false) Long appId,
+                                                      @RequestParam(value = "limit", defaultValue = "25") int limit,
+                                                      @RequestParam(value = "offset", defaultValue = "0") int offset) {
+        if (q == null || q.isBlank()) {
+            return ResponseEntity.badRequest().body(Map.of("error", "q is required"));
+        }
+        String project = projectId != null && !projectId.isBlank() ? projectId : null;
+        return ResponseEntity.ok(searchService.search(q, project, appId, limit, offset, isSuperAdmin()));
+    }
+
+    /**
+     * Tests whose steps use the given element or method. Exactly one of {@code element} / {@code method}.
+     */
+    @GetMapping("/references")
+    @Transactional(readOnly = true)
+    public ResponseEntity<Map<String, Object>> references(@RequestParam(value = "element", required = false) String element,
+                                                          @RequestParam(value = "method", required = false) String method,
+                                                          @RequestParam(value = "appId", required = false) Long appId,
+                                                          @RequestParam(value = "screen", required = false) String screen) {
+        if (!isSuperAdmin()) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).body(Map.of("error", "SUPER_ADMIN only"));
+        }
+        boolean hasElement = element != null && !element.isBlank();
+        boolean hasMethod = method != null && !method.isBlank();
+        if (hasElement == hasMethod) {
+            return ResponseEntity.badRequest().body(Map.of("error", "Specify exactly one of element or method"));
+        }
+        String screenName = screen != null && !screen.isBlank() ? screen.trim() : null;
+        return ResponseEntity.ok(hasElement
+            ? searchService.findReferences("element", element.trim(), appId, screenName)
+            : searchService.findReferences("method", method.trim(), appId, screenName));
+    }
+
+    private boolean isSuperAdmin() {
+        Authentication auth = SecurityContextHolder.getContext().getAuthentication();
+        if (auth == null || auth.getAuthorities() == null) return false;
+        return auth.getAuthorities().stream().anyMatch(a -> "ROLE_SUPER_ADMIN".equals(a.getAuthority()));
+    }
+}
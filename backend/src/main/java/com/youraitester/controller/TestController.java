@@ -1,10 +1,13 @@
 package com.youraitester.controller;
 
+import com.youraitester.dto.TestSummary;
 import com.youraitester.model.Test;
 import com.youraitester.model.TestStep;
 import com.youraitester.model.TestDataset;
 import com.youraitester.repository.TestRepository;
 import com.youraitester.service.AppResolutionService;
+import com.youraitester.service.SearchService;
+import com.youraitester.service.TestDatasetService;
 import com.youraitester.service.TestStepMappingService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -13,8 +16,15 @@ import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.web.bind.annotation.*;
 
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 @RestController
 @RequestMapping("/api/tests")
@@ -26,6 +36,12 @@ public class TestController {
     private final TestRepository testRepository;
     private final AppResolutionService appResolutionService;
     private final TestStepMappingService testStepMappingService;
+    private final TestDatasetService testDatasetService;
+
+    private static final int DEFAULT_PAGE_SIZE = 50;
+    private static final int MAX_PAGE_SIZE = 200;
+    // Must match the COALESCE in TestRepository.findCataloguePage
+    private static final LocalDateTime CURSOR_EPOCH = LocalDateTime.of(1970, 1, 1, 0, 0);
     
     @GetMapping
     public ResponseEntity<List<Test>> getAllTests(@RequestParam(value = "projectId", required = false) String projectId) {
@@ -38,10 +54,94 @@ public class TestController {
         return ResponseEntity.ok(sanitizeTestsForResponse(tests, superAdmin));
     }
     
+    /**
+     * Catalogue listing: keyset-paginated summaries (no steps or datasets), newest first, with optional
+     * filters. Pass the returned nextCursor back as {@code cursor} for the next page; it is null on the last one.
+     */
+    @GetMapping("/catalog")
+    public ResponseEntity<Map<String, Object>> getCatalog(
+            @RequestParam(value = "projectId", required = false) String projectId,
+            @RequestParam(value = "tag", required = false) String tag,
+            @RequestParam(value = "status", required = false) String status,
+            @RequestParam(value = "lastRunStatus", required = false) String lastRunStatus,
+            @RequestParam(value = "q", required = false) String query,
+            @RequestParam(value = "cursor", required = false) String cursor,
+            @RequestParam(value = "limit", required = false) Integer limit) {
+        int pageSize = Math.max(1, Math.min(limit != null ? limit : DEFAULT_PAGE_SIZE, MAX_PAGE_SIZE));
+        LocalDateTime afterDate = null;
+        String afterId = null;
+        if (cursor != null && !cursor.isBlank()) {
+            try {
+                String decoded = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+                int sep = decoded.indexOf('|');
+                afterDate = LocalDateTime.parse(decoded.substring(0, sep));
+                afterId = decoded.substring(sep + 1);
+            } catch (RuntimeException e) {
+                return ResponseEntity.badRequest().body(Map.of("error", "Invalid cursor"));
+            }
+        }
+        String namePattern = blankToNull(query) != null
+            ? SearchService.likePattern(query.trim())
+            : null;
+
+        // One extra row tells whether there is a next page
+        List<TestRepository.SummaryRow> rows = testRepository.findCataloguePage(blankToNull(projectId),
+            blankToNull(status), blankToNull(lastRunStatus), blankToNull(tag), namePattern, afterDate, afterId,
+            pageSize + 1);
+        boolean hasMore = rows.size() > pageSize;
+        if (hasMore) rows = rows.subList(0, pageSize);
+
+        Map<String, TestSummary> byId = new LinkedHashMap<>();
+        for (TestRepository.SummaryRow r : rows) {
+            TestSummary s = new TestSummary();
+            s.setId(r.getId());
+            s.setName(r.getName());
+            s.setDescription(r.getDescription());
+            s.setProjectId(r.getProjectId());
+            s.setAppUrl(r.getAppUrl());
+            s.setStatus(r.getStatus());
+            s.setRunCount(r.getRunCount());
+            s.setLastRunStatus(r.getLastRunStatus());
+            s.setLastRunDate(r.getLastRunDate());
+            s.setCreatedDate(r.getCreatedDate());
+            s.setModifiedDate(r.getModifiedDate());
+            s.setStepCount(r.getStepCount() != null ? r.getStepCount() : 0);
+            byId.put(s.getId(), s);
+        }
+        if (!byId.isEmpty()) {
+            for (TestRepository.TagRow t : testRepository.findTagsByTestIds(byId.keySet())) {
+                TestSummary s = byId.get(t.getTestId());
+                if (s != null) s.getTags().add(t.getTag());
+            }
+        }
+
+        String nextCursor = null;
+        if (hasMore && !rows.isEmpty()) {
+            TestRepository.SummaryRow last = rows.get(rows.size() - 1);
+            LocalDateTime lastDate = last.getCreatedDate() != null ? last.getCreatedDate() : CURSOR_EPOCH;
+            nextCursor = Base64.getUrlEncoder().withoutPadding()
+                .encodeToString((lastDate + "|" + last.getId()).getBytes(StandardCharsets.UTF_8));
+        }
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("items", new ArrayList<>(byId.values()));
+        body.put("nextCursor", nextCursor);
+        body.put("limit", pageSize);
+        return ResponseEntity.ok(body);
+    }
+
+    private static String blankToNull(String s) {
+        return s == null || s.isBlank() ? null : s.trim();
+    }
+
+    /**
+     * Test detail. Dataset rows are only inlined (as the editor's dataset document) with includeDataset=true;
+     * otherwise datasets carry just name, columns and row count.
+     */
     @GetMapping("/{id}")
-    public ResponseEntity<Test> getTest(@PathVariable String id) {
+    public ResponseEntity<Test> getTest(@PathVariable String id,
+                                        @RequestParam(value = "includeDataset", defaultValue = "false") boolean includeDataset) {
         return testRepository.findById(id)
-                .map(t -> ResponseEntity.ok(sanitizeTestForResponse(t, isSuperAdmin())))
+                .map(t -> ResponseEntity.ok(sanitizeTestForResponse(t, isSuperAdmin(), includeDataset)))
                 .orElse(ResponseEntity.notFound().build());
     }
     
@@ -55,6 +155,7 @@ public class TestController {
                 log.info("Resolved appId={} from appUrl='{}' (appName='{}')", app.getId(), test.getAppUrl(), app.getName());
             });
         }
+        clearForeignStepIds(test.getSteps(), List.of());
         // Save-time mapping: populate selector/value/type so execution can run without LLM
         try {
             testStepMappingService.mapTestSteps(test);
@@ -62,6 +163,7 @@ public class TestController {
             log.warn("Save-time step mapping failed for createTest (continuing without mappings). {}", e.getMessage());
         }
         Test saved = testRepository.save(test);
+        testDatasetService.externalize(saved.getId(), List.of());
         log.info("Created test with id: {}. Datasets size: {}", saved.getId(), saved.getDatasets() != null ? saved.getDatasets().size() : 0);
         return ResponseEntity.ok(sanitizeTestForResponse(saved, isSuperAdmin()));
     }
@@ -84,9 +186,16 @@ public class TestController {
         if (test.getTags() != null) {
             existing.setTags(test.getTags());
         }
+        // Snapshot of the steps before the edit: matched steps are updated in place by setSteps
+        List<TestStep> previousSteps = existing.getSteps() != null
+            ? existing.getSteps().stream().map(TestStep::copy).toList()
+            : List.of();
         if (test.getSteps() != null) {
+            clearForeignStepIds(test.getSteps(), existing.getSteps());
             existing.setSteps(test.getSteps());
         }
+        // Headers before the edit: rows of datasets sent without data follow them if they moved
+        List<TestDataset> previousDatasets = testDatasetService.snapshotHeaders(existing);
         // Always update datasets if provided (even if empty array - means clear datasets)
         if (test.getDatasets() != null) {
             log.info("Received datasets in request. Size: {}", test.getDatasets().size());
@@ -139,7 +248,7 @@ public class TestController {
         // and we must NOT spend LLM tokens in those cases.
         if (test.getSteps() != null) {
             try {
-                testStepMappingService.mapTestSteps(existing);
+                testStepMappingService.mapTestSteps(existing, previousSteps);
             } catch (Exception e) {
                 log.warn("Save-time step mapping failed for updateTest id={} (continuing without mappings). {}", id, e.getMessage());
             }
@@ -149,6 +258,9 @@ public class TestController {
         
         log.info("Saving test update. Datasets size: {}", existing.getDatasets() != null ? existing.getDatasets().size() : 0);
         Test updated = testRepository.save(existing);
+        if (test.getDatasets() != null) {
+            testDatasetService.externalize(id, previousDatasets);
+        }
         // Reload to verify datasets were saved
         Test reloaded = testRepository.findById(id).orElse(updated);
         log.info("Test updated. Reloaded datasets size: {}", reloaded.getDatasets() != null ? reloaded.getDatasets().size() : 0);
@@ -161,6 +273,7 @@ public class TestController {
             return ResponseEntity.notFound().build();
         }
         testRepository.deleteById(id);
+        testDatasetService.deleteRows(id);
         return ResponseEntity.noContent().build();
     }
     
@@ -197,16 +310,7 @@ public class TestController {
         if (original.getSteps() != null && !original.getSteps().isEmpty()) {
             List<TestStep> copiedSteps = new ArrayList<>();
             for (TestStep step : original.getSteps()) {
-                TestStep copiedStep = new TestStep();
-                copiedStep.setOrder(step.getOrder());
-                copiedStep.setInstruction(step.getInstruction());
-                copiedStep.setType(step.getType());
-                copiedStep.setSelector(step.getSelector());
-                copiedStep.setValue(step.getValue());
-                copiedStep.setOptional(step.getOptional());
-                copiedStep.setWaitAfter(step.getWaitAfter());
-                copiedStep.setModuleId(step.getModuleId());
-                copiedSteps.add(copiedStep);
+                copiedSteps.add(step.copy());
             }
             copy.setSteps(copiedSteps);
         }
@@ -215,9 +319,8 @@ public class TestController {
         if (original.getDatasets() != null && !original.getDatasets().isEmpty()) {
             List<TestDataset> copiedDatasets = new ArrayList<>();
             for (TestDataset dataset : original.getDatasets()) {
-                TestDataset copiedDataset = new TestDataset();
-                copiedDataset.setData(dataset.getData());
-                copiedDatasets.add(copiedDataset);
+                // Rows are copied below, after the copy has an id
+                copiedDatasets.add(new TestDataset(dataset.getName(), dataset.getData(), dataset.getColumns(), dataset.getRowCount()));
             }
             copy.setDatasets(copiedDatasets);
         }
@@ -230,6 +333,7 @@ public class TestController {
         }
         
         Test saved = testRepository.save(copy);
+        testDatasetService.copyRows(original.getId(), saved.getId());
         log.info("Test copied successfully. Original: {}, Copy: {}, Project: {}", 
             id, saved.getId(), saved.getProjectId());
         
@@ -244,26 +348,29 @@ public class TestController {
 
     private List<Test> sanitizeTestsForResponse(List<Test> tests, boolean isSuperAdmin) {
         if (tests == null) return null;
-        if (isSuperAdmin) return tests;
         List<Test> out = new ArrayList<>();
-        for (Test t : tests) out.add(sanitizeTestForResponse(t, false));
+        for (Test t : tests) out.add(sanitizeTestForResponse(t, isSuperAdmin));
         return out;
     }
 
+    private Test sanitizeTestForResponse(Test t, boolean isSuperAdmin) {
+        return sanitizeTestForResponse(t, isSuperAdmin, false);
+    }
+
     /**
      * Only SUPER_ADMIN should see mapped fields (type/selector/value) because they are system-generated.
      * Everyone else gets steps without these fields, but the DB still stores them for execution.
+     * Always a detached copy, so dataset rows can be left out (or inlined) without touching the entity.
      */
-    private Test sanitizeTestForResponse(Test t, boolean isSuperAdmin) {
+    private Test sanitizeTestForResponse(Test t, boolean isSuperAdmin, boolean includeDataset) {
         if (t == null) return null;
-        if (isSuperAdmin) return t;
 
         Test copy = new Test();
         copy.setId(t.getId());
         copy.setName(t.getName());
         copy.setDescription(t.getDescription());
         copy.setTags(t.getTags());
-        copy.setSteps(copyStepsWithoutMappings(t.getSteps()));
+        copy.setSteps(isSuperAdmin ? copyStepsWithIds(t.getSteps()) : copyStepsWithoutMappings(t.getSteps()));
         copy.setCreatedDate(t.getCreatedDate());
         copy.setModifiedDate(t.getModifiedDate());
         copy.setCreatedBy(t.getCreatedBy());
@@ -275,16 +382,46 @@ public class TestController {
         copy.setRunCount(t.getRunCount());
         copy.setLastRunDate(t.getLastRunDate());
         copy.setLastRunStatus(t.getLastRunStatus());
-        copy.setDatasets(t.getDatasets());
+        copy.setDatasets(testDatasetService.forResponse(t, includeDataset));
         return copy;
     }
 
+    /**
+     * Step ids from a request body are only trusted if they belong to the test being saved; anything else
+     * would make the save re-parent (or fail to persist) another test's step row.
+     */
+    private void clearForeignStepIds(List<TestStep> incoming, List<TestStep> existing) {
+        if (incoming == null) return;
+        Set<Long> known = new HashSet<>();
+        if (existing != null) {
+            for (TestStep s : existing) {
+                if (s.getId() != null) known.add(s.getId());
+            }
+        }
+        for (TestStep s : incoming) {
+            if (s != null && s.getId() != null && !known.contains(s.getId())) s.setId(null);
+        }
+    }
+
+    private List<TestStep> copyStepsWithIds(List<TestStep> steps) {
+        if (steps == null) return null;
+        List<TestStep> out = new ArrayList<>();
+        for (TestStep s : steps) {
+            if (s == null) continue;
+            TestStep c = s.copy();
+            c.setId(s.getId());
+            out.add(c);
+        }
+        return out;
+    }
+
     private List<TestStep> copyStepsWithoutMappings(List<TestStep> steps) {
         if (steps == null) return null;
         List<TestStep> out = new ArrayList<>();
         for (TestStep s : steps) {
             if (s == null) continue;
             TestStep c = new TestStep();
+            c.setId(s.getId()); // lets clients send the step back by id
             c.setInstruction(s.getInstruction());
             c.setOrder(s.getOrder());
             // hide mapped fields:
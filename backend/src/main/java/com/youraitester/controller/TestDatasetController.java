@@ -0,0 +1,104 @@
+package com.youraitester.controller;
+
+import com.youraitester.model.Test;
+import com.youraitester.repository.TestRepository;
+import com.youraitester.service.TestDatasetService;
+import jakarta.servlet.http.HttpServletRequest;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Row-level access to test datasets: streaming upload (CSV or JSON request body, never buffered whole) and
+ * row / row-range reads.
+ */
+@RestController
+@RequestMapping("/api/tests/{testId}/datasets")
+@RequiredArgsConstructor
+@Slf4j
+@CrossOrigin(origins = "*")
+public class TestDatasetController {
+
+    private static final int MAX_RANGE = 1000;
+
+    private final TestDatasetService testDatasetService;
+    private final TestRepository testRepository;
+
+    /**
+     * Replace (or append, when index == number of datasets) a dataset from the raw request body.
+     * Content-Type text/csv: header record + rows. application/json: array of row objects, or
+     * {"dataset_columns": [...], "dataset": [...]}.
+     */
+    @PutMapping("/{index}/rows")
+    public ResponseEntity<Map<String, Object>> uploadRows(@PathVariable String testId,
+                                                          @PathVariable int index,
+                                                          @RequestParam(value = "name", required = false) String name,
+                                                          HttpServletRequest request) {
+        if (!testRepository.existsById(testId)) {
+            return ResponseEntity.notFound().build();
+        }
+        String contentType = request.getContentType() != null ? request.getContentType().toLowerCase() : "";
+        try {
+            TestDatasetService.ImportResult result;
+            if (contentType.startsWith("text/csv")) {
+                result = testDatasetService.importCsv(testId, index, name,
+                    new InputStreamReader(request.getInputStream(), StandardCharsets.UTF_8));
+            } else if (contentType.startsWith("application/json")) {
+                result = testDatasetService.importJson(testId, index, name, request.getInputStream());
+            } else {
+                return ResponseEntity.status(415).body(Map.of("error", "Use Content-Type text/csv or application/json"));
+            }
+            Map<String, Object> body = new LinkedHashMap<>();
+            body.put("testId", testId);
+            body.put("datasetIndex", index);
+            body.put("rowCount", result.rowCount());
+            body.put("columns", result.columns());
+            return ResponseEntity.ok(body);
+        } catch (IllegalArgumentException | IOException e) {
+            log.warn("Dataset upload failed for test {} dataset {}: {}", testId, index, e.getMessage());
+            return ResponseEntity.badRequest().body(Map.of("error", String.valueOf(e.getMessage())));
+        }
+    }
+
+    /**
+     * Rows [from, from + limit) of a dataset.
+     */
+    @GetMapping("/{index}/rows")
+    public ResponseEntity<Map<String, Object>> getRows(@PathVariable String testId,
+                                                       @PathVariable int index,
+                                                       @RequestParam(value = "from", defaultValue = "0") int from,
+                                                       @RequestParam(value = "limit", defaultValue = "100") int limit) {
+        Test test = testRepository.findById(testId).orElse(null);
+        if (test == null) {
+            return ResponseEntity.notFound().build();
+        }
+        int start = Math.max(0, from);
+        int size = Math.max(1, Math.min(limit, MAX_RANGE));
+        List<Map<String, Object>> rows = testDatasetService.loadRows(testId, index, start, size);
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("rowCount", testDatasetService.rowCount(test, index));
+        body.put("from", start);
+        body.put("rows", rows);
+        return ResponseEntity.ok(body);
+    }
+
+    @GetMapping("/{index}/rows/{row}")
+    public ResponseEntity<Map<String, Object>> getRow(@PathVariable String testId,
+                                                      @PathVariable int index,
+                                                      @PathVariable int row) {
+        Test test = testRepository.findById(testId).orElse(null);
+        if (test == null) {
+            return ResponseEntity.notFound().build();
+        }
+        Map<String, Object> values = testDatasetService.loadRow(test, index, row);
+        return values != null ? ResponseEntity.ok(values) : ResponseEntity.notFound().build();
+    }
+}
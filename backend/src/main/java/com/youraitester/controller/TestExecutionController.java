@@ -1,13 +1,24 @@
 package com.youraitester.controller;
 
 import com.youraitester.dto.ExecuteTestRequest;
+import com.youraitester.model.Test;
 import com.youraitester.model.TestRun;
+import com.youraitester.repository.TestRepository;
 import com.youraitester.repository.TestRunRepository;
 import com.youraitester.repository.StepResultRepository;
+import com.youraitester.repository.TestRunTraceRepository;
+import com.youraitester.service.HotPathLog;
+import com.youraitester.service.RunTracer;
+import com.youraitester.service.TestDatasetService;
 import com.youraitester.service.TestExecutionService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.bind.annotation.*;
 import jakarta.persistence.EntityManager;
@@ -26,6 +37,13 @@ public class TestExecutionController {
     private final TestExecutionService testExecutionService;
     private final TestRunRepository testRunRepository;
     private final StepResultRepository stepResultRepository;
+    private final TestRepository testRepository;
+    private final TestDatasetService testDatasetService;
+    private final RunTracer runTracer;
+    private final TestRunTraceRepository testRunTraceRepository;
+
+    @Value("${dataset.fanout.max.rows:500}")
+    private int maxFanOutRows;
     
     @PersistenceContext
     private EntityManager entityManager;
@@ -41,9 +59,14 @@ public class TestExecutionController {
         String environment = request != null ? request.getEnvironment() : "development";
         String browser = request != null ? request.getBrowser() : "chromium";
         String runId = request != null ? request.getRunId() : null;
+        boolean debugTrace = request != null && Boolean.TRUE.equals(request.getDebugTrace());
+        if (debugTrace && !isSuperAdmin()) {
+            // Same rule as POST /runs/{runId}/debug-trace
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).body(Map.of("error", "debugTrace is SUPER_ADMIN only"));
+        }
         
         // Execute asynchronously
-        testExecutionService.executeTest(testId, dataRowIndex, environment, browser, runId);
+        testExecutionService.executeTest(testId, dataRowIndex, environment, browser, runId, false, debugTrace);
         
         return ResponseEntity.accepted().body(Map.of(
                 "message", "Test execution started",
@@ -51,6 +74,45 @@ public class TestExecutionController {
         ));
     }
     
+    /**
+     * Data-driven fan-out: one test run per dataset row in [fromRow, toRow). Each run fetches only its own
+     * row by index, so dispatching does not read the dataset at all.
+     */
+    @PostMapping("/{testId}/run-rows")
+    public ResponseEntity<?> executeTestRows(
+            @PathVariable String testId,
+            @RequestBody(required = false) ExecuteTestRequest request) {
+        Test test = testRepository.findById(testId).orElse(null);
+        if (test == null) {
+            return ResponseEntity.notFound().build();
+        }
+        int rowCount = testDatasetService.rowCount(test, 0);
+        int from = request != null && request.getFromRow() != null ? Math.max(0, request.getFromRow()) : 0;
+        int to = request != null && request.getToRow() != null ? Math.min(rowCount, request.getToRow()) : rowCount;
+        if (to <= from) {
+            return ResponseEntity.badRequest().body(Map.of("error", "Empty row range", "rowCount", rowCount));
+        }
+        if (to - from > maxFanOutRows) {
+            return ResponseEntity.badRequest().body(Map.of(
+                    "error", "At most " + maxFanOutRows + " rows per request (dataset.fanout.max.rows)",
+                    "rowCount", rowCount));
+        }
+        String environment = request != null && request.getEnvironment() != null ? request.getEnvironment() : "development";
+        String browser = request != null && request.getBrowser() != null ? request.getBrowser() : "chromium";
+        String runId = request != null ? request.getRunId() : null;
+
+        log.info("Fanning out test {} over dataset rows [{}, {})", testId, from, to);
+        for (int row = from; row < to; row++) {
+            testExecutionService.executeTest(testId, row, environment, browser, runId);
+        }
+        return ResponseEntity.accepted().body(Map.of(
+                "message", "Test execution started",
+                "testId", testId,
+                "fromRow", from,
+                "toRow", to
+        ));
+    }
+
     @GetMapping("/{testId}/runs")
     @Transactional(readOnly = true)
     public ResponseEntity<List<TestRun>> getTestRuns(@PathVariable String testId) {
@@ -86,6 +148,37 @@ public class TestExecutionController {
                 })
                 .orElse(ResponseEntity.notFound().build());
     }
+
+    /**
+     * Span timeline of a run as a waterfall (queue, browser start, steps, LLM, MCP, screenshots, waits, slow DB).
+     */
+    @GetMapping("/runs/{runId}/trace")
+    public ResponseEntity<Map<String, Object>> getTestRunTrace(@PathVariable String runId) {
+        return runTracer.getTrace(runId)
+                .map(ResponseEntity::ok)
+                .orElse(ResponseEntity.notFound().build());
+    }
+    
+    /**
+     * Turn verbose logging on or off for a run while it executes (see HotPathLog). SUPER_ADMIN only: the trace
+     * logs full payloads, including typed values and extracted variables.
+     */
+    @PostMapping("/runs/{runId}/debug-trace")
+    @PreAuthorize("hasRole('SUPER_ADMIN')")
+    @Transactional(readOnly = true)
+    public ResponseEntity<?> setDebugTrace(@PathVariable String runId,
+                                           @RequestParam(value = "enabled", defaultValue = "true") boolean enabled) {
+        TestRun run = testRunRepository.findById(runId).orElse(null);
+        if (run == null) {
+            return ResponseEntity.notFound().build();
+        }
+        if (!"running".equals(run.getStatus())) {
+            return ResponseEntity.status(409).body(Map.of("error", "Test run is not running", "status", run.getStatus()));
+        }
+        HotPathLog.setDebugTrace(runId, enabled);
+        log.info("Debug trace {} for test run {}", enabled ? "enabled" : "disabled", runId);
+        return ResponseEntity.ok(Map.of("testRunId", runId, "debugTrace", enabled));
+    }
     
     @DeleteMapping("/runs/{runId}")
     @Transactional
@@ -99,6 +192,7 @@ public class TestExecutionController {
         // Delete step results first using native SQL query to bypass Hibernate relationship management
         // This must happen before deleting the test run to avoid foreign key constraint issues
         stepResultRepository.deleteByTestRunId(runId);
+        testRunTraceRepository.deleteById(runId);
         
         // Flush and clear the persistence context to ensure Hibernate doesn't try to manage the relationship
         entityManager.flush();
@@ -111,4 +205,10 @@ public class TestExecutionController {
         log.info("Successfully deleted test run: {}", runId);
         return ResponseEntity.noContent().build();
     }
+
+    private boolean isSuperAdmin() {
+        Authentication auth = SecurityContextHolder.getContext().getAuthentication();
+        if (auth == null || auth.getAuthorities() == null) return false;
+        return auth.getAuthorities().stream().anyMatch(a -> "ROLE_SUPER_ADMIN".equals(a.getAuthority()));
+    }
 }
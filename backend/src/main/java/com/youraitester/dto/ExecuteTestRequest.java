@@ -12,4 +12,7 @@ public class ExecuteTestRequest {
     private String environment;
     private String browser;
     private String runId; // Optional: ID of the Run entity this test run belongs to
+    private Integer fromRow; // run-rows: first dataset row (inclusive), default 0
+    private Integer toRow; // run-rows: last dataset row (exclusive), default the dataset's row count
+    private Boolean debugTrace; // verbose logging (payloads, every MCP/agent event) for this run only
 }
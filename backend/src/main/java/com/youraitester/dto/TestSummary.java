@@ -0,0 +1,30 @@
+package com.youraitester.dto;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Test as listed in the catalogue: metadata and a step count, no steps or datasets
+ * (those come from GET /api/tests/{id}).
+ */
+@Data
+@NoArgsConstructor
+public class TestSummary {
+    private String id;
+    private String name;
+    private String description;
+    private List<String> tags = new ArrayList<>();
+    private String projectId;
+    private String appUrl;
+    private String status;
+    private Integer runCount;
+    private String lastRunStatus;
+    private LocalDateTime lastRunDate;
+    private LocalDateTime createdDate;
+    private LocalDateTime modifiedDate;
+    private long stepCount;
+}
@@ -0,0 +1,37 @@
+package com.youraitester.model;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Shared token bucket for LLM admission control across nodes (one row per provider).
+ * Rows are only read/updated via native atomic statements in {@link com.youraitester.repository.LlmRateBudgetRepository}.
+ */
+@Entity
+@Table(name = "llm_rate_budget")
+@Data
+@NoArgsConstructor
+public class LlmRateBudget {
+
+    @Id
+    @Column(name = "bucket_key")
+    private String bucketKey;
+
+    /**
+     * Tokens currently available in the bucket.
+     */
+    @Column(nullable = false)
+    private Double tokens;
+
+    /**
+     * Requests currently available in the bucket.
+     */
+    @Column(nullable = false)
+    private Double requests;
+
+    @Column(name = "updated_at", nullable = false)
+    private LocalDateTime updatedAt;
+}
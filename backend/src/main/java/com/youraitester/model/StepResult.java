@@ -30,7 +30,7 @@ public class StepResult {
     @Column(columnDefinition = "TEXT")
     private String instruction;
     
-    private String status; // passed, failed, skipped
+    private String status; // passed, failed, skipped (running: provisional, step not judged yet)
     
     @Column(name = "screenshot_url")
     private String screenshotUrl;
@@ -46,6 +46,25 @@ public class StepResult {
     private String errorMessage;
     
     private Long duration; // milliseconds
+
+    // LLM usage attributed to this step (null for runs recorded before usage accounting)
+    @Column(name = "llm_input_tokens")
+    private Long llmInputTokens;
+
+    @Column(name = "llm_output_tokens")
+    private Long llmOutputTokens;
+
+    @Column(name = "llm_cached_tokens")
+    private Long llmCachedTokens;
+
+    @Column(name = "llm_latency_ms")
+    private Long llmLatencyMs;
+
+    @Column(name = "llm_calls")
+    private Integer llmCalls;
+
+    @Column(name = "llm_cost_usd")
+    private Double llmCostUsd;
     
     @Column(name = "executed_at")
     private LocalDateTime executedAt;
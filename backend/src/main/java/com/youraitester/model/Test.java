@@ -5,7 +5,7 @@ import lombok.Data;
 import lombok.NoArgsConstructor;
 import lombok.AllArgsConstructor;
 import java.time.LocalDateTime;
-import java.util.List;
+import java.util.*;
 
 @Entity
 @Table(name = "tests")
@@ -29,8 +29,8 @@ public class Test {
     @Column(name = "tag")
     private List<String> tags;
     
-    @ElementCollection
-    @CollectionTable(name = "test_steps", joinColumns = @JoinColumn(name = "test_id"))
+    @OneToMany(mappedBy = "test", cascade = CascadeType.ALL, orphanRemoval = true)
+    @OrderBy("position ASC")
     private List<TestStep> steps;
     
     @Column(name = "created_date")
@@ -72,10 +72,101 @@ public class Test {
     @Column(name = "last_run_status")
     private String lastRunStatus; // passed, failed, running
     
-    @ElementCollection(fetch = FetchType.EAGER)
+    // Lazy: only execution and the detail endpoint need datasets, not list queries
+    @ElementCollection
     @CollectionTable(name = "test_datasets", joinColumns = @JoinColumn(name = "test_id"))
     private List<TestDataset> datasets;
     
+    /**
+     * Merges {@code incoming} into the managed step list instead of replacing it, so a save only touches
+     * changed rows. Incoming steps are matched to existing ones by id, else by unchanged instruction, else by
+     * position; matched entities are updated in place (unchanged fields produce no SQL), the rest are inserted,
+     * leftovers deleted. Callers passing client input must clear ids that don't belong to this test first
+     * (see TestController).
+     * Mapped fields (type/selector/value) are system-generated: they are kept unless the caller sends them,
+     * and cleared when the instruction changes so the step gets re-mapped.
+     */
+    public void setSteps(List<TestStep> incoming) {
+        if (steps == null) {
+            steps = new ArrayList<>();
+        }
+        if (incoming == steps) {
+            return;
+        }
+        List<TestStep> source = incoming != null ? new ArrayList<>(incoming) : List.of();
+        Map<Long, TestStep> byId = new HashMap<>();
+        for (TestStep s : steps) {
+            if (s.getId() != null) byId.put(s.getId(), s);
+        }
+        // Identity, not equals: two new steps with the same content are still different rows
+        Set<TestStep> unmatched = Collections.newSetFromMap(new IdentityHashMap<>());
+        unmatched.addAll(steps);
+        List<TestStep> matched = new ArrayList<>(source.size());
+        for (TestStep in : source) {
+            TestStep existing = in.getId() != null ? byId.remove(in.getId()) : null;
+            matched.add(existing);
+            if (existing != null) unmatched.remove(existing);
+        }
+        // Steps without a known id take a free existing step with the same instruction (a step inserted or
+        // removed above shifts positions, but the unchanged steps and their mappings stay with their rows)...
+        Map<String, ArrayDeque<TestStep>> freeByInstruction = new HashMap<>();
+        for (TestStep s : steps) {
+            if (unmatched.contains(s)) {
+                freeByInstruction.computeIfAbsent(s.getInstruction(), k -> new ArrayDeque<>()).addLast(s);
+            }
+        }
+        for (int i = 0; i < source.size(); i++) {
+            if (matched.get(i) != null) continue;
+            ArrayDeque<TestStep> free = freeByInstruction.get(source.get(i).getInstruction());
+            while (free != null && !free.isEmpty()) {
+                TestStep candidate = free.pollFirst();
+                if (unmatched.remove(candidate)) {
+                    matched.set(i, candidate);
+                    break;
+                }
+            }
+        }
+        // ...else the existing step at the same position, if still free
+        for (int i = 0; i < source.size(); i++) {
+            if (matched.get(i) == null && i < steps.size() && unmatched.contains(steps.get(i))) {
+                matched.set(i, steps.get(i));
+                unmatched.remove(steps.get(i));
+            }
+        }
+
+        List<TestStep> merged = new ArrayList<>(source.size());
+        for (int i = 0; i < source.size(); i++) {
+            TestStep in = source.get(i);
+            TestStep target = matched.get(i);
+            if (target == null) {
+                target = in;
+            } else if (target != in) {
+                boolean instructionChanged = !Objects.equals(target.getInstruction(), in.getInstruction());
+                target.setInstruction(in.getInstruction());
+                target.setOrder(in.getOrder());
+                target.setOptional(in.getOptional());
+                target.setWaitAfter(in.getWaitAfter());
+                target.setModuleId(in.getModuleId());
+                if (in.getType() != null || in.getSelector() != null || in.getValue() != null) {
+                    target.setType(in.getType());
+                    target.setSelector(in.getSelector());
+                    target.setValue(in.getValue());
+                    target.setMappingHash(in.getMappingHash());
+                } else if (instructionChanged) {
+                    target.setType(null);
+                    target.setSelector(null);
+                    target.setValue(null);
+                    target.setMappingHash(null);
+                }
+            }
+            target.setTest(this);
+            target.setPosition(i);
+            merged.add(target);
+        }
+        steps.clear();
+        steps.addAll(merged);
+    }
+    
     @PrePersist
     protected void onCreate() {
         createdDate = LocalDateTime.now();
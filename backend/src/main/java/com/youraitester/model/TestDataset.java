@@ -6,6 +6,11 @@ import lombok.Data;
 import lombok.NoArgsConstructor;
 import lombok.AllArgsConstructor;
 
+/**
+ * Dataset header of a test. Rows live in test_dataset_rows (see TestDatasetRow); {@code data} is only used to
+ * send a whole dataset inline (editor save, or GET /api/tests/{id}?includeDataset=true) and for legacy datasets
+ * that have not been re-saved since rows were split out.
+ */
 @Embeddable
 @Data
 @NoArgsConstructor
@@ -16,4 +21,10 @@ public class TestDataset {
     
     @Column(columnDefinition = "TEXT")
     private String data; // Store as JSON string
+
+    @Column(name = "columns_json", columnDefinition = "TEXT")
+    private String columns; // JSON array of column names, in display order
+
+    @Column(name = "row_count")
+    private Integer rowCount;
 }
@@ -0,0 +1,33 @@
+package com.youraitester.model;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * One data row of a test dataset (JSON object of column -> value), addressed by (test, dataset, row index)
+ * so a run reads only its own row.
+ */
+@Entity
+@Table(name = "test_dataset_rows", indexes = @Index(name = "idx_test_dataset_rows_key",
+    columnList = "test_id, dataset_index, row_index", unique = true))
+@Data
+@NoArgsConstructor
+public class TestDatasetRow {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "test_id", nullable = false)
+    private String testId;
+
+    @Column(name = "dataset_index", nullable = false)
+    private Integer datasetIndex;
+
+    @Column(name = "row_index", nullable = false)
+    private Integer rowIndex;
+
+    @Column(columnDefinition = "TEXT", nullable = false)
+    private String data;
+}
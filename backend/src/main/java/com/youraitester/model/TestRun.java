@@ -41,6 +41,38 @@ public class TestRun {
     private LocalDateTime completedAt;
     
     private Long duration; // milliseconds
+
+    // LLM usage attributed to this test run (sum of its steps plus calls not tied to a step) (null for runs recorded before usage accounting)
+    @Column(name = "llm_input_tokens")
+    private Long llmInputTokens;
+
+    @Column(name = "llm_output_tokens")
+    private Long llmOutputTokens;
+
+    @Column(name = "llm_cached_tokens")
+    private Long llmCachedTokens;
+
+    @Column(name = "llm_latency_ms")
+    private Long llmLatencyMs;
+
+    @Column(name = "llm_calls")
+    private Integer llmCalls;
+
+    @Column(name = "llm_cost_usd")
+    private Double llmCostUsd;
+
+    // Steps executed by the local action resolver or decided by the local assertion engine (no LLM call);
+    // hit rate = localResolvedSteps / steps
+    @Column(name = "local_resolved_steps")
+    private Integer localResolvedSteps;
+
+    // Per-engine step counts: mapped steps run by the deterministic runner vs. steps handed to the agent
+    // (hybrid runs mix both; agent steps include those the local fast path resolved)
+    @Column(name = "deterministic_steps")
+    private Integer deterministicSteps;
+
+    @Column(name = "agent_steps")
+    private Integer agentSteps;
     
     private String environment; // dev, staging, production
     
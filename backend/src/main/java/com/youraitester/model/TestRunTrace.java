@@ -0,0 +1,34 @@
+package com.youraitester.model;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Span timeline of one test run, kept apart from test_runs so run listings do not load it.
+ * {@code data} is gzip-compressed compact JSON written and read by RunTracer.
+ */
+@Entity
+@Table(name = "test_run_traces")
+@Data
+@NoArgsConstructor
+public class TestRunTrace {
+
+    @Id
+    @Column(name = "test_run_id")
+    private String testRunId;
+
+    @Column(name = "span_count", nullable = false)
+    private Integer spanCount;
+
+    @Column(name = "dropped_spans", nullable = false)
+    private Integer droppedSpans;
+
+    @Column(nullable = false)
+    private byte[] data;
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+}
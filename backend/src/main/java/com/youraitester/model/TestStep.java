@@ -2,16 +2,43 @@ package com.youraitester.model;
 
 import jakarta.persistence.*;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
 import lombok.NoArgsConstructor;
 import lombok.AllArgsConstructor;
+import lombok.ToString;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonInclude;
+import org.hibernate.annotations.DynamicUpdate;
 
-@Embeddable
+/**
+ * One step of a Test. An entity (stable id + position) rather than an element collection, so saving a test
+ * only writes the steps that changed; see {@link Test#setSteps}.
+ * Existing databases: run migration-test-steps-entity.sql before starting this version.
+ */
+@Entity
+@Table(name = "test_steps", indexes = @Index(name = "idx_test_steps_test", columnList = "test_id, step_index"))
+@DynamicUpdate
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
 @JsonInclude(JsonInclude.Include.NON_NULL)
 public class TestStep {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "test_id", nullable = false)
+    @JsonIgnore
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
+    private Test test;
+
+    // Index in Test.steps (maintained by Test.setSteps); "order" is the user-facing step number
+    @Column(name = "step_index", nullable = false)
+    @JsonIgnore
+    private Integer position;
     
     @Column(columnDefinition = "TEXT")
     private String instruction;
@@ -32,4 +59,24 @@ public class TestStep {
     
     @Column(name = "module_id")
     private String moduleId; // Reference to Module if this step uses a module
+
+    @Column(name = "mapping_hash", length = 64)
+    private String mappingHash; // Hash of (app metadata version, instruction) when type/selector/value were mapped
+
+    /**
+     * Detached copy of the step's content (no id / test), e.g. for copying a test or keeping the pre-edit version.
+     */
+    public TestStep copy() {
+        TestStep c = new TestStep();
+        c.setInstruction(instruction);
+        c.setOrder(order);
+        c.setType(type);
+        c.setSelector(selector);
+        c.setValue(value);
+        c.setOptional(optional);
+        c.setWaitAfter(waitAfter);
+        c.setModuleId(moduleId);
+        c.setMappingHash(mappingHash);
+        return c;
+    }
 }
@@ -29,6 +29,20 @@ public class Screen {
     @OneToMany(mappedBy = "screen", cascade = CascadeType.ALL, orphanRemoval = true)
     private List<ScreenMethod> methods;
 
+    /**
+     * Fingerprint learned from successful runs (see ScreenClassifier): URL path patterns this screen was seen on
+     * and element names that were present on it.
+     */
+    @ElementCollection
+    @CollectionTable(name = "screen_url_patterns", joinColumns = @JoinColumn(name = "screen_id"))
+    @Column(name = "pattern", length = 1000)
+    private List<String> urlPatterns;
+
+    @ElementCollection
+    @CollectionTable(name = "screen_anchor_elements", joinColumns = @JoinColumn(name = "screen_id"))
+    @Column(name = "element_name")
+    private List<String> anchorElementNames;
+
     @ManyToOne
     @JoinColumn(name = "app_id")
     @JsonIgnore
@@ -47,6 +61,10 @@ public class Screen {
     public void setElements(List<ScreenElement> elements) { this.elements = elements; }
     public List<ScreenMethod> getMethods() { return methods; }
     public void setMethods(List<ScreenMethod> methods) { this.methods = methods; }
+    public List<String> getUrlPatterns() { return urlPatterns; }
+    public void setUrlPatterns(List<String> urlPatterns) { this.urlPatterns = urlPatterns; }
+    public List<String> getAnchorElementNames() { return anchorElementNames; }
+    public void setAnchorElementNames(List<String> anchorElementNames) { this.anchorElementNames = anchorElementNames; }
     public App getApp() { return app; }
     public void setApp(App app) { this.app = app; }
 }
@@ -0,0 +1,56 @@
+package com.youraitester.repository;
+
+import com.youraitester.model.LlmRateBudget;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+@Repository
+public interface LlmRateBudgetRepository extends JpaRepository<LlmRateBudget, String> {
+
+    // All statements run in their own short transaction: callers (test execution) usually hold a long
+    // outer transaction, and we must not keep the bucket row locked for the duration of a test.
+
+    @Modifying
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    @Query(value = """
+        INSERT INTO llm_rate_budget (bucket_key, tokens, requests, updated_at)
+        VALUES (:key, :tpm, :rpm, now())
+        ON CONFLICT (bucket_key) DO NOTHING
+        """, nativeQuery = true)
+    int ensureBucket(@Param("key") String key, @Param("tpm") double tpm, @Param("rpm") double rpm);
+
+    /**
+     * Refill by elapsed time and consume in one atomic statement.
+     * Returns 1 when the budget was taken, 0 when the bucket doesn't currently hold enough.
+     */
+    @Modifying
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    @Query(value = """
+        UPDATE llm_rate_budget SET
+          tokens   = LEAST(:tpm, tokens   + EXTRACT(EPOCH FROM (now() - updated_at)) * :tpm / 60.0) - :cost,
+          requests = LEAST(:rpm, requests + EXTRACT(EPOCH FROM (now() - updated_at)) * :rpm / 60.0) - 1,
+          updated_at = now()
+        WHERE bucket_key = :key
+          AND LEAST(:tpm, tokens   + EXTRACT(EPOCH FROM (now() - updated_at)) * :tpm / 60.0) >= :cost
+          AND LEAST(:rpm, requests + EXTRACT(EPOCH FROM (now() - updated_at)) * :rpm / 60.0) >= 1
+        """, nativeQuery = true)
+    int tryConsume(@Param("key") String key,
+                   @Param("cost") double cost,
+                   @Param("tpm") double tpm,
+                   @Param("rpm") double rpm);
+
+    /**
+     * Tokens that would be available right now (after refill), without consuming.
+     */
+    @Transactional(propagation = Propagation.REQUIRES_NEW, readOnly = true)
+    @Query(value = """
+        SELECT LEAST(:tpm, tokens + EXTRACT(EPOCH FROM (now() - updated_at)) * :tpm / 60.0)
+        FROM llm_rate_budget WHERE bucket_key = :key
+        """, nativeQuery = true)
+    Double availableTokens(@Param("key") String key, @Param("tpm") double tpm);
+}
@@ -6,13 +6,31 @@ import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import java.time.LocalDateTime;
 import java.util.List;
 
 @Repository
 public interface StepResultRepository extends JpaRepository<StepResult, Long> {
     List<StepResult> findByTestRunId(String testRunId);
 
+    long countByTestRunId(String testRunId);
+
+    /**
+     * Save in its own transaction, so the row is visible to pollers while the run's transaction is still open
+     * (used for the provisional per-step rows written during a batch turn).
+     */
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    default StepResult saveCommitted(StepResult stepResult) {
+        return save(stepResult);
+    }
+
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    default void deleteCommitted(StepResult stepResult) {
+        delete(stepResult);
+    }
+
     // Always return step results in a stable order so the UI doesn't mis-attribute screenshots to "Step N".
     // Use native query to get deterministic ordering even when stepNumber/executedAt are null.
     @Query(value = """
@@ -26,6 +44,49 @@ public interface StepResultRepository extends JpaRepository<StepResult, Long> {
         """, nativeQuery = true)
     List<StepResult> findByTestRunIdOrdered(@Param("testRunId") String testRunId);
     
+    /**
+     * Per-step LLM usage (grouped by test + step number), for "top consumers" reports.
+     */
+    interface StepUsage {
+        String getTestId();
+        String getTestName();
+        Integer getStepNumber();
+        String getInstruction();
+        Long getExecutions();
+        Long getInputTokens();
+        Long getOutputTokens();
+        Long getCachedTokens();
+        Long getLatencyMs();
+        Long getCalls();
+        Double getCostUsd();
+    }
+
+    @Query(value = """
+        SELECT
+          tr.test_id AS testId,
+          MAX(tr.test_name) AS testName,
+          s.step_number AS stepNumber,
+          MAX(s.instruction) AS instruction,
+          COUNT(*) AS executions,
+          COALESCE(SUM(s.llm_input_tokens), 0) AS inputTokens,
+          COALESCE(SUM(s.llm_output_tokens), 0) AS outputTokens,
+          COALESCE(SUM(s.llm_cached_tokens), 0) AS cachedTokens,
+          COALESCE(SUM(s.llm_latency_ms), 0) AS latencyMs,
+          COALESCE(SUM(s.llm_calls), 0) AS calls,
+          COALESCE(SUM(s.llm_cost_usd), 0) AS costUsd
+        FROM test_run_step_results s
+        JOIN test_runs tr ON tr.id = s.test_run_id
+        WHERE tr.started_at >= :since
+          AND s.llm_calls IS NOT NULL
+          AND (CAST(:projectId AS VARCHAR) IS NULL OR tr.project_id = CAST(:projectId AS VARCHAR))
+        GROUP BY tr.test_id, s.step_number
+        ORDER BY COALESCE(SUM(s.llm_input_tokens), 0) + COALESCE(SUM(s.llm_output_tokens), 0) DESC
+        LIMIT :limit
+        """, nativeQuery = true)
+    List<StepUsage> findTopStepsByTokens(@Param("projectId") String projectId,
+                                         @Param("since") LocalDateTime since,
+                                         @Param("limit") int limit);
+    
     @Modifying
     @Transactional
     @Query(value = "DELETE FROM test_run_step_results WHERE test_run_id = :testRunId", nativeQuery = true)
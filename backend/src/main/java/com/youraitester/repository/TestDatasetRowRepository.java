@@ -0,0 +1,44 @@
+package com.youraitester.repository;
+
+import com.youraitester.model.TestDatasetRow;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface TestDatasetRowRepository extends JpaRepository<TestDatasetRow, Long> {
+
+    @Query("SELECT r.data FROM TestDatasetRow r WHERE r.testId = :testId AND r.datasetIndex = :datasetIndex AND r.rowIndex = :rowIndex")
+    Optional<String> findRowData(@Param("testId") String testId,
+                                 @Param("datasetIndex") int datasetIndex,
+                                 @Param("rowIndex") int rowIndex);
+
+    /**
+     * Rows [fromRow, toRow) of one dataset, in order.
+     */
+    @Query("SELECT r FROM TestDatasetRow r WHERE r.testId = :testId AND r.datasetIndex = :datasetIndex "
+        + "AND r.rowIndex >= :fromRow AND r.rowIndex < :toRow ORDER BY r.rowIndex")
+    List<TestDatasetRow> findRowRange(@Param("testId") String testId,
+                                      @Param("datasetIndex") int datasetIndex,
+                                      @Param("fromRow") int fromRow,
+                                      @Param("toRow") int toRow);
+
+    long countByTestIdAndDatasetIndex(String testId, Integer datasetIndex);
+
+    @Modifying
+    @Query("DELETE FROM TestDatasetRow r WHERE r.testId = :testId AND r.datasetIndex = :datasetIndex")
+    int deleteDataset(@Param("testId") String testId, @Param("datasetIndex") int datasetIndex);
+
+    @Modifying
+    @Query("UPDATE TestDatasetRow r SET r.datasetIndex = :toIndex WHERE r.testId = :testId AND r.datasetIndex = :fromIndex")
+    int moveDataset(@Param("testId") String testId, @Param("fromIndex") int fromIndex, @Param("toIndex") int toIndex);
+
+    @Modifying
+    @Query("DELETE FROM TestDatasetRow r WHERE r.testId = :testId AND r.datasetIndex >= :fromIndex")
+    int deleteDatasetsFrom(@Param("testId") String testId, @Param("fromIndex") int fromIndex);
+}
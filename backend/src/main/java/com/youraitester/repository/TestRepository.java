@@ -2,7 +2,11 @@ package com.youraitester.repository;
 
 import com.youraitester.model.Test;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 
 @Repository
@@ -10,4 +14,205 @@ public interface TestRepository extends JpaRepository<Test, String> {
     List<Test> findByStatus(String status);
     List<Test> findByTagsContaining(String tag);
     List<Test> findByProjectId(String projectId);
+
+    /**
+     * Catalogue row: the columns the test list shows, without steps or datasets.
+     */
+    interface SummaryRow {
+        String getId();
+        String getName();
+        String getDescription();
+        String getProjectId();
+        String getAppUrl();
+        String getStatus();
+        Integer getRunCount();
+        String getLastRunStatus();
+        LocalDateTime getLastRunDate();
+        LocalDateTime getCreatedDate();
+        LocalDateTime getModifiedDate();
+        Long getStepCount();
+    }
+
+    interface TagRow {
+        String getTestId();
+        String getTag();
+    }
+
+    /**
+     * One keyset page of the catalogue, newest first. Rows strictly after the cursor (afterDate, afterId) in
+     * (created_date DESC, id DESC) order; pass null cursor values for the first page. Null filters are ignored;
+     * {@code namePattern} is an ILIKE pattern.
+     */
+    @Query(value = """
+        SELECT t.id AS id, t.name AS name, t.description AS description, t.project_id AS projectId,
+               t.app_url AS appUrl, t.status AS status, t.run_count AS runCount,
+               t.last_run_status AS lastRunStatus, t.last_run_date AS lastRunDate,
+               t.created_date AS createdDate, t.modified_date AS modifiedDate,
+               (SELECT COUNT(*) FROM test_steps s WHERE s.test_id = t.id) AS stepCount
+        FROM tests t
+        WHERE (CAST(:projectId AS VARCHAR) IS NULL OR t.project_id = CAST(:projectId AS VARCHAR))
+          AND (CAST(:status AS VARCHAR) IS NULL OR t.status = CAST(:status AS VARCHAR))
+          AND (CAST(:lastRunStatus AS VARCHAR) IS NULL OR t.last_run_status = CAST(:lastRunStatus AS VARCHAR))
+          AND (CAST(:tag AS VARCHAR) IS NULL OR EXISTS (
+                SELECT 1 FROM test_tags tt WHERE tt.test_id = t.id AND tt.tag = CAST(:tag AS VARCHAR)))
+          AND (CAST(:namePattern AS VARCHAR) IS NULL OR t.name ILIKE CAST(:namePattern AS VARCHAR))
+          AND (CAST(:afterDate AS TIMESTAMP) IS NULL
+               OR (COALESCE(t.created_date, TIMESTAMP '1970-01-01'), t.id)
+                  < (CAST(:afterDate AS TIMESTAMP), CAST(:afterId AS VARCHAR)))
+        ORDER BY COALESCE(t.created_date, TIMESTAMP '1970-01-01') DESC, t.id DESC
+        LIMIT :limit
+        """, nativeQuery = true)
+    List<SummaryRow> findCataloguePage(@Param("projectId") String projectId,
+                                       @Param("status") String status,
+                                       @Param("lastRunStatus") String lastRunStatus,
+                                       @Param("tag") String tag,
+                                       @Param("namePattern") String namePattern,
+                                       @Param("afterDate") LocalDateTime afterDate,
+                                       @Param("afterId") String afterId,
+                                       @Param("limit") int limit);
+
+    @Query(value = "SELECT tt.test_id AS testId, tt.tag AS tag FROM test_tags tt WHERE tt.test_id IN (:testIds)",
+        nativeQuery = true)
+    List<TagRow> findTagsByTestIds(@Param("testIds") Collection<String> testIds);
+
+    /**
+     * Ranked full-text search hit: one test with its summed score and the fields that matched.
+     */
+    interface SearchHit {
+        String getTestId();
+        String getName();
+        String getProjectId();
+        String getLastRunStatus();
+        Double getScore();
+        String getMatchedIn();
+    }
+
+    /**
+     * Ranked search over test name/description (tsvector), tags, step instructions (tsvector + substring) and
+     * the screen elements / methods / screens that mapped steps point at (only when {@code includeScreenItems}:
+     * screen metadata is SUPER_ADMIN only). Each field contributes its best match once; tests are ordered by the sum. {@code pattern} is an ILIKE pattern of the same text
+     * (substring matches use the trigram indexes from migration-search-indexes.sql).
+     */
+    @Query(value = """
+        WITH query AS (SELECT plainto_tsquery('simple', CAST(:q AS VARCHAR)) AS tsq),
+        hits AS (
+            SELECT t.id AS test_id, 'name' AS field,
+                   CAST(2 * ts_rank(to_tsvector('simple', COALESCE(t.name, '') || ' ' || COALESCE(t.description, '')),
+                                    query.tsq) AS DOUBLE PRECISION) AS score
+            FROM tests t, query
+            WHERE to_tsvector('simple', COALESCE(t.name, '') || ' ' || COALESCE(t.description, '')) @@ query.tsq
+            UNION ALL
+            SELECT t.id, 'name', CAST(0.5 AS DOUBLE PRECISION)
+            FROM tests t
+            WHERE t.name ILIKE CAST(:pattern AS VARCHAR)
+            UNION ALL
+            SELECT tt.test_id, 'tag',
+                   CAST(CASE WHEN lower(tt.tag) = lower(CAST(:q AS VARCHAR)) THEN 1.5 ELSE 0.5 END AS DOUBLE PRECISION)
+            FROM test_tags tt
+            WHERE tt.tag ILIKE CAST(:pattern AS VARCHAR)
+            UNION ALL
+            SELECT s.test_id, 'step', CAST(ts_rank(to_tsvector('simple', COALESCE(s.instruction, '')), query.tsq) AS DOUBLE PRECISION)
+            FROM test_steps s, query
+            WHERE to_tsvector('simple', COALESCE(s.instruction, '')) @@ query.tsq
+            UNION ALL
+            SELECT s.test_id, 'step', CAST(0.25 AS DOUBLE PRECISION)
+            FROM test_steps s
+            WHERE s.instruction ILIKE CAST(:pattern AS VARCHAR)
+            UNION ALL
+            SELECT s.test_id,
+                   CASE WHEN se.element_name ILIKE CAST(:pattern AS VARCHAR) THEN 'element' ELSE 'screen' END,
+                   CAST(1.0 AS DOUBLE PRECISION)
+            FROM screen_elements se
+            JOIN screen sc ON sc.id = se.screen_id
+            JOIN tests t ON t.app_id = sc.app_id
+            JOIN test_steps s ON s.test_id = t.id AND s.selector = se.selector
+                             AND (s.type IS NULL OR s.type <> 'call_method')
+            WHERE CAST(:includeScreenItems AS BOOLEAN)
+              AND (se.element_name ILIKE CAST(:pattern AS VARCHAR) OR sc.name ILIKE CAST(:pattern AS VARCHAR))
+            UNION ALL
+            SELECT s.test_id,
+                   CASE WHEN sm.method_name ILIKE CAST(:pattern AS VARCHAR) THEN 'method' ELSE 'screen' END,
+                   CAST(1.0 AS DOUBLE PRECISION)
+            FROM screen_methods sm
+            JOIN screen sc ON sc.id = sm.screen_id
+            JOIN tests t ON t.app_id = sc.app_id
+            JOIN test_steps s ON s.test_id = t.id AND s.type = 'call_method'
+                             AND s.selector = sc.name || '::' || sm.method_name
+            WHERE CAST(:includeScreenItems AS BOOLEAN)
+              AND (sm.method_name ILIKE CAST(:pattern AS VARCHAR) OR sc.name ILIKE CAST(:pattern AS VARCHAR))
+        ),
+        per_field AS (
+            SELECT test_id, field, MAX(score) AS score FROM hits GROUP BY test_id, field
+        )
+        SELECT t.id AS testId, t.name AS name, t.project_id AS projectId, t.last_run_status AS lastRunStatus,
+               SUM(pf.score) AS score, string_agg(pf.field, ',' ORDER BY pf.field) AS matchedIn
+        FROM per_field pf
+        JOIN tests t ON t.id = pf.test_id
+        WHERE (CAST(:projectId AS VARCHAR) IS NULL OR t.project_id = CAST(:projectId AS VARCHAR))
+          AND (CAST(:appId AS BIGINT) IS NULL OR t.app_id = CAST(:appId AS BIGINT))
+        GROUP BY t.id, t.name, t.project_id, t.last_run_status
+        ORDER BY score DESC, t.id
+        LIMIT :limit OFFSET :offset
+        """, nativeQuery = true)
+    List<SearchHit> searchTests(@Param("q") String q,
+                                @Param("pattern") String pattern,
+                                @Param("projectId") String projectId,
+                                @Param("appId") Long appId,
+                                @Param("includeScreenItems") boolean includeScreenItems,
+                                @Param("limit") int limit,
+                                @Param("offset") int offset);
+
+    /**
+     * A step that references a screen element or method: "mapped" when its stored selector points at it,
+     * "mentioned" when the (not yet mapped) instruction names it.
+     */
+    interface ReferenceRow {
+        String getTestId();
+        String getTestName();
+        String getProjectId();
+        Integer getStepOrder();
+        String getInstruction();
+        String getMatchType();
+    }
+
+    @Query(value = """
+        SELECT t.id AS testId, t.name AS testName, t.project_id AS projectId,
+               s.step_order AS stepOrder, s.instruction AS instruction,
+               CASE WHEN s.selector = se.selector AND (s.type IS NULL OR s.type <> 'call_method')
+                    THEN 'mapped' ELSE 'mentioned' END AS matchType
+        FROM screen_elements se
+        JOIN screen sc ON sc.id = se.screen_id
+        JOIN tests t ON t.app_id = sc.app_id
+        JOIN test_steps s ON s.test_id = t.id
+        WHERE se.element_name = CAST(:elementName AS VARCHAR)
+          AND (CAST(:appId AS BIGINT) IS NULL OR sc.app_id = CAST(:appId AS BIGINT))
+          AND (CAST(:screenName AS VARCHAR) IS NULL OR sc.name = CAST(:screenName AS VARCHAR))
+          AND ((s.selector = se.selector AND (s.type IS NULL OR s.type <> 'call_method'))
+               OR (s.selector IS NULL
+                   AND to_tsvector('simple', COALESCE(s.instruction, '')) @@ plainto_tsquery('simple', se.element_name)))
+        ORDER BY t.name, t.id, s.step_index
+        """, nativeQuery = true)
+    List<ReferenceRow> findStepsReferencingElement(@Param("appId") Long appId,
+                                                   @Param("screenName") String screenName,
+                                                   @Param("elementName") String elementName);
+
+    @Query(value = """
+        SELECT t.id AS testId, t.name AS testName, t.project_id AS projectId,
+               s.step_order AS stepOrder, s.instruction AS instruction,
+               CASE WHEN s.type = 'call_method' THEN 'mapped' ELSE 'mentioned' END AS matchType
+        FROM screen_methods sm
+        JOIN screen sc ON sc.id = sm.screen_id
+        JOIN tests t ON t.app_id = sc.app_id
+        JOIN test_steps s ON s.test_id = t.id
+        WHERE sm.method_name = CAST(:methodName AS VARCHAR)
+          AND (CAST(:appId AS BIGINT) IS NULL OR sc.app_id = CAST(:appId AS BIGINT))
+          AND (CAST(:screenName AS VARCHAR) IS NULL OR sc.name = CAST(:screenName AS VARCHAR))
+          AND ((s.type = 'call_method' AND s.selector = sc.name || '::' || sm.method_name)
+               OR (s.selector IS NULL
+                   AND to_tsvector('simple', COALESCE(s.instruction, '')) @@ plainto_tsquery('simple', sm.method_name)))
+        ORDER BY t.name, t.id, s.step_index
+        """, nativeQuery = true)
+    List<ReferenceRow> findStepsReferencingMethod(@Param("appId") Long appId,
+                                                  @Param("screenName") String screenName,
+                                                  @Param("methodName") String methodName);
 }
@@ -2,7 +2,12 @@ package com.youraitester.repository;
 
 import com.youraitester.model.TestRun;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import java.time.LocalDateTime;
 import java.util.List;
 
 @Repository
@@ -11,4 +16,71 @@ public interface TestRunRepository extends JpaRepository<TestRun, String> {
     List<TestRun> findByBatchId(String batchId);
     List<TestRun> findByStatus(String status);
     List<TestRun> findByProjectId(String projectId);
+
+    /**
+     * Save in its own transaction. Test execution runs in one long transaction; committing the new run row up
+     * front lets step rows committed during the run reference it and lets pollers see the run while it executes.
+     */
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    default TestRun saveCommitted(TestRun testRun) {
+        return save(testRun);
+    }
+
+    /**
+     * Aggregated LLM usage over a set of test runs.
+     */
+    interface UsageTotals {
+        Long getTestRuns();
+        Long getInputTokens();
+        Long getOutputTokens();
+        Long getCachedTokens();
+        Long getLatencyMs();
+        Long getCalls();
+        Double getCostUsd();
+    }
+
+    /**
+     * Per-test LLM usage, for "top consumers" reports.
+     */
+    interface TestUsage extends UsageTotals {
+        String getTestId();
+        String getTestName();
+    }
+
+    String USAGE_COLUMNS = """
+          COUNT(*) AS testRuns,
+          COALESCE(SUM(tr.llm_input_tokens), 0) AS inputTokens,
+          COALESCE(SUM(tr.llm_output_tokens), 0) AS outputTokens,
+          COALESCE(SUM(tr.llm_cached_tokens), 0) AS cachedTokens,
+          COALESCE(SUM(tr.llm_latency_ms), 0) AS latencyMs,
+          COALESCE(SUM(tr.llm_calls), 0) AS calls,
+          COALESCE(SUM(tr.llm_cost_usd), 0) AS costUsd
+        """;
+
+    @Query(value = "SELECT " + USAGE_COLUMNS + " FROM test_runs tr WHERE tr.batch_id = :runId", nativeQuery = true)
+    UsageTotals sumUsageByRun(@Param("runId") String runId);
+
+    @Query(value = "SELECT " + USAGE_COLUMNS + " FROM test_runs tr WHERE tr.project_id = :projectId AND tr.started_at >= :since",
+        nativeQuery = true)
+    UsageTotals sumUsageByProject(@Param("projectId") String projectId, @Param("since") LocalDateTime since);
+
+    @Query(value = "SELECT " + USAGE_COLUMNS + """
+        FROM test_runs tr
+        JOIN projects p ON CAST(p.id AS VARCHAR) = tr.project_id
+        WHERE p.tenant_id = :tenantId AND tr.started_at >= :since
+        """, nativeQuery = true)
+    UsageTotals sumUsageByTenant(@Param("tenantId") Long tenantId, @Param("since") LocalDateTime since);
+
+    @Query(value = "SELECT tr.test_id AS testId, MAX(tr.test_name) AS testName, " + USAGE_COLUMNS + """
+        FROM test_runs tr
+        WHERE tr.started_at >= :since
+          AND tr.llm_calls IS NOT NULL
+          AND (CAST(:projectId AS VARCHAR) IS NULL OR tr.project_id = CAST(:projectId AS VARCHAR))
+        GROUP BY tr.test_id
+        ORDER BY COALESCE(SUM(tr.llm_input_tokens), 0) + COALESCE(SUM(tr.llm_output_tokens), 0) DESC
+        LIMIT :limit
+        """, nativeQuery = true)
+    List<TestUsage> findTopTestsByTokens(@Param("projectId") String projectId,
+                                         @Param("since") LocalDateTime since,
+                                         @Param("limit") int limit);
 }
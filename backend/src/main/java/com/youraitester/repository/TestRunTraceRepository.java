@@ -0,0 +1,20 @@
+package com.youraitester.repository;
+
+import com.youraitester.model.TestRunTrace;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+@Repository
+public interface TestRunTraceRepository extends JpaRepository<TestRunTrace, String> {
+
+    /**
+     * Save in its own transaction: traces are written at the end of test execution, inside the run's transaction,
+     * and a failed trace insert must not mark that transaction rollback-only.
+     */
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    default TestRunTrace saveCommitted(TestRunTrace trace) {
+        return save(trace);
+    }
+}
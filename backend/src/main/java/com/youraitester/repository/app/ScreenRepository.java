@@ -2,9 +2,48 @@ package com.youraitester.repository.app;
 
 import com.youraitester.model.app.Screen;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
+import java.util.List;
 import java.util.Optional;
 
 public interface ScreenRepository extends JpaRepository<Screen, Long> {
     Optional<Screen> findByApp_IdAndName(Long appId, String name);
+
+    /**
+     * Screen element / method matched by name search.
+     */
+    interface ScreenItemHit {
+        String getKind();
+        Long getId();
+        Long getAppId();
+        String getScreenName();
+        String getName();
+    }
+
+    /**
+     * Elements and methods whose name (or screen name) contains the text; exact names first, then shorter ones.
+     * {@code pattern} is an ILIKE pattern (trigram-indexed, see migration-search-indexes.sql).
+     */
+    @Query(value = """
+        SELECT kind, id, appId, screenName, name FROM (
+            SELECT 'element' AS kind, se.id AS id, sc.app_id AS appId, sc.name AS screenName, se.element_name AS name
+            FROM screen_elements se JOIN screen sc ON sc.id = se.screen_id
+            WHERE se.element_name ILIKE CAST(:pattern AS VARCHAR) OR sc.name ILIKE CAST(:pattern AS VARCHAR)
+            UNION ALL
+            SELECT 'method', sm.id, sc.app_id, sc.name, sm.method_name
+            FROM screen_methods sm JOIN screen sc ON sc.id = sm.screen_id
+            WHERE sm.method_name ILIKE CAST(:pattern AS VARCHAR) OR sc.name ILIKE CAST(:pattern AS VARCHAR)
+        ) items
+        WHERE (CAST(:appId AS BIGINT) IS NULL OR appId = CAST(:appId AS BIGINT))
+        ORDER BY CASE WHEN lower(name) = lower(CAST(:q AS VARCHAR)) THEN 0
+                      WHEN name ILIKE CAST(:pattern AS VARCHAR) THEN 1 ELSE 2 END,
+                 length(name), name, id
+        LIMIT :limit
+        """, nativeQuery = true)
+    List<ScreenItemHit> searchScreenItems(@Param("q") String q,
+                                          @Param("pattern") String pattern,
+                                          @Param("appId") Long appId,
+                                          @Param("limit") int limit);
 }
@@ -28,7 +28,10 @@ public class SecurityConfig {
             .csrf(csrf -> csrf.disable())
             .sessionManagement(sm -> sm.sessionCreationPolicy(SessionCreationPolicy.STATELESS))
             .authorizeHttpRequests(auth -> auth
-                .requestMatchers("/actuator/**", "/health", "/api/public/**", "/api/screenshots/**").permitAll()
+                .requestMatchers("/actuator/health", "/actuator/health/**", "/actuator/info").permitAll()
+                .requestMatchers("/health", "/api/public/**", "/api/screenshots/**").permitAll()
+                // Metrics (prometheus, metrics/**) expose per-tenant usage and model/tool tags
+                .requestMatchers("/actuator/**").hasRole("SUPER_ADMIN")
                 // SUPER_ADMIN-only admin area
                 .requestMatchers("/api/admin/apps/**").hasRole("SUPER_ADMIN")
                 .requestMatchers("/api/admin/**").hasAnyRole("SUPER_ADMIN", "VENDOR_ADMIN")
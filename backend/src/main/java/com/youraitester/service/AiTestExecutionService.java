@@ -63,6 +63,7 @@ public class AiTestExecutionService {
 
             // Always include the agent execution log for robust step analysis
             result.put("agentExecutionLog", executionResult.getExecutionLog());
+            result.put("llmUsage", executionResult.getUsage());
 
             if (executionResult.isSuccess()) {
                 result.put("status", "success");
@@ -160,6 +161,7 @@ public class AiTestExecutionService {
                 session.executeStep(instruction, pageContext, variables, allowSnapshot);
 
             result.put("agentExecutionLog", executionResult.getExecutionLog());
+            result.put("llmUsage", executionResult.getUsage());
 
             if (!executionResult.isSuccess() && "NEED_SNAPSHOT".equalsIgnoreCase(executionResult.getMessage() != null ? executionResult.getMessage().trim() : "")) {
                 result.put("status", "need_snapshot");
@@ -210,13 +212,24 @@ public class AiTestExecutionService {
     public Map<String, Object> executeBatchWithAI(AgentExecutor.AgentSession session,
                                                   List<com.youraitester.model.TestStep> orderedSteps,
                                                   Map<String, Object> variables) {
+        return executeBatchWithAI(session, orderedSteps, variables, null);
+    }
+
+    /**
+     * Same as above; {@code progress} is notified per step as soon as that step's tools have run.
+     */
+    public Map<String, Object> executeBatchWithAI(AgentExecutor.AgentSession session,
+                                                  List<com.youraitester.model.TestStep> orderedSteps,
+                                                  Map<String, Object> variables,
+                                                  AgentExecutor.StepProgressListener progress) {
         Map<String, Object> result = new HashMap<>();
         try {
             log.info("Executing batch with AI agent session: {} candidate steps", orderedSteps != null ? orderedSteps.size() : 0);
-            AgentExecutor.BatchResult batch = session.executeBatch(orderedSteps, variables);
+            AgentExecutor.BatchResult batch = session.executeBatch(orderedSteps, variables, progress);
             AgentExecutor.AgentExecutionResult exec = batch.getAgentResult();
 
             result.put("agentExecutionLog", exec.getExecutionLog());
+            result.put("llmUsage", exec.getUsage());
             result.put("executedStepNumbers", batch.getExecutedStepNumbers());
             result.put("stepOutcomes", batch.getStepOutcomes());
             result.put("stepScreenshotUrls", batch.getStepScreenshotUrls());
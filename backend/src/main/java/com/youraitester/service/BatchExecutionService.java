@@ -41,7 +41,7 @@ public class BatchExecutionService {
         // due to the async executor's queue
         for (String testId : testIds) {
             log.info("Calling executeTest for testId={} with runId={}", testId, runId);
-            testExecutionService.executeTest(testId, null, "development", "chromium", runId);
+            testExecutionService.executeTest(testId, null, "development", "chromium", runId, true);
         }
         log.info("All test execution calls initiated for runId={}", runId);
         
@@ -0,0 +1,88 @@
+package com.youraitester.service;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Minimal streaming RFC 4180 reader: one record per {@link #next()}, quoted fields may contain commas,
+ * doubled quotes and line breaks. Reads through the given Reader without buffering the whole input.
+ */
+class CsvRecordReader {
+
+    private final Reader in;
+    private int pushedBack = -2;
+
+    CsvRecordReader(Reader in) {
+        this.in = in;
+    }
+
+    /**
+     * Next record, or null at end of input. Blank lines are skipped.
+     */
+    List<String> next() throws IOException {
+        while (true) {
+            int c = read();
+            if (c == -1) return null;
+            if (c == '\r' || c == '\n') continue;
+            unread(c);
+            return readRecord();
+        }
+    }
+
+    private List<String> readRecord() throws IOException {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        while (true) {
+            int c = read();
+            if (quoted) {
+                if (c == -1) {
+                    throw new IOException("Unterminated quoted CSV field");
+                }
+                if (c == '"') {
+                    int n = read();
+                    if (n == '"') {
+                        field.append('"');
+                    } else {
+                        quoted = false;
+                        unread(n);
+                    }
+                } else {
+                    field.append((char) c);
+                }
+                continue;
+            }
+            if (c == -1 || c == '\n' || c == '\r') {
+                if (c == '\r') {
+                    int n = read();
+                    if (n != '\n') unread(n);
+                }
+                fields.add(field.toString());
+                return fields;
+            }
+            if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else if (c == '"' && field.length() == 0) {
+                quoted = true;
+            } else {
+                field.append((char) c);
+            }
+        }
+    }
+
+    private int read() throws IOException {
+        if (pushedBack != -2) {
+            int c = pushedBack;
+            pushedBack = -2;
+            return c;
+        }
+        return in.read();
+    }
+
+    private void unread(int c) {
+        pushedBack = c;
+    }
+}
@@ -0,0 +1,134 @@
+package com.youraitester.service;
+
+import com.youraitester.agent.LatencyHistogram;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Timings of the phases of a test run: executor queue wait, browser/MCP start, navigation, steps, LLM calls,
+ * MCP tool calls, screenshots and repository (DB) calls.
+ *
+ * Every sample goes to a Micrometer timer (exported on /actuator/prometheus, tagged by engine, provider/model,
+ * tool, ...) and to an untagged in-process histogram per phase that load tests read and reset through
+ * /api/agent/diagnostics/execution-phases. DB calls are only kept in the histogram: Spring Boot already times
+ * every repository call as spring.data.repository.invocations. Samples taken inside a traced run also become
+ * spans of that run's {@link RunTracer} timeline.
+ */
+@Component
+public class ExecutionPhaseStats {
+
+    public static final String QUEUE = "queue";
+    public static final String BROWSER_START = "browserStart";
+    public static final String NAVIGATION = "navigation";
+    public static final String STEP = "step";
+    public static final String LLM = "llm";
+    public static final String MCP = "mcp";
+    public static final String SCREENSHOT = "screenshot";
+    public static final String DB = "db";
+
+    public static final List<String> PHASES = List.of(QUEUE, BROWSER_START, NAVIGATION, STEP, LLM, MCP, SCREENSHOT, DB);
+
+    // Step engines (tag "engine" of execution.step)
+    public static final String ENGINE_DETERMINISTIC = "deterministic";
+    public static final String ENGINE_STORED_METHOD = "stored_method";
+    public static final String ENGINE_AGENT = "agent";
+
+    private static final Map<String, String> METER_NAMES = Map.of(
+        QUEUE, "execution.queue.wait",
+        BROWSER_START, "execution.browser.start",
+        NAVIGATION, "execution.navigation",
+        STEP, "execution.step",
+        LLM, "execution.llm.call",
+        MCP, "execution.mcp.tool",
+        SCREENSHOT, "execution.screenshot"
+    );
+
+    private static final long[] BUCKETS_MS = {1, 5, 10, 25, 50, 100, 250, 500, 1000, 2500, 5000, 10000, 30000, 60000, 120000, 300000};
+
+    private final MeterRegistry registry;
+    private final RunTracer tracer;
+    private final Map<String, LatencyHistogram> histograms = new ConcurrentHashMap<>();
+    private final AtomicInteger activeRuns = new AtomicInteger();
+    private volatile Instant since = Instant.now();
+
+    public ExecutionPhaseStats(MeterRegistry registry, RunTracer tracer) {
+        this.registry = registry;
+        this.tracer = tracer;
+        Gauge.builder("execution.runs.active", activeRuns, AtomicInteger::get)
+            .description("Test runs currently executing")
+            .register(registry);
+    }
+
+    /**
+     * Record one sample of {@code phase}; {@code tags} are Micrometer key/value pairs (e.g. "engine", "agent").
+     */
+    public void record(String phase, long ms, String... tags) {
+        long value = Math.max(0, ms);
+        histograms.computeIfAbsent(phase, p -> new LatencyHistogram(BUCKETS_MS)).record(value);
+        String meter = METER_NAMES.get(phase);
+        if (meter != null) {
+            Timer.builder(meter).tags(Tags.of(tags)).register(registry).record(value, TimeUnit.MILLISECONDS);
+        }
+        tracer.recordPhase(phase, value, tags);
+    }
+
+    /**
+     * Record the time elapsed since {@code startedNanos} (a System.nanoTime() reading).
+     */
+    public void recordSince(String phase, long startedNanos, String... tags) {
+        record(phase, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedNanos), tags);
+    }
+
+    public void runStarted() {
+        activeRuns.incrementAndGet();
+    }
+
+    /**
+     * A run left the executor; {@code status} is its final status (passed, failed, cancelled, ...).
+     */
+    public void runFinished(String status) {
+        activeRuns.decrementAndGet();
+        Counter.builder("execution.runs")
+            .description("Finished test runs")
+            .tag("status", status != null ? status : "unknown")
+            .register(registry)
+            .increment();
+    }
+
+    /**
+     * Per-phase count / mean / p50 / p95 / p99 / max since the last reset (phases without samples report zeros).
+     */
+    public Map<String, Object> getSnapshot() {
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("since", since.toString());
+        out.put("activeRuns", activeRuns.get());
+        Map<String, Object> phases = new LinkedHashMap<>();
+        for (String phase : PHASES) {
+            LatencyHistogram h = histograms.get(phase);
+            phases.put(phase, (h != null ? h : new LatencyHistogram(BUCKETS_MS)).snapshot());
+        }
+        out.put("phases", phases);
+        return out;
+    }
+
+    /**
+     * Start a new measurement window (a load test resets before submitting its batches). Micrometer meters are
+     * cumulative and not affected.
+     */
+    public void reset() {
+        histograms.clear();
+        since = Instant.now();
+    }
+}
@@ -0,0 +1,140 @@
+package com.youraitester.service;
+
+import org.slf4j.MDC;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Log controls for the paths that log on every tool call or step (MCP tool calls, MCP stdio, agent trace,
+ * run variables): per-category sampling, payload caps and a per-run debug trace.
+ *
+ * A run thread is bound to its TestRun id for the duration of executeTest (also put in the MDC as "testRunId",
+ * so JSON logs carry it). When debug trace is on for that run, every category logs and payloads are cut at
+ * the larger debug cap; other runs keep sampling 1 in N events per category with short payloads.
+ * Settings come from logging.hotpath.* (see config.HotPathLogConfig).
+ */
+public final class HotPathLog {
+
+    public static final String MCP_CALL = "mcp-call";
+    public static final String MCP_STDIO = "mcp-stdio";
+    public static final String AGENT_TRACE = "agent-trace";
+
+    public static final String MDC_RUN = "testRunId";
+
+    private static final ThreadLocal<String> RUN = new ThreadLocal<>();
+    private static final Set<String> DEBUG_RUNS = ConcurrentHashMap.newKeySet();
+    private static final Map<String, AtomicLong> COUNTERS = new ConcurrentHashMap<>();
+
+    private static volatile Map<String, Integer> sampleEvery = Map.of();
+    private static volatile int maxChars = 500;
+    private static volatile int debugMaxChars = 20000;
+
+    private HotPathLog() {
+    }
+
+    /**
+     * @param sampleEvery   per category: log 1 in N events (1 = all, 0 = none); missing categories log all
+     * @param maxChars      payload cap outside debug trace
+     * @param debugMaxChars payload cap for runs with debug trace on
+     */
+    public static void configure(Map<String, Integer> sampleEvery, int maxChars, int debugMaxChars) {
+        HotPathLog.sampleEvery = Map.copyOf(sampleEvery);
+        HotPathLog.maxChars = Math.max(50, maxChars);
+        HotPathLog.debugMaxChars = Math.max(HotPathLog.maxChars, debugMaxChars);
+    }
+
+    /**
+     * Bind this thread to a run; {@code debugTrace} turns verbose capture on for it.
+     */
+    public static void beginRun(String testRunId, boolean debugTrace) {
+        if (testRunId == null) return;
+        if (debugTrace) DEBUG_RUNS.add(testRunId);
+        restore(testRunId);
+    }
+
+    /**
+     * Unbind this thread and forget the run's debug trace flag.
+     */
+    public static void endRun() {
+        String testRunId = RUN.get();
+        if (testRunId != null) DEBUG_RUNS.remove(testRunId);
+        restore(null);
+    }
+
+    /** TestRun id this thread works for, or null (for handing it to a helper thread with {@link #restore}). */
+    public static String currentRun() {
+        return RUN.get();
+    }
+
+    /**
+     * Bind a helper thread (e.g. a stream reader) to the run captured with {@link #currentRun()}; null unbinds.
+     */
+    public static void restore(String testRunId) {
+        if (testRunId == null) {
+            RUN.remove();
+            MDC.remove(MDC_RUN);
+        } else {
+            RUN.set(testRunId);
+            MDC.put(MDC_RUN, testRunId);
+        }
+    }
+
+    /**
+     * Turn debug trace on or off for a run while it executes.
+     */
+    public static void setDebugTrace(String testRunId, boolean enabled) {
+        if (enabled) {
+            DEBUG_RUNS.add(testRunId);
+        } else {
+            DEBUG_RUNS.remove(testRunId);
+        }
+    }
+
+    public static Set<String> getDebugTraceRuns() {
+        return Collections.unmodifiableSet(DEBUG_RUNS);
+    }
+
+    /** True when this thread's run has debug trace on. */
+    public static boolean isDebugTrace() {
+        return isDebugTrace(RUN.get());
+    }
+
+    public static boolean isDebugTrace(String testRunId) {
+        return testRunId != null && !DEBUG_RUNS.isEmpty() && DEBUG_RUNS.contains(testRunId);
+    }
+
+    /**
+     * Whether to log this event of {@code category}: always in a debug trace run, otherwise 1 in N.
+     */
+    public static boolean sampled(String category) {
+        return isDebugTrace() || sampledIgnoringRun(category);
+    }
+
+    /**
+     * Sampling for threads not bound to a run (e.g. MCP stdio readers, which check their run themselves).
+     */
+    public static boolean sampledIgnoringRun(String category) {
+        int every = sampleEvery.getOrDefault(category, 1);
+        if (every <= 1) return every == 1;
+        return COUNTERS.computeIfAbsent(category, c -> new AtomicLong()).getAndIncrement() % every == 0;
+    }
+
+    /**
+     * Payload for a log line, cut to this thread's cap.
+     */
+    public static String cap(Object payload) {
+        return cap(payload, isDebugTrace());
+    }
+
+    public static String cap(Object payload, boolean debugTrace) {
+        if (payload == null) return "null";
+        String s = String.valueOf(payload);
+        int limit = debugTrace ? debugMaxChars : maxChars;
+        if (s.length() <= limit) return s;
+        return s.substring(0, limit) + "...[truncated, original chars=" + s.length() + "]";
+    }
+}
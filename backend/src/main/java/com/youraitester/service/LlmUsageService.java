@@ -0,0 +1,177 @@
+package com.youraitester.service;
+
+import com.youraitester.agent.LlmUsage;
+import com.youraitester.model.StepResult;
+import com.youraitester.model.TestRun;
+import com.youraitester.repository.StepResultRepository;
+import com.youraitester.repository.TestRunRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Token / latency / cost accounting for agent runs.
+ *
+ * Usage is recorded per step (batch turns are split evenly across the steps they executed), summed onto the
+ * TestRun when it finishes, and rolled up per Run, project and tenant on demand.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class LlmUsageService {
+
+    private final TestRunRepository testRunRepository;
+    private final StepResultRepository stepResultRepository;
+    private final Environment environment;
+
+    /**
+     * USD per million tokens for the configured model, and for any model without its own
+     * llm.pricing.model.&lt;model&gt;.* rates. Cached prompt tokens are billed at their own rate instead of the input rate.
+     */
+    @Value("${llm.pricing.input.per.mtok:3.0}")
+    private double inputPricePerMtok;
+
+    @Value("${llm.pricing.output.per.mtok:15.0}")
+    private double outputPricePerMtok;
+
+    @Value("${llm.pricing.cached.per.mtok:0.3}")
+    private double cachedPricePerMtok;
+
+    // model -> {input, output, cached} USD per million tokens
+    private final Map<String, double[]> modelRates = new ConcurrentHashMap<>();
+
+    /**
+     * Cost of a usage sample, each model's tokens at that model's rates (routing mixes fast and strong models).
+     */
+    public double estimateCostUsd(LlmUsage usage) {
+        if (usage == null) return 0d;
+        double cost = 0d;
+        for (Map.Entry<String, LlmUsage.ModelTokens> e : usage.getTokensByModel().entrySet()) {
+            LlmUsage.ModelTokens t = e.getValue();
+            cost += estimateCostUsd(ratesFor(e.getKey()), t.getInputTokens(), t.getOutputTokens(), t.getCachedTokens());
+        }
+        return cost;
+    }
+
+    private static double estimateCostUsd(double[] rates, long inputTokens, long outputTokens, long cachedTokens) {
+        long uncachedInput = Math.max(0, inputTokens - cachedTokens);
+        return (uncachedInput * rates[0]
+            + cachedTokens * rates[2]
+            + outputTokens * rates[1]) / 1_000_000d;
+    }
+
+    private double[] ratesFor(String model) {
+        if (model == null || model.isBlank()) {
+            return new double[]{inputPricePerMtok, outputPricePerMtok, cachedPricePerMtok};
+        }
+        return modelRates.computeIfAbsent(model, m -> new double[]{
+            rate(m, "input", inputPricePerMtok),
+            rate(m, "output", outputPricePerMtok),
+            rate(m, "cached", cachedPricePerMtok)});
+    }
+
+    private double rate(String model, String kind, double fallback) {
+        Double v = environment.getProperty("llm.pricing.model." + model + "." + kind + ".per.mtok", Double.class);
+        return v != null ? v : fallback;
+    }
+
+    /**
+     * Add usage (from an AiTestExecutionService result map's "llmUsage" entry) to a step.
+     * Accumulates, so retries of the same step (e.g. NEED_SNAPSHOT) are all counted.
+     */
+    public void addToStep(StepResult step, Object usage) {
+        if (step == null || !(usage instanceof LlmUsage u) || u.isEmpty()) return;
+        step.setLlmInputTokens(nz(step.getLlmInputTokens()) + u.getInputTokens());
+        step.setLlmOutputTokens(nz(step.getLlmOutputTokens()) + u.getOutputTokens());
+        step.setLlmCachedTokens(nz(step.getLlmCachedTokens()) + u.getCachedTokens());
+        step.setLlmLatencyMs(nz(step.getLlmLatencyMs()) + u.getLatencyMs());
+        step.setLlmCalls((step.getLlmCalls() != null ? step.getLlmCalls() : 0) + u.getCalls());
+        step.setLlmCostUsd(nz(step.getLlmCostUsd()) + estimateCostUsd(u));
+    }
+
+    /**
+     * Set the test run totals: the sum of its step results plus usage that could not be tied to a step
+     * (auto-navigation, batch turns that executed nothing before the run ended).
+     */
+    public void finalizeRun(TestRun testRun, LlmUsage unattributed) {
+        if (testRun == null || testRun.getId() == null) return;
+        LlmUsage total = new LlmUsage();
+        total.add(unattributed);
+        long in = total.getInputTokens(), out = total.getOutputTokens(), cached = total.getCachedTokens();
+        long latency = total.getLatencyMs();
+        int calls = total.getCalls();
+        double cost = estimateCostUsd(total);
+        for (StepResult sr : stepResultRepository.findByTestRunId(testRun.getId())) {
+            in += nz(sr.getLlmInputTokens());
+            out += nz(sr.getLlmOutputTokens());
+            cached += nz(sr.getLlmCachedTokens());
+            latency += nz(sr.getLlmLatencyMs());
+            calls += sr.getLlmCalls() != null ? sr.getLlmCalls() : 0;
+            cost += nz(sr.getLlmCostUsd());
+        }
+        testRun.setLlmInputTokens(in);
+        testRun.setLlmOutputTokens(out);
+        testRun.setLlmCachedTokens(cached);
+        testRun.setLlmLatencyMs(latency);
+        testRun.setLlmCalls(calls);
+        testRun.setLlmCostUsd(cost);
+        log.info("LLM usage for test run {}: calls={} input={} (cached={}) output={} latency={}ms cost=${}",
+            testRun.getId(), calls, in, cached, out, latency, String.format("%.4f", testRun.getLlmCostUsd()));
+    }
+
+    public Map<String, Object> getRunUsage(String runId) {
+        return toMap(testRunRepository.sumUsageByRun(runId));
+    }
+
+    public Map<String, Object> getProjectUsage(String projectId, int sinceDays) {
+        return toMap(testRunRepository.sumUsageByProject(projectId, since(sinceDays)));
+    }
+
+    public Map<String, Object> getTenantUsage(Long tenantId, int sinceDays) {
+        return toMap(testRunRepository.sumUsageByTenant(tenantId, since(sinceDays)));
+    }
+
+    public List<TestRunRepository.TestUsage> getTopTests(String projectId, int sinceDays, int limit) {
+        return testRunRepository.findTopTestsByTokens(projectId, since(sinceDays), clampLimit(limit));
+    }
+
+    public List<StepResultRepository.StepUsage> getTopSteps(String projectId, int sinceDays, int limit) {
+        return stepResultRepository.findTopStepsByTokens(projectId, since(sinceDays), clampLimit(limit));
+    }
+
+    private static Map<String, Object> toMap(TestRunRepository.UsageTotals t) {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("testRuns", t != null ? nz(t.getTestRuns()) : 0L);
+        m.put("inputTokens", t != null ? nz(t.getInputTokens()) : 0L);
+        m.put("outputTokens", t != null ? nz(t.getOutputTokens()) : 0L);
+        m.put("cachedTokens", t != null ? nz(t.getCachedTokens()) : 0L);
+        m.put("latencyMs", t != null ? nz(t.getLatencyMs()) : 0L);
+        m.put("calls", t != null ? nz(t.getCalls()) : 0L);
+        m.put("costUsd", t != null && t.getCostUsd() != null ? t.getCostUsd() : 0d);
+        return m;
+    }
+
+    private static LocalDateTime since(int sinceDays) {
+        return sinceDays > 0 ? LocalDateTime.now().minusDays(sinceDays) : LocalDateTime.of(1970, 1, 1, 0, 0);
+    }
+
+    private static int clampLimit(int limit) {
+        return Math.max(1, Math.min(limit, 500));
+    }
+
+    private static long nz(Long v) {
+        return v != null ? v : 0L;
+    }
+
+    private static double nz(Double v) {
+        return v != null ? v : 0d;
+    }
+}
@@ -0,0 +1,28 @@
+package com.youraitester.service;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * A tool-call batch ({@link McpClient#callTools}) stopped at {@link #getFailedIndex()}; the responses of the calls
+ * before it are kept, the calls after it were never sent.
+ */
+public class McpBatchException extends IOException {
+
+    private final int failedIndex;
+    private final List<McpResponse> completed;
+
+    public McpBatchException(int failedIndex, List<McpResponse> completed, String message, Throwable cause) {
+        super(message, cause);
+        this.failedIndex = failedIndex;
+        this.completed = List.copyOf(completed);
+    }
+
+    public int getFailedIndex() {
+        return failedIndex;
+    }
+
+    public List<McpResponse> getCompleted() {
+        return completed;
+    }
+}
@@ -0,0 +1,54 @@
+package com.youraitester.service;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * One MCP session used by {@link OfficialPlaywrightMcpService}: either a dedicated stdio process
+ * ({@link StdioMcpClient}) or a session on the shared HTTP server ({@link SharedMcpServer.Session}).
+ */
+public interface McpClient {
+
+    McpResponse initialize(Map<String, Object> clientInfo) throws IOException;
+
+    McpResponse callTool(String toolName, Map<String, Object> arguments) throws IOException;
+
+    record ToolCall(String name, Map<String, Object> arguments) {}
+
+    /**
+     * Run tool calls in order and wait once. Stops at the first failing call (JSON-RPC error, timeout or a tool
+     * result with isError) with a {@link McpBatchException}; later calls are not sent. The default issues the
+     * calls one by one.
+     */
+    default List<McpResponse> callTools(List<ToolCall> calls) throws IOException {
+        List<McpResponse> completed = new ArrayList<>();
+        for (ToolCall call : calls) {
+            McpResponse response;
+            try {
+                response = callTool(call.name(), call.arguments());
+            } catch (IOException e) {
+                throw new McpBatchException(completed.size(), completed, e.getMessage(), e);
+            }
+            if (response.isToolError()) {
+                IOException e = toolError(response);
+                throw new McpBatchException(completed.size(), completed, e.getMessage(), e);
+            }
+            completed.add(response);
+        }
+        return completed;
+    }
+
+    static IOException toolError(McpResponse response) {
+        String text = response.getText();
+        return new IOException("tool error: " + (text.isEmpty() ? "(no message)" : text));
+    }
+
+    /**
+     * Release the session (kills a dedicated process; closes the browser context on the shared server).
+     */
+    void disconnect();
+
+    boolean isConnected();
+}
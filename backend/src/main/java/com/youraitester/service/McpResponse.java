@@ -0,0 +1,81 @@
+package com.youraitester.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.util.List;
+
+/**
+ * One decoded JSON-RPC message from the MCP server (see {@link McpStreamDecoder}).
+ *
+ * Tool results keep only what callers use: the text blocks of result.content (joined on demand by {@link #getText}),
+ * the first resource URI, and the number of image blocks that were skipped without being materialised.
+ * Any other result fields (isError, serverInfo, tools, ...) are available as a small tree via {@link #getResult}.
+ */
+public class McpResponse {
+
+    private final Long id;
+    private final String method;
+    private final String errorMessage;
+    private final JsonNode result;
+    private final boolean hasContent;
+    private final List<String> textBlocks;
+    private final String resourceUri;
+    private final int skippedImages;
+    private final long bytes;
+    private final boolean oversized;
+    private String text;
+
+    McpResponse(Long id, String method, String errorMessage, JsonNode result, boolean hasContent,
+                List<String> textBlocks, String resourceUri, int skippedImages, long bytes, boolean oversized) {
+        this.id = id;
+        this.method = method;
+        this.errorMessage = errorMessage;
+        this.result = result;
+        this.hasContent = hasContent;
+        this.textBlocks = textBlocks != null ? textBlocks : List.of();
+        this.resourceUri = resourceUri;
+        this.skippedImages = skippedImages;
+        this.bytes = bytes;
+        this.oversized = oversized;
+    }
+
+    static McpResponse oversized(Long id, long bytes) {
+        return new McpResponse(id, null, null, null, false, null, null, 0, bytes, true);
+    }
+
+    /** Request id this message answers; null for notifications. */
+    public Long getId() { return id; }
+    /** Method name for server-initiated requests / notifications. */
+    public String getMethod() { return method; }
+    /** error.message of a JSON-RPC error response, else null. */
+    public String getErrorMessage() { return errorMessage; }
+    public boolean isError() { return errorMessage != null; }
+    /**
+     * True for a tool result with result.isError=true: the call reached the tool, which failed (stale ref,
+     * locator timeout, ...). The text blocks carry the tool's error message.
+     */
+    public boolean isToolError() { return result != null && result.path("isError").asBoolean(false); }
+    /** True when the message carried a "result" member. */
+    public boolean hasResult() { return result != null || hasContent; }
+    /** result members other than "content" (null when there was no result). */
+    public JsonNode getResult() { return result; }
+    /** True when result.content was an array (a tool result). */
+    public boolean hasContent() { return hasContent; }
+    public List<String> getTextBlocks() { return textBlocks; }
+    public String getResourceUri() { return resourceUri; }
+    public int getSkippedImages() { return skippedImages; }
+    /** Size of the message on the wire. */
+    public long getBytes() { return bytes; }
+    /** True when the message exceeded mcp.stdio.max.message.bytes and was discarded. */
+    public boolean isOversized() { return oversized; }
+
+    /**
+     * Text blocks joined with newlines and trimmed; built once, on first use.
+     */
+    public String getText() {
+        if (text == null) {
+            text = textBlocks.size() == 1 ? textBlocks.get(0).trim() : String.join("\n", textBlocks).trim();
+        }
+        return text;
+    }
+}
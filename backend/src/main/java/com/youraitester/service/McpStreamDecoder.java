@@ -0,0 +1,373 @@
+package com.youraitester.service;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.youraitester.agent.LatencyHistogram;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Decoder for the MCP stdio transport (newline-delimited JSON-RPC).
+ *
+ * Frames messages on '\n' into one reusable byte buffer (no String per line; the buffer is capped at
+ * {@code maxMessageBytes} and shrunk back after large messages), then walks the message with a streaming parser:
+ * text blocks are read, image "data" strings are skipped without being decoded into Java strings, and only the
+ * small non-content result members are built as a tree. A message over the cap is discarded; its id is recovered
+ * from the head or tail of the line so the waiting request fails fast instead of timing out.
+ *
+ * The same framing reads a Streamable HTTP "text/event-stream" body ({@link #forEventStream}): only "data:" lines
+ * are decoded, event/id/comment lines are skipped.
+ *
+ * Codec "tree" keeps the previous behaviour (full readTree per message) for before/after comparison; both record
+ * per-message decode time and allocation in {@link #getStats()}.
+ */
+@Slf4j
+public class McpStreamDecoder {
+
+    public static final String STREAMING = "streaming";
+    public static final String TREE = "tree";
+
+    private static final JsonFactory JSON = new JsonFactory();
+    private static final ObjectMapper MAPPER = new ObjectMapper(JSON);
+    private static final int INITIAL_BUFFER = 64 * 1024;
+    private static final int RETAINED_BUFFER = 1024 * 1024;
+    private static final int ID_WINDOW = 96;
+    private static final Pattern ID = Pattern.compile("\"id\"\\s*:\\s*(\\d+)");
+    private static final long[] LATENCY_BUCKETS_MS = {10, 25, 50, 100, 250, 500, 1000, 2500, 5000, 10000, 30000};
+
+    private static final Map<String, Stats> STATS = new ConcurrentHashMap<>();
+
+    private final InputStream in;
+    private final int maxMessageBytes;
+    private final boolean tree;
+    private final Stats stats;
+    private final boolean eventStream;
+
+    private byte[] line = new byte[INITIAL_BUFFER];
+    private final byte[] chunk = new byte[16 * 1024];
+    private int chunkPos;
+    private int chunkLen;
+    // Last bytes of a discarded (oversized) line, where the MCP server writes the id
+    private final byte[] tail = new byte[ID_WINDOW];
+    private int tailLen;
+
+    public McpStreamDecoder(InputStream in, String codec, int maxMessageBytes) {
+        this(in, codec, maxMessageBytes, false);
+    }
+
+    private McpStreamDecoder(InputStream in, String codec, int maxMessageBytes, boolean eventStream) {
+        this.in = in;
+        this.eventStream = eventStream;
+        this.tree = TREE.equalsIgnoreCase(codec);
+        this.maxMessageBytes = Math.max(INITIAL_BUFFER, maxMessageBytes);
+        this.stats = stats(tree ? TREE : STREAMING);
+    }
+
+    /**
+     * Decoder for a server-sent-events body (one JSON-RPC message per "data:" line).
+     */
+    public static McpStreamDecoder forEventStream(InputStream in, String codec, int maxMessageBytes) {
+        return new McpStreamDecoder(in, codec, maxMessageBytes, true);
+    }
+
+    public String getCodec() {
+        return tree ? TREE : STREAMING;
+    }
+
+    /**
+     * Next message, or null at end of stream. Blank lines are skipped; unparseable lines are logged and skipped.
+     */
+    public McpResponse next() throws IOException {
+        while (true) {
+            int len = 0;
+            long total = 0;
+            boolean overflow = false;
+            boolean eof = false;
+            tailLen = 0;
+            while (true) {
+                if (chunkPos == chunkLen) {
+                    chunkLen = in.read(chunk);
+                    chunkPos = 0;
+                    if (chunkLen <= 0) {
+                        chunkLen = 0;
+                        eof = true;
+                        break;
+                    }
+                }
+                int nl = -1;
+                for (int i = chunkPos; i < chunkLen; i++) {
+                    if (chunk[i] == '\n') { nl = i; break; }
+                }
+                int end = nl >= 0 ? nl : chunkLen;
+                int n = end - chunkPos;
+                total += n;
+                if (!overflow && len + n > maxMessageBytes) {
+                    overflow = true;
+                    keepTail(line, 0, len);
+                }
+                if (overflow) {
+                    keepTail(chunk, chunkPos, n);
+                } else {
+                    ensureCapacity(len + n);
+                    System.arraycopy(chunk, chunkPos, line, len, n);
+                    len += n;
+                }
+                chunkPos = nl >= 0 ? nl + 1 : chunkLen;
+                if (nl >= 0) break;
+            }
+            if (eof && total == 0) return null;
+            stats.bytes.add(total);
+
+            if (overflow) {
+                stats.oversized.increment();
+                Long id = findId(line, Math.min(len, ID_WINDOW));
+                if (id == null) id = findId(tail, tailLen);
+                log.warn("Discarded MCP message of {} bytes (limit {}), id={}", total, maxMessageBytes, id);
+                shrink();
+                return McpResponse.oversized(id, total);
+            }
+            if (eventStream) {
+                int off = dataOffset(line, len);
+                if (off < 0) {
+                    if (eof) return null;
+                    continue;
+                }
+                System.arraycopy(line, off, line, 0, len - off);
+                len -= off;
+            }
+            if (isBlank(line, len)) {
+                if (eof) return null;
+                continue;
+            }
+            try {
+                return decode(line, len);
+            } catch (IOException e) {
+                stats.invalid.increment();
+                log.error("Error parsing JSON from MCP stdout ({} bytes): {}", len,
+                    new String(line, 0, Math.min(len, 200), StandardCharsets.UTF_8), e);
+                if (eof) return null;
+            } finally {
+                shrink();
+            }
+        }
+    }
+
+    private McpResponse decode(byte[] buf, int len) throws IOException {
+        long allocBefore = allocatedBytes();
+        long started = System.nanoTime();
+        McpResponse response = tree ? decodeTree(buf, len) : decodeStreaming(buf, len);
+        stats.decodeNanos.add(System.nanoTime() - started);
+        if (allocBefore >= 0) stats.allocatedBytes.add(Math.max(0, allocatedBytes() - allocBefore));
+        stats.messages.increment();
+        if (response.getSkippedImages() > 0) stats.skippedImages.add(response.getSkippedImages());
+        return response;
+    }
+
+    private McpResponse decodeStreaming(byte[] buf, int len) throws IOException {
+        try (JsonParser p = JSON.createParser(buf, 0, len)) {
+            if (p.nextToken() != JsonToken.START_OBJECT) throw new IOException("JSON-RPC message is not an object");
+            Long id = null;
+            String method = null;
+            String error = null;
+            ObjectNode result = null;
+            boolean hasContent = false;
+            List<String> texts = new ArrayList<>(2);
+            String resourceUri = null;
+            int images = 0;
+            while (p.nextToken() == JsonToken.FIELD_NAME) {
+                String field = p.currentName();
+                JsonToken value = p.nextToken();
+                switch (field) {
+                    case "id" -> {
+                        if (value == JsonToken.VALUE_NUMBER_INT) id = p.getLongValue();
+                    }
+                    case "method" -> method = p.getValueAsString();
+                    case "error" -> error = errorMessage(MAPPER.readTree(p));
+                    case "result" -> {
+                        if (value != JsonToken.START_OBJECT) {
+                            p.skipChildren();
+                            result = MAPPER.createObjectNode();
+                            break;
+                        }
+                        result = MAPPER.createObjectNode();
+                        while (p.nextToken() == JsonToken.FIELD_NAME) {
+                            String member = p.currentName();
+                            JsonToken t = p.nextToken();
+                            if ("content".equals(member) && t == JsonToken.START_ARRAY) {
+                                hasContent = true;
+                                while (p.nextToken() == JsonToken.START_OBJECT) {
+                                    String type = null;
+                                    String text = null;
+                                    boolean data = false;
+                                    while (p.nextToken() == JsonToken.FIELD_NAME) {
+                                        String name = p.currentName();
+                                        p.nextToken();
+                                        switch (name) {
+                                            case "type" -> type = p.getValueAsString();
+                                            case "text" -> text = p.getValueAsString();
+                                            // Not reading the token lets the parser skip the base64 payload
+                                            case "data" -> data = true;
+                                            case "resource" -> {
+                                                JsonNode resource = MAPPER.readTree(p);
+                                                if (resourceUri == null && resource != null && resource.has("uri")) {
+                                                    resourceUri = resource.get("uri").asText();
+                                                }
+                                            }
+                                            default -> p.skipChildren();
+                                        }
+                                    }
+                                    if (text != null && (type == null || "text".equals(type))) texts.add(text);
+                                    else if ("image".equals(type) || data) images++;
+                                }
+                            } else {
+                                result.set(member, MAPPER.readTree(p));
+                            }
+                        }
+                    }
+                    default -> p.skipChildren();
+                }
+            }
+            return new McpResponse(id, method, error, result, hasContent, texts, resourceUri, images, len, false);
+        }
+    }
+
+    private McpResponse decodeTree(byte[] buf, int len) throws IOException {
+        JsonNode root = MAPPER.readTree(buf, 0, len);
+        if (root == null || !root.isObject()) throw new IOException("JSON-RPC message is not an object");
+        Long id = root.has("id") && root.get("id").isIntegralNumber() ? root.get("id").asLong() : null;
+        String method = root.has("method") ? root.get("method").asText() : null;
+        String error = root.has("error") ? errorMessage(root.get("error")) : null;
+        ObjectNode result = null;
+        boolean hasContent = false;
+        List<String> texts = new ArrayList<>();
+        String resourceUri = null;
+        int images = 0;
+        if (root.has("result")) {
+            result = root.get("result").isObject() ? ((ObjectNode) root.get("result")).deepCopy() : MAPPER.createObjectNode();
+            JsonNode content = result.remove("content");
+            if (content != null && content.isArray()) {
+                hasContent = true;
+                for (JsonNode block : content) {
+                    String type = block.path("type").asText(null);
+                    if (block.has("text") && (type == null || "text".equals(type))) texts.add(block.get("text").asText());
+                    else if ("image".equals(type)) images++;
+                    else if (resourceUri == null && block.path("resource").has("uri")) resourceUri = block.get("resource").get("uri").asText();
+                }
+            }
+        }
+        return new McpResponse(id, method, error, result, hasContent, texts, resourceUri, images, len, false);
+    }
+
+    private static String errorMessage(JsonNode error) {
+        if (error == null || error.isNull()) return "unknown error";
+        return error.has("message") ? error.get("message").asText() : error.toString();
+    }
+
+    private void ensureCapacity(int needed) {
+        if (needed <= line.length) return;
+        int size = line.length;
+        while (size < needed) size = size > maxMessageBytes / 2 ? maxMessageBytes : size * 2;
+        line = Arrays.copyOf(line, Math.max(size, needed));
+    }
+
+    /**
+     * Drop a buffer grown by a large message so one big snapshot does not pin memory for the session's lifetime.
+     */
+    private void shrink() {
+        if (line.length > RETAINED_BUFFER) line = new byte[INITIAL_BUFFER];
+    }
+
+    private void keepTail(byte[] src, int off, int n) {
+        if (n >= ID_WINDOW) {
+            System.arraycopy(src, off + n - ID_WINDOW, tail, 0, ID_WINDOW);
+            tailLen = ID_WINDOW;
+            return;
+        }
+        int keep = Math.min(tailLen, ID_WINDOW - n);
+        System.arraycopy(tail, tailLen - keep, tail, 0, keep);
+        System.arraycopy(src, off, tail, keep, n);
+        tailLen = keep + n;
+    }
+
+    private static Long findId(byte[] buf, int len) {
+        if (len <= 0) return null;
+        Matcher m = ID.matcher(new String(buf, 0, len, StandardCharsets.ISO_8859_1));
+        Long id = null;
+        while (m.find()) id = Long.parseLong(m.group(1));
+        return id;
+    }
+
+    /** Offset of the payload of an SSE "data:" line, or -1 for any other line. */
+    private static int dataOffset(byte[] buf, int len) {
+        if (len < 5 || buf[0] != 'd' || buf[1] != 'a' || buf[2] != 't' || buf[3] != 'a' || buf[4] != ':') return -1;
+        return len > 5 && buf[5] == ' ' ? 6 : 5;
+    }
+
+    private static boolean isBlank(byte[] buf, int len) {
+        for (int i = 0; i < len; i++) {
+            byte b = buf[i];
+            if (b != ' ' && b != '\t' && b != '\r') return false;
+        }
+        return true;
+    }
+
+    private static long allocatedBytes() {
+        if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean mx
+            && mx.isThreadAllocatedMemorySupported() && mx.isThreadAllocatedMemoryEnabled()) {
+            return mx.getCurrentThreadAllocatedBytes();
+        }
+        return -1;
+    }
+
+    // ---- Stats (per codec, process-wide) ----
+
+    static class Stats {
+        final LongAdder messages = new LongAdder();
+        final LongAdder bytes = new LongAdder();
+        final LongAdder decodeNanos = new LongAdder();
+        final LongAdder allocatedBytes = new LongAdder();
+        final LongAdder skippedImages = new LongAdder();
+        final LongAdder oversized = new LongAdder();
+        final LongAdder invalid = new LongAdder();
+        final LatencyHistogram roundTrip = new LatencyHistogram(LATENCY_BUCKETS_MS);
+    }
+
+    static Stats stats(String codec) {
+        return STATS.computeIfAbsent(codec, c -> new Stats());
+    }
+
+    /**
+     * Per codec: messages, bytes, mean decode time and allocation per message, skipped images, discarded
+     * messages, and request round-trip latency.
+     */
+    public static Map<String, Object> getStats() {
+        Map<String, Object> out = new TreeMap<>();
+        STATS.forEach((codec, s) -> {
+            long n = s.messages.sum();
+            Map<String, Object> m = new LinkedHashMap<>();
+            m.put("messages", n);
+            m.put("bytes", s.bytes.sum());
+            m.put("meanDecodeMicros", n > 0 ? s.decodeNanos.sum() / n / 1000 : null);
+            m.put("meanAllocatedBytesPerMessage", n > 0 && s.allocatedBytes.sum() > 0 ? s.allocatedBytes.sum() / n : null);
+            m.put("skippedImages", s.skippedImages.sum());
+            m.put("oversized", s.oversized.sum());
+            m.put("invalid", s.invalid.sum());
+            m.put("roundTrip", s.roundTrip.snapshot());
+            out.put(codec, m);
+        });
+        return out;
+    }
+}
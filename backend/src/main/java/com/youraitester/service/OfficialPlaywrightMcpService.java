@@ -10,13 +10,15 @@ import jakarta.annotation.PostConstruct;
 import jakarta.annotation.PreDestroy;
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Service for interacting with the official Microsoft Playwright MCP server
  * using STDIO transport (the recommended approach - no session timeout issues!).
  * 
  * Each test execution thread spawns its own MCP server process and communicates
- * via stdin/stdout using JSON-RPC 2.0 protocol.
+ * via stdin/stdout using JSON-RPC 2.0 protocol. With mcp.session.mode=shared the threads
+ * instead open sessions (isolated browser contexts) on one SharedMcpServer.
  */
 @Service
 @Slf4j
@@ -24,16 +26,50 @@ public class OfficialPlaywrightMcpService {
     
     @Value("${mcp.playwright.enabled:true}")
     private boolean mcpEnabled;
+
+    /**
+     * Stdout decoding: "streaming" (skips image payloads, no per-message tree) or "tree" (legacy, for comparison).
+     */
+    @Value("${mcp.stdio.codec:streaming}")
+    private String stdioCodec;
+
+    @Value("${mcp.stdio.max.message.bytes:33554432}")
+    private int maxMessageBytes;
+
+    /**
+     * Passed as --image-responses; "omit" stops the server from sending base64 images we never use
+     * (screenshot paths come from the text blocks). Empty = server default.
+     */
+    @Value("${mcp.playwright.image.responses:omit}")
+    private String imageResponses;
+
+    /**
+     * "process": one stdio MCP server (Node + browser) per test thread.
+     * "shared": one long-lived HTTP MCP server, an isolated browser context per test (see SharedMcpServer).
+     */
+    @Value("${mcp.session.mode:process}")
+    private String sessionMode;
+
+    public static final String MODE_PROCESS = "process";
+    public static final String MODE_SHARED = "shared";
     
     private final ObjectMapper objectMapper;
+    private final SharedMcpServer sharedMcpServer;
+    private final ExecutionPhaseStats phaseStats;
     private volatile boolean serviceReady = false;
     
-    // Thread-local STDIO client - one MCP process per test execution thread
-    private final ThreadLocal<StdioMcpClient> stdioClient = ThreadLocal.withInitial(() -> null);
+    // Thread-local MCP client - a dedicated process or a session on the shared server, per test execution thread
+    private final ThreadLocal<McpClient> stdioClient = ThreadLocal.withInitial(() -> null);
+    // Dedicated stdio processes currently open (for memory accounting)
+    private final Set<StdioMcpClient> liveProcesses = ConcurrentHashMap.newKeySet();
     private final ThreadLocal<Boolean> sessionInitialized = ThreadLocal.withInitial(() -> false);
+    // When set, this thread's MCP process drives an existing browser over CDP instead of launching its own
+    private final ThreadLocal<String> cdpEndpoint = ThreadLocal.withInitial(() -> null);
     
-    public OfficialPlaywrightMcpService() {
+    public OfficialPlaywrightMcpService(SharedMcpServer sharedMcpServer, ExecutionPhaseStats phaseStats) {
         this.objectMapper = new ObjectMapper();
+        this.sharedMcpServer = sharedMcpServer;
+        this.phaseStats = phaseStats;
     }
     
     @PostConstruct
@@ -43,8 +79,13 @@ public class OfficialPlaywrightMcpService {
             return;
         }
         
-        log.info("Official Playwright MCP service ready (STDIO mode)");
-        log.info("Note: MCP processes will be spawned on-demand for each test execution");
+        if (isSharedMode()) {
+            log.info("Official Playwright MCP service ready (shared mode)");
+            log.info("Note: one MCP server is started on first use; each test execution gets its own browser context");
+        } else {
+            log.info("Official Playwright MCP service ready (STDIO mode)");
+            log.info("Note: MCP processes will be spawned on-demand for each test execution");
+        }
         serviceReady = true;
     }
     
@@ -55,13 +96,9 @@ public class OfficialPlaywrightMcpService {
         log.info("Resetting MCP session for thread: {}", Thread.currentThread().getName());
         
         // Disconnect and cleanup existing client
-        StdioMcpClient client = stdioClient.get();
+        McpClient client = stdioClient.get();
         if (client != null) {
-            try {
-                client.disconnect();
-            } catch (Exception e) {
-                log.warn("Error disconnecting STDIO client", e);
-            }
+            closeClient(client);
             stdioClient.remove();
         }
         
@@ -69,13 +106,27 @@ public class OfficialPlaywrightMcpService {
         log.info("MCP session reset complete");
     }
     
+    /**
+     * Drive the browser behind {@code endpoint} (CDP) from this thread's MCP session, e.g. the Playwright Java
+     * browser of a hybrid run. Restarts the session; pass null to go back to an MCP-launched browser.
+     */
+    public void attachToBrowser(String endpoint) {
+        resetSession();
+        if (endpoint != null) {
+            cdpEndpoint.set(endpoint);
+            log.info("MCP session for thread {} will attach to browser at {}", Thread.currentThread().getName(), endpoint);
+        } else {
+            cdpEndpoint.remove();
+        }
+    }
+
     /**
      * Ensure MCP session is initialized for current thread
      */
     private void ensureSessionInitialized() throws IOException {
         if (sessionInitialized.get()) {
             // Verify process is still alive
-            StdioMcpClient client = stdioClient.get();
+            McpClient client = stdioClient.get();
             if (client != null && client.isConnected()) {
                 return; // Already initialized and running
             } else {
@@ -88,37 +139,107 @@ public class OfficialPlaywrightMcpService {
             throw new IOException("Playwright MCP is disabled");
         }
         
+        // A CDP attachment is a per-process flag, so it always gets a dedicated process
+        String endpoint = cdpEndpoint.get();
+        String mode = endpoint == null && isSharedMode() ? MODE_SHARED : MODE_PROCESS;
+        long started = System.nanoTime();
+        McpClient client = openClient(mode, endpoint);
+        phaseStats.recordSince(ExecutionPhaseStats.BROWSER_START, started, "engine", "mcp", "mode", mode);
+        stdioClient.set(client);
+        sessionInitialized.set(true);
+    }
+
+    public boolean isSharedMode() {
+        return MODE_SHARED.equalsIgnoreCase(sessionMode);
+    }
+
+    /**
+     * Open and initialize an MCP session outside the thread-local slot ("process" or "shared"); the caller owns
+     * it and must {@link #closeClient} it. Used by the per-thread session and by the session benchmark.
+     */
+    public McpClient openClient(String mode) throws IOException {
+        return openClient(mode, null);
+    }
+
+    private McpClient openClient(String mode, String endpoint) throws IOException {
+        McpClient client = null;
         try {
-            log.info("Initializing MCP session for thread: {} (STDIO mode)", Thread.currentThread().getName());
-            
-            // Create and connect STDIO client
-            StdioMcpClient client = new StdioMcpClient();
-            client.connect();
-            stdioClient.set(client);
+            if (MODE_SHARED.equalsIgnoreCase(mode)) {
+                log.info("Initializing MCP session for thread: {} (shared server)", Thread.currentThread().getName());
+                client = sharedMcpServer.openSession(stdioCodec, maxMessageBytes);
+            } else {
+                log.info("Initializing MCP session for thread: {} (STDIO mode)", Thread.currentThread().getName());
+                
+                // Create and connect STDIO client
+                List<String> args = new ArrayList<>();
+                if (endpoint != null) args.addAll(List.of("--cdp-endpoint", endpoint));
+                if (imageResponses != null && !imageResponses.isBlank()) args.addAll(List.of("--image-responses", imageResponses.trim()));
+                StdioMcpClient stdio = new StdioMcpClient(args, stdioCodec, maxMessageBytes);
+                stdio.setTestRunId(HotPathLog.currentRun());
+                client = stdio;
+                stdio.connect();
+                liveProcesses.add(stdio);
+            }
             
             // Send initialize request
             Map<String, Object> clientInfo = Map.of("name", "YourAITester", "version", "1.0");
-            JsonNode response = client.initialize(clientInfo);
+            McpResponse response = client.initialize(clientInfo);
             
             // Check response
-            if (response.has("result")) {
-                JsonNode result = response.get("result");
+            if (response.getResult() != null) {
+                JsonNode result = response.getResult();
                 if (result.has("serverInfo")) {
                     JsonNode serverInfo = result.get("serverInfo");
                     String serverName = serverInfo.has("name") ? serverInfo.get("name").asText() : "unknown";
                     String serverVersion = serverInfo.has("version") ? serverInfo.get("version").asText() : "unknown";
-                    log.info("STDIO MCP session initialized successfully: name={}, version={}", serverName, serverVersion);
+                    log.info("MCP session initialized successfully ({}): name={}, version={}", mode, serverName, serverVersion);
                 }
             }
-            
-            sessionInitialized.set(true);
+            return client;
             
         } catch (IOException e) {
             log.error("Failed to initialize MCP session", e);
-            resetSession();
+            if (client != null) closeClient(client);
             throw e;
         }
     }
+
+    /**
+     * Release a session: kills a dedicated process, or closes the browser context on the shared server.
+     */
+    public void closeClient(McpClient client) {
+        try {
+            client.disconnect();
+        } catch (Exception e) {
+            log.warn("Error disconnecting MCP client", e);
+        }
+        if (client instanceof StdioMcpClient stdio) {
+            liveProcesses.remove(stdio);
+        }
+    }
+
+    /** Dedicated MCP server processes (one per test thread in process mode, or CDP-attached) currently open. */
+    public int getDedicatedProcessCount() {
+        return liveProcesses.size();
+    }
+
+    /**
+     * Open sessions and the resident memory behind them in the current mode (process tree RSS from /proc).
+     */
+    public Map<String, Object> getSessionSnapshot() {
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("mode", isSharedMode() ? MODE_SHARED : MODE_PROCESS);
+        long processRss = liveProcesses.stream().mapToLong(StdioMcpClient::getPid)
+            .filter(pid -> pid > 0).map(SharedMcpServer::rssBytes).sum();
+        out.put("dedicatedProcesses", liveProcesses.size());
+        out.put("dedicatedRssBytes", processRss);
+        out.put("dedicatedRssBytesPerSession", liveProcesses.isEmpty() ? 0 : processRss / liveProcesses.size());
+        Map<String, Object> shared = sharedMcpServer.getSnapshot();
+        int sharedSessions = sharedMcpServer.getActiveSessions();
+        out.put("shared", shared);
+        out.put("sharedRssBytesPerSession", sharedSessions == 0 ? 0 : (long) shared.get("rssBytes") / sharedSessions);
+        return out;
+    }
     
     /**
      * Navigate to a URL
@@ -382,16 +503,29 @@ public class OfficialPlaywrightMcpService {
     private Map<String, Object> callToolWithRetry(String toolName, Map<String, Object> arguments, boolean isRetry) throws IOException {
         ensureSessionInitialized();
         
-        StdioMcpClient client = stdioClient.get();
+        McpClient client = stdioClient.get();
         if (client == null || !client.isConnected()) {
             throw new IOException("MCP STDIO client not connected");
         }
         
-        log.info("Calling MCP tool via STDIO: {}", toolName);
+        boolean logged = HotPathLog.sampled(HotPathLog.MCP_CALL);
+        if (logged) {
+            log.info("Calling MCP tool via STDIO: {}", toolName);
+        }
+        if (HotPathLog.isDebugTrace()) {
+            log.info("[DEBUG_TRACE] MCP {} arguments: {}", toolName, HotPathLog.cap(arguments));
+        }
         
-        JsonNode response;
+        McpResponse response;
         try {
             response = client.callTool(toolName, arguments);
+            if (logged) {
+                log.info("MCP tool {} response: {} text block(s), {} image block(s) skipped, {} bytes", toolName,
+                    response.getTextBlocks().size(), response.getSkippedImages(), response.getBytes());
+            }
+            if (HotPathLog.isDebugTrace() && !response.isError()) {
+                log.info("[DEBUG_TRACE] MCP {} result: {}", toolName, HotPathLog.cap(response.getText()));
+            }
         } catch (IOException e) {
             String errorMsg = e.getMessage();
             log.error("MCP tool call failed: {}", errorMsg);
@@ -406,92 +540,126 @@ public class OfficialPlaywrightMcpService {
             throw e;
         }
         
-        // Parse response
-        if (response.has("error")) {
-            JsonNode error = response.get("error");
-            String errorMsg = error.has("message") ? error.get("message").asText() : error.toString();
-            log.error("MCP tool call returned error: {}", errorMsg);
-            throw new IOException("MCP error: " + errorMsg);
+        return toResultMap(response);
+    }
+
+    /**
+     * Run an ordered batch of tool calls on this thread's session with one await (see {@link McpClient#callTools}).
+     * Returns one result map per executed call; if a call failed, its map (success=false) is the last element and
+     * the calls after it were not sent. Every result keeps its page snapshot section: with --snapshot-mode incremental
+     * each one is a diff against the previous response, so the last diff alone is incomplete. No retry: a
+     * half-applied batch must not be replayed.
+     */
+    public List<Map<String, Object>> callTools(List<McpClient.ToolCall> calls) throws IOException {
+        ensureSessionInitialized();
+        
+        McpClient client = stdioClient.get();
+        if (client == null || !client.isConnected()) {
+            throw new IOException("MCP STDIO client not connected");
+        }
+        
+        if (HotPathLog.sampled(HotPathLog.MCP_CALL)) {
+            log.info("Calling {} MCP tools as one batch: {}", calls.size(), calls.stream().map(McpClient.ToolCall::name).toList());
+        }
+        
+        List<McpResponse> responses;
+        String failure = null;
+        try {
+            responses = client.callTools(calls);
+        } catch (McpBatchException e) {
+            log.error("MCP tool batch stopped at call {} ({}): {}", e.getFailedIndex(),
+                calls.get(e.getFailedIndex()).name(), e.getMessage());
+            responses = e.getCompleted();
+            failure = e.getCause() != null ? e.getCause().getMessage() : e.getMessage();
+        }
+        
+        List<Map<String, Object>> results = new ArrayList<>();
+        for (McpResponse response : responses) {
+            results.add(toResultMap(response));
+        }
+        if (failure != null) {
+            results.add(Map.of("success", false, "message", "MCP error: " + failure));
+        }
+        return results;
+    }
+    
+    /**
+     * The calling thread's connected MCP client, or null. Lets a helper thread issue calls against the session
+     * of a test thread (see {@link #callToolOn}); the client multiplexes concurrent requests by id.
+     */
+    public McpClient currentClient() {
+        McpClient client = stdioClient.get();
+        return client != null && client.isConnected() ? client : null;
+    }
+
+    /**
+     * Call a tool on a specific client from any thread: no session initialisation or retry. Same result shape
+     * as {@link #callTool}.
+     */
+    public Map<String, Object> callToolOn(McpClient client, String toolName, Map<String, Object> arguments) throws IOException {
+        if (client == null || !client.isConnected()) {
+            throw new IOException("MCP STDIO client not connected");
+        }
+        return toResultMap(client.callTool(toolName, arguments));
+    }
+
+    private Map<String, Object> toResultMap(McpResponse response) throws IOException {
+        if (response.isError()) {
+            log.error("MCP tool call returned error: {}", response.getErrorMessage());
+            throw new IOException("MCP error: " + response.getErrorMessage());
+        }
+        
+        if (response.isToolError()) {
+            String text = response.getText();
+            log.warn("MCP tool returned an error result: {}", HotPathLog.cap(text));
+            String message = "MCP tool error: " + text;
+            return Map.of("success", false, "message", message, "content", text);
         }
         
-        if (!response.has("result")) {
+        if (!response.hasResult()) {
             log.warn("MCP tool call response has no result field");
             return Map.of("success", true, "message", "Operation completed successfully");
         }
         
-        JsonNode result = response.get("result");
-        
         // Extract content from result
-        if (!result.has("content") || !result.get("content").isArray()) {
-            log.info("MCP tool call response: no result field");
-            log.info("MCP response keys: {}", result.fieldNames());
-            log.info(">>> Empty or missing result from MCP (successful operation with no return value like click)");
+        if (!response.hasContent()) {
+            log.debug("Empty or missing result from MCP (successful operation with no return value like click)");
             return Map.of("success", true, "message", "Operation completed successfully");
         }
         
-        JsonNode contentArray = result.get("content");
-        log.info("MCP tool call response received with {} content blocks", contentArray.size());
-        log.info("MCP response keys: {}", result.fieldNames());
-        
         Map<String, Object> resultMap = new HashMap<>();
         resultMap.put("success", true);
         resultMap.put("path", "NOT_SET"); // Will be overwritten if screenshot found
         
-        // log.info(">>> Processing {} content blocks from MCP response", contentArray.size());
-        
-        StringBuilder combinedText = new StringBuilder();
-        
-        for (int i = 0; i < contentArray.size(); i++) {
-            JsonNode contentBlock = contentArray.get(i);
-            String type = contentBlock.has("type") ? contentBlock.get("type").asText() : "unknown";
-            
-            // log.info(">>> Content block {}: type={}", i, type);
-            
-            if ("text".equals(type) && contentBlock.has("text")) {
-                String text = contentBlock.get("text").asText();
-                combinedText.append(text).append("\n");
-                
-                // Check if this text contains a screenshot path in markdown format
-                // log.info(">>> Checking text for screenshot path. Contains [Screenshot: {}, Contains ](/: {}", 
-                //     text.contains("Screenshot"), text.contains("](/"));
-                
-                if (text.contains("Screenshot") && text.contains("](/")) {
-                    int start = text.indexOf("](/") + 2;  // Position right after "(", so we include the "/"
-                    int end = text.indexOf(")", start);
-                    if (start > 1 && end > start) {
-                        log.info(">>> Path extraction indices: start={}, end={}", start, end);
-                        String screenshotPath = text.substring(start, end);
-                        
-                        // Ensure path starts with / (absolute path)
-                        if (!screenshotPath.startsWith("/")) {
-                            screenshotPath = "/" + screenshotPath;
-                            log.info(">>> Added leading slash to path: {}", screenshotPath);
-                        }
-                        
-                        resultMap.put("path", screenshotPath);
-                        log.info(">>> ✓ EXTRACTED SCREENSHOT PATH from markdown: {}", screenshotPath);
-                    } else {
-                        log.info(">>> Path extraction failed: invalid indices");
+        for (String text : response.getTextBlocks()) {
+            // Check if this text contains a screenshot path in markdown format
+            if (text.contains("Screenshot") && text.contains("](/")) {
+                int start = text.indexOf("](/") + 2;  // Position right after "(", so we include the "/"
+                int end = text.indexOf(")", start);
+                if (start > 1 && end > start) {
+                    String screenshotPath = text.substring(start, end);
+                    
+                    // Ensure path starts with / (absolute path)
+                    if (!screenshotPath.startsWith("/")) {
+                        screenshotPath = "/" + screenshotPath;
                     }
+                    
+                    resultMap.put("path", screenshotPath);
+                    log.debug("Extracted screenshot path from markdown: {}", screenshotPath);
                 } else {
-                    log.info(">>> No screenshot markdown pattern found in text");
-                }
-            } else if ("image".equals(type)) {
-                log.info(">>> Skipping image content block (base64 data is too large for LLM)");
-            } else if ("resource".equals(type) && contentBlock.has("resource")) {
-                JsonNode resource = contentBlock.get("resource");
-                if (resource.has("uri")) {
-                    String uri = resource.get("uri").asText();
-                    resultMap.put("resourceUri", uri);
-                    log.info(">>> Resource URI: {}", uri);
+                    log.debug("Screenshot path extraction failed: invalid indices");
                 }
             }
         }
+        if (response.getResourceUri() != null) {
+            resultMap.put("resourceUri", response.getResourceUri());
+            log.debug("Resource URI: {}", response.getResourceUri());
+        }
         
-        resultMap.put("message", combinedText.toString().trim());
-        resultMap.put("content", combinedText.toString().trim());
-        
-        // log.info(">>> Final resultMap keys: {}, path value: '{}'", resultMap.keySet(), resultMap.get("path"));
+        // One joined string, shared by message and content
+        String text = response.getText();
+        resultMap.put("message", text);
+        resultMap.put("content", text);
         
         return resultMap;
     }
@@ -7,7 +7,10 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import jakarta.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.List;
 import java.util.Locale;
 
 /**
@@ -27,10 +30,15 @@ public class PlaywrightJavaService {
     @Value("${browser.browser:chromium}")
     private String browserName;
 
+    private static final long DEVTOOLS_PORT_WAIT_MS = 10_000;
+
     private final ThreadLocal<Playwright> tlPlaywright = ThreadLocal.withInitial(() -> null);
     private final ThreadLocal<Browser> tlBrowser = ThreadLocal.withInitial(() -> null);
     private final ThreadLocal<BrowserContext> tlContext = ThreadLocal.withInitial(() -> null);
     private final ThreadLocal<Page> tlPage = ThreadLocal.withInitial(() -> null);
+    // Set when the session was started by startShared(): CDP endpoint other clients (Playwright MCP) attach to
+    private final ThreadLocal<String> tlCdpEndpoint = ThreadLocal.withInitial(() -> null);
+    private final ThreadLocal<Path> tlUserDataDir = ThreadLocal.withInitial(() -> null);
 
     public Page getPage() {
         Page p = tlPage.get();
@@ -38,6 +46,13 @@ public class PlaywrightJavaService {
         return p;
     }
 
+    /**
+     * This thread's page, or null when no session is started (unlike {@link #getPage()}).
+     */
+    public Page currentPage() {
+        return tlPage.get();
+    }
+
     public void ensureStarted() {
         if (tlPage.get() != null) return;
 
@@ -57,6 +72,74 @@ public class PlaywrightJavaService {
             browserName, headless, timeoutMs);
     }
 
+    /**
+     * Start a session whose browser can be shared with another Playwright client (hybrid execution).
+     * Uses a persistent context, i.e. the browser's default context, so a client connecting over CDP sees
+     * the same pages, cookies and storage. Chromium only.
+     *
+     * @return the CDP endpoint (http://127.0.0.1:port), or null when the configured browser cannot be shared
+     */
+    public String startShared() {
+        String existing = tlCdpEndpoint.get();
+        if (existing != null && tlPage.get() != null) return existing;
+        String n = browserName == null ? "chromium" : browserName.trim().toLowerCase(Locale.ROOT);
+        if (n.equals("firefox") || n.equals("webkit")) {
+            log.info("[PW] Browser '{}' cannot be shared over CDP; hybrid execution unavailable", browserName);
+            return null;
+        }
+        reset();
+
+        Playwright pw = Playwright.create();
+        try {
+            Path userDataDir = Files.createTempDirectory("pw-hybrid-");
+            // Port 0: Chromium binds a free port itself (no probe-then-bind race between concurrent runs)
+            // and reports it in DevToolsActivePort.
+            BrowserContext ctx = pw.chromium().launchPersistentContext(userDataDir,
+                new BrowserType.LaunchPersistentContextOptions()
+                    .setHeadless(headless)
+                    .setArgs(List.of("--remote-debugging-port=0")));
+            int port;
+            try {
+                port = devToolsPort(userDataDir);
+            } catch (Exception e) {
+                try { ctx.close(); } catch (Exception ignored) {}
+                throw e;
+            }
+            Page page = ctx.pages().isEmpty() ? ctx.newPage() : ctx.pages().get(0);
+            page.setDefaultTimeout(timeoutMs);
+
+            String endpoint = "http://127.0.0.1:" + port;
+            tlPlaywright.set(pw);
+            tlContext.set(ctx);
+            tlPage.set(page);
+            tlCdpEndpoint.set(endpoint);
+            tlUserDataDir.set(userDataDir);
+
+            log.info("[PW] Started shared Playwright Java session (cdp={}, headless={}, timeoutMs={})",
+                endpoint, headless, timeoutMs);
+            return endpoint;
+        } catch (Exception e) {
+            log.warn("[PW] Could not start a shared browser: {}", e.getMessage());
+            try { pw.close(); } catch (Exception ignored) {}
+            return null;
+        }
+    }
+
+    /**
+     * Timeout for the next actions on this thread's page (hybrid runs try mapped selectors with a short one).
+     * Navigation keeps the configured browser.timeout.
+     */
+    public void setActionTimeout(int ms) {
+        ensureStarted();
+        getPage().setDefaultTimeout(ms);
+        getPage().setDefaultNavigationTimeout(timeoutMs);
+    }
+
+    public void restoreActionTimeout() {
+        Page p = tlPage.get();
+        if (p != null) p.setDefaultTimeout(timeoutMs);
+    }
+
     public void reset() {
         Page p = tlPage.get();
         BrowserContext ctx = tlContext.get();
@@ -72,6 +155,15 @@ public class PlaywrightJavaService {
         tlContext.remove();
         tlBrowser.remove();
         tlPlaywright.remove();
+        tlCdpEndpoint.remove();
+
+        Path userDataDir = tlUserDataDir.get();
+        tlUserDataDir.remove();
+        if (userDataDir != null) {
+            try (var paths = Files.walk(userDataDir)) {
+                paths.sorted(java.util.Comparator.reverseOrder()).forEach(f -> f.toFile().delete());
+            } catch (Exception ignored) {}
+        }
     }
 
     public void navigate(String url) {
@@ -146,6 +238,27 @@ public class PlaywrightJavaService {
         getPage().screenshot(new Page.ScreenshotOptions().setPath(path).setFullPage(false));
     }
 
+    /**
+     * Port Chromium bound for --remote-debugging-port=0: the first line of DevToolsActivePort in its user data dir,
+     * written once the DevTools server listens.
+     */
+    private static int devToolsPort(Path userDataDir) throws IOException, InterruptedException {
+        Path file = userDataDir.resolve("DevToolsActivePort");
+        long deadline = System.currentTimeMillis() + DEVTOOLS_PORT_WAIT_MS;
+        while (true) {
+            if (Files.exists(file)) {
+                List<String> lines = Files.readAllLines(file);
+                if (!lines.isEmpty() && !lines.get(0).isBlank()) {
+                    return Integer.parseInt(lines.get(0).trim());
+                }
+            }
+            if (System.currentTimeMillis() > deadline) {
+                throw new IOException("Chromium did not report its DevTools port in " + file);
+            }
+            Thread.sleep(50);
+        }
+    }
+
     private BrowserType resolveBrowserType(Playwright pw, String name) {
         String n = name == null ? "chromium" : name.trim().toLowerCase(Locale.ROOT);
         return switch (n) {
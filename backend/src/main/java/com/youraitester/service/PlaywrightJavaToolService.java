@@ -0,0 +1,437 @@
+package com.youraitester.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.microsoft.playwright.*;
+import com.microsoft.playwright.options.WaitForSelectorState;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-process implementation of the Playwright MCP tool set on Playwright Java (agent.tool.backend=playwright-java).
+ *
+ * Same tool names, arguments and result shape as {@link OfficialPlaywrightMcpService#callTool} (success / message /
+ * content / path), so McpToolExecutor can switch backends without the agent noticing. Snapshots use the MCP
+ * accessibility-tree format; refs are stamped on the elements as a data attribute and stay stable across snapshots
+ * of the same document.
+ *
+ * Playwright Java is single-threaded per instance: each worker thread keeps its own browser (pooled across tests,
+ * recycled after {@code agent.tool.backend.java.browser.max.contexts} contexts) and gets a fresh context per test.
+ * When the thread already has a {@link PlaywrightJavaService} page (deterministic / hybrid runs), tools act on
+ * that page instead, so both engines share one browser without CDP.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class PlaywrightJavaToolService {
+
+    public static final String BACKEND_NAME = "playwright-java";
+    private static final String REF_ATTR = "data-yat-ref";
+
+    private final PlaywrightJavaService playwrightJavaService;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Value("${agent.tool.backend:mcp}")
+    private String backend;
+
+    @Value("${browser.headless:true}")
+    private boolean headless;
+
+    @Value("${browser.browser:chromium}")
+    private String browserName;
+
+    @Value("${browser.timeout:30000}")
+    private int navigationTimeoutMs;
+
+    /**
+     * Timeout for element actions (click/type/select/hover); the MCP server uses 5s as well.
+     */
+    @Value("${agent.tool.backend.java.action.timeout.ms:5000}")
+    private int actionTimeoutMs;
+
+    @Value("${agent.tool.backend.java.browser.max.contexts:50}")
+    private int maxContextsPerBrowser;
+
+    @Value("${agent.tool.backend.java.snapshot.max.nodes:3000}")
+    private int snapshotMaxNodes;
+
+    private static class Runtime {
+        Playwright playwright;
+        Browser browser;
+        BrowserContext context;
+        Page page;
+        int contexts;
+    }
+
+    private final ThreadLocal<Runtime> runtime = new ThreadLocal<>();
+    // All pooled runtimes, for shutdown (each is only used by its own thread otherwise)
+    private final Set<Runtime> pool = ConcurrentHashMap.newKeySet();
+
+    /**
+     * True when McpToolExecutor should route tool calls here instead of the Node MCP server.
+     */
+    public boolean isActive() {
+        return BACKEND_NAME.equalsIgnoreCase(backend != null ? backend.trim() : "");
+    }
+
+    /**
+     * Execute one tool. Failures are returned as success=false (never thrown), like an MCP tool error.
+     */
+    public Map<String, Object> callTool(String toolName, Map<String, Object> arguments) {
+        Map<String, Object> args = arguments != null ? arguments : Map.of();
+        try {
+            Page page = page();
+            return switch (toolName) {
+                case "browser_navigate" -> {
+                    page.navigate(str(args, "url"), new Page.NavigateOptions().setTimeout(navigationTimeoutMs));
+                    yield ok("Navigated to " + str(args, "url"), pageState(page));
+                }
+                case "browser_navigate_back" -> {
+                    page.goBack(new Page.GoBackOptions().setTimeout(navigationTimeoutMs));
+                    yield ok("Navigated back", pageState(page));
+                }
+                case "browser_snapshot", "snapshot" -> snapshot(page, str(args, "selector"));
+                case "browser_click" -> {
+                    Locator el = byRef(page, args);
+                    Locator.ClickOptions options = new Locator.ClickOptions().setTimeout(actionTimeoutMs);
+                    if (Boolean.TRUE.equals(args.get("doubleClick"))) el.dblclick(new Locator.DblclickOptions().setTimeout(actionTimeoutMs));
+                    else el.click(options);
+                    yield ok("Clicked " + str(args, "element"), pageState(page));
+                }
+                case "browser_hover" -> {
+                    byRef(page, args).hover(new Locator.HoverOptions().setTimeout(actionTimeoutMs));
+                    yield ok("Hovered " + str(args, "element"), pageState(page));
+                }
+                case "browser_type" -> {
+                    Locator el = byRef(page, args);
+                    el.fill(str(args, "text"), new Locator.FillOptions().setTimeout(actionTimeoutMs));
+                    if (Boolean.TRUE.equals(args.get("submit"))) el.press("Enter");
+                    yield ok("Typed into " + str(args, "element"), pageState(page));
+                }
+                case "browser_select_option" -> {
+                    List<String> values = new ArrayList<>();
+                    if (args.get("values") instanceof Collection<?> c) c.forEach(v -> values.add(String.valueOf(v)));
+                    byRef(page, args).selectOption(values.toArray(new String[0]),
+                        new Locator.SelectOptionOptions().setTimeout(actionTimeoutMs));
+                    yield ok("Selected " + values + " in " + str(args, "element"), pageState(page));
+                }
+                case "browser_press_key" -> {
+                    page.keyboard().press(str(args, "key"));
+                    yield ok("Pressed " + str(args, "key"), pageState(page));
+                }
+                case "browser_wait_for" -> waitFor(page, args);
+                case "browser_take_screenshot" -> screenshot(page, args);
+                case "browser_evaluate" -> evaluate(page, args);
+                default -> fail("Tool " + toolName + " is not supported by the in-process Playwright backend");
+            };
+        } catch (PlaywrightException e) {
+            String msg = e.getMessage() != null ? e.getMessage().split("\n", 2)[0] : e.toString();
+            log.info("[PW-TOOLS] {} failed: {}", toolName, msg);
+            return fail("Error: " + msg);
+        } catch (Exception e) {
+            log.info("[PW-TOOLS] {} failed: {}", toolName, e.getMessage());
+            return fail("Error: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Close this thread's context (end of a test); the browser stays pooled for the thread's next test.
+     */
+    public void release() {
+        Runtime rt = runtime.get();
+        if (rt == null || rt.context == null) return;
+        try { rt.context.close(); } catch (Exception ignored) {}
+        rt.context = null;
+        rt.page = null;
+        if (rt.contexts >= Math.max(1, maxContextsPerBrowser)) {
+            close(rt);
+            runtime.remove();
+        }
+    }
+
+    /**
+     * Pool state, for diagnostics.
+     */
+    public Map<String, Object> getSnapshot() {
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("active", isActive());
+        out.put("backend", backend);
+        out.put("pooledBrowsers", pool.size());
+        out.put("actionTimeoutMs", actionTimeoutMs);
+        out.put("maxContextsPerBrowser", maxContextsPerBrowser);
+        return out;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        for (Runtime rt : pool) close(rt);
+    }
+
+    private Page page() {
+        Page shared = playwrightJavaService.currentPage();
+        if (shared != null) return shared;
+
+        Runtime rt = runtime.get();
+        if (rt == null) {
+            rt = new Runtime();
+            rt.playwright = Playwright.create();
+            String n = browserName == null ? "chromium" : browserName.trim().toLowerCase(Locale.ROOT);
+            BrowserType type = switch (n) {
+                case "firefox" -> rt.playwright.firefox();
+                case "webkit" -> rt.playwright.webkit();
+                default -> rt.playwright.chromium();
+            };
+            rt.browser = type.launch(new BrowserType.LaunchOptions().setHeadless(headless));
+            runtime.set(rt);
+            pool.add(rt);
+            log.info("[PW-TOOLS] Launched pooled browser for thread {} ({})", Thread.currentThread().getName(), n);
+        }
+        if (rt.page == null || rt.page.isClosed()) {
+            if (rt.context == null) {
+                rt.context = rt.browser.newContext();
+                rt.contexts++;
+            }
+            rt.page = rt.context.pages().isEmpty() ? rt.context.newPage() : rt.context.pages().get(0);
+            rt.page.setDefaultTimeout(actionTimeoutMs);
+            rt.page.setDefaultNavigationTimeout(navigationTimeoutMs);
+        }
+        return rt.page;
+    }
+
+    private void close(Runtime rt) {
+        pool.remove(rt);
+        try { if (rt.context != null) rt.context.close(); } catch (Exception ignored) {}
+        try { if (rt.browser != null) rt.browser.close(); } catch (Exception ignored) {}
+        try { if (rt.playwright != null) rt.playwright.close(); } catch (Exception ignored) {}
+    }
+
+    private Locator byRef(Page page, Map<String, Object> args) {
+        String ref = str(args, "ref");
+        if (ref.isEmpty()) throw new IllegalArgumentException("ref is required");
+        Locator el = page.locator("[" + REF_ATTR + "=\"" + ref.replace("\"", "") + "\"]");
+        if (el.count() == 0) {
+            throw new IllegalArgumentException("Ref " + ref + " not found in the current page snapshot. Try capturing new snapshot.");
+        }
+        return el.first();
+    }
+
+    private Map<String, Object> snapshot(Page page, String selector) {
+        Map<String, Object> opts = new HashMap<>();
+        opts.put("selector", selector == null || selector.isBlank() ? null : selector);
+        opts.put("maxNodes", snapshotMaxNodes);
+        opts.put("attr", REF_ATTR);
+        Object raw = page.evaluate(SNAPSHOT_JS, opts);
+        if (!(raw instanceof Map<?, ?> result)) return fail("Snapshot failed: unexpected result");
+        if (result.get("error") != null) return fail(String.valueOf(result.get("error")));
+        StringBuilder sb = new StringBuilder(pageState(page)).append("\n- Page Snapshot:\n```yaml\n")
+            .append(result.get("yaml")).append("\n```");
+        if (Boolean.TRUE.equals(result.get("truncated"))) {
+            sb.append("\n(snapshot truncated at ").append(snapshotMaxNodes).append(" nodes; scope it with a selector)");
+        }
+        return ok(null, sb.toString());
+    }
+
+    private Map<String, Object> waitFor(Page page, Map<String, Object> args) {
+        if (args.get("time") instanceof Number seconds) {
+            page.waitForTimeout(Math.min(seconds.doubleValue(), 30) * 1000);
+        }
+        String text = str(args, "text");
+        if (!text.isEmpty()) {
+            page.getByText(text).first().waitFor(new Locator.WaitForOptions()
+                .setState(WaitForSelectorState.VISIBLE).setTimeout(navigationTimeoutMs));
+        }
+        String gone = str(args, "textGone");
+        if (!gone.isEmpty()) {
+            page.getByText(gone).first().waitFor(new Locator.WaitForOptions()
+                .setState(WaitForSelectorState.HIDDEN).setTimeout(navigationTimeoutMs));
+        }
+        return ok("Wait completed", pageState(page));
+    }
+
+    private Map<String, Object> screenshot(Page page, Map<String, Object> args) throws Exception {
+        Path dir = Path.of(System.getProperty("java.io.tmpdir"), "playwright-java-tools");
+        Files.createDirectories(dir);
+        Path file = dir.resolve("page-" + System.currentTimeMillis() + "-" + Thread.currentThread().getId() + ".png");
+        if (!str(args, "ref").isEmpty()) {
+            byRef(page, args).screenshot(new Locator.ScreenshotOptions().setPath(file));
+        } else {
+            page.screenshot(new Page.ScreenshotOptions().setPath(file).setFullPage(Boolean.TRUE.equals(args.get("fullPage"))));
+        }
+        Map<String, Object> out = ok("Took the screenshot and saved it as " + file, "[Screenshot of viewport](" + file + ")");
+        out.put("path", file.toString());
+        return out;
+    }
+
+    private Map<String, Object> evaluate(Page page, Map<String, Object> args) throws Exception {
+        String function = str(args, "function");
+        if (function.isEmpty()) function = str(args, "script"); // legacy argument name
+        Object value = !str(args, "ref").isEmpty()
+            ? byRef(page, args).evaluate(function)
+            : page.evaluate(function);
+        return ok(null, "### Result\n" + objectMapper.writeValueAsString(value));
+    }
+
+    private static String pageState(Page page) {
+        String title;
+        try {
+            title = page.title();
+        } catch (Exception e) {
+            title = "";
+        }
+        return "### Page state\n- Page URL: " + page.url() + "\n- Page Title: " + title;
+    }
+
+    private static Map<String, Object> ok(String message, String content) {
+        Map<String, Object> out = new HashMap<>();
+        out.put("success", true);
+        out.put("message", message != null ? message : content);
+        out.put("content", content);
+        return out;
+    }
+
+    private static Map<String, Object> fail(String message) {
+        Map<String, Object> out = new HashMap<>();
+        out.put("success", false);
+        out.put("message", message);
+        out.put("content", message);
+        return out;
+    }
+
+    private static String str(Map<String, Object> args, String key) {
+        Object v = args.get(key);
+        return v != null ? String.valueOf(v) : "";
+    }
+
+    /**
+     * Accessibility-tree walk producing the MCP snapshot format ("- role \"name\" [state] [ref=eN]: value").
+     * Nodes without a role are flattened into their parent; open shadow roots are included, iframes are not.
+     */
+    private static final String SNAPSHOT_JS = """
+        (opts) => {
+          const ATTR = opts.attr;
+          const root = opts.selector ? document.querySelector(opts.selector) : document.body;
+          if (!root) return { error: 'No element matches selector ' + opts.selector };
+          window.__yatRefSeq = window.__yatRefSeq || 0;
+          const INPUT_ROLES = { button: 'button', submit: 'button', reset: 'button', image: 'button', file: 'button',
+            color: 'button', checkbox: 'checkbox', radio: 'radio', range: 'slider', number: 'spinbutton', search: 'searchbox' };
+          const TAG_ROLES = { BUTTON: 'button', SUMMARY: 'button', TEXTAREA: 'textbox', OPTION: 'option', IMG: 'img',
+            H1: 'heading', H2: 'heading', H3: 'heading', H4: 'heading', H5: 'heading', H6: 'heading',
+            UL: 'list', OL: 'list', LI: 'listitem', TABLE: 'table', TR: 'row', TD: 'cell', TH: 'columnheader',
+            NAV: 'navigation', MAIN: 'main', FORM: 'form', DIALOG: 'dialog', HEADER: 'banner', FOOTER: 'contentinfo',
+            ASIDE: 'complementary', P: 'paragraph' };
+          const NAME_FROM_CONTENT = new Set(['button', 'link', 'heading', 'option', 'cell', 'columnheader', 'rowheader',
+            'tab', 'menuitem', 'menuitemcheckbox', 'menuitemradio', 'treeitem', 'tooltip']);
+          const SKIP = new Set(['SCRIPT', 'STYLE', 'NOSCRIPT', 'TEMPLATE', 'META', 'LINK', 'HEAD', 'IFRAME', 'SVG']);
+          const clean = s => (s || '').replace(/\\s+/g, ' ').trim();
+          const cut = (s, n) => s.length > n ? s.slice(0, n) + '...' : s;
+          const textOf = el => clean(el.innerText !== undefined ? el.innerText : el.textContent);
+          const roleOf = el => {
+            const explicit = el.getAttribute('role');
+            if (explicit) return explicit.trim().split(/\\s+/)[0].toLowerCase();
+            const t = el.tagName;
+            if (t === 'A') return el.hasAttribute('href') ? 'link' : null;
+            if (t === 'INPUT') {
+              const type = (el.getAttribute('type') || 'text').toLowerCase();
+              return type === 'hidden' ? null : (INPUT_ROLES[type] || 'textbox');
+            }
+            if (t === 'SELECT') return (el.multiple || el.size > 1) ? 'listbox' : 'combobox';
+            return TAG_ROLES[t] || null;
+          };
+          const hidden = el => {
+            if (el.getAttribute('aria-hidden') === 'true') return true;
+            if (typeof el.checkVisibility === 'function') return !el.checkVisibility();
+            const s = getComputedStyle(el);
+            return s.display === 'none' || s.visibility === 'hidden';
+          };
+          const nameOf = (el, role) => {
+            const label = clean(el.getAttribute('aria-label'));
+            if (label) return label;
+            const by = el.getAttribute('aria-labelledby');
+            if (by) {
+              const n = clean(by.split(/\\s+/).map(id => { const e = document.getElementById(id); return e ? textOf(e) : ''; }).join(' '));
+              if (n) return n;
+            }
+            if (el.labels && el.labels.length) {
+              const n = clean(Array.from(el.labels).map(textOf).join(' '));
+              if (n) return n;
+            }
+            if (el.tagName === 'IMG' || (el.tagName === 'INPUT' && el.type === 'image')) {
+              if (el.alt) return clean(el.alt);
+            }
+            if (el.tagName === 'INPUT' && ['button', 'submit', 'reset'].includes(el.type)) {
+              return clean(el.value) || (el.type === 'submit' ? 'Submit' : el.type === 'reset' ? 'Reset' : '');
+            }
+            if (NAME_FROM_CONTENT.has(role) || (role === 'generic' && !el.children.length)) {
+              const t = textOf(el);
+              if (t) return cut(t, 100);
+            }
+            return clean(el.getAttribute('placeholder')) || clean(el.getAttribute('title'));
+          };
+          const refOf = el => {
+            let ref = el.getAttribute(ATTR);
+            if (!ref) { ref = 'e' + (++window.__yatRefSeq); el.setAttribute(ATTR, ref); }
+            return ref;
+          };
+          const esc = s => s.replace(/\\\\/g, '\\\\\\\\').replace(/"/g, '\\\\"');
+          const lines = [];
+          let count = 0;
+          let truncated = false;
+          const walk = (parent, depth, parentPointer) => {
+            for (const child of parent.childNodes) {
+              if (count >= opts.maxNodes) { truncated = true; return; }
+              if (child.nodeType === Node.TEXT_NODE) {
+                const t = clean(child.textContent);
+                if (t) { lines.push('  '.repeat(depth) + '- text: ' + cut(t, 200)); count++; }
+                continue;
+              }
+              if (child.nodeType !== Node.ELEMENT_NODE || SKIP.has(child.tagName.toUpperCase()) || hidden(child)) continue;
+              let role = roleOf(child);
+              const pointer = getComputedStyle(child).cursor === 'pointer';
+              // Clickable containers without a role (div onclick etc.): only the outermost one of a pointer area
+              if (!role && pointer && !parentPointer) role = 'generic';
+              if (!role) {
+                walk(child, depth, parentPointer || pointer);
+                if (child.shadowRoot) walk(child.shadowRoot, depth, parentPointer || pointer);
+                continue;
+              }
+              count++;
+              const name = nameOf(child, role);
+              let line = '  '.repeat(depth) + '- ' + role;
+              if (name) line += ' "' + esc(name) + '"';
+              if (child.disabled || child.getAttribute('aria-disabled') === 'true') line += ' [disabled]';
+              const checkable = child.tagName === 'INPUT' && (child.type === 'checkbox' || child.type === 'radio');
+              if ((checkable && child.checked) || child.getAttribute('aria-checked') === 'true') line += ' [checked]';
+              if (child.getAttribute('aria-expanded') === 'true') line += ' [expanded]';
+              if ((child.tagName === 'OPTION' && child.selected) || child.getAttribute('aria-selected') === 'true') line += ' [selected]';
+              if (/^H[1-6]$/.test(child.tagName)) line += ' [level=' + child.tagName.substring(1) + ']';
+              line += ' [ref=' + refOf(child) + ']';
+              if (pointer) line += ' [cursor=pointer]';
+              let value = null;
+              if (child.tagName === 'SELECT') {
+                value = child.selectedOptions && child.selectedOptions.length ? clean(child.selectedOptions[0].text) : null;
+              } else if ((child.tagName === 'INPUT' && !checkable && !INPUT_ROLES[child.type]) || child.tagName === 'TEXTAREA') {
+                value = child.value ? (child.type === 'password' ? '********' : cut(child.value, 100)) : null;
+              }
+              const index = lines.length;
+              lines.push(line + (value ? ': ' + value : ''));
+              const leaf = (name && NAME_FROM_CONTENT.has(role)) || (role === 'generic' && !child.children.length)
+                || child.tagName === 'INPUT' || child.tagName === 'TEXTAREA';
+              if (!leaf) {
+                walk(child, depth + 1, pointer);
+                if (child.shadowRoot) walk(child.shadowRoot, depth + 1, pointer);
+                if (lines.length > index + 1 && !value) lines[index] += ':';
+              }
+            }
+          };
+          walk(root, 0, false);
+          return { yaml: lines.join('\\n'), truncated };
+        }
+        """;
+}
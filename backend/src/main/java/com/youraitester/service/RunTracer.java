@@ -0,0 +1,421 @@
+package com.youraitester.service;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.youraitester.model.TestRun;
+import com.youraitester.model.TestRunTrace;
+import com.youraitester.repository.TestRunTraceRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Per-run span timeline (OpenTelemetry-style): one root span per TestRun with the queue wait, browser start,
+ * steps, agent batches, LLM calls, MCP tool calls, navigations, screenshots, waits and slow DB calls under it.
+ *
+ * The trace lives in a thread-local for the duration of {@code executeTest}; recording a span is one list append.
+ * Spans are recorded when they end (start = end - duration) and nested at the end of the run by time: a span
+ * belongs to the innermost step or batch that contains it. The finished trace is stored gzip-compressed in
+ * test_run_traces and optionally exported as OTLP/HTTP JSON to a local collector (trace.export.otlp.url).
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class RunTracer {
+
+    public static final String KIND_RUN = "run";
+    public static final String KIND_STEP = "step";
+    public static final String KIND_BATCH = "batch";
+    public static final String KIND_WAIT = "wait";
+
+    private static final Set<String> CONTAINER_KINDS = Set.of(KIND_STEP, KIND_BATCH);
+    // Steps are timed with currentTimeMillis, their children with nanoTime
+    private static final long NEST_TOLERANCE_US = 2_000;
+    private static final int FORMAT_VERSION = 1;
+    private static final MediaType JSON = MediaType.get("application/json");
+
+    @Value("${trace.enabled:true}")
+    private boolean enabled;
+
+    @Value("${trace.max.spans:2000}")
+    private int maxSpans;
+
+    @Value("${trace.db.min.ms:10}")
+    private long dbMinMs;
+
+    @Value("${trace.export.otlp.url:}")
+    private String otlpUrl;
+
+    @Value("${trace.service.name:youraitester}")
+    private String serviceName;
+
+    private final TestRunTraceRepository traceRepository;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final ThreadLocal<Trace> current = new ThreadLocal<>();
+    private final ThreadLocal<Long> queuedSince = new ThreadLocal<>();
+    private volatile ExecutorService exporter;
+    private volatile OkHttpClient httpClient;
+
+    /**
+     * Spans of one run. Thread-safe: the streamed LLM call of a batch records from the stream-reader thread.
+     */
+    public static final class Trace {
+        private final long startEpochMicros;
+        private final long startNanos;
+        private final int maxSpans;
+        private final List<Span> spans = new ArrayList<>();
+        private int nextId = 1;
+        private int dropped;
+
+        private Trace(long startNanos, int maxSpans) {
+            long ageMicros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startNanos);
+            this.startEpochMicros = TimeUnit.MILLISECONDS.toMicros(System.currentTimeMillis()) - ageMicros;
+            this.startNanos = startNanos;
+            this.maxSpans = maxSpans;
+        }
+
+        private synchronized void add(String kind, String name, long startNanos, long durationNanos, Map<String, String> attributes) {
+            if (spans.size() >= maxSpans) {
+                dropped++;
+                return;
+            }
+            spans.add(new Span(nextId++, 0, kind, name,
+                Math.max(0, TimeUnit.NANOSECONDS.toMicros(startNanos - this.startNanos)),
+                Math.max(0, TimeUnit.NANOSECONDS.toMicros(durationNanos)), attributes));
+        }
+    }
+
+    /**
+     * One span; times are microseconds, start relative to the trace start. parentId 0 = the root.
+     */
+    public record Span(int id, int parentId, String kind, String name, long startUs, long durationUs,
+                       Map<String, String> attributes) {
+
+        long endUs() {
+            return startUs + durationUs;
+        }
+
+        Span withParent(int parent) {
+            return new Span(id, parent, kind, name, startUs, durationUs, attributes);
+        }
+    }
+
+    /**
+     * The executor took a run off its queue; the wait becomes the run's queue span.
+     */
+    public void queued(long submittedNanos) {
+        queuedSince.set(submittedNanos);
+    }
+
+    public void clearQueued() {
+        queuedSince.remove();
+    }
+
+    /**
+     * Start this thread's run trace. The root span starts when the run was queued, if known.
+     */
+    public void start() {
+        if (!enabled) return;
+        long now = System.nanoTime();
+        Long queued = queuedSince.get();
+        Trace trace = new Trace(queued != null ? queued : now, maxSpans);
+        if (queued != null) {
+            trace.add(ExecutionPhaseStats.QUEUE, "queue wait", queued, now - queued, Map.of());
+        }
+        current.set(trace);
+    }
+
+    /** This thread's trace, or null (for handing it to a helper thread with {@link #attach}). */
+    public Trace current() {
+        return current.get();
+    }
+
+    public void attach(Trace trace) {
+        if (trace != null) current.set(trace);
+    }
+
+    public void detach() {
+        current.remove();
+    }
+
+    /**
+     * Record a span that ends now. No-op outside a traced run.
+     */
+    public void record(String kind, String name, long durationMs, Map<String, String> attributes) {
+        Trace trace = current.get();
+        if (trace == null) return;
+        long durationNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, durationMs));
+        trace.add(kind, name, System.nanoTime() - durationNanos, durationNanos,
+            attributes != null ? attributes : Map.of());
+    }
+
+    /**
+     * Phase samples from {@link ExecutionPhaseStats}; the span is named after the first tag value it finds among
+     * tool / model / mode. Steps are not taken from here: the runner traces them itself with their number.
+     */
+    void recordPhase(String phase, long durationMs, String... tags) {
+        if (current.get() == null || ExecutionPhaseStats.STEP.equals(phase)) return;
+        if (ExecutionPhaseStats.DB.equals(phase) && durationMs < dbMinMs) return;
+        Map<String, String> attributes = new LinkedHashMap<>();
+        for (int i = 0; i + 1 < tags.length; i += 2) {
+            attributes.put(tags[i], tags[i + 1]);
+        }
+        String detail = attributes.getOrDefault("tool", attributes.getOrDefault("model", attributes.get("mode")));
+        record(phase, detail != null ? phase + " " + detail : phase, durationMs, attributes);
+    }
+
+    /**
+     * End this thread's trace: close the root span, nest spans, store the trace with the run and export it.
+     * Never throws; a lost trace must not fail the run.
+     */
+    public void finish(TestRun testRun) {
+        Trace trace = current.get();
+        current.remove();
+        queuedSince.remove();
+        if (trace == null || testRun == null || testRun.getId() == null) return;
+        try {
+            List<Span> spans = nest(trace);
+            Map<String, String> rootAttributes = new LinkedHashMap<>();
+            rootAttributes.put("testId", String.valueOf(testRun.getTestId()));
+            rootAttributes.put("testRunId", testRun.getId());
+            rootAttributes.put("status", String.valueOf(testRun.getStatus()));
+            if (testRun.getBatchId() != null) rootAttributes.put("batchId", testRun.getBatchId());
+            long rootUs = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - trace.startNanos);
+            spans.add(0, new Span(0, -1, KIND_RUN, String.valueOf(testRun.getTestName()), 0, rootUs, rootAttributes));
+
+            TestRunTrace row = new TestRunTrace();
+            row.setTestRunId(testRun.getId());
+            row.setSpanCount(spans.size());
+            row.setDroppedSpans(trace.dropped);
+            row.setData(encode(trace.startEpochMicros, spans));
+            row.setCreatedAt(LocalDateTime.now());
+            traceRepository.saveCommitted(row);
+
+            if (otlpUrl != null && !otlpUrl.isBlank()) {
+                export(trace.startEpochMicros, spans);
+            }
+        } catch (Exception e) {
+            log.warn("Failed to store trace of test run {}: {}", testRun.getId(), e.getMessage());
+        }
+    }
+
+    private static List<Span> nest(Trace trace) {
+        List<Span> spans;
+        synchronized (trace) {
+            spans = new ArrayList<>(trace.spans);
+        }
+        spans.sort(Comparator.comparingLong(Span::startUs).thenComparing(Comparator.comparingLong(Span::durationUs).reversed()));
+        List<Span> containers = spans.stream().filter(s -> CONTAINER_KINDS.contains(s.kind())).toList();
+        List<Span> out = new ArrayList<>(spans.size() + 1);
+        for (Span span : spans) {
+            if (CONTAINER_KINDS.contains(span.kind())) {
+                out.add(span);
+                continue;
+            }
+            Span parent = null;
+            for (Span c : containers) {
+                if (c.startUs() <= span.startUs() + NEST_TOLERANCE_US && span.endUs() <= c.endUs() + NEST_TOLERANCE_US
+                    && (parent == null || c.durationUs() < parent.durationUs())) {
+                    parent = c;
+                }
+            }
+            out.add(parent != null ? span.withParent(parent.id()) : span);
+        }
+        return out;
+    }
+
+    /**
+     * Waterfall view of a stored trace: spans in start order with depth and times in ms, plus time per kind.
+     */
+    public Optional<Map<String, Object>> getTrace(String testRunId) {
+        return traceRepository.findById(testRunId).map(row -> {
+            try {
+                return waterfall(row);
+            } catch (IOException e) {
+                throw new IllegalStateException("Corrupt trace for test run " + testRunId, e);
+            }
+        });
+    }
+
+    private Map<String, Object> waterfall(TestRunTrace row) throws IOException {
+        Map<String, Object> decoded;
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(row.getData()))) {
+            decoded = objectMapper.readValue(in, new TypeReference<Map<String, Object>>() {});
+        }
+        long startUs = ((Number) decoded.get("startUs")).longValue();
+        @SuppressWarnings("unchecked")
+        List<List<Object>> rows = (List<List<Object>>) decoded.get("spans");
+
+        Map<Integer, Integer> parents = new HashMap<>();
+        for (List<Object> r : rows) {
+            parents.put(((Number) r.get(0)).intValue(), ((Number) r.get(1)).intValue());
+        }
+        List<Map<String, Object>> spans = new ArrayList<>();
+        Map<String, Double> byKind = new TreeMap<>();
+        for (List<Object> r : rows) {
+            int id = ((Number) r.get(0)).intValue();
+            int depth = 0;
+            for (Integer p = parents.get(id); p != null && p >= 0 && depth < 16; p = parents.get(p)) depth++;
+            double durationMs = ((Number) r.get(5)).longValue() / 1000.0;
+            Map<String, Object> span = new LinkedHashMap<>();
+            span.put("id", id);
+            span.put("parentId", ((Number) r.get(1)).intValue());
+            span.put("depth", depth);
+            span.put("kind", r.get(2));
+            span.put("name", r.get(3));
+            span.put("startMs", ((Number) r.get(4)).longValue() / 1000.0);
+            span.put("durationMs", durationMs);
+            span.put("attributes", r.size() > 6 && r.get(6) != null ? r.get(6) : Map.of());
+            spans.add(span);
+            if (!KIND_RUN.equals(r.get(2))) byKind.merge(String.valueOf(r.get(2)), durationMs, Double::sum);
+        }
+
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("testRunId", row.getTestRunId());
+        out.put("startedAt", new Date(startUs / 1000).toInstant().toString());
+        out.put("durationMs", spans.isEmpty() ? 0 : spans.get(0).get("durationMs"));
+        out.put("spanCount", row.getSpanCount());
+        out.put("droppedSpans", row.getDroppedSpans());
+        out.put("msByKind", byKind);
+        out.put("spans", spans);
+        return out;
+    }
+
+    /**
+     * {"v":1,"startUs":epochMicros,"spans":[[id,parentId,kind,name,startUs,durationUs,{attributes}|null],...]}, gzipped.
+     */
+    private byte[] encode(long startEpochMicros, List<Span> spans) throws IOException {
+        ObjectNode root = objectMapper.createObjectNode();
+        root.put("v", FORMAT_VERSION);
+        root.put("startUs", startEpochMicros);
+        ArrayNode rows = root.putArray("spans");
+        for (Span s : spans) {
+            ArrayNode r = rows.addArray();
+            r.add(s.id()).add(s.parentId()).add(s.kind()).add(s.name()).add(s.startUs()).add(s.durationUs());
+            if (s.attributes().isEmpty()) {
+                r.addNull();
+            } else {
+                r.add(objectMapper.valueToTree(s.attributes()));
+            }
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (GZIPOutputStream gz = new GZIPOutputStream(bytes)) {
+            objectMapper.writeValue(gz, root);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Send the trace to an OTLP/HTTP collector (JSON encoding) in the background.
+     */
+    private void export(long startEpochMicros, List<Span> spans) {
+        String traceId = randomHex(16);
+        String spanPrefix = randomHex(4);
+        ObjectNode body = objectMapper.createObjectNode();
+        ObjectNode resourceSpans = body.putArray("resourceSpans").addObject();
+        resourceSpans.putObject("resource").set("attributes", otlpAttributes(Map.of("service.name", serviceName)));
+        ObjectNode scopeSpans = resourceSpans.putArray("scopeSpans").addObject();
+        scopeSpans.putObject("scope").put("name", "youraitester.run-tracer");
+        ArrayNode out = scopeSpans.putArray("spans");
+        for (Span s : spans) {
+            long startNanos = (startEpochMicros + s.startUs()) * 1000;
+            ObjectNode span = out.addObject();
+            span.put("traceId", traceId);
+            span.put("spanId", spanPrefix + String.format("%08x", s.id()));
+            if (s.parentId() >= 0) span.put("parentSpanId", spanPrefix + String.format("%08x", s.parentId()));
+            span.put("name", s.name());
+            span.put("kind", 1);
+            span.put("startTimeUnixNano", String.valueOf(startNanos));
+            span.put("endTimeUnixNano", String.valueOf(startNanos + s.durationUs() * 1000));
+            Map<String, String> attributes = new LinkedHashMap<>(s.attributes());
+            attributes.put("span.kind", s.kind());
+            span.set("attributes", otlpAttributes(attributes));
+        }
+        exporter().submit(() -> {
+            try {
+                Request request = new Request.Builder()
+                    .url(otlpUrl)
+                    .post(RequestBody.create(objectMapper.writeValueAsString(body), JSON))
+                    .build();
+                try (Response response = client().newCall(request).execute()) {
+                    if (!response.isSuccessful()) {
+                        log.debug("Trace export to {} failed: HTTP {}", otlpUrl, response.code());
+                    }
+                }
+            } catch (Exception e) {
+                log.debug("Trace export to {} failed: {}", otlpUrl, e.getMessage());
+            }
+        });
+    }
+
+    private ArrayNode otlpAttributes(Map<String, String> attributes) {
+        ArrayNode out = objectMapper.createArrayNode();
+        attributes.forEach((k, v) -> {
+            ObjectNode a = out.addObject();
+            a.put("key", k);
+            a.putObject("value").put("stringValue", v);
+        });
+        return out;
+    }
+
+    private static String randomHex(int bytes) {
+        StringBuilder sb = new StringBuilder(bytes * 2);
+        for (int i = 0; i < bytes; i++) {
+            sb.append(String.format("%02x", ThreadLocalRandom.current().nextInt(256)));
+        }
+        return sb.toString();
+    }
+
+    private ExecutorService exporter() {
+        ExecutorService e = exporter;
+        if (e == null) {
+            synchronized (this) {
+                if (exporter == null) {
+                    exporter = Executors.newSingleThreadExecutor(r -> {
+                        Thread t = new Thread(r, "trace-export");
+                        t.setDaemon(true);
+                        return t;
+                    });
+                }
+                e = exporter;
+            }
+        }
+        return e;
+    }
+
+    private OkHttpClient client() {
+        OkHttpClient c = httpClient;
+        if (c == null) {
+            synchronized (this) {
+                if (httpClient == null) {
+                    httpClient = new OkHttpClient.Builder()
+                        .connectTimeout(2, TimeUnit.SECONDS)
+                        .readTimeout(5, TimeUnit.SECONDS)
+                        .build();
+                }
+                c = httpClient;
+            }
+        }
+        return c;
+    }
+}
@@ -0,0 +1,244 @@
+package com.youraitester.service;
+
+import com.microsoft.playwright.Page;
+import com.youraitester.model.app.Screen;
+import com.youraitester.model.app.ScreenElement;
+import com.youraitester.repository.app.ScreenRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.net.URI;
+import java.util.*;
+import java.util.regex.Pattern;
+
+/**
+ * Deterministic screen classifier for the Playwright Java browser.
+ *
+ * Each Screen carries a fingerprint learned from successful steps: normalized URL path patterns it was seen on
+ * and a few anchor elements that were present on it. Classification reads the page URL and checks every
+ * candidate's anchors in ONE page.evaluate, then scores each candidate (URL match and fraction of anchors
+ * present). Screens without a fingerprint score 0, so callers fall back when nothing has been learned yet.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ScreenClassifier {
+
+    private static final int MAX_URL_PATTERNS = 5;
+    private static final int MAX_ANCHORS = 6;
+    private static final Pattern VARIABLE_SEGMENT = Pattern.compile(
+        "\\d+|[0-9a-fA-F]{8}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{12}|[0-9a-fA-F]{16,}");
+
+    private static final String PROBE_JS = """
+        (selectors) => ({
+          url: location.href,
+          present: selectors.map(s => {
+            try { return document.querySelector(s) !== null; } catch (e) { return null; }
+          })
+        })
+        """;
+
+    private final PlaywrightJavaService playwrightJavaService;
+    private final ScreenRepository screenRepository;
+
+    @Value("${screen.classifier.enabled:true}")
+    private boolean enabled;
+
+    /**
+     * Outcome of one classification. {@code fingerprint} identifies the observed page (URL pattern + anchor
+     * presence) among these candidates, for caching decisions that needed the LLM.
+     */
+    public record Classification(String screenName, double confidence, Map<String, Double> scores, String fingerprint) {}
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Classify the current Playwright Java page among {@code candidates}; null when disabled or no page is open.
+     */
+    public Classification classify(List<Screen> candidates, String lastKnownScreen) {
+        Page page = enabled ? playwrightJavaService.currentPage() : null;
+        if (page == null || candidates == null || candidates.isEmpty()) return null;
+
+        // Anchor selectors of all candidates, deduplicated, for one in-page check
+        Map<Screen, List<String>> anchorsByScreen = new LinkedHashMap<>();
+        List<String> selectors = new ArrayList<>();
+        for (Screen screen : candidates) {
+            List<String> anchors = anchorSelectors(screen);
+            anchorsByScreen.put(screen, anchors);
+            for (String sel : anchors) {
+                if (!selectors.contains(sel)) selectors.add(sel);
+            }
+        }
+
+        String url;
+        List<Boolean> present = new ArrayList<>();
+        try {
+            Object raw = page.evaluate(PROBE_JS, selectors);
+            Map<?, ?> probe = raw instanceof Map<?, ?> m ? m : Map.of();
+            url = probe.get("url") != null ? String.valueOf(probe.get("url")) : page.url();
+            if (probe.get("present") instanceof List<?> flags) {
+                for (Object f : flags) present.add(f instanceof Boolean b ? b : null);
+            }
+        } catch (Exception e) {
+            log.warn("Screen classifier probe failed: {}", e.getMessage());
+            return null;
+        }
+        String path = urlPattern(url);
+
+        Map<String, Double> scores = new LinkedHashMap<>();
+        String best = null;
+        double bestScore = -1;
+        double second = 0;
+        for (Screen screen : candidates) {
+            double score = score(screen, path, anchorsByScreen.get(screen), selectors, present);
+            if (lastKnownScreen != null && lastKnownScreen.equalsIgnoreCase(screen.getName()) && score > 0) {
+                score = Math.min(1.0, score + 0.05); // tie-breaker towards staying on the same screen
+            }
+            scores.put(screen.getName(), score);
+            if (score > bestScore) {
+                second = Math.max(second, bestScore);
+                bestScore = score;
+                best = screen.getName();
+            } else {
+                second = Math.max(second, score);
+            }
+        }
+        // An ambiguous winner is not a confident one
+        double confidence = Math.max(0, bestScore - Math.max(0, second) / 2);
+
+        StringBuilder fp = new StringBuilder(path).append('|');
+        for (Boolean b : present) fp.append(b == null ? '?' : (b ? '1' : '0'));
+        fp.append('|');
+        candidates.stream().map(Screen::getName).sorted().forEach(n -> fp.append(n).append(','));
+
+        log.info("[SCREEN] Classified url='{}' -> '{}' (confidence={}, scores={})",
+            path, best, String.format(Locale.ROOT, "%.2f", confidence), scores);
+        return new Classification(best, confidence, scores, fp.toString());
+    }
+
+    private double score(Screen screen, String path, List<String> anchors, List<String> selectors, List<Boolean> present) {
+        Double urlScore = null;
+        List<String> patterns = screen.getUrlPatterns();
+        if (patterns != null && !patterns.isEmpty()) {
+            urlScore = patterns.stream().anyMatch(p -> matches(p, path)) ? 1.0 : 0.0;
+        }
+        Double anchorScore = null;
+        int known = 0;
+        int found = 0;
+        for (String sel : anchors) {
+            int i = selectors.indexOf(sel);
+            Boolean flag = i >= 0 && i < present.size() ? present.get(i) : null;
+            if (flag == null) continue;
+            known++;
+            if (flag) found++;
+        }
+        if (known > 0) anchorScore = (double) found / known;
+
+        if (urlScore != null && anchorScore != null) return 0.5 * urlScore + 0.5 * anchorScore;
+        // One kind of evidence only: cap below a full match
+        if (urlScore != null) return 0.7 * urlScore;
+        if (anchorScore != null) return 0.7 * anchorScore;
+        return 0;
+    }
+
+    private List<String> anchorSelectors(Screen screen) {
+        List<String> names = screen.getAnchorElementNames();
+        if (names == null || names.isEmpty() || screen.getElements() == null) return List.of();
+        List<String> out = new ArrayList<>();
+        for (String name : names) {
+            for (ScreenElement el : screen.getElements()) {
+                if (name.equals(el.getElementName()) && isPlainCss(el)) {
+                    out.add(el.getSelector());
+                    break;
+                }
+            }
+        }
+        return out;
+    }
+
+    private static boolean isPlainCss(ScreenElement el) {
+        String type = el.getSelectorType();
+        return el.getSelector() != null && !el.getSelector().isBlank()
+            && (type == null || type.isBlank() || "css".equalsIgnoreCase(type))
+            && (el.getFrameSelector() == null || el.getFrameSelector().isBlank());
+    }
+
+    /**
+     * URL of the current Playwright Java page, or null.
+     */
+    public String currentUrl() {
+        Page page = playwrightJavaService.currentPage();
+        try {
+            return page != null ? page.url() : null;
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    /**
+     * Record that {@code screen} was active at {@code url} and {@code element} (optional) was usable on it.
+     * Saves only when the fingerprint changed.
+     */
+    public void learn(Screen screen, ScreenElement element, String url) {
+        if (!enabled || screen == null) return;
+        boolean changed = false;
+        if (url != null && !url.isBlank() && !url.startsWith("about:")) {
+            String pattern = urlPattern(url);
+            List<String> patterns = screen.getUrlPatterns() != null ? screen.getUrlPatterns() : new ArrayList<>();
+            if (!patterns.contains(pattern)) {
+                patterns.add(pattern);
+                while (patterns.size() > MAX_URL_PATTERNS) patterns.remove(0);
+                screen.setUrlPatterns(patterns);
+                changed = true;
+            }
+        }
+        if (element != null && element.getElementName() != null && isPlainCss(element)) {
+            List<String> anchors = screen.getAnchorElementNames() != null ? screen.getAnchorElementNames() : new ArrayList<>();
+            if (!anchors.contains(element.getElementName()) && anchors.size() < MAX_ANCHORS) {
+                anchors.add(element.getElementName());
+                screen.setAnchorElementNames(anchors);
+                changed = true;
+            }
+        }
+        if (changed) {
+            screenRepository.save(screen);
+            log.info("[SCREEN] Learned fingerprint for screen='{}': urlPatterns={} anchors={}",
+                screen.getName(), screen.getUrlPatterns(), screen.getAnchorElementNames());
+        }
+    }
+
+    /**
+     * Path of {@code url} with numeric / id-like segments replaced by '*' (host and query ignored, so the
+     * pattern holds across environments and records).
+     */
+    static String urlPattern(String url) {
+        String path;
+        try {
+            path = URI.create(url).getPath();
+        } catch (Exception e) {
+            path = url;
+        }
+        if (path == null || path.isBlank()) return "/";
+        StringBuilder out = new StringBuilder();
+        for (String seg : path.split("/")) {
+            if (seg.isEmpty()) continue;
+            out.append('/').append(VARIABLE_SEGMENT.matcher(seg).matches() ? "*" : seg);
+        }
+        return out.length() == 0 ? "/" : out.toString();
+    }
+
+    private static boolean matches(String pattern, String path) {
+        if (pattern.equals(path)) return true;
+        String[] p = pattern.split("/");
+        String[] s = path.split("/");
+        if (p.length != s.length) return false;
+        for (int i = 0; i < p.length; i++) {
+            if (!"*".equals(p[i]) && !p[i].equals(s[i])) return false;
+        }
+        return true;
+    }
+}
@@ -2,18 +2,22 @@ package com.youraitester.service;
 
 import com.youraitester.agent.LlmProvider;
 import com.youraitester.agent.impl.SimpleMessage;
+import com.youraitester.model.app.App;
+import com.youraitester.model.app.Screen;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Map;
+import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
- * Uses the configured LLM provider (NO tools) to infer the current screen name
- * from the app summary and steps executed so far.
+ * Infers the current screen name among an app's known screens.
+ *
+ * With a Playwright Java page open, {@link ScreenClassifier} decides from learned URL / anchor fingerprints.
+ * Only below screen.classifier.min.confidence does the configured LLM provider (NO tools) get asked, and its
+ * answer is cached per page fingerprint so the same ambiguous page is never sent twice.
  *
  * This is intentionally "small": we only want a deterministic choice among known screens.
  */
@@ -23,6 +27,7 @@ import java.util.Map;
 public class ScreenInferenceService {
 
     private final Map<String, LlmProvider> providers;
+    private final ScreenClassifier screenClassifier;
 
     @Value("${agent.llm.provider:openai}")
     private String providerName;
@@ -36,21 +41,112 @@ public class ScreenInferenceService {
     @Value("${screen.inference.llm.enabled:false}")
     private boolean llmEnabled;
 
+    @Value("${screen.classifier.min.confidence:0.6}")
+    private double minConfidence;
+
+    @Value("${screen.inference.cache.size:1000}")
+    private int cacheSize;
+
+    // "<appId>|<page fingerprint>" -> screen name the LLM chose for that page
+    private final Map<String, String> llmCache = Collections.synchronizedMap(new LinkedHashMap<>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+            return size() > cacheSize;
+        }
+    });
+
+    private final LongAdder classified = new LongAdder();
+    private final LongAdder lowConfidence = new LongAdder();
+    private final LongAdder llmCalls = new LongAdder();
+    private final LongAdder llmCacheHits = new LongAdder();
+    private final LongAdder fallbacks = new LongAdder();
+
+    /**
+     * Screen inference during a run with the Playwright Java page open: classifier first, LLM (cached by page
+     * fingerprint) only when the classifier is not confident, then the legacy fallback.
+     */
+    public String inferScreenName(App app, List<String> candidateScreenNames, List<String> executedSteps, String lastKnownScreen) {
+        if (candidateScreenNames == null || candidateScreenNames.isEmpty()) {
+            throw new IllegalArgumentException("candidateScreenNames is empty");
+        }
+        List<Screen> candidates = new ArrayList<>();
+        if (app.getScreens() != null) {
+            for (Screen screen : app.getScreens()) {
+                if (screen.getName() != null && candidateScreenNames.contains(screen.getName())) candidates.add(screen);
+            }
+        }
+
+        ScreenClassifier.Classification c = screenClassifier.classify(candidates, lastKnownScreen);
+        if (c == null) {
+            return inferScreenName(app.getInfo(), candidateScreenNames, executedSteps, lastKnownScreen);
+        }
+        if (c.screenName() != null && c.confidence() >= minConfidence) {
+            classified.increment();
+            return c.screenName();
+        }
+        lowConfidence.increment();
+
+        if (llmEnabled) {
+            String key = app.getId() + "|" + c.fingerprint();
+            String cached = llmCache.get(key);
+            if (cached != null) {
+                llmCacheHits.increment();
+                log.info("[SCREEN] Using cached LLM screen '{}' for page fingerprint", cached);
+                return cached;
+            }
+            String chosen = askLlm(app.getInfo(), candidateScreenNames, executedSteps, lastKnownScreen);
+            if (chosen != null) {
+                llmCache.put(key, chosen);
+                return chosen;
+            }
+        }
+
+        // Low confidence and no LLM: a classifier guess with some evidence still beats "last screen"
+        if (c.screenName() != null && c.confidence() > 0) {
+            return c.screenName();
+        }
+        fallbacks.increment();
+        return fallback(candidateScreenNames, lastKnownScreen);
+    }
+
     public String inferScreenName(String appSummary, List<String> candidateScreenNames, List<String> executedSteps, String lastKnownScreen) {
         if (candidateScreenNames == null || candidateScreenNames.isEmpty()) {
             throw new IllegalArgumentException("candidateScreenNames is empty");
         }
 
-        // Default: deterministic inference (no LLM calls during run)
-        if (!llmEnabled) {
-            return fallback(candidateScreenNames, lastKnownScreen);
+        // Default (LLM disabled): deterministic inference, no LLM calls during run
+        if (llmEnabled) {
+            String chosen = askLlm(appSummary, candidateScreenNames, executedSteps, lastKnownScreen);
+            if (chosen != null) return chosen;
         }
+        fallbacks.increment();
+        return fallback(candidateScreenNames, lastKnownScreen);
+    }
+
+    public Map<String, Object> getSnapshot() {
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("classifierEnabled", screenClassifier.isEnabled());
+        out.put("minConfidence", minConfidence);
+        out.put("llmEnabled", llmEnabled);
+        out.put("classified", classified.sum());
+        out.put("lowConfidence", lowConfidence.sum());
+        out.put("llmCalls", llmCalls.sum());
+        out.put("llmCacheHits", llmCacheHits.sum());
+        out.put("llmCacheSize", llmCache.size());
+        out.put("fallbacks", fallbacks.sum());
+        return out;
+    }
 
+    /**
+     * Ask the LLM; null when it is unavailable, fails or answers outside the candidates.
+     */
+    private String askLlm(String appSummary, List<String> candidateScreenNames, List<String> executedSteps, String lastKnownScreen) {
         // If LLM provider isn't available (no API key in env), fall back to deterministic heuristics.
         LlmProvider provider = providers.get(providerName);
         if (provider == null || !provider.isAvailable()) {
-            return fallback(candidateScreenNames, lastKnownScreen);
+            return null;
         }
+        llmCalls.increment();
 
         StringBuilder user = new StringBuilder();
         user.append("Choose the current screen name from the list.\n");
@@ -80,7 +176,7 @@ public class ScreenInferenceService {
             out = resp != null && resp.getContent() != null ? resp.getContent().trim() : "";
         } catch (Exception e) {
             log.warn("Screen inference LLM call failed ({}). Falling back.", e.getMessage());
-            return fallback(candidateScreenNames, lastKnownScreen);
+            return null;
         }
 
         // Normalize: pick the first line, strip quotes
@@ -97,7 +193,7 @@ public class ScreenInferenceService {
         }
 
         log.warn("Screen inference returned '{}', not in candidates {}", out, candidateScreenNames);
-        return fallback(candidateScreenNames, lastKnownScreen);
+        return null;
     }
 
     private String fallback(List<String> candidateScreenNames, String lastKnownScreen) {
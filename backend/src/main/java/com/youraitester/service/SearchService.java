@@ -0,0 +1,121 @@
+package com.youraitester.service;
+
+import com.youraitester.repository.TestRepository;
+import com.youraitester.repository.app.ScreenRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+
+/**
+ * Server-side search over the test catalogue and app screen metadata.
+ *
+ * Matching runs in Postgres: tsvector expression indexes for words in names, descriptions and step
+ * instructions, and trigram indexes for substrings of names, tags and element / method names (see
+ * migration-search-indexes.sql). Both are ordinary indexes, so they are kept current by every write.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class SearchService {
+
+    private static final int MAX_LIMIT = 100;
+
+    private final TestRepository testRepository;
+    private final ScreenRepository screenRepository;
+
+    /**
+     * Ranked tests matching {@code q} (of app {@code appId} when given), one page; screen elements / methods are
+     * included when requested. Without them, screen metadata does not rank or label test hits either.
+     */
+    public Map<String, Object> search(String q, String projectId, Long appId, int limit, int offset, boolean includeScreenItems) {
+        String text = q.trim();
+        String pattern = likePattern(text);
+        int pageSize = Math.max(1, Math.min(limit, MAX_LIMIT));
+        int from = Math.max(0, offset);
+
+        // One extra row tells whether there is a next page
+        List<TestRepository.SearchHit> hits = testRepository.searchTests(text, pattern, projectId, appId, includeScreenItems,
+            pageSize + 1, from);
+        boolean hasMore = hits.size() > pageSize;
+        List<Map<String, Object>> tests = new ArrayList<>();
+        for (TestRepository.SearchHit h : hits.subList(0, Math.min(hits.size(), pageSize))) {
+            Map<String, Object> row = new LinkedHashMap<>();
+            row.put("testId", h.getTestId());
+            row.put("name", h.getName());
+            row.put("projectId", h.getProjectId());
+            row.put("lastRunStatus", h.getLastRunStatus());
+            row.put("score", h.getScore());
+            row.put("matchedIn", h.getMatchedIn() != null ? List.of(h.getMatchedIn().split(",")) : List.of());
+            tests.add(row);
+        }
+
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("query", text);
+        out.put("tests", tests);
+        out.put("offset", from);
+        out.put("limit", pageSize);
+        out.put("nextOffset", hasMore ? from + pageSize : null);
+        if (includeScreenItems) {
+            List<Map<String, Object>> items = new ArrayList<>();
+            for (ScreenRepository.ScreenItemHit h : screenRepository.searchScreenItems(text, pattern, appId, pageSize)) {
+                Map<String, Object> row = new LinkedHashMap<>();
+                row.put("kind", h.getKind());
+                row.put("id", h.getId());
+                row.put("appId", h.getAppId());
+                row.put("screen", h.getScreenName());
+                row.put("name", h.getName());
+                items.add(row);
+            }
+            out.put("screenItems", items);
+        }
+        return out;
+    }
+
+    /**
+     * Steps that use a screen element (kind "element") or method (kind "method"), grouped by test: mapped
+     * steps whose stored selector points at it, and unmapped steps whose instruction names it.
+     */
+    public Map<String, Object> findReferences(String kind, String name, Long appId, String screenName) {
+        List<TestRepository.ReferenceRow> rows = "method".equals(kind)
+            ? testRepository.findStepsReferencingMethod(appId, screenName, name)
+            : testRepository.findStepsReferencingElement(appId, screenName, name);
+
+        Map<String, Map<String, Object>> byTest = new LinkedHashMap<>();
+        for (TestRepository.ReferenceRow r : rows) {
+            Map<String, Object> test = byTest.computeIfAbsent(r.getTestId(), id -> {
+                Map<String, Object> t = new LinkedHashMap<>();
+                t.put("testId", id);
+                t.put("name", r.getTestName());
+                t.put("projectId", r.getProjectId());
+                t.put("steps", new ArrayList<Map<String, Object>>());
+                return t;
+            });
+            Map<String, Object> step = new LinkedHashMap<>();
+            step.put("order", r.getStepOrder());
+            step.put("instruction", r.getInstruction());
+            step.put("match", r.getMatchType());
+            @SuppressWarnings("unchecked")
+            List<Map<String, Object>> steps = (List<Map<String, Object>>) test.get("steps");
+            steps.add(step);
+        }
+
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("kind", kind);
+        out.put("name", name);
+        out.put("appId", appId);
+        out.put("screen", screenName);
+        out.put("testCount", byTest.size());
+        out.put("stepCount", rows.size());
+        out.put("tests", new ArrayList<>(byTest.values()));
+        return out;
+    }
+
+    /**
+     * ILIKE pattern for a substring match of {@code text}, with LIKE wildcards in it escaped.
+     */
+    public static String likePattern(String text) {
+        return "%" + text.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_") + "%";
+    }
+}
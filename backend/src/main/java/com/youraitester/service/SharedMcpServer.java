@@ -0,0 +1,356 @@
+package com.youraitester.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import okhttp3.*;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * One long-lived @playwright/mcp server shared by all test threads (mcp.session.mode=shared).
+ *
+ * The server runs with --port (Streamable HTTP on /mcp) and --isolated, so every HTTP session gets its own
+ * in-memory browser context. A test opens a {@link Session}; requests are routed by the mcp-session-id header and
+ * closing the session (HTTP DELETE) disposes its context instead of killing a Node process + browser per test.
+ * The server is started lazily on the first session and restarted if it dies.
+ */
+@Component
+@Slf4j
+public class SharedMcpServer {
+
+    private static final MediaType JSON = MediaType.get("application/json");
+    private static final String SESSION_HEADER = "mcp-session-id";
+    private static final int MAX_START_ATTEMPTS = 3;
+
+    @Value("${mcp.shared.startup.timeout.ms:60000}")
+    private long startupTimeoutMs;
+
+    @Value("${mcp.playwright.image.responses:omit}")
+    private String imageResponses;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final OkHttpClient httpClient = new OkHttpClient.Builder()
+        .connectTimeout(10, TimeUnit.SECONDS)
+        .readTimeout(120, TimeUnit.SECONDS)
+        .build();
+
+    private final AtomicInteger activeSessions = new AtomicInteger();
+    private final AtomicInteger peakSessions = new AtomicInteger();
+    private final AtomicLong openedSessions = new AtomicLong();
+    private final AtomicLong restarts = new AtomicLong();
+
+    private volatile Process process;
+    private volatile String baseUrl;
+
+    /**
+     * Open a new session (its own browser context) on the shared server, starting the server if needed.
+     */
+    public Session openSession(String codec, int maxMessageBytes) throws IOException {
+        Session session = new Session(ensureRunning(), codec, maxMessageBytes);
+        int active = activeSessions.incrementAndGet();
+        peakSessions.accumulateAndGet(active, Math::max);
+        openedSessions.incrementAndGet();
+        return session;
+    }
+
+    private synchronized String ensureRunning() throws IOException {
+        if (process != null && process.isAlive()) {
+            return baseUrl;
+        }
+        if (process != null) {
+            log.warn("Shared MCP server (PID {}) exited with {}; restarting", process.pid(), process.exitValue());
+            restarts.incrementAndGet();
+        }
+        // The port is probed free and then handed to the server, so another process can take it in between: a
+        // start that fails (bind error, early exit, no readiness) is retried on a fresh port.
+        IOException failure = null;
+        for (int attempt = 1; attempt <= MAX_START_ATTEMPTS; attempt++) {
+            int port;
+            try (ServerSocket socket = new ServerSocket(0)) {
+                port = socket.getLocalPort();
+            }
+            try {
+                process = start(port);
+                baseUrl = "http://127.0.0.1:" + port + "/mcp";
+                log.info("✓ Shared MCP server ready at {} (PID: {})", baseUrl, process.pid());
+                return baseUrl;
+            } catch (InterruptedIOException e) {
+                throw e;
+            } catch (IOException e) {
+                failure = e;
+                log.warn("Shared MCP server start attempt {}/{} on port {} failed: {}",
+                    attempt, MAX_START_ATTEMPTS, port, e.getMessage());
+            }
+        }
+        throw failure;
+    }
+
+    /**
+     * Start the server on {@code port} and wait until it listens there. A bind failure (EADDRINUSE in its output)
+     * or exit before that fails the attempt; so does a listener answering while the server is not alive (another
+     * process got the port).
+     */
+    private Process start(int port) throws IOException {
+        // Same flags as the per-thread stdio server, plus HTTP transport and per-session in-memory contexts
+        List<String> command = new ArrayList<>(List.of(
+            "npx", "-y", "@playwright/mcp@latest",
+            "--snapshot-mode", "incremental",
+            "--port", String.valueOf(port),
+            "--host", "127.0.0.1",
+            "--isolated"
+        ));
+        if (imageResponses != null && !imageResponses.isBlank()) {
+            command.addAll(List.of("--image-responses", imageResponses.trim()));
+        }
+        ProcessBuilder pb = new ProcessBuilder(command);
+        pb.environment().put("PLAYWRIGHT_BROWSERS_PATH", System.getProperty("user.home") + "/.cache/ms-playwright");
+        pb.redirectErrorStream(true);
+
+        log.info("Starting shared Playwright MCP server on port {}...", port);
+        Process started = pb.start();
+        AtomicBoolean addressInUse = new AtomicBoolean();
+        Thread drain = new Thread(() -> {
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(started.getInputStream()))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (line.contains("EADDRINUSE")) addressInUse.set(true);
+                    log.debug("Shared MCP: {}", line);
+                }
+            } catch (IOException ignored) {
+                // process exited
+            }
+        }, "MCP-Shared-Output");
+        drain.setDaemon(true);
+        drain.start();
+
+        long deadline = System.currentTimeMillis() + startupTimeoutMs;
+        while (true) {
+            if (addressInUse.get()) {
+                kill(started);
+                throw new IOException("Port " + port + " was taken before the shared MCP server could bind it");
+            }
+            try (Socket probe = new Socket()) {
+                probe.connect(new InetSocketAddress("127.0.0.1", port), 500);
+                if (started.isAlive() && !addressInUse.get()) {
+                    return started;
+                }
+            } catch (IOException notYet) {
+                // not listening yet
+            }
+            if (!started.isAlive() || System.currentTimeMillis() > deadline) {
+                kill(started);
+                throw new IOException("Shared MCP server did not start listening on port " + port);
+            }
+            try {
+                Thread.sleep(200);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                kill(started);
+                throw new InterruptedIOException("Interrupted while starting shared MCP server");
+            }
+        }
+    }
+
+    /** A failed start must not leave node / browser children behind on its port. */
+    private static void kill(Process p) {
+        p.descendants().forEach(ProcessHandle::destroyForcibly);
+        p.destroyForcibly();
+    }
+
+    /** PID of the shared server, or -1 when it is not running. */
+    public long getPid() {
+        Process p = process;
+        return p != null && p.isAlive() ? p.pid() : -1;
+    }
+
+    public int getActiveSessions() {
+        return activeSessions.get();
+    }
+
+    public Map<String, Object> getSnapshot() {
+        Map<String, Object> out = new LinkedHashMap<>();
+        long pid = getPid();
+        out.put("running", pid > 0);
+        out.put("url", baseUrl);
+        out.put("activeSessions", activeSessions.get());
+        out.put("peakSessions", peakSessions.get());
+        out.put("openedSessions", openedSessions.get());
+        out.put("restarts", restarts.get());
+        out.put("rssBytes", pid > 0 ? rssBytes(pid) : 0);
+        return out;
+    }
+
+    @PreDestroy
+    public synchronized void shutdown() {
+        if (process != null && process.isAlive()) {
+            log.info("Stopping shared MCP server (PID: {})", process.pid());
+            process.descendants().forEach(ProcessHandle::destroy);
+            process.destroy();
+            try {
+                if (!process.waitFor(5, TimeUnit.SECONDS)) process.destroyForcibly();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                process.destroyForcibly();
+            }
+        }
+        process = null;
+        baseUrl = null;
+    }
+
+    /**
+     * Resident memory of a process and all its descendants (npx -> node -> browser), from /proc. 0 when unavailable.
+     */
+    public static long rssBytes(long pid) {
+        Optional<ProcessHandle> root = ProcessHandle.of(pid);
+        if (root.isEmpty()) return 0;
+        return Stream.concat(Stream.of(root.get()), root.get().descendants())
+            .mapToLong(h -> vmRssBytes(h.pid()))
+            .sum();
+    }
+
+    private static long vmRssBytes(long pid) {
+        try (Stream<String> lines = Files.lines(Path.of("/proc", String.valueOf(pid), "status"))) {
+            return lines.filter(l -> l.startsWith("VmRSS:"))
+                .findFirst()
+                .map(l -> Long.parseLong(l.replaceAll("\\D", "")) * 1024)
+                .orElse(0L);
+        } catch (IOException | RuntimeException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * One test's session on the shared server. Thread-safe: concurrent calls are independent HTTP requests.
+     */
+    public class Session implements McpClient {
+
+        private final String url;
+        private final String codec;
+        private final int maxMessageBytes;
+        private final AtomicLong requestIdCounter = new AtomicLong(1);
+        private volatile String sessionId;
+        private volatile boolean open = true;
+
+        private Session(String url, String codec, int maxMessageBytes) {
+            this.url = url;
+            this.codec = codec != null ? codec : McpStreamDecoder.STREAMING;
+            this.maxMessageBytes = maxMessageBytes;
+        }
+
+        @Override
+        public McpResponse initialize(Map<String, Object> clientInfo) throws IOException {
+            McpResponse response = sendRequest("initialize", Map.of(
+                "protocolVersion", "2024-11-05",
+                "capabilities", Map.of(),
+                "clientInfo", clientInfo
+            ));
+            ObjectNode initialized = objectMapper.createObjectNode();
+            initialized.put("jsonrpc", "2.0");
+            initialized.put("method", "notifications/initialized");
+            try (Response ignored = httpClient.newCall(post(objectMapper.writeValueAsString(initialized))).execute()) {
+                // 202 Accepted, no body
+            }
+            return response;
+        }
+
+        @Override
+        public McpResponse callTool(String toolName, Map<String, Object> arguments) throws IOException {
+            return sendRequest("tools/call", Map.of("name", toolName, "arguments", arguments));
+        }
+
+        private McpResponse sendRequest(String method, Map<String, Object> params) throws IOException {
+            if (!open) {
+                throw new IOException("MCP session closed");
+            }
+            long requestId = requestIdCounter.getAndIncrement();
+            ObjectNode request = objectMapper.createObjectNode();
+            request.put("jsonrpc", "2.0");
+            request.put("id", requestId);
+            request.put("method", method);
+            request.set("params", objectMapper.valueToTree(params));
+
+            long started = System.nanoTime();
+            try (Response response = httpClient.newCall(post(objectMapper.writeValueAsString(request))).execute()) {
+                if (!response.isSuccessful()) {
+                    throw new IOException("MCP HTTP " + response.code() + " for " + method);
+                }
+                String returnedSession = response.header(SESSION_HEADER);
+                if (returnedSession != null) {
+                    sessionId = returnedSession;
+                }
+                ResponseBody body = response.body();
+                if (body == null) {
+                    throw new IOException("Empty MCP HTTP response for " + method);
+                }
+                String contentType = response.header("Content-Type", "");
+                McpStreamDecoder decoder = contentType.startsWith("text/event-stream")
+                    ? McpStreamDecoder.forEventStream(body.byteStream(), codec, maxMessageBytes)
+                    : new McpStreamDecoder(body.byteStream(), codec, maxMessageBytes);
+                McpResponse message;
+                while ((message = decoder.next()) != null) {
+                    if (message.getId() == null || message.getId() != requestId) {
+                        continue;
+                    }
+                    if (message.isOversized()) {
+                        throw new IOException("MCP response of " + message.getBytes()
+                            + " bytes exceeds the " + maxMessageBytes + " byte limit");
+                    }
+                    if (message.isError()) {
+                        throw new IOException("MCP error: " + message.getErrorMessage());
+                    }
+                    McpStreamDecoder.stats(codec).roundTrip.record((System.nanoTime() - started) / 1_000_000);
+                    return message;
+                }
+                throw new IOException("No MCP response for request " + requestId + " (" + method + ")");
+            }
+        }
+
+        private Request post(String json) {
+            Request.Builder builder = new Request.Builder()
+                .url(url)
+                .post(RequestBody.create(json, JSON))
+                .header("Accept", "application/json, text/event-stream");
+            if (sessionId != null) {
+                builder.header(SESSION_HEADER, sessionId);
+            }
+            return builder.build();
+        }
+
+        @Override
+        public void disconnect() {
+            if (!open) return;
+            open = false;
+            activeSessions.decrementAndGet();
+            if (sessionId == null) return;
+            Request delete = new Request.Builder().url(url).delete().header(SESSION_HEADER, sessionId).build();
+            try (Response ignored = httpClient.newCall(delete).execute()) {
+                log.debug("Closed shared MCP session {}", sessionId);
+            } catch (IOException e) {
+                log.warn("Error closing shared MCP session {}: {}", sessionId, e.getMessage());
+            }
+        }
+
+        @Override
+        public boolean isConnected() {
+            return open && getPid() > 0;
+        }
+    }
+}
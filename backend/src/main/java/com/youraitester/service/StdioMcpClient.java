@@ -1,14 +1,16 @@
 package com.youraitester.service;
 
-import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import lombok.extern.slf4j.Slf4j;
 
 import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * STDIO-based MCP client for Playwright.
@@ -16,25 +18,46 @@ import java.util.concurrent.atomic.AtomicLong;
  * This is the recommended approach from Microsoft - no session timeout issues!
  */
 @Slf4j
-public class StdioMcpClient {
+public class StdioMcpClient implements McpClient {
 
     private final ObjectMapper objectMapper;
     private final AtomicLong requestIdCounter = new AtomicLong(1);
     
     private Process mcpProcess;
     private BufferedWriter processStdin;
-    private BufferedReader processStdout;
     private BufferedReader processStderr;
     
-    private final BlockingQueue<JsonNode> responseQueue = new LinkedBlockingQueue<>();
-    private final Map<Long, CompletableFuture<JsonNode>> pendingRequests = new ConcurrentHashMap<>();
+    private final Map<Long, CompletableFuture<McpResponse>> pendingRequests = new ConcurrentHashMap<>();
     private Thread stdoutReaderThread;
     private Thread stderrReaderThread;
     
     private volatile boolean isRunning = false;
+    // Run this process serves, for its debug trace (see HotPathLog); null outside a test run
+    private volatile String testRunId;
+
+    // Extra @playwright/mcp CLI arguments (e.g. --cdp-endpoint to drive an already running browser)
+    private final List<String> extraArgs;
+    // Stdout decoding: McpStreamDecoder.STREAMING (default) or TREE (legacy, for comparison)
+    private final String codec;
+    private final int maxMessageBytes;
 
     public StdioMcpClient() {
+        this(List.of());
+    }
+
+    public StdioMcpClient(List<String> extraArgs) {
+        this(extraArgs, McpStreamDecoder.STREAMING, 32 * 1024 * 1024);
+    }
+
+    public StdioMcpClient(List<String> extraArgs, String codec, int maxMessageBytes) {
         this.objectMapper = new ObjectMapper();
+        this.extraArgs = extraArgs != null ? List.copyOf(extraArgs) : List.of();
+        this.codec = codec != null ? codec : McpStreamDecoder.STREAMING;
+        this.maxMessageBytes = maxMessageBytes;
+    }
+
+    public void setTestRunId(String testRunId) {
+        this.testRunId = testRunId;
     }
 
     /**
@@ -50,12 +73,14 @@ public class StdioMcpClient {
 
         // Build the command to spawn the MCP server
         // --snapshot-mode=incremental: Critical for reducing token usage!
-        ProcessBuilder pb = new ProcessBuilder(
+        List<String> command = new ArrayList<>(List.of(
             "npx",
             "-y",
             "@playwright/mcp@latest",
             "--snapshot-mode", "incremental"
-        );
+        ));
+        command.addAll(extraArgs);
+        ProcessBuilder pb = new ProcessBuilder(command);
         
         // Set environment variables
         Map<String, String> env = pb.environment();
@@ -70,7 +95,6 @@ public class StdioMcpClient {
             
             // Get streams
             processStdin = new BufferedWriter(new OutputStreamWriter(mcpProcess.getOutputStream()));
-            processStdout = new BufferedReader(new InputStreamReader(mcpProcess.getInputStream()));
             processStderr = new BufferedReader(new InputStreamReader(mcpProcess.getErrorStream()));
             
             isRunning = true;
@@ -92,38 +116,34 @@ public class StdioMcpClient {
      * Start thread to read responses from stdout
      */
     private void startStdoutReaderThread() {
+        McpStreamDecoder decoder = new McpStreamDecoder(mcpProcess.getInputStream(), codec, maxMessageBytes);
         stdoutReaderThread = new Thread(() -> {
-            log.info("STDOUT reader thread started");
+            log.info("STDOUT reader thread started (codec={})", decoder.getCodec());
             try {
-                String line;
-                while (isRunning && (line = processStdout.readLine()) != null) {
-                    log.debug("Received from MCP stdout: {}", line);
-                    
-                    try {
-                        JsonNode response = objectMapper.readTree(line);
-                        
-                        // Match response to pending request
-                        if (response.has("id") && response.get("id").isIntegralNumber()) {
-                            long responseId = response.get("id").asLong();
-                            CompletableFuture<JsonNode> future = pendingRequests.remove(responseId);
-                            
-                            if (future != null) {
-                                if (response.has("error")) {
-                                    JsonNode error = response.get("error");
-                                    String errorMsg = error.has("message") ? error.get("message").asText() : error.toString();
-                                    future.completeExceptionally(new IOException("MCP error: " + errorMsg));
-                                } else {
-                                    future.complete(response);
-                                }
-                            } else {
-                                log.warn("Received response for unknown request ID: {}", responseId);
-                            }
-                        } else {
-                            log.warn("Received message without valid ID: {}", line);
+                McpResponse response;
+                while (isRunning && (response = decoder.next()) != null) {
+                    Long responseId = response.getId();
+                    if (responseId == null) {
+                        log.debug("Received MCP message without id (method={})", response.getMethod());
+                        continue;
+                    }
+                    CompletableFuture<McpResponse> future = pendingRequests.remove(responseId);
+                    if (future == null) {
+                        log.warn("Received response for unknown request ID: {}", responseId);
+                    } else if (response.isOversized()) {
+                        future.completeExceptionally(new IOException("MCP response of " + response.getBytes()
+                            + " bytes exceeds the " + maxMessageBytes + " byte limit"));
+                    } else if (response.isError()) {
+                        future.completeExceptionally(new IOException("MCP error: " + response.getErrorMessage()));
+                    } else {
+                        if (HotPathLog.isDebugTrace(testRunId)) {
+                            log.info("[DEBUG_TRACE] run={} MCP response id={} ({} bytes, {} text block(s), {} image(s) skipped)",
+                                testRunId, responseId, response.getBytes(), response.getTextBlocks().size(), response.getSkippedImages());
+                        } else if (log.isDebugEnabled() && HotPathLog.sampledIgnoringRun(HotPathLog.MCP_STDIO)) {
+                            log.debug("Received MCP response id={} ({} bytes, {} text block(s), {} image(s) skipped)",
+                                responseId, response.getBytes(), response.getTextBlocks().size(), response.getSkippedImages());
                         }
-                        
-                    } catch (IOException e) {
-                        log.error("Error parsing JSON from MCP stdout: {}", line, e);
+                        future.complete(response);
                     }
                 }
             } catch (IOException e) {
@@ -147,7 +167,11 @@ public class StdioMcpClient {
             try {
                 String line;
                 while (isRunning && (line = processStderr.readLine()) != null) {
-                    log.debug("MCP stderr: {}", line);
+                    if (HotPathLog.isDebugTrace(testRunId)) {
+                        log.info("[DEBUG_TRACE] run={} MCP stderr: {}", testRunId, HotPathLog.cap(line, true));
+                    } else if (log.isDebugEnabled() && HotPathLog.sampledIgnoringRun(HotPathLog.MCP_STDIO)) {
+                        log.debug("MCP stderr: {}", HotPathLog.cap(line, false));
+                    }
                 }
             } catch (IOException e) {
                 if (isRunning) {
@@ -164,7 +188,8 @@ public class StdioMcpClient {
     /**
      * Initialize the MCP session
      */
-    public JsonNode initialize(Map<String, Object> clientInfo) throws IOException {
+    @Override
+    public McpResponse initialize(Map<String, Object> clientInfo) throws IOException {
         Map<String, Object> params = Map.of(
             "protocolVersion", "2024-11-05",
             "capabilities", Map.of(),
@@ -176,7 +201,8 @@ public class StdioMcpClient {
     /**
      * Call a tool
      */
-    public JsonNode callTool(String toolName, Map<String, Object> arguments) throws IOException {
+    @Override
+    public McpResponse callTool(String toolName, Map<String, Object> arguments) throws IOException {
         Map<String, Object> params = Map.of(
             "name", toolName,
             "arguments", arguments
@@ -184,10 +210,66 @@ public class StdioMcpClient {
         return sendRequest("tools/call", params);
     }
 
+    /**
+     * Pipelined batch: the whole chain is wired on the pending-request map up front and each request is written
+     * as soon as the previous response arrives (on the reader thread), so the caller waits once instead of
+     * waking up, parsing and re-submitting per call. Calls are not all written at once because the server may
+     * run concurrent requests in parallel, and a click must not race the fill before it.
+     */
+    @Override
+    public List<McpResponse> callTools(List<ToolCall> calls) throws IOException {
+        List<McpResponse> completed = new CopyOnWriteArrayList<>();
+        AtomicReference<CompletableFuture<McpResponse>> inFlight = new AtomicReference<>();
+        CompletableFuture<Void> chain = CompletableFuture.completedFuture(null);
+        for (ToolCall call : calls) {
+            Map<String, Object> params = Map.of("name", call.name(), "arguments", call.arguments());
+            chain = chain
+                .thenCompose(ignored -> {
+                    try {
+                        CompletableFuture<McpResponse> next = submit("tools/call", params);
+                        inFlight.set(next);
+                        return next;
+                    } catch (IOException e) {
+                        return CompletableFuture.failedFuture(e);
+                    }
+                })
+                .thenCompose(response -> {
+                    // A failed tool (isError result) stops the chain like a JSON-RPC error
+                    if (response.isToolError()) return CompletableFuture.failedFuture(McpClient.toolError(response));
+                    completed.add(response);
+                    return CompletableFuture.<Void>completedFuture(null);
+                });
+        }
+        try {
+            chain.get(120L * Math.max(1, calls.size()), TimeUnit.SECONDS);
+            return new ArrayList<>(completed);
+        } catch (InterruptedException | ExecutionException | TimeoutException e) {
+            CompletableFuture<McpResponse> pending = inFlight.get();
+            if (pending != null) pending.cancel(true);
+            Throwable cause = e instanceof ExecutionException && e.getCause() != null ? e.getCause() : e;
+            throw new McpBatchException(completed.size(), completed,
+                "Batch stopped at call " + completed.size() + ": " + cause.getMessage(), cause);
+        }
+    }
+
     /**
      * Send a JSON-RPC request via stdin and wait for response via stdout
      */
-    private JsonNode sendRequest(String method, Map<String, Object> params) throws IOException {
+    private McpResponse sendRequest(String method, Map<String, Object> params) throws IOException {
+        CompletableFuture<McpResponse> future = submit(method, params);
+        try {
+            return future.get(120, TimeUnit.SECONDS);
+        } catch (InterruptedException | ExecutionException | TimeoutException e) {
+            future.cancel(true);
+            Throwable cause = e instanceof ExecutionException && e.getCause() != null ? e.getCause() : e;
+            throw new IOException("Failed to get response for " + method + ": " + cause.getMessage(), e);
+        }
+    }
+
+    /**
+     * Write a JSON-RPC request to stdin; the returned future completes when the reader thread sees its response.
+     */
+    private CompletableFuture<McpResponse> submit(String method, Map<String, Object> params) throws IOException {
         if (!isRunning || mcpProcess == null || !mcpProcess.isAlive()) {
             throw new IOException("MCP process not running");
         }
@@ -202,10 +284,15 @@ public class StdioMcpClient {
 
         String jsonRequest = objectMapper.writeValueAsString(jsonRpcRequest);
         
-        log.debug("Sending to MCP stdin: {}", jsonRequest);
+        if (HotPathLog.isDebugTrace(testRunId)) {
+            log.info("[DEBUG_TRACE] run={} Sending to MCP stdin: {}", testRunId, HotPathLog.cap(jsonRequest, true));
+        } else if (log.isDebugEnabled() && HotPathLog.sampledIgnoringRun(HotPathLog.MCP_STDIO)) {
+            log.debug("Sending to MCP stdin: {}", HotPathLog.cap(jsonRequest, false));
+        }
 
-        CompletableFuture<JsonNode> future = new CompletableFuture<>();
+        CompletableFuture<McpResponse> future = new CompletableFuture<>();
         pendingRequests.put(requestId, future);
+        long started = System.nanoTime();
 
         try {
             // Write request to stdin
@@ -214,24 +301,24 @@ public class StdioMcpClient {
                 processStdin.newLine();
                 processStdin.flush();
             }
-
-            // Wait for response (with timeout)
-            JsonNode response = future.get(120, TimeUnit.SECONDS);
-            
-            log.debug("Received response for request {}: {}", requestId, 
-                response.toString().substring(0, Math.min(200, response.toString().length())));
-            
-            return response;
-            
-        } catch (InterruptedException | ExecutionException | TimeoutException e) {
+        } catch (IOException e) {
             pendingRequests.remove(requestId);
-            throw new IOException("Failed to get response for request " + requestId + ": " + e.getMessage(), e);
+            throw e;
         }
+        // Timeouts are the caller's (it cancels the future); drop the pending entry whichever way the request ends
+        future.whenComplete((response, error) -> {
+            pendingRequests.remove(requestId);
+            if (error == null) {
+                McpStreamDecoder.stats(codec).roundTrip.record((System.nanoTime() - started) / 1_000_000);
+            }
+        });
+        return future;
     }
 
     /**
      * Disconnect and cleanup
      */
+    @Override
     public void disconnect() {
         log.info("Disconnecting MCP STDIO client");
         isRunning = false;
@@ -246,8 +333,8 @@ public class StdioMcpClient {
         }
         
         try {
-            if (processStdout != null) {
-                processStdout.close();
+            if (mcpProcess != null) {
+                mcpProcess.getInputStream().close();
             }
         } catch (IOException e) {
             log.warn("Error closing stdout", e);
@@ -301,15 +388,19 @@ public class StdioMcpClient {
 
     private void cleanup() {
         pendingRequests.clear();
-        responseQueue.clear();
         mcpProcess = null;
         processStdin = null;
-        processStdout = null;
         processStderr = null;
     }
 
+    @Override
     public boolean isConnected() {
         return isRunning && mcpProcess != null && mcpProcess.isAlive();
     }
-}
 
+    /** PID of the MCP server process, or -1 when not running. */
+    public long getPid() {
+        Process p = mcpProcess;
+        return p != null && p.isAlive() ? p.pid() : -1;
+    }
+}
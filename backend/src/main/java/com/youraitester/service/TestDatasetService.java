@@ -0,0 +1,477 @@
+package com.youraitester.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.youraitester.model.Test;
+import com.youraitester.model.TestDataset;
+import com.youraitester.model.TestDatasetRow;
+import com.youraitester.repository.TestDatasetRowRepository;
+import com.youraitester.repository.TestRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Row-wise storage of test datasets.
+ *
+ * Each data row is its own test_dataset_rows record, keyed by (test, dataset index, row index): a run fetches
+ * exactly one row by key and a fan-out walks a row range, instead of parsing the whole dataset document.
+ * Uploads (JSON or CSV) and inline editor saves are parsed as a stream and inserted in JDBC batches, so memory
+ * stays flat regardless of row count. The TestDataset header keeps name, columns and row count.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class TestDatasetService {
+
+    private static final int INSERT_BATCH = 500;
+    private static final int READ_PAGE = 1000;
+    private static final String INSERT_SQL =
+        "INSERT INTO test_dataset_rows (test_id, dataset_index, row_index, data) VALUES (?, ?, ?, ?)";
+    private static final String DEFAULT_NAME = "Default Dataset";
+
+    private final TestRepository testRepository;
+    private final TestDatasetRowRepository rowRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    public record ImportResult(int rowCount, List<String> columns) {}
+
+    /**
+     * Replace dataset {@code datasetIndex} of a test with rows streamed from JSON: an array of row objects,
+     * or {"dataset_columns": [...], "dataset": [...]} (also "columns" / "data"). A malformed upload rolls back,
+     * leaving the previous rows and header in place.
+     */
+    @Transactional(rollbackFor = IOException.class)
+    public ImportResult importJson(String testId, int datasetIndex, String name, InputStream in) throws IOException {
+        Test test = requireTest(testId);
+        checkIndex(test, datasetIndex);
+        ImportResult result = writeJson(testId, datasetIndex, in);
+        updateHeader(test, datasetIndex, name, result);
+        return result;
+    }
+
+    /**
+     * Replace dataset {@code datasetIndex} of a test with rows streamed from CSV; the first record is the header.
+     */
+    @Transactional(rollbackFor = IOException.class)
+    public ImportResult importCsv(String testId, int datasetIndex, String name, Reader in) throws IOException {
+        Test test = requireTest(testId);
+        checkIndex(test, datasetIndex);
+        rowRepository.deleteDataset(testId, datasetIndex);
+        CsvRecordReader reader = new CsvRecordReader(in instanceof BufferedReader ? in : new BufferedReader(in));
+        List<String> columns = reader.next();
+        if (columns == null) {
+            columns = List.of();
+        }
+        RowWriter writer = new RowWriter(testId, datasetIndex);
+        List<String> record;
+        while ((record = reader.next()) != null) {
+            ObjectNode row = objectMapper.createObjectNode();
+            for (int i = 0; i < columns.size(); i++) {
+                row.put(columns.get(i), i < record.size() ? record.get(i) : "");
+            }
+            writer.add(row);
+        }
+        writer.flush();
+        ImportResult result = new ImportResult(writer.count, columns);
+        updateHeader(test, datasetIndex, name, result);
+        return result;
+    }
+
+    /**
+     * Move inline dataset documents (as sent by the editor) into rows and drop rows of removed datasets.
+     * Rows are keyed by dataset position, so a dataset sent without {@code data} is matched to its entry in
+     * {@code previous} (the headers before the save; same name, columns and row count, preferring the same
+     * position) and its rows are moved along when it changed position. A header-only dataset with no match has
+     * no rows. A dataset document that cannot be parsed does not fail the save: it stays inline (runs parse it
+     * directly) and only the rows written for it before the error are dropped.
+     */
+    @Transactional
+    public void externalize(String testId, List<TestDataset> previous) {
+        Test test = testRepository.findById(testId).orElse(null);
+        if (test == null) return;
+        List<TestDataset> datasets = test.getDatasets() != null ? test.getDatasets() : List.of();
+        List<TestDataset> before = previous != null ? previous : List.of();
+
+        // Where the stored rows of each header-only dataset come from (-1: nowhere)
+        int[] source = new int[datasets.size()];
+        Set<Integer> used = new HashSet<>();
+        for (int i = 0; i < datasets.size(); i++) {
+            TestDataset ds = datasets.get(i);
+            source[i] = ds == null || ds.getData() != null ? -1 : matchPrevious(ds, i, before, used);
+            if (source[i] >= 0) used.add(source[i]);
+        }
+        // Park moved rows on negative indexes first so moves cannot collide
+        for (int i = 0; i < datasets.size(); i++) {
+            if (source[i] >= 0 && source[i] != i) {
+                rowRepository.moveDataset(testId, source[i], -1 - i);
+            }
+        }
+        for (int i = 0; i < datasets.size(); i++) {
+            TestDataset ds = datasets.get(i);
+            if (ds == null) continue;
+            if (ds.getData() == null && source[i] >= 0) {
+                TestDataset prev = before.get(source[i]);
+                if (source[i] != i) {
+                    rowRepository.deleteDataset(testId, i);
+                    rowRepository.moveDataset(testId, -1 - i, i);
+                    log.info("Moved rows of dataset '{}' of test {} from position {} to {}", ds.getName(), testId, source[i], i);
+                }
+                if (prev.getData() == null) continue;
+                // Legacy inline dataset: carry its document over and split it below
+                ds.setData(prev.getData());
+            }
+            if (ds.getData() == null) {
+                rowRepository.deleteDataset(testId, i);
+                ds.setRowCount(0);
+                continue;
+            }
+            try {
+                ImportResult result = writeJson(testId, i,
+                    new ByteArrayInputStream(ds.getData().getBytes(StandardCharsets.UTF_8)));
+                ds.setData(null);
+                ds.setColumns(toJson(result.columns()));
+                ds.setRowCount(result.rowCount());
+                log.info("Stored dataset {} of test {} as {} rows", i, testId, result.rowCount());
+            } catch (IOException e) {
+                // Keep the document inline (runs fall back to parsing it) and drop the rows written before the error
+                rowRepository.deleteDataset(testId, i);
+                log.warn("Could not split dataset {} of test {} into rows: {}", i, testId, e.getMessage());
+            }
+        }
+        rowRepository.deleteDatasetsFrom(testId, datasets.size());
+    }
+
+    /**
+     * Snapshot of a test's dataset headers, for {@link #externalize} after the datasets are replaced.
+     */
+    public List<TestDataset> snapshotHeaders(Test test) {
+        if (test.getDatasets() == null) return List.of();
+        return test.getDatasets().stream()
+            .map(ds -> ds == null ? null : new TestDataset(ds.getName(), ds.getData(), ds.getColumns(), ds.getRowCount()))
+            .toList();
+    }
+
+    private static int matchPrevious(TestDataset ds, int position, List<TestDataset> previous, Set<Integer> used) {
+        if (position < previous.size() && !used.contains(position) && sameHeader(ds, previous.get(position))) {
+            return position;
+        }
+        for (int j = 0; j < previous.size(); j++) {
+            if (!used.contains(j) && sameHeader(ds, previous.get(j))) return j;
+        }
+        return -1;
+    }
+
+    private static boolean sameHeader(TestDataset a, TestDataset b) {
+        return b != null
+            && Objects.equals(a.getName(), b.getName())
+            && Objects.equals(a.getColumns(), b.getColumns())
+            && Objects.equals(a.getRowCount(), b.getRowCount());
+    }
+
+    /**
+     * Variables of one dataset row, or null when the test has no such dataset / row.
+     */
+    @Transactional(readOnly = true)
+    public Map<String, Object> loadRow(Test test, int datasetIndex, int rowIndex) {
+        TestDataset ds = header(test, datasetIndex);
+        if (ds == null) return null;
+        try {
+            if (ds.getData() != null) {
+                // Not yet split into rows: scan the document up to the requested row
+                ObjectNode[] found = new ObjectNode[1];
+                scanJson(new ByteArrayInputStream(ds.getData().getBytes(StandardCharsets.UTF_8)), null, (index, row) -> {
+                    if (index == rowIndex) {
+                        found[0] = row;
+                        return false;
+                    }
+                    return true;
+                });
+                return found[0] != null ? toMap(found[0]) : outOfRange(rowIndex, ds);
+            }
+            return rowRepository.findRowData(test.getId(), datasetIndex, rowIndex)
+                .map(this::toMap)
+                .orElseGet(() -> outOfRange(rowIndex, ds));
+        } catch (IOException e) {
+            log.error("Failed to read dataset row {}: {}", rowIndex, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Rows [fromRow, fromRow + limit) of a stored dataset, with their indexes.
+     */
+    @Transactional(readOnly = true)
+    public List<Map<String, Object>> loadRows(String testId, int datasetIndex, int fromRow, int limit) {
+        List<Map<String, Object>> out = new ArrayList<>();
+        for (TestDatasetRow r : rowRepository.findRowRange(testId, datasetIndex, fromRow, fromRow + limit)) {
+            Map<String, Object> row = new LinkedHashMap<>();
+            row.put("index", r.getRowIndex());
+            row.put("values", toMap(r.getData()));
+            out.add(row);
+        }
+        return out;
+    }
+
+    /**
+     * Number of rows in a dataset (0 when it does not exist).
+     */
+    @Transactional(readOnly = true)
+    public int rowCount(Test test, int datasetIndex) {
+        TestDataset ds = header(test, datasetIndex);
+        if (ds == null) return 0;
+        if (ds.getData() == null) {
+            return ds.getRowCount() != null
+                ? ds.getRowCount()
+                : (int) rowRepository.countByTestIdAndDatasetIndex(test.getId(), datasetIndex);
+        }
+        try {
+            int[] count = new int[1];
+            scanJson(new ByteArrayInputStream(ds.getData().getBytes(StandardCharsets.UTF_8)), null, (index, row) -> {
+                count[0]++;
+                return true;
+            });
+            return count[0];
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Dataset headers for an API response (new objects, the entity is not touched). Rows are inlined as the
+     * editor's {"dataset_columns", "dataset"} document only when {@code includeRows}.
+     */
+    @Transactional(readOnly = true)
+    public List<TestDataset> forResponse(Test test, boolean includeRows) {
+        if (test.getDatasets() == null) return null;
+        List<TestDataset> out = new ArrayList<>();
+        for (int i = 0; i < test.getDatasets().size(); i++) {
+            TestDataset ds = test.getDatasets().get(i);
+            if (ds == null) continue;
+            TestDataset copy = new TestDataset(ds.getName(), null, ds.getColumns(), ds.getRowCount());
+            if (includeRows) {
+                copy.setData(ds.getData() != null ? ds.getData() : inlineDocument(test.getId(), i, ds.getColumns()));
+            }
+            out.add(copy);
+        }
+        return out;
+    }
+
+    @Transactional
+    public void copyRows(String fromTestId, String toTestId) {
+        int copied = jdbcTemplate.update(
+            "INSERT INTO test_dataset_rows (test_id, dataset_index, row_index, data) "
+                + "SELECT ?, dataset_index, row_index, data FROM test_dataset_rows WHERE test_id = ?",
+            toTestId, fromTestId);
+        log.info("Copied {} dataset rows from test {} to {}", copied, fromTestId, toTestId);
+    }
+
+    @Transactional
+    public void deleteRows(String testId) {
+        rowRepository.deleteDatasetsFrom(testId, 0);
+    }
+
+    private ImportResult writeJson(String testId, int datasetIndex, InputStream in) throws IOException {
+        rowRepository.deleteDataset(testId, datasetIndex);
+        RowWriter writer = new RowWriter(testId, datasetIndex);
+        LinkedHashSet<String> seen = new LinkedHashSet<>();
+        List<String> declared = new ArrayList<>();
+        scanJson(in, declared, (index, row) -> {
+            row.fieldNames().forEachRemaining(seen::add);
+            writer.add(row);
+            return true;
+        });
+        writer.flush();
+        // Declared columns first (keeps the editor's order), then any extra keys found in rows
+        LinkedHashSet<String> columns = new LinkedHashSet<>(declared);
+        columns.addAll(seen);
+        return new ImportResult(writer.count, new ArrayList<>(columns));
+    }
+
+    private interface RowHandler {
+        /** Return false to stop reading. */
+        boolean accept(int index, ObjectNode row) throws IOException;
+    }
+
+    /**
+     * Stream the row objects of a dataset document to {@code handler}, one at a time. Non-object array
+     * entries are skipped and not counted.
+     */
+    private void scanJson(InputStream in, List<String> declaredColumns, RowHandler handler) throws IOException {
+        try (JsonParser p = objectMapper.getFactory().createParser(in)) {
+            JsonToken t = p.nextToken();
+            if (t == JsonToken.START_ARRAY) {
+                readRows(p, handler);
+                return;
+            }
+            if (t != JsonToken.START_OBJECT) {
+                throw new IOException("Dataset must be a JSON array of rows or an object with a \"dataset\" array");
+            }
+            while (p.nextToken() == JsonToken.FIELD_NAME) {
+                String field = p.getCurrentName();
+                JsonToken value = p.nextToken();
+                if (value == JsonToken.START_ARRAY && ("dataset".equals(field) || "data".equals(field))) {
+                    if (!readRows(p, handler)) return;
+                } else if (value == JsonToken.START_ARRAY && ("dataset_columns".equals(field) || "columns".equals(field))) {
+                    while (p.nextToken() != JsonToken.END_ARRAY) {
+                        if (p.currentToken() == JsonToken.VALUE_STRING) {
+                            if (declaredColumns != null) declaredColumns.add(p.getText());
+                        } else {
+                            p.skipChildren();
+                        }
+                    }
+                } else {
+                    p.skipChildren();
+                }
+            }
+        }
+    }
+
+    private boolean readRows(JsonParser p, RowHandler handler) throws IOException {
+        int index = 0;
+        while (p.nextToken() != JsonToken.END_ARRAY) {
+            if (p.currentToken() != JsonToken.START_OBJECT) {
+                p.skipChildren();
+                continue;
+            }
+            ObjectNode row = objectMapper.readTree(p);
+            if (!handler.accept(index++, row)) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Build the inline {"dataset_columns": [...], "dataset": [...]} document from stored rows, page by page.
+     */
+    private String inlineDocument(String testId, int datasetIndex, String columnsJson) {
+        StringWriter out = new StringWriter();
+        try (JsonGenerator g = objectMapper.getFactory().createGenerator(out)) {
+            g.writeStartObject();
+            g.writeFieldName("dataset_columns");
+            if (columnsJson != null && !columnsJson.isBlank()) {
+                g.writeRawValue(columnsJson);
+            } else {
+                g.writeStartArray();
+                g.writeEndArray();
+            }
+            g.writeArrayFieldStart("dataset");
+            int from = 0;
+            while (true) {
+                List<TestDatasetRow> page = rowRepository.findRowRange(testId, datasetIndex, from, from + READ_PAGE);
+                for (TestDatasetRow r : page) {
+                    g.writeRawValue(r.getData());
+                }
+                if (page.size() < READ_PAGE) break;
+                from += READ_PAGE;
+            }
+            g.writeEndArray();
+            g.writeEndObject();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toString();
+    }
+
+    private void updateHeader(Test test, int datasetIndex, String name, ImportResult result) {
+        if (test.getDatasets() == null) {
+            test.setDatasets(new ArrayList<>());
+        }
+        TestDataset ds;
+        if (datasetIndex == test.getDatasets().size()) {
+            ds = new TestDataset();
+            ds.setName(name != null && !name.isBlank() ? name : DEFAULT_NAME);
+            test.getDatasets().add(ds);
+        } else {
+            ds = test.getDatasets().get(datasetIndex);
+            if (name != null && !name.isBlank()) ds.setName(name);
+        }
+        ds.setData(null);
+        ds.setColumns(toJson(result.columns()));
+        ds.setRowCount(result.rowCount());
+        testRepository.save(test);
+        log.info("Imported {} rows into dataset {} of test {} (columns={})",
+            result.rowCount(), datasetIndex, test.getId(), result.columns());
+    }
+
+    private Test requireTest(String testId) {
+        return testRepository.findById(testId)
+            .orElseThrow(() -> new IllegalArgumentException("Test not found: " + testId));
+    }
+
+    private static void checkIndex(Test test, int datasetIndex) {
+        int size = test.getDatasets() != null ? test.getDatasets().size() : 0;
+        if (datasetIndex < 0 || datasetIndex > size) {
+            throw new IllegalArgumentException("Dataset index " + datasetIndex + " out of range (test has " + size + ")");
+        }
+    }
+
+    private static TestDataset header(Test test, int datasetIndex) {
+        if (test == null || test.getDatasets() == null || datasetIndex < 0 || datasetIndex >= test.getDatasets().size()) {
+            return null;
+        }
+        return test.getDatasets().get(datasetIndex);
+    }
+
+    private Map<String, Object> outOfRange(int rowIndex, TestDataset ds) {
+        log.warn("Row index {} is out of bounds (dataset has {} rows)", rowIndex, ds.getRowCount());
+        return null;
+    }
+
+    private Map<String, Object> toMap(JsonNode row) {
+        return objectMapper.convertValue(row, new TypeReference<HashMap<String, Object>>() {});
+    }
+
+    private Map<String, Object> toMap(String rowJson) {
+        try {
+            return objectMapper.readValue(rowJson, new TypeReference<HashMap<String, Object>>() {});
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private String toJson(List<String> columns) {
+        try {
+            return objectMapper.writeValueAsString(columns);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Buffers rows and writes them with JDBC batch inserts.
+     */
+    private class RowWriter {
+        private final String testId;
+        private final int datasetIndex;
+        private final List<Object[]> batch = new ArrayList<>(INSERT_BATCH);
+        private int count;
+
+        RowWriter(String testId, int datasetIndex) {
+            this.testId = testId;
+            this.datasetIndex = datasetIndex;
+        }
+
+        void add(ObjectNode row) throws IOException {
+            batch.add(new Object[]{testId, datasetIndex, count++, objectMapper.writeValueAsString(row)});
+            if (batch.size() >= INSERT_BATCH) flush();
+        }
+
+        void flush() {
+            if (batch.isEmpty()) return;
+            jdbcTemplate.batchUpdate(INSERT_SQL, batch);
+            batch.clear();
+        }
+    }
+}
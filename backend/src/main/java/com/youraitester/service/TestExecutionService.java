@@ -1,6 +1,9 @@
 package com.youraitester.service;
 
 import com.youraitester.agent.AgentExecutor;
+import com.youraitester.agent.ConversationCompactor;
+import com.youraitester.agent.LlmCallContext;
+import com.youraitester.agent.LlmUsage;
 import com.youraitester.model.Module;
 import com.youraitester.model.ModuleStep;
 import com.youraitester.model.Test;
@@ -21,6 +24,7 @@ import com.youraitester.repository.RunRepository;
 import com.youraitester.model.Run;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
 
@@ -28,6 +32,7 @@ import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
@@ -35,7 +40,6 @@ import java.util.Set;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
 @Service
@@ -55,14 +59,51 @@ public class TestExecutionService {
     private final AppRepository appRepository;
     private final ScreenRepository screenRepository;
     private final ScreenInferenceService screenInferenceService;
+    private final ScreenClassifier screenClassifier;
     private final TestStepMappingService testStepMappingService;
+    private final LlmUsageService llmUsageService;
+    private final PlaywrightJavaToolService playwrightJavaToolService;
+    private final TestDatasetService testDatasetService;
+    private final ExecutionPhaseStats phaseStats;
+    private final RunTracer tracer;
     private static final ObjectMapper objectMapper = new ObjectMapper();
     private static final int LOG_VALUE_MAX_CHARS = 120;
+
+    @Value("${execution.hybrid.enabled:false}")
+    private boolean hybridEnabled;
+
+    /**
+     * Timeout for a mapped selector in hybrid runs; a miss hands the step to the agent instead of waiting
+     * the full browser.timeout.
+     */
+    @Value("${execution.hybrid.step.timeout.ms:3000}")
+    private int hybridStepTimeoutMs;
     
     @Async
     @org.springframework.transaction.annotation.Transactional
     public void executeTest(String testId, Integer dataRowIndex, String environment, String browserType, String runId) {
+        executeTest(testId, dataRowIndex, environment, browserType, runId, false);
+    }
+
+    /**
+     * @param batchRun true when launched as part of a batch run; batch runs yield LLM capacity to
+     *              interactive single-test runs (see LlmAdmissionController)
+     */
+    @Async
+    @org.springframework.transaction.annotation.Transactional
+    public void executeTest(String testId, Integer dataRowIndex, String environment, String browserType, String runId, boolean batchRun) {
+        executeTest(testId, dataRowIndex, environment, browserType, runId, batchRun, false);
+    }
+
+    /**
+     * @param debugTrace log this run verbosely (every MCP and agent event, payloads up to the debug cap; see HotPathLog)
+     */
+    @Async
+    @org.springframework.transaction.annotation.Transactional
+    public void executeTest(String testId, Integer dataRowIndex, String environment, String browserType, String runId,
+                            boolean batchRun, boolean debugTrace) {
         log.info("Starting test execution for testId: {}, runId: {}", testId, runId);
+        LlmCallContext.set(runId != null && !runId.isBlank() ? runId : testId, !batchRun);
         
         // DON'T reset MCP session here - it causes browser to return to about:blank
         // Without --shared-browser-context, session reset = fresh browser = about:blank
@@ -76,6 +117,10 @@ public class TestExecutionService {
         
         long startTime = System.currentTimeMillis();
         TestRun testRun = null;
+        // LLM usage not attributable to a single step (auto-navigation, leftover batch turns)
+        LlmUsage unattributedUsage = new LlmUsage();
+        phaseStats.runStarted();
+        tracer.start();
 
         try {
             Test test = testRepository.findById(testId)
@@ -100,14 +145,13 @@ public class TestExecutionService {
                 log.warn("[RUN-MAP] One-time mapping failed (continuing without mappings). testId={} err={}", testId, e.getMessage());
             }
         }
-        // Eagerly load the datasets collection - ElementCollection needs explicit access
+        // Load the dataset headers (rows stay in test_dataset_rows until a row is needed)
         List<TestDataset> datasets = test.getDatasets();
         if (datasets != null) {
             log.info("Test datasets collection loaded. Size: {}", datasets.size());
-            // Access each dataset to ensure they're loaded
             for (TestDataset ds : datasets) {
                 if (ds != null) {
-                    log.debug("Dataset found: data length = {}", ds.getData() != null ? ds.getData().length() : 0);
+                    log.debug("Dataset found: name = {}, rows = {}, inline = {}", ds.getName(), ds.getRowCount(), ds.getData() != null);
                 }
             }
         } else {
@@ -127,8 +171,12 @@ public class TestExecutionService {
             } else {
                 log.warn("runId is null or empty for testId={}, batchId will not be set", testId);
             }
-            testRun = testRunRepository.save(testRun);
-            log.info("Saved TestRun id={}, batchId={}", testRun.getId(), testRun.getBatchId());
+            // Commit the run row right away (pollers see the running run and its provisional step rows),
+            // then continue on a copy managed by this transaction.
+            testRun = testRunRepository.saveCommitted(testRun);
+            testRun = testRunRepository.findById(testRun.getId()).orElseThrow();
+            HotPathLog.beginRun(testRun.getId(), debugTrace);
+            log.info("Saved TestRun id={}, batchId={}, debugTrace={}", testRun.getId(), testRun.getBatchId(), debugTrace);
 
             // Reset browser context to clear cookies and session data before starting test
             // DISABLED: Resetting browser context causes MCP server to crash
@@ -145,32 +193,20 @@ public class TestExecutionService {
             
             if (datasets != null && !datasets.isEmpty()) {
                 log.info("Test has {} dataset(s)", test.getDatasets().size());
-                // Get the first dataset (assuming single dataset per test for now)
-                TestDataset dataset = test.getDatasets().get(0);
-                if (dataset != null) {
-                    log.info("Dataset found. Data is null: {}, isEmpty: {}", 
-                        dataset.getData() == null, 
-                        dataset.getData() != null && dataset.getData().trim().isEmpty());
-                    if (dataset.getData() != null && !dataset.getData().trim().isEmpty()) {
-                        try {
-                            // If dataRowIndex is provided, use that row; otherwise use row 0 (first row)
-                            Integer rowToUse = (dataRowIndex != null) ? dataRowIndex : 0;
-                            log.info("Loading dataset row {} (dataRowIndex: {})", rowToUse, dataRowIndex);
-                            Map<String, Object> datasetVars = loadDatasetRow(dataset.getData(), rowToUse);
-                            if (datasetVars != null && !datasetVars.isEmpty()) {
-                                variables.putAll(datasetVars);
-                                log.info("Loaded {} dataset variables from row {}: {}", datasetVars.size(), rowToUse, datasetVars.keySet());
-                            } else {
-                                log.warn("No dataset variables loaded for row {}. Dataset data length: {}", rowToUse, dataset.getData().length());
-                            }
-                        } catch (Exception e) {
-                            log.error("Failed to load dataset row: {}", e.getMessage(), e);
-                        }
+                // First dataset (single dataset per test for now); rows are fetched by index, not parsed as a whole
+                try {
+                    // If dataRowIndex is provided, use that row; otherwise use row 0 (first row)
+                    int rowToUse = (dataRowIndex != null) ? dataRowIndex : 0;
+                    log.info("Loading dataset row {} (dataRowIndex: {})", rowToUse, dataRowIndex);
+                    Map<String, Object> datasetVars = testDatasetService.loadRow(test, 0, rowToUse);
+                    if (datasetVars != null && !datasetVars.isEmpty()) {
+                        variables.putAll(datasetVars);
+                        log.info("Loaded {} dataset variables from row {}: {}", datasetVars.size(), rowToUse, datasetVars.keySet());
                     } else {
-                        log.warn("Dataset data is null or empty");
+                        log.warn("No dataset variables loaded for row {}", rowToUse);
                     }
-                } else {
-                    log.warn("First dataset is null");
+                } catch (Exception e) {
+                    log.error("Failed to load dataset row: {}", e.getMessage(), e);
                 }
             } else {
                 log.info("Test has no datasets (datasets is null: {}, isEmpty: {})", 
@@ -181,8 +217,14 @@ public class TestExecutionService {
             testRun.setVariables(variables);
             // Save testRun to persist variables JSON before executing steps
             testRun = testRunRepository.save(testRun);
-            log.info("Saved testRun with {} variables. Variables JSON: {}", variables.size(), testRun.getVariablesJson());
+            log.info("Saved testRun with {} variables: {}", variables.size(), variables.keySet());
+            if (HotPathLog.isDebugTrace()) {
+                log.info("[DEBUG_TRACE] Variables JSON: {}", HotPathLog.cap(testRun.getVariablesJson()));
+            }
             
+            // Hybrid runs (app-linked tests): mapped steps deterministic, the rest via an agent on the same browser
+            boolean hybrid = false;
+
             // Auto-navigate to app URL before first step (if appUrl is configured)
             log.info("Checking auto-navigation: appUrl='{}', isNull={}, isEmpty={}", 
                 test.getAppUrl(), 
@@ -194,7 +236,22 @@ public class TestExecutionService {
                 try {
                     // If test is linked to app metadata, prefer deterministic navigation via MCP.
                     if (test.getAppId() != null) {
-                        playwrightJavaService.navigate(test.getAppUrl());
+                        if (hybridEnabled && playwrightJavaToolService.isActive()) {
+                            // In-process tool backend: agent tools act on the deterministic page directly.
+                            ensureBrowserStarted();
+                            hybrid = true;
+                        } else if (hybridEnabled) {
+                            // Share the deterministic browser with the agent (MCP over CDP) so steps can switch engines.
+                            long browserStart = System.nanoTime();
+                            String cdpEndpoint = playwrightJavaService.startShared();
+                            phaseStats.recordSince(ExecutionPhaseStats.BROWSER_START, browserStart,
+                                "engine", PlaywrightJavaToolService.BACKEND_NAME, "mode", "shared");
+                            if (cdpEndpoint != null) {
+                                mcpService.attachToBrowser(cdpEndpoint);
+                                hybrid = true;
+                            }
+                        }
+                        navigate(test.getAppUrl());
                         log.info("Successfully navigated to app URL (deterministic Playwright Java navigate)");
                     } else {
                     Map<String, Object> navResult = aiTestExecutionService.executeStepWithAI(
@@ -202,12 +259,16 @@ public class TestExecutionService {
                         "",
                         variables
                     );
+                    if (navResult.get("llmUsage") instanceof LlmUsage navUsage) {
+                        unattributedUsage.add(navUsage);
+                    }
                     if ("error".equals(navResult.get("status"))) {
                         log.error("Failed to navigate to app URL: {}", navResult.get("message"));
                         testRun.setStatus("failed");
                         testRun.setErrorMessage("Failed to navigate to app URL: " + navResult.get("message"));
                         testRun.setCompletedAt(LocalDateTime.now());
                         testRun.setDuration(System.currentTimeMillis() - startTime);
+                        llmUsageService.finalizeRun(testRun, unattributedUsage);
                         testRunRepository.save(testRun);
                             return;
                     }
@@ -265,206 +326,273 @@ public class TestExecutionService {
                         }
                     }
 
-                    if (step.getWaitAfter() != null && step.getWaitAfter() > 0) {
-                        Thread.sleep(step.getWaitAfter());
-                    }
+                    waitAfter(step);
                 }
             } else {
                 // Deterministic execution when test is linked to app metadata
-                if (test.getAppId() != null) {
+                if (test.getAppId() != null && hybrid) {
+                    executeHybridSteps(test, testRun);
+                } else if (test.getAppId() != null) {
                     executeDeterministicSteps(test, testRun, variables);
-            } else {
-                // New behavior (option a): one agent session for the whole test; reuse latest snapshot across steps.
-                Map<String, Object> sessionVars = testRun.getVariables() != null ? new HashMap<>(testRun.getVariables()) : new HashMap<>();
-                String appUrl = test.getAppUrl();
-                String appType = test.getAppType();
-
-                StringBuilder plan = new StringBuilder();
-                plan.append("You are executing a multi-step test.\n");
-                plan.append("Execute steps IN ORDER. Try to reuse the most recent snapshot across multiple steps.\n");
-                plan.append("Only request a new snapshot when you can no longer complete the next step using the current snapshot.\n\n");
-                plan.append("Test name: ").append(test.getName()).append("\n");
-                plan.append("App URL: ").append(appUrl).append("\n\n");
-                plan.append("Steps:\n");
-                for (TestStep s : test.getSteps()) {
-                    plan.append(s.getOrder()).append(". ").append(s.getInstruction()).append("\n");
-                }
-
-                AgentExecutor.AgentSession session = aiTestExecutionService.startAgentTestSession(
-                    plan.toString(),
-                    "", // no pageContext (MCP provides it)
-                    sessionVars,
-                    appUrl,
-                    appType
-                );
-
-                // Seed the session with ONE snapshot without calling the LLM (MCP-only).
-                // This ensures the very first Claude call is the batch call (so early steps are truly part of one batch).
-                try {
-                    session.injectFreshSnapshot();
-                    log.info("Seeded agent session with initial snapshot (MCP-only)");
-                } catch (Exception e) {
-                    log.warn("Failed to seed agent session with an initial snapshot: {}", e.getMessage());
-                }
+                } else {
+                    // New behavior (option a): one agent session for the whole test; reuse latest snapshot across steps.
+                    Map<String, Object> sessionVars = testRun.getVariables() != null ? new HashMap<>(testRun.getVariables()) : new HashMap<>();
+                    String appUrl = test.getAppUrl();
+                    String appType = test.getAppType();
+
+                    StringBuilder plan = new StringBuilder();
+                    plan.append("You are executing a multi-step test.\n");
+                    plan.append("Execute steps IN ORDER. Try to reuse the most recent snapshot across multiple steps.\n");
+                    plan.append("Only request a new snapshot when you can no longer complete the next step using the current snapshot.\n\n");
+                    plan.append("Test name: ").append(test.getName()).append("\n");
+                    plan.append("App URL: ").append(appUrl).append("\n\n");
+                    plan.append("Steps:\n");
+                    for (TestStep s : test.getSteps()) {
+                        plan.append(s.getOrder()).append(". ").append(s.getInstruction()).append("\n");
+                    }
 
-                // Batch mode (token saver): ask Claude ONCE to execute as many upcoming steps as possible from the
-                // current snapshot; do not call Claude again for confirmation. When snapshot is needed, inject it
-                // without calling Claude, then continue.
-                List<TestStep> steps = test.getSteps();
-                int idx = 0;
-                int needSnapshotNoProgressStreak = 0;
-                while (idx < steps.size()) {
-                    log.info("Batch mode: attempting to execute from step index {} ({} total steps)", idx, steps.size());
-                    List<TestStep> remaining = steps.subList(idx, steps.size());
-
-                    Map<String, Object> batch = aiTestExecutionService.executeBatchWithAI(session, remaining, sessionVars);
-                    String status = (String) batch.get("status");
-
-                    @SuppressWarnings("unchecked")
-                    List<Integer> executedNums = (List<Integer>) batch.getOrDefault("executedStepNumbers", List.of());
-                    @SuppressWarnings("unchecked")
-                    Map<Integer, AgentExecutor.StepOutcome> stepOutcomes =
-                        (Map<Integer, AgentExecutor.StepOutcome>) batch.getOrDefault("stepOutcomes", Map.of());
-                    @SuppressWarnings("unchecked")
-                    Map<Integer, String> stepScreenshotUrls =
-                        (Map<Integer, String>) batch.getOrDefault("stepScreenshotUrls", Map.of());
-
-                    // Map executed step numbers to StepResults (pass/fail) by step order number.
-                    // Do NOT assume consecutive execution; Claude may skip already-complete steps or include verifications.
-                    if (executedNums != null && !executedNums.isEmpty()) {
-                        needSnapshotNoProgressStreak = 0;
-                        String screenshotUrl = batch.containsKey("screenshotUrl") ? String.valueOf(batch.get("screenshotUrl")) : null;
-
-                        boolean anyFailed = false;
-                        String firstFailureMsg = null;
-
-                        // Build lookup: step order -> TestStep
-                        // Build lookup: step order number -> TestStep (keep exact numbering as stored).
-                        Map<Integer, TestStep> byOrder = new HashMap<>();
-                        for (TestStep s : steps) {
-                            if (s != null && s.getOrder() != null) byOrder.put(s.getOrder(), s);
-                        }
+                    AgentExecutor.AgentSession session = aiTestExecutionService.startAgentTestSession(
+                        plan.toString(),
+                        "", // no pageContext (MCP provides it)
+                        sessionVars,
+                        appUrl,
+                        appType
+                    );
 
-                        for (Integer stepNum : executedNums) {
-                            if (stepNum == null) continue;
-                            TestStep step = byOrder.get(stepNum);
-                            if (step == null) {
-                                // Fallback: if order missing/mismatch, skip recording.
-                                continue;
-                            }
+                    // Seed the session with ONE snapshot without calling the LLM (MCP-only).
+                    // This ensures the very first Claude call is the batch call (so early steps are truly part of one batch).
+                    try {
+                        session.injectFreshSnapshot();
+                        log.info("Seeded agent session with initial snapshot (MCP-only)");
+                    } catch (Exception e) {
+                        log.warn("Failed to seed agent session with an initial snapshot: {}", e.getMessage());
+                    }
 
-                            StepResult sr = new StepResult();
-                            sr.setTestRunId(testRun.getId());
+                    // Batch mode (token saver): ask Claude ONCE to execute as many upcoming steps as possible from the
+                    // current snapshot; do not call Claude again for confirmation. When snapshot is needed, inject it
+                    // without calling Claude, then continue.
+                    List<TestStep> steps = test.getSteps();
+                    int idx = 0;
+                    int needSnapshotNoProgressStreak = 0;
+                    // Usage of batch turns not yet charged to a step (e.g. NEED_SNAPSHOT turns that executed nothing);
+                    // it is split across the steps of the next turn that makes progress.
+                    LlmUsage pendingUsage = new LlmUsage();
+                    while (idx < steps.size()) {
+                        log.info("Batch mode: attempting to execute from step index {} ({} total steps)", idx, steps.size());
+                        List<TestStep> remaining = steps.subList(idx, steps.size());
+
+                        // Record each step as soon as its tools have run (streaming dispatch); the batch result below
+                        // then confirms/corrects these rows, and provisional rows for steps it didn't accept are removed.
+                        Map<Integer, StepResult> provisional = new HashMap<>();
+                        final TestRun currentRun = testRun;
+                        AgentExecutor.StepProgressListener progress = (stepNumber, outcome, shotUrl) -> {
+                            TestStep step = remaining.stream()
+                                .filter(s -> s != null && s.getOrder() != null && s.getOrder() == stepNumber)
+                                .findFirst().orElse(null);
+                            if (step == null) return;
+                            StepResult sr = provisional.computeIfAbsent(stepNumber, k -> new StepResult());
+                            sr.setTestRunId(currentRun.getId());
                             sr.setStepNumber(step.getOrder());
                             sr.setInstruction(step.getInstruction());
                             sr.setExecutedAt(LocalDateTime.now());
-
-                            AgentExecutor.StepOutcome outcome = stepOutcomes != null ? stepOutcomes.get(stepNum) : null;
-                            String stepStatus = outcome != null && outcome.getStatus() != null ? outcome.getStatus() : "passed";
-                            sr.setStatus(stepStatus);
-                            if ("failed".equalsIgnoreCase(stepStatus)) {
-                                anyFailed = true;
-                                String msg = outcome != null ? outcome.getMessage() : null;
-                                if (msg == null || msg.isBlank()) {
-                                    msg = "Step " + stepNum + " failed";
-                                }
-                                sr.setErrorMessage(msg);
-                                if (firstFailureMsg == null) firstFailureMsg = msg;
-                            }
-
-                            // Unique screenshot per step (preferred). Fallback to last screenshotUrl if available.
-                            String stepShot = stepScreenshotUrls != null ? stepScreenshotUrls.get(stepNum) : null;
-                            if (stepShot != null && !stepShot.isBlank()) {
-                                sr.setScreenshotUrl(stepShot);
-                            } else if (screenshotUrl != null && !screenshotUrl.isBlank()) {
-                                sr.setScreenshotUrl(screenshotUrl);
+                            // Tools have run but the model has not judged the step yet (its "STEP n: PASS/FAIL" line
+                            // usually arrives later): stay neutral until an outcome is parsed.
+                            sr.setStatus(outcome != null && outcome.getStatus() != null ? outcome.getStatus() : "running");
+                            if (outcome != null && "failed".equalsIgnoreCase(outcome.getStatus())) {
+                                sr.setErrorMessage(outcome.getMessage());
                             }
-                            stepResultRepository.save(sr);
+                            if (shotUrl != null && !shotUrl.isBlank()) sr.setScreenshotUrl(shotUrl);
+                            // Own transaction: the run's transaction only commits when the whole test finishes.
+                            provisional.put(stepNumber, stepResultRepository.saveCommitted(sr));
+                        };
+
+                        long batchStart = System.currentTimeMillis();
+                        Map<String, Object> batch = aiTestExecutionService.executeBatchWithAI(session, remaining, sessionVars, progress);
+                        long batchMs = System.currentTimeMillis() - batchStart;
+                        String status = (String) batch.get("status");
+                        tracer.record(RunTracer.KIND_BATCH, "agent batch", batchMs, Map.of(
+                            "status", String.valueOf(status),
+                            "steps", String.valueOf(batch.getOrDefault("executedStepNumbers", List.of()))));
+                        if (batch.get("llmUsage") instanceof LlmUsage batchUsage) {
+                            pendingUsage.add(batchUsage);
                         }
 
-                        // Advance idx to the first step that does not yet have a StepResult in this run.
-                        // (Lightweight approach: rely on executedNums being in-order most of the time.)
-                        // For now: move idx forward while the current step order was listed as executed.
-                        Set<Integer> executedSet = new HashSet<>(executedNums);
-                        while (idx < steps.size()) {
-                            Integer order = steps.get(idx).getOrder();
-                            if (order != null && executedSet.contains(order)) {
-                                idx++;
-                                continue;
+                        @SuppressWarnings("unchecked")
+                        List<Integer> executedNums = (List<Integer>) batch.getOrDefault("executedStepNumbers", List.of());
+                        @SuppressWarnings("unchecked")
+                        Map<Integer, AgentExecutor.StepOutcome> stepOutcomes =
+                            (Map<Integer, AgentExecutor.StepOutcome>) batch.getOrDefault("stepOutcomes", Map.of());
+                        @SuppressWarnings("unchecked")
+                        Map<Integer, String> stepScreenshotUrls =
+                            (Map<Integer, String>) batch.getOrDefault("stepScreenshotUrls", Map.of());
+
+                        // Drop provisional rows for steps the final batch result did not accept as executed.
+                        Set<Integer> acceptedNums = executedNums != null ? new HashSet<>(executedNums) : Set.of();
+                        provisional.entrySet().removeIf(e -> {
+                            if (acceptedNums.contains(e.getKey())) return false;
+                            stepResultRepository.deleteCommitted(e.getValue());
+                            return true;
+                        });
+
+                        // Map executed step numbers to StepResults (pass/fail) by step order number.
+                        // Do NOT assume consecutive execution; Claude may skip already-complete steps or include verifications.
+                        if (executedNums != null && !executedNums.isEmpty()) {
+                            needSnapshotNoProgressStreak = 0;
+                            String screenshotUrl = batch.containsKey("screenshotUrl") ? String.valueOf(batch.get("screenshotUrl")) : null;
+
+                            boolean anyFailed = false;
+                            String firstFailureMsg = null;
+
+                            // Build lookup: step order -> TestStep
+                            // Build lookup: step order number -> TestStep (keep exact numbering as stored).
+                            Map<Integer, TestStep> byOrder = new HashMap<>();
+                            for (TestStep s : steps) {
+                                if (s != null && s.getOrder() != null) byOrder.put(s.getOrder(), s);
                             }
-                            break;
-                        }
-
-                        if (anyFailed) {
-                            testRun.setStatus("failed");
-                            testRun.setErrorMessage(firstFailureMsg != null ? firstFailureMsg : "A batch step failed");
-                            break;
-                        }
-                    }
+                            int usageShares = (int) executedNums.stream().filter(n -> n != null && byOrder.containsKey(n)).count();
+                            int usageShare = 0;
+
+                            for (Integer stepNum : executedNums) {
+                                if (stepNum == null) continue;
+                                TestStep step = byOrder.get(stepNum);
+                                if (step == null) {
+                                    // Fallback: if order missing/mismatch, skip recording.
+                                    continue;
+                                }
 
-                    if ("need_snapshot".equals(status)) {
-                        // If we executed something, loop again (still may be able to continue without snapshot).
-                        // If we executed nothing, inject a fresh snapshot and retry.
-                        if (executedNums == null || executedNums.isEmpty()) {
-                            needSnapshotNoProgressStreak++;
-                            if (needSnapshotNoProgressStreak >= 4) {
-                                TestStep step = steps.get(idx);
-                                StepResult sr = new StepResult();
+                                StepResult sr = provisional.remove(stepNum);
+                                if (sr == null) sr = new StepResult();
                                 sr.setTestRunId(testRun.getId());
-                                sr.setStepNumber(step.getOrder() != null ? step.getOrder() : (idx + 1));
+                                sr.setStepNumber(step.getOrder());
                                 sr.setInstruction(step.getInstruction());
-                                sr.setExecutedAt(LocalDateTime.now());
-                                sr.setStatus("failed");
-                                sr.setErrorMessage("Agent requested a new snapshot repeatedly without making progress. " +
-                                    "Likely the needed content is outside the truncated snapshot; consider increasing snapshot size, " +
-                                    "using scoped snapshots, or adding a scroll step.");
+                                if (sr.getExecutedAt() == null) sr.setExecutedAt(LocalDateTime.now());
+
+                                AgentExecutor.StepOutcome outcome = stepOutcomes != null ? stepOutcomes.get(stepNum) : null;
+                                String stepStatus = outcome != null && outcome.getStatus() != null ? outcome.getStatus() : "passed";
+                                sr.setStatus(stepStatus);
+                                if ("failed".equalsIgnoreCase(stepStatus)) {
+                                    anyFailed = true;
+                                    String msg = outcome != null ? outcome.getMessage() : null;
+                                    if (msg == null || msg.isBlank()) {
+                                        msg = "Step " + stepNum + " failed";
+                                    }
+                                    sr.setErrorMessage(msg);
+                                    if (firstFailureMsg == null) firstFailureMsg = msg;
+                                } else {
+                                    sr.setErrorMessage(null);
+                                }
+
+                                // Unique screenshot per step (preferred). Fallback to last screenshotUrl if available.
+                                String stepShot = stepScreenshotUrls != null ? stepScreenshotUrls.get(stepNum) : null;
+                                if (stepShot != null && !stepShot.isBlank()) {
+                                    sr.setScreenshotUrl(stepShot);
+                                } else if (screenshotUrl != null && !screenshotUrl.isBlank()) {
+                                    sr.setScreenshotUrl(screenshotUrl);
+                                }
+                                llmUsageService.addToStep(sr, pendingUsage.share(usageShare++, usageShares));
+                                // One agent turn ran the whole batch: each step gets an equal share of its wall time
+                                phaseStats.record(ExecutionPhaseStats.STEP, batchMs / Math.max(1, usageShares),
+                                    "engine", ExecutionPhaseStats.ENGINE_AGENT, "status", String.valueOf(sr.getStatus()));
                                 stepResultRepository.save(sr);
-                                testRun.setStatus("failed");
-                                testRun.setErrorMessage(sr.getErrorMessage());
+                            }
+                            if (usageShares > 0) {
+                                pendingUsage = new LlmUsage();
+                            }
+
+                            // Advance idx to the first step that does not yet have a StepResult in this run.
+                            // (Lightweight approach: rely on executedNums being in-order most of the time.)
+                            // For now: move idx forward while the current step order was listed as executed.
+                            Set<Integer> executedSet = new HashSet<>(executedNums);
+                            while (idx < steps.size()) {
+                                Integer order = steps.get(idx).getOrder();
+                                if (order != null && executedSet.contains(order)) {
+                                    idx++;
+                                    continue;
+                                }
                                 break;
                             }
-                            try {
-                                // Try to reveal lower content before snapshot on repeated no-progress.
-                                // 1st time: plain snapshot, 2nd: PageDown+snapshot, 3rd: End+snapshot.
-                                // Also escalate snapshot truncation when stuck so bottom-of-page content isn't cut off.
-                                // Attempt 2+ will use agent.tool.snapshot.max.chars.escalated.
-                                session.revealMoreAndInjectSnapshot(needSnapshotNoProgressStreak);
-                            } catch (Exception e) {
-                                log.warn("Failed to inject fresh snapshot: {}", e.getMessage());
+
+                            if (anyFailed) {
                                 testRun.setStatus("failed");
-                                testRun.setErrorMessage("Failed to capture snapshot: " + e.getMessage());
+                                testRun.setErrorMessage(firstFailureMsg != null ? firstFailureMsg : "A batch step failed");
                                 break;
                             }
                         }
-                        continue;
-                    }
 
-                    if (!"success".equals(status)) {
-                        // Fail the current step (first remaining)
-                        TestStep step = steps.get(idx);
-                        StepResult sr = new StepResult();
-                        sr.setTestRunId(testRun.getId());
-                        sr.setStepNumber(step.getOrder() != null ? step.getOrder() : (idx + 1));
-                        sr.setInstruction(step.getInstruction());
-                        sr.setExecutedAt(LocalDateTime.now());
-                        sr.setStatus("failed");
-                        sr.setErrorMessage(batch.get("message") != null ? String.valueOf(batch.get("message")) : "Batch execution failed");
-                        if (batch.containsKey("screenshotUrl")) {
-                            sr.setScreenshotUrl(String.valueOf(batch.get("screenshotUrl")));
+                        if ("need_snapshot".equals(status)) {
+                            // If we executed something, loop again (still may be able to continue without snapshot).
+                            // If we executed nothing, inject a fresh snapshot and retry.
+                            if (executedNums == null || executedNums.isEmpty()) {
+                                needSnapshotNoProgressStreak++;
+                                if (needSnapshotNoProgressStreak >= 4) {
+                                    TestStep step = steps.get(idx);
+                                    StepResult sr = new StepResult();
+                                    sr.setTestRunId(testRun.getId());
+                                    sr.setStepNumber(step.getOrder() != null ? step.getOrder() : (idx + 1));
+                                    sr.setInstruction(step.getInstruction());
+                                    sr.setExecutedAt(LocalDateTime.now());
+                                    sr.setStatus("failed");
+                                    sr.setErrorMessage("Agent requested a new snapshot repeatedly without making progress. " +
+                                        "Likely the needed content is outside the truncated snapshot; consider increasing snapshot size, " +
+                                        "using scoped snapshots, or adding a scroll step.");
+                                    llmUsageService.addToStep(sr, pendingUsage);
+                                    pendingUsage = new LlmUsage();
+                                    stepResultRepository.save(sr);
+                                    testRun.setStatus("failed");
+                                    testRun.setErrorMessage(sr.getErrorMessage());
+                                    break;
+                                }
+                                try {
+                                    // Try to reveal lower content before snapshot on repeated no-progress.
+                                    // 1st time: plain snapshot, 2nd: PageDown+snapshot, 3rd: End+snapshot.
+                                    // Also escalate snapshot truncation when stuck so bottom-of-page content isn't cut off.
+                                    // Attempt 2+ will use agent.tool.snapshot.max.chars.escalated.
+                                    session.revealMoreAndInjectSnapshot(needSnapshotNoProgressStreak);
+                                } catch (Exception e) {
+                                    log.warn("Failed to inject fresh snapshot: {}", e.getMessage());
+                                    testRun.setStatus("failed");
+                                    testRun.setErrorMessage("Failed to capture snapshot: " + e.getMessage());
+                                    break;
+                                }
+                            }
+                            continue;
                         }
-                        stepResultRepository.save(sr);
-                        testRun.setStatus("failed");
-                        testRun.setErrorMessage(sr.getErrorMessage());
-                        break;
-                    }
 
-                    // If success but executed nothing and didn't request snapshot, avoid infinite loop
-                    if ((executedNums == null || executedNums.isEmpty()) && !"need_snapshot".equals(status)) {
-                        testRun.setStatus("failed");
-                        testRun.setErrorMessage("No steps executed and no snapshot requested; aborting to avoid infinite loop.");
-                        break;
-                    }
+                        if (!"success".equals(status)) {
+                            // Fail the current step (first remaining)
+                            TestStep step = steps.get(idx);
+                            StepResult sr = new StepResult();
+                            sr.setTestRunId(testRun.getId());
+                            sr.setStepNumber(step.getOrder() != null ? step.getOrder() : (idx + 1));
+                            sr.setInstruction(step.getInstruction());
+                            sr.setExecutedAt(LocalDateTime.now());
+                            sr.setStatus("failed");
+                            sr.setErrorMessage(batch.get("message") != null ? String.valueOf(batch.get("message")) : "Batch execution failed");
+                            if (batch.containsKey("screenshotUrl")) {
+                                sr.setScreenshotUrl(String.valueOf(batch.get("screenshotUrl")));
+                            }
+                            llmUsageService.addToStep(sr, pendingUsage);
+                            pendingUsage = new LlmUsage();
+                            stepResultRepository.save(sr);
+                            testRun.setStatus("failed");
+                            testRun.setErrorMessage(sr.getErrorMessage());
+                            break;
+                        }
+
+                        // If success but executed nothing and didn't request snapshot, avoid infinite loop
+                        if ((executedNums == null || executedNums.isEmpty()) && !"need_snapshot".equals(status)) {
+                            testRun.setStatus("failed");
+                            testRun.setErrorMessage("No steps executed and no snapshot requested; aborting to avoid infinite loop.");
+                            break;
+                        }
                     }
+                    unattributedUsage.add(pendingUsage);
+                    int localSteps = session.getLocalResolvedSteps();
+                    testRun.setLocalResolvedSteps(localSteps);
+                    testRun.setDeterministicSteps(0);
+                    testRun.setAgentSteps((int) stepResultRepository.countByTestRunId(testRun.getId()));
+                    int totalSteps = test.getSteps() != null ? test.getSteps().size() : 0;
+                    log.info("Local fast path: {}/{} steps executed without an LLM call", localSteps, totalSteps);
                 }
             }
             
@@ -475,6 +603,7 @@ public class TestExecutionService {
 
             testRun.setCompletedAt(LocalDateTime.now());
             testRun.setDuration(System.currentTimeMillis() - startTime);
+            llmUsageService.finalizeRun(testRun, unattributedUsage);
             testRunRepository.save(testRun);
 
             // Update Run status if this test run is part of a Run
@@ -491,6 +620,11 @@ public class TestExecutionService {
                 testRun.setErrorMessage(e.getMessage());
                 testRun.setCompletedAt(LocalDateTime.now());
                 testRun.setDuration(System.currentTimeMillis() - startTime);
+                try {
+                    llmUsageService.finalizeRun(testRun, unattributedUsage);
+                } catch (Exception usageError) {
+                    log.warn("Failed to record LLM usage for test run {}: {}", testRun.getId(), usageError.getMessage());
+                }
                 testRunRepository.save(testRun);
 
                 if (runId != null) {
@@ -498,14 +632,24 @@ public class TestExecutionService {
                 }
             }
         } finally {
+            phaseStats.runFinished(testRun != null ? testRun.getStatus() : "failed");
+            tracer.finish(testRun);
+            HotPathLog.endRun();
+            LlmCallContext.clear();
             // Always close the Playwright MCP browser/process for this test execution thread.
             // This guarantees cleanup when the last step completes OR when any step fails/throws.
             try {
-                mcpService.resetSession();
+                mcpService.attachToBrowser(null);
                 log.info("MCP session closed/reset after test execution (thread={})", Thread.currentThread().getName());
             } catch (Exception e) {
                 log.warn("Failed to reset/close MCP session after test execution", e);
             }
+            // Close the in-process tool backend's context (its browser stays pooled for this thread)
+            try {
+                playwrightJavaToolService.release();
+            } catch (Exception e) {
+                log.warn("Failed to release in-process Playwright tool context", e);
+            }
             // Always close Playwright Java resources for deterministic runner
             try {
                 playwrightJavaService.reset();
@@ -526,7 +670,7 @@ public class TestExecutionService {
         Long appId = test.getAppId();
         App app = appRepository.findById(appId).orElseThrow(() -> new RuntimeException("App not found: " + appId));
 
-        playwrightJavaService.ensureStarted();
+        ensureBrowserStarted();
 
         List<String> screenNames = new ArrayList<>();
         if (app.getScreens() != null) {
@@ -553,6 +697,7 @@ public class TestExecutionService {
             sr.setInstruction(step.getInstruction());
             sr.setExecutedAt(LocalDateTime.now());
             long stepStart = System.currentTimeMillis();
+            String engine = stepEngine(step);
 
             try {
                 // If save-time mapping populated (type/selector/value), execute directly without any LLM.
@@ -603,7 +748,7 @@ public class TestExecutionService {
                                 playwrightJavaService.scrollToActiveElement();
                             }
                         } catch (Exception ignored) {}
-                        playwrightJavaService.screenshot(shotPath);
+                        takeScreenshot(shotPath);
                         sr.setScreenshotUrl(shotPath.toString());
                     } catch (Exception ignored) {}
 
@@ -612,8 +757,10 @@ public class TestExecutionService {
                 }
 
                 executed.add(step.getInstruction() != null ? step.getInstruction() : "");
-                String screenName = screenInferenceService.inferScreenName(app.getInfo(), screenNames, executed, lastScreen);
+                String screenName = screenInferenceService.inferScreenName(app, screenNames, executed, lastScreen);
                 lastScreen = screenName;
+                // URL the step ran on (before any navigation it causes), for the screen fingerprint
+                String urlBeforeStep = screenClassifier.currentUrl();
                 log.info("[DET] Inferred screen='{}' for stepOrder={} (appId={}, appName='{}')",
                     screenName, step.getOrder(), app.getId(), app.getName());
 
@@ -630,6 +777,7 @@ public class TestExecutionService {
 
                 // Method calls (non-mapped): execute stored method body from Screen.methods.
                 if ("call_method".equals(parsed.action)) {
+                    engine = ExecutionPhaseStats.ENGINE_STORED_METHOD;
                     String methodName = parsed.elementName;
                     String arg = parsed.value;
                     Screen screen = screenRepository.findByApp_IdAndName(appId, screenName)
@@ -648,6 +796,7 @@ public class TestExecutionService {
                     if (r != null && r.getSuccessMessage() != null && !r.getSuccessMessage().isBlank()) {
                         sr.setNotes(r.getSuccessMessage());
                     }
+                    screenClassifier.learn(screen, null, urlBeforeStep);
                     if (r != null && r.getExtractedVariables() != null && !r.getExtractedVariables().isEmpty()) {
                         sr.setExtractedVariables(mergeExtracted(sr.getExtractedVariables(), r.getExtractedVariables()));
                         Map<String, Object> currentVars = testRun.getVariables();
@@ -675,6 +824,7 @@ public class TestExecutionService {
                 executeParsedAction(element, parsed);
                 log.info("[DET] Executed action='{}' on element='{}' (stepOrder={})",
                     parsed.action, element.getElementName(), step.getOrder());
+                screenClassifier.learn(screen, element, urlBeforeStep);
                 sr.setNotes(buildPassedNotesForParsedStep(parsed, element));
                 }
 
@@ -691,7 +841,7 @@ public class TestExecutionService {
                             playwrightJavaService.scrollToActiveElement();
                         }
                     } catch (Exception ignored) {}
-                    playwrightJavaService.screenshot(shotPath);
+                    takeScreenshot(shotPath);
                     sr.setScreenshotUrl(shotPath.toString());
                 } catch (Exception ignored) {}
 
@@ -712,12 +862,244 @@ public class TestExecutionService {
                 break;
             } finally {
                 sr.setDuration(System.currentTimeMillis() - stepStart);
+                recordStep(engine, sr);
                 stepResultRepository.save(sr);
             }
 
-            if (step.getWaitAfter() != null && step.getWaitAfter() > 0) {
-                Thread.sleep(step.getWaitAfter());
+            waitAfter(step);
+        }
+        testRun.setDeterministicSteps((int) stepResultRepository.countByTestRunId(testRun.getId()));
+        testRun.setAgentSteps(0);
+    }
+
+    /**
+     * Hybrid runner for app-linked tests (execution.hybrid.enabled):
+     * - Mapped steps run deterministically via Playwright Java / stored methods, with a short selector timeout
+     * - Unmapped steps, and mapped steps whose selector fails, are handed to ONE agent session whose MCP
+     *   process drives the same browser over CDP; the next mapped step resumes deterministically
+     * - A stored-method verification that returns false fails the step (it is a result, not a selector miss)
+     */
+    private void executeHybridSteps(Test test, TestRun testRun) throws Exception {
+        Long appId = test.getAppId();
+        App app = appRepository.findById(appId).orElseThrow(() -> new RuntimeException("App not found: " + appId));
+
+        AgentExecutor.AgentSession session = null;
+        // The agent's last snapshot is stale once the deterministic runner acted on the page.
+        boolean agentSnapshotStale = true;
+        int deterministicSteps = 0;
+        int agentSteps = 0;
+
+        List<TestStep> steps = test.getSteps();
+        for (int i = 0; i < steps.size(); i++) {
+            TestStep step = steps.get(i);
+            if (step == null) continue;
+
+            String fallbackReason = "step is not mapped";
+            if (isMappedDeterministicStep(step)) {
+                StepResult sr = new StepResult();
+                sr.setTestRunId(testRun.getId());
+                sr.setStepNumber(step.getOrder());
+                sr.setInstruction(step.getInstruction());
+                sr.setExecutedAt(LocalDateTime.now());
+                long stepStart = System.currentTimeMillis();
+                try {
+                    if (!"navigate".equalsIgnoreCase(step.getType().trim())) {
+                        playwrightJavaService.setActionTimeout(hybridStepTimeoutMs);
+                    }
+                    ExecOutcome outcome = executeMappedDeterministicStep(app, step, testRun.getVariables());
+                    String successMsg = outcome != null ? outcome.successMessage : null;
+                    sr.setNotes(successMsg != null && !successMsg.isBlank() ? successMsg : buildPassedNotesForMappedStep(step));
+                    Map<String, Object> extracted = outcome != null ? outcome.extractedVariables : Map.of();
+                    if (extracted != null && !extracted.isEmpty()) {
+                        sr.setExtractedVariables(extracted);
+                        Map<String, Object> currentVars = testRun.getVariables();
+                        currentVars.putAll(extracted);
+                        testRun.setVariables(currentVars);
+                        testRunRepository.save(testRun);
+                    }
+                    sr.setScreenshotUrl(captureDeterministicScreenshot(testRun, step));
+                    sr.setStatus("passed");
+                    sr.setDuration(System.currentTimeMillis() - stepStart);
+                    recordStep(stepEngine(step), sr);
+                    stepResultRepository.save(sr);
+                    deterministicSteps++;
+                    agentSnapshotStale = true;
+                    if (session != null) {
+                        session.recordExternalStep(ConversationCompactor.stepLabel(step.getOrder(), step.getInstruction()), true, null, extracted);
+                    }
+                    log.info("[HYBRID] stepOrder={} executed deterministically ({}ms)", step.getOrder(), sr.getDuration());
+                    waitAfter(step);
+                    continue;
+                } catch (UserFacingStepException e) {
+                    sr.setStatus("failed");
+                    sr.setErrorMessage(e.getUserMessage());
+                    sr.setDuration(System.currentTimeMillis() - stepStart);
+                    recordStep(stepEngine(step), sr);
+                    stepResultRepository.save(sr);
+                    deterministicSteps++;
+                    testRun.setStatus("failed");
+                    testRun.setErrorMessage(e.getUserMessage());
+                    log.warn("[HYBRID] stepOrder={} failed deterministically: {}", step.getOrder(), e.getUserMessage());
+                    break;
+                } catch (Exception e) {
+                    fallbackReason = "mapped step failed: " + e.getMessage();
+                    log.info("[HYBRID] stepOrder={} mapped selector failed after {}ms ({}); handing the step to the agent",
+                        step.getOrder(), System.currentTimeMillis() - stepStart, e.getMessage());
+                } finally {
+                    playwrightJavaService.restoreActionTimeout();
+                }
             }
+
+            log.info("[HYBRID] stepOrder={} -> agent ({})", step.getOrder(), fallbackReason);
+            if (session == null) {
+                try {
+                    session = startHybridAgentSession(test, testRun);
+                } catch (Exception e) {
+                    StepResult sr = new StepResult();
+                    sr.setTestRunId(testRun.getId());
+                    sr.setStepNumber(step.getOrder() != null ? step.getOrder() : (i + 1));
+                    sr.setInstruction(step.getInstruction());
+                    sr.setExecutedAt(LocalDateTime.now());
+                    sr.setStatus("failed");
+                    sr.setErrorMessage("Step could not be executed deterministically and the agent is unavailable: " + e.getMessage());
+                    stepResultRepository.save(sr);
+                    testRun.setStatus("failed");
+                    testRun.setErrorMessage(sr.getErrorMessage());
+                    break;
+                }
+            }
+            if (agentSnapshotStale) {
+                try {
+                    session.injectFreshSnapshot();
+                } catch (Exception e) {
+                    log.warn("[HYBRID] Failed to refresh the agent snapshot: {}", e.getMessage());
+                }
+                agentSnapshotStale = false;
+            }
+
+            StepResult stepResult = executeStepWithAISession(step, testRun, test, session, i);
+            stepResultRepository.save(stepResult);
+            agentSteps++;
+            if (stepResult.getExtractedVariables() != null && !stepResult.getExtractedVariables().isEmpty()) {
+                Map<String, Object> currentVars = testRun.getVariables();
+                currentVars.putAll(stepResult.getExtractedVariables());
+                testRun.setVariables(currentVars);
+                testRunRepository.save(testRun);
+            }
+            if ("failed".equals(stepResult.getStatus())) {
+                testRun.setStatus("failed");
+                testRun.setErrorMessage(stepResult.getErrorMessage());
+                break;
+            }
+
+            waitAfter(step);
+        }
+
+        int localSteps = session != null ? session.getLocalResolvedSteps() : 0;
+        testRun.setDeterministicSteps(deterministicSteps);
+        testRun.setAgentSteps(agentSteps);
+        testRun.setLocalResolvedSteps(localSteps);
+        log.info("[HYBRID] Engines: deterministic={} agent={} (of which local fast path={}) of {} steps",
+            deterministicSteps, agentSteps, localSteps, steps.size());
+    }
+
+    private AgentExecutor.AgentSession startHybridAgentSession(Test test, TestRun testRun) {
+        StringBuilder plan = new StringBuilder();
+        plan.append("You are executing selected steps of a multi-step test. Other steps are executed by a ");
+        plan.append("deterministic runner on the same browser; you will be asked for one step at a time.\n\n");
+        plan.append("Test name: ").append(test.getName()).append("\n");
+        plan.append("App URL: ").append(test.getAppUrl()).append("\n\n");
+        plan.append("Steps:\n");
+        for (TestStep s : test.getSteps()) {
+            plan.append(s.getOrder()).append(". ").append(s.getInstruction()).append("\n");
+        }
+        Map<String, Object> sessionVars = testRun.getVariables() != null ? new HashMap<>(testRun.getVariables()) : new HashMap<>();
+        return aiTestExecutionService.startAgentTestSession(plan.toString(), "", sessionVars, test.getAppUrl(), test.getAppType());
+    }
+
+    /**
+     * Start this thread's Playwright Java browser if needed; a cold start counts as the run's browser-start phase.
+     */
+    private void ensureBrowserStarted() {
+        if (playwrightJavaService.currentPage() != null) return;
+        long started = System.nanoTime();
+        playwrightJavaService.ensureStarted();
+        phaseStats.recordSince(ExecutionPhaseStats.BROWSER_START, started,
+            "engine", PlaywrightJavaToolService.BACKEND_NAME, "mode", "process");
+    }
+
+    private void navigate(String url) {
+        long started = System.nanoTime();
+        try {
+            playwrightJavaService.navigate(url);
+        } finally {
+            phaseStats.recordSince(ExecutionPhaseStats.NAVIGATION, started, "engine", PlaywrightJavaToolService.BACKEND_NAME);
+        }
+    }
+
+    private void takeScreenshot(Path path) {
+        long started = System.nanoTime();
+        try {
+            playwrightJavaService.screenshot(path);
+        } finally {
+            phaseStats.recordSince(ExecutionPhaseStats.SCREENSHOT, started,
+                "engine", PlaywrightJavaToolService.BACKEND_NAME, "operation", "capture");
+        }
+    }
+
+    /**
+     * Engine a deterministic/hybrid step runs on, for step metrics.
+     */
+    private static String stepEngine(TestStep step) {
+        return "call_method".equalsIgnoreCase(step.getType())
+            ? ExecutionPhaseStats.ENGINE_STORED_METHOD
+            : ExecutionPhaseStats.ENGINE_DETERMINISTIC;
+    }
+
+    private void recordStep(String engine, StepResult sr) {
+        long ms = sr.getDuration() != null ? sr.getDuration() : 0;
+        phaseStats.record(ExecutionPhaseStats.STEP, ms, "engine", engine, "status", String.valueOf(sr.getStatus()));
+        Map<String, String> attributes = new LinkedHashMap<>();
+        attributes.put("engine", engine);
+        attributes.put("status", String.valueOf(sr.getStatus()));
+        if (sr.getInstruction() != null) {
+            String instruction = sr.getInstruction();
+            attributes.put("instruction", instruction.length() > LOG_VALUE_MAX_CHARS
+                ? instruction.substring(0, LOG_VALUE_MAX_CHARS) + "..." : instruction);
+        }
+        tracer.record(RunTracer.KIND_STEP, "step " + sr.getStepNumber(), ms, attributes);
+    }
+
+    /**
+     * Sleep for the step's waitAfter, shown as a wait span in the run trace.
+     */
+    private void waitAfter(TestStep step) throws InterruptedException {
+        if (step.getWaitAfter() != null && step.getWaitAfter() > 0) {
+            Thread.sleep(step.getWaitAfter());
+            tracer.record(RunTracer.KIND_WAIT, "wait after step " + step.getOrder(), step.getWaitAfter(), Map.of());
+        }
+    }
+
+    /**
+     * Best-effort screenshot of the Playwright Java page after a deterministic step; null when it fails.
+     */
+    private String captureDeterministicScreenshot(TestRun testRun, TestStep step) {
+        try {
+            Path dir = Paths.get(System.getProperty("java.io.tmpdir"), "playwright-java-screenshots");
+            Files.createDirectories(dir);
+            Path shotPath = dir.resolve("run-" + testRun.getId() + "-step-" + (step.getOrder() != null ? step.getOrder() : "x") + ".png");
+            // Scroll to the acted element (or active element) before screenshot
+            try {
+                if (!"call_method".equalsIgnoreCase(step.getType()) && step.getSelector() != null && !step.getSelector().isBlank()) {
+                    playwrightJavaService.scrollIntoView(step.getSelector());
+                } else {
+                    playwrightJavaService.scrollToActiveElement();
+                }
+            } catch (Exception ignored) {}
+            takeScreenshot(shotPath);
+            return shotPath.toString();
+        } catch (Exception ignored) {
+            return null;
         }
     }
 
@@ -757,7 +1139,7 @@ public class TestExecutionService {
         String successMessage = null;
         Map<String, Object> extracted = Map.of();
         switch (action) {
-            case "navigate" -> playwrightJavaService.navigate(resolveTemplate(step.getValue(), variables));
+            case "navigate" -> navigate(resolveTemplate(step.getValue(), variables));
             case "fill" -> playwrightJavaService.fill(step.getSelector(), resolveTemplate(step.getValue(), variables));
             case "click" -> playwrightJavaService.click(step.getSelector());
             case "hover" -> playwrightJavaService.hover(step.getSelector());
@@ -810,7 +1192,7 @@ public class TestExecutionService {
      * Back-compat: also supports ${varName}.
      * If a variable is missing, it is replaced with empty string.
      */
-    private String resolveTemplate(String value, Map<String, Object> variables) {
+    static String resolveTemplate(String value, Map<String, Object> variables) {
         if (value == null) return "";
         String s = value;
         // Preferred: {{var}}
@@ -820,7 +1202,7 @@ public class TestExecutionService {
         return s;
     }
 
-    private String replaceVars(String input, java.util.regex.Pattern pattern, Map<String, Object> variables) {
+    private static String replaceVars(String input, java.util.regex.Pattern pattern, Map<String, Object> variables) {
         if (input == null || input.isEmpty()) return input;
         java.util.regex.Matcher m = pattern.matcher(input);
         StringBuffer sb = new StringBuffer();
@@ -981,7 +1363,7 @@ public class TestExecutionService {
      * - "select US from countryDropdown"
      * - "hover menu"
      */
-    private static class ParsedStep {
+    static class ParsedStep {
         final String action;
         final String elementName;
         final String value;
@@ -1152,6 +1534,7 @@ public class TestExecutionService {
                     appUrl,
                     appType
             );
+            llmUsageService.addToStep(result, executionResult.get("llmUsage"));
             
             // --- Robust check: Ensure intended goal of step was achieved ---
             String status = (String) executionResult.get("status");
@@ -1320,6 +1703,7 @@ public class TestExecutionService {
         }
         
         result.setDuration(System.currentTimeMillis() - stepStart);
+        recordStep(ExecutionPhaseStats.ENGINE_AGENT, result);
         return result;
     }
 
@@ -1362,6 +1746,7 @@ public class TestExecutionService {
                 variables,
                 false
             );
+            llmUsageService.addToStep(result, executionResult.get("llmUsage"));
 
             if ("need_snapshot".equals(executionResult.get("status"))) {
                 // Now allow snapshot to proceed for this step
@@ -1372,6 +1757,7 @@ public class TestExecutionService {
                     variables,
                     true
                 );
+                llmUsageService.addToStep(result, executionResult.get("llmUsage"));
             }
 
             String status = (String) executionResult.get("status");
@@ -1402,80 +1788,12 @@ public class TestExecutionService {
             result.setErrorMessage("Step execution failed: " + e.getMessage());
         } finally {
             result.setDuration(System.currentTimeMillis() - stepStart);
+            recordStep(ExecutionPhaseStats.ENGINE_AGENT, result);
         }
 
         return result;
     }
     
-    /**
-     * Load dataset row data from JSON string
-     * Expected format: {"columns": ["col1", "col2"], "data": [{"col1": "val1", "col2": "val2"}, ...]}
-     * Or simpler format: [{"col1": "val1", "col2": "val2"}, ...]
-     * Or frontend format: {"dataset_columns": [...], "dataset": [...]}
-     */
-    private Map<String, Object> loadDatasetRow(String datasetJson, Integer rowIndex) {
-        try {
-            if (datasetJson == null || datasetJson.trim().isEmpty()) {
-                log.debug("Dataset JSON is null or empty");
-                return null;
-            }
-            
-            log.debug("Parsing dataset JSON (length: {}): {}", datasetJson.length(), datasetJson.substring(0, Math.min(200, datasetJson.length())));
-            
-            // Try parsing as Map first
-            try {
-                Map<String, Object> datasetMap = objectMapper.readValue(datasetJson, new TypeReference<Map<String, Object>>() {});
-                
-                // Handle different JSON structures
-                List<Map<String, Object>> rows = null;
-                if (datasetMap.containsKey("data") && datasetMap.get("data") instanceof List) {
-                    // Format: {"columns": [...], "data": [...]}
-                    rows = (List<Map<String, Object>>) datasetMap.get("data");
-                    log.debug("Found dataset in 'data' field with {} rows", rows.size());
-                } else if (datasetMap.containsKey("dataset") && datasetMap.get("dataset") instanceof List) {
-                    // Format: {"dataset_columns": [...], "dataset": [...]}
-                    rows = (List<Map<String, Object>>) datasetMap.get("dataset");
-                    log.debug("Found dataset in 'dataset' field with {} rows", rows.size());
-                }
-                
-                if (rows != null && !rows.isEmpty()) {
-                    if (rowIndex < 0 || rowIndex >= rows.size()) {
-                        log.warn("Row index {} is out of bounds (dataset has {} rows)", rowIndex, rows.size());
-                        return null;
-                    }
-                    
-                    Map<String, Object> row = rows.get(rowIndex);
-                    log.info("Loaded dataset row {}: {}", rowIndex, row);
-                    return new HashMap<>(row); // Return a copy
-                }
-            } catch (Exception e) {
-                log.debug("Failed to parse as Map, trying as List: {}", e.getMessage());
-            }
-            
-            // Try parsing as direct array
-            List<?> directList = objectMapper.readValue(datasetJson, new TypeReference<List<?>>() {});
-            if (directList != null && !directList.isEmpty() && directList.get(0) instanceof Map) {
-                List<Map<String, Object>> rows = (List<Map<String, Object>>) (List<?>) directList;
-                log.debug("Found dataset as direct array with {} rows", rows.size());
-                
-                if (rowIndex < 0 || rowIndex >= rows.size()) {
-                    log.warn("Row index {} is out of bounds (dataset has {} rows)", rowIndex, rows.size());
-                    return null;
-                }
-                
-                Map<String, Object> row = rows.get(rowIndex);
-                log.info("Loaded dataset row {}: {}", rowIndex, row);
-                return new HashMap<>(row); // Return a copy
-            }
-            
-            log.warn("Unexpected dataset JSON format - could not parse as Map or List");
-            return null;
-            
-        } catch (Exception e) {
-            log.error("Failed to parse dataset JSON: {}", e.getMessage(), e);
-            return null;
-        }
-    }
     
     private void executeModuleSteps(TestStep moduleStep, TestRun testRun, Test test) {
         log.info("Executing module step: {}", moduleStep.getInstruction());
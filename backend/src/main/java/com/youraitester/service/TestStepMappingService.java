@@ -8,6 +8,8 @@ import com.youraitester.model.TestStep;
 import com.youraitester.model.app.App;
 import com.youraitester.model.app.Screen;
 import com.youraitester.model.app.ScreenElement;
+import com.youraitester.model.app.ScreenMethod;
+import com.youraitester.model.app.ScreenMethodParam;
 import com.youraitester.repository.app.AppRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -15,10 +17,12 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Locale;
-import java.util.Map;
+import jakarta.annotation.PreDestroy;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.*;
 
 /**
  * Save-time mapping:
@@ -28,6 +32,11 @@ import java.util.Map;
  * - step.value  = value for fill/select/navigate/press_key
  *
  * This allows execution to run without any LLM calls.
+ *
+ * Only new or changed steps are mapped: each step stores a hash of (app metadata version, normalised instruction)
+ * and an unchanged step keeps the mapping it already has (or had in the previous version of the test).
+ * Mappings are memoised across tests under the same key, and the LLM calls for the remaining steps run
+ * concurrently (bounded by mapping.llm.concurrency) before the sequential pass that applies them.
  */
 @Service
 @RequiredArgsConstructor
@@ -55,10 +64,45 @@ public class TestStepMappingService {
     @Value("${mapping.llm.prefer:true}")
     private boolean mappingLlmPrefer;
 
+    /**
+     * Max concurrent LLM mapping calls per save (all saves share the pool).
+     */
+    @Value("${mapping.llm.concurrency:4}")
+    private int llmConcurrency;
+
+    @Value("${mapping.cache.size:5000}")
+    private int cacheSize;
+
     private static final ObjectMapper objectMapper = new ObjectMapper();
 
+    /** Mapped command memoised by "appId|metadataVersion|lastScreen|normalisedInstruction". */
+    private record MappedCommand(String type, String selector, String value) {}
+
+    private final Map<String, MappedCommand> mappingCache = Collections.synchronizedMap(new LinkedHashMap<>(256, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, MappedCommand> eldest) {
+            return size() > cacheSize;
+        }
+    });
+
+    private volatile ExecutorService llmPool;
+
+    @PreDestroy
+    public void shutdown() {
+        if (llmPool != null) llmPool.shutdownNow();
+    }
+
     @Transactional
     public void mapTestSteps(Test test) {
+        mapTestSteps(test, null);
+    }
+
+    /**
+     * @param previousSteps steps of the test before this save (null for new tests); unchanged steps take their
+     *                      mapping from here, since clients don't round-trip the mapped fields
+     */
+    @Transactional
+    public void mapTestSteps(Test test, List<TestStep> previousSteps) {
         if (test == null) return;
         if (test.getAppId() == null) {
             log.info("[MAP] Skipping mapping: test has no appId (testId={})", test.getId());
@@ -82,29 +126,115 @@ public class TestStepMappingService {
             if (s != null && s.getName() != null && !s.getName().isBlank()) screenNames.add(s.getName());
         }
 
+        long started = System.currentTimeMillis();
+        String version = metadataVersion(app);
+        List<TestStep> steps = test.getSteps();
+
+        // Previous mappings by step hash and the screen the previous test was on before that step
+        Map<String, TestStep> previousByHash = new HashMap<>();
+        if (previousSteps != null) {
+            String previousHint = null;
+            for (TestStep p : previousSteps) {
+                if (p == null) continue;
+                if (p.getMappingHash() != null) previousByHash.putIfAbsent(previousKey(p.getMappingHash(), previousHint), p);
+                String s = screenOf(p, app.getScreens());
+                if (s != null) previousHint = s;
+            }
+        }
+
+        // Decide per step: unchanged (keep / take previous mapping), memoised, or to be mapped now.
+        // The persisted hash covers (app version, instruction) only, so a step stays mapped when its neighbours
+        // change. The same instruction can map differently depending on the screen the test is on, so carrying a
+        // mapping over from another step (previous steps, cache) also requires the same "last screen" hint: the
+        // screen of the nearest earlier step whose mapping is known.
+        String[] hashes = new String[steps.size()];
+        String[] hints = new String[steps.size()];
+        boolean[] toMap = new boolean[steps.size()];
+        int reused = 0;
+        int cacheHits = 0;
+        String hint = null;
+        for (int i = 0; i < steps.size(); i++) {
+            TestStep step = steps.get(i);
+            if (step == null) continue;
+            hints[i] = hint;
+            hashes[i] = stepHash(version, step.getInstruction());
+            TestStep previous = previousByHash.get(previousKey(hashes[i], hint));
+            MappedCommand cached;
+            if (hashes[i].equals(step.getMappingHash())) {
+                reused++;
+            } else if (previous != null) {
+                step.setType(previous.getType());
+                step.setSelector(previous.getSelector());
+                step.setValue(previous.getValue());
+                step.setMappingHash(hashes[i]);
+                reused++;
+            } else if ((cached = mappingCache.get(cacheKey(app, version, hint, step.getInstruction()))) != null) {
+                step.setType(cached.type());
+                step.setSelector(cached.selector());
+                step.setValue(cached.value());
+                step.setMappingHash(hashes[i]);
+                cacheHits++;
+            } else {
+                toMap[i] = true;
+                continue;
+            }
+            String s = screenOf(step, app.getScreens());
+            if (s != null) hint = s;
+        }
+
+        // LLM calls for the steps to map, concurrently, each with the hint it was looked up with.
+        Map<Integer, Future<LlmMapped>> llmResults = new HashMap<>();
+        if (mappingLlmEnabled) {
+            initializeScreens(app.getScreens()); // lazy collections are read from pool threads below
+            for (int i = 0; i < steps.size(); i++) {
+                TestStep step = steps.get(i);
+                if (step == null || !toMap[i]) continue;
+                String instr = step.getInstruction();
+                if (!mappingLlmPrefer && Parsed.parse(instr) != null) continue;
+                String lastScreenHint = hints[i];
+                List<String> executed = new ArrayList<>();
+                for (int j = 0; j <= i; j++) {
+                    executed.add(steps.get(j) != null && steps.get(j).getInstruction() != null ? steps.get(j).getInstruction() : "");
+                }
+                llmResults.put(i, llmPool().submit(() ->
+                    tryMapWithLlm(app, app.getScreens(), screenNames, lastScreenHint, executed, instr)));
+            }
+        }
+
         String lastScreen = null;
         List<String> executedSoFar = new ArrayList<>();
+        // Steps that got a mapping on this save (LLM or parsed fallback)
+        boolean[] mappedNow = new boolean[steps.size()];
 
-        for (TestStep step : test.getSteps()) {
+        for (int i = 0; i < steps.size(); i++) {
+            TestStep step = steps.get(i);
             if (step == null) continue;
             String instr = step.getInstruction();
             executedSoFar.add(instr != null ? instr : "");
 
+            if (!toMap[i]) {
+                String s = screenOf(step, app.getScreens());
+                if (s != null) lastScreen = s;
+                continue;
+            }
             Parsed parsed = Parsed.parse(instr);
 
             // LLM mapping: if enabled + provider available, try to map the instruction to known elements/methods.
             // This is the "intelligent" path for natural English like "add to cart product named X".
-            if (mappingLlmEnabled && (mappingLlmPrefer || parsed == null)) {
+            Future<LlmMapped> llmResult = llmResults.get(i);
+            if (llmResult != null) {
                 try {
-                    LlmMapped mapped = tryMapWithLlm(app, app.getScreens(), screenNames, lastScreen, executedSoFar, instr);
+                    LlmMapped mapped = llmResult.get(120, TimeUnit.SECONDS);
                     if (mapped != null) {
                         applyMappedStep(step, mapped, app.getScreens());
                         if (mapped.screen != null) lastScreen = mapped.screen;
+                        mappedNow[i] = true;
                         continue;
                     }
                 } catch (Exception e) {
+                    Throwable cause = e instanceof ExecutionException && e.getCause() != null ? e.getCause() : e;
                     log.warn("[MAP-LLM] Mapping failed for step order={} (continuing with fallback). {}",
-                        step.getOrder(), e.getMessage());
+                        step.getOrder(), cause.getMessage());
                 }
             }
 
@@ -119,6 +249,7 @@ public class TestStepMappingService {
                 step.setType("navigate");
                 step.setSelector(null);
                 step.setValue(parsed.value);
+                mappedNow[i] = true;
                 log.info("[MAP] Mapped navigate step. order={} url='{}'", step.getOrder(), parsed.value);
                 continue;
             }
@@ -135,6 +266,7 @@ public class TestStepMappingService {
                 step.setType("call_method");
                 step.setSelector(mm.screenName + "::" + mm.methodName);
                 step.setValue(parsed.value);
+                mappedNow[i] = true;
                 log.info("[MAP] Mapped method call. order={} screen='{}' method='{}' arg={}",
                     step.getOrder(), mm.screenName, mm.methodName, valueForLog(mm.methodName, parsed.value));
                 continue;
@@ -163,6 +295,7 @@ public class TestStepMappingService {
             step.setType(parsed.action);
             step.setSelector(match.selector);
             step.setValue(parsed.value);
+            mappedNow[i] = true;
 
             log.info("[MAP] Mapped step. order={} action={} screen='{}' element='{}' selector='{}' value={}",
                 step.getOrder(),
@@ -172,6 +305,130 @@ public class TestStepMappingService {
                 match.selector,
                 valueForLog(match.elementName, parsed.value));
         }
+
+        // Only mapped steps are marked unchanged and memoised: an unmapped step (no match, LLM timeout, rate limit,
+        // provider unavailable) is tried again on the next save instead of being pinned by its hash.
+        int mapped = 0;
+        for (int i = 0; i < steps.size(); i++) {
+            TestStep step = steps.get(i);
+            if (step == null || !mappedNow[i]) continue;
+            mapped++;
+            step.setMappingHash(hashes[i]);
+            mappingCache.put(cacheKey(app, version, hints[i], step.getInstruction()),
+                new MappedCommand(step.getType(), step.getSelector(), step.getValue()));
+        }
+        log.info("[MAP] Mapped testId={}: {} step(s) mapped ({} LLM call(s)), {} unchanged, {} from cache, in {} ms",
+            test.getId(), mapped, llmResults.size(), reused, cacheHits, System.currentTimeMillis() - started);
+    }
+
+    /**
+     * Content hash of the app's screens, elements and methods: any metadata edit changes it, which invalidates
+     * step hashes and cache keys without needing a version column.
+     */
+    private String metadataVersion(App app) {
+        StringBuilder sb = new StringBuilder();
+        List<Screen> screens = new ArrayList<>(app.getScreens());
+        screens.sort(Comparator.comparing(sc -> sc.getName() != null ? sc.getName() : ""));
+        for (Screen sc : screens) {
+            sb.append("S:").append(sc.getName()).append('\n');
+            if (sc.getElements() != null) {
+                sc.getElements().stream()
+                    .map(el -> "E:" + el.getElementName() + "|" + el.getSelectorType() + "|" + el.getSelector() + "|" + el.getFrameSelector())
+                    .sorted()
+                    .forEach(line -> sb.append(line).append('\n'));
+            }
+            if (sc.getMethods() != null) {
+                sc.getMethods().stream()
+                    .map(TestStepMappingService::methodVersionLine)
+                    .sorted()
+                    .forEach(line -> sb.append(line).append('\n'));
+            }
+        }
+        return sha256(sb.toString()).substring(0, 16);
+    }
+
+    /** Name, signature, definition and parameters: mappings and prompts depend on all of them. */
+    private static String methodVersionLine(ScreenMethod m) {
+        StringBuilder sb = new StringBuilder("M:").append(m.getMethodName())
+            .append('|').append(m.getMethodSignature())
+            .append('|').append(m.getReturnHandling())
+            .append('|').append(m.getSideEffectFlags() != null ? String.join(",", m.getSideEffectFlags()) : "")
+            .append('|').append(m.getMethodBody() != null ? sha256(m.getMethodBody()) : "");
+        if (m.getParams() != null) {
+            for (ScreenMethodParam p : m.getParams()) {
+                if (p == null) continue;
+                sb.append("|P:").append(p.getName()).append(':').append(p.getType())
+                    .append(':').append(p.getOptional()).append(':').append(p.getDefaultValue());
+            }
+        }
+        return sb.toString();
+    }
+
+    private static String stepHash(String version, String instruction) {
+        return sha256(version + "|" + normalizeInstruction(instruction));
+    }
+
+    private static String previousKey(String stepHash, String lastScreen) {
+        return stepHash + "|" + (lastScreen != null ? lastScreen : "");
+    }
+
+    private static String cacheKey(App app, String version, String lastScreen, String instruction) {
+        return app.getId() + "|" + version + "|" + (lastScreen != null ? lastScreen : "") + "|" + normalizeInstruction(instruction);
+    }
+
+    /** Whitespace-normalised; case is kept because values (passwords, names) are case-sensitive. */
+    private static String normalizeInstruction(String instruction) {
+        return instruction == null ? "" : instruction.trim().replaceAll("\\s+", " ");
+    }
+
+    private static String sha256(String text) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(text.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Screen a mapped step acts on (by selector, or "screen::method"), used as the "last screen" context.
+     */
+    private String screenOf(TestStep step, List<Screen> screens) {
+        if (step.getType() == null || step.getSelector() == null || screens == null) return null;
+        if ("call_method".equals(step.getType())) {
+            int sep = step.getSelector().indexOf("::");
+            return sep > 0 ? step.getSelector().substring(0, sep) : null;
+        }
+        for (Screen sc : screens) {
+            if (sc == null || sc.getElements() == null) continue;
+            for (ScreenElement el : sc.getElements()) {
+                if (el != null && step.getSelector().equals(el.getSelector())) return sc.getName();
+            }
+        }
+        return null;
+    }
+
+    private static void initializeScreens(List<Screen> screens) {
+        for (Screen sc : screens) {
+            if (sc == null) continue;
+            if (sc.getElements() != null) sc.getElements().size();
+            if (sc.getMethods() != null) sc.getMethods().size();
+        }
+    }
+
+    private ExecutorService llmPool() {
+        if (llmPool == null) {
+            synchronized (this) {
+                if (llmPool == null) {
+                    llmPool = Executors.newFixedThreadPool(Math.max(1, llmConcurrency), r -> {
+                        Thread t = new Thread(r, "step-mapping-llm");
+                        t.setDaemon(true);
+                        return t;
+                    });
+                }
+            }
+        }
+        return llmPool;
     }
 
     private void applyMappedStep(TestStep step, LlmMapped mapped, List<Screen> screens) {
@@ -425,7 +682,7 @@ public class TestStepMappingService {
         public List<String> args;
     }
 
-    private Match resolveAcrossScreens(List<Screen> screens, String elementFromStep, String lastScreen) {
+    static Match resolveAcrossScreens(List<Screen> screens, String elementFromStep, String lastScreen) {
         if (screens == null || elementFromStep == null) return null;
         String want = norm(elementFromStep);
 
@@ -519,7 +776,7 @@ public class TestStepMappingService {
         return null;
     }
 
-    private String norm(String s) {
+    private static String norm(String s) {
         if (s == null) return "";
         return s.toLowerCase(Locale.ROOT).replaceAll("[^a-z0-9]", "");
     }
@@ -531,7 +788,7 @@ public class TestStepMappingService {
         return sensitive ? "\"***\"" : "\"" + value + "\"";
     }
 
-    private static class Match {
+    static class Match {
         final String screenName;
         final String elementName;
         final String selector;
@@ -554,7 +811,7 @@ public class TestStepMappingService {
     /**
      * Minimal NL parser matching current deterministic runner grammar.
      */
-    private static class Parsed {
+    static class Parsed {
         final String action;
         final String elementName;
         final String value;
@@ -1,6 +1,8 @@
 package com.youraitester.service.impl;
 
+import com.youraitester.service.ExecutionPhaseStats;
 import com.youraitester.service.ScreenshotStorageService;
+import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
@@ -18,9 +20,12 @@ import java.nio.file.StandardOpenOption;
  * Used for local development and testing
  */
 @Service
+@RequiredArgsConstructor
 @Slf4j
 @ConditionalOnProperty(name = "screenshot.storage.type", havingValue = "local", matchIfMissing = true)
 public class LocalScreenshotStorage implements ScreenshotStorageService {
+
+    private final ExecutionPhaseStats phaseStats;
     
     @Value("${screenshot.storage.local.directory:./screenshots}")
     private String storageDirectory;
@@ -48,6 +53,15 @@ public class LocalScreenshotStorage implements ScreenshotStorageService {
     
     @Override
     public String storeScreenshot(byte[] screenshotBytes, String filename) throws IOException {
+        long started = System.nanoTime();
+        try {
+            return store(screenshotBytes, filename);
+        } finally {
+            phaseStats.recordSince(ExecutionPhaseStats.SCREENSHOT, started, "engine", getStorageType(), "operation", "store");
+        }
+    }
+
+    private String store(byte[] screenshotBytes, String filename) throws IOException {
         Path filePath = Paths.get(storageDirectory, filename);
         
         // Write the screenshot to disk
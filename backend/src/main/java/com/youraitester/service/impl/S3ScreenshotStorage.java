@@ -1,6 +1,8 @@
 package com.youraitester.service.impl;
 
+import com.youraitester.service.ExecutionPhaseStats;
 import com.youraitester.service.ScreenshotStorageService;
+import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
@@ -22,9 +24,12 @@ import java.io.IOException;
  * Used for production deployments
  */
 @Service
+@RequiredArgsConstructor
 @Slf4j
 @ConditionalOnProperty(name = "screenshot.storage.type", havingValue = "s3")
 public class S3ScreenshotStorage implements ScreenshotStorageService {
+
+    private final ExecutionPhaseStats phaseStats;
     
     @Value("${aws.s3.bucket-name}")
     private String bucketName;
@@ -74,6 +79,15 @@ public class S3ScreenshotStorage implements ScreenshotStorageService {
     
     @Override
     public String storeScreenshot(byte[] screenshotBytes, String filename) throws IOException {
+        long started = System.nanoTime();
+        try {
+            return store(screenshotBytes, filename);
+        } finally {
+            phaseStats.recordSince(ExecutionPhaseStats.SCREENSHOT, started, "engine", getStorageType(), "operation", "store");
+        }
+    }
+
+    private String store(byte[] screenshotBytes, String filename) throws IOException {
         try {
             if (s3Client == null) {
                 throw new IOException("S3 client not initialized");
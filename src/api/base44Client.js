@@ -71,12 +71,13 @@ export const base44 = {
         return { success: true };
       },
       get: async (id) => {
-        const response = await fetch(`${API_BASE_URL}/tests/${id}`, { headers: authHeaders() });
+        const response = await fetch(`${API_BASE_URL}/tests/${id}?includeDataset=true`, { headers: authHeaders() });
         return response.json();
       },
       filter: async (params) => {
         if (params.id) {
-          const response = await fetch(`${API_BASE_URL}/tests/${params.id}`, { headers: authHeaders() });
+          // The editor needs the dataset rows to round-trip them on save
+          const response = await fetch(`${API_BASE_URL}/tests/${params.id}?includeDataset=true`, { headers: authHeaders() });
           const test = await response.json();
           return [test]; // Return as array to match expected format
         }